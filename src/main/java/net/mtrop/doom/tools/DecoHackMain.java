@@ -6,10 +6,10 @@
 package net.mtrop.doom.tools;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -31,8 +31,10 @@ import java.util.function.BiPredicate;
 
 import net.mtrop.doom.Wad;
 import net.mtrop.doom.WadFile;
+import net.mtrop.doom.tools.common.ChangedFileOutputStream;
 import net.mtrop.doom.tools.decohack.DecoHackJoiner;
 import net.mtrop.doom.tools.decohack.DecoHackParser;
+import net.mtrop.doom.tools.decohack.DecoHackStats;
 import net.mtrop.doom.tools.decohack.contexts.AbstractPatchContext;
 import net.mtrop.doom.tools.decohack.data.DEHActionPointer;
 import net.mtrop.doom.tools.decohack.data.DEHActionPointer.Usage;
@@ -62,6 +64,8 @@ public final class DecoHackMain
 
 	private static final String DEFAULT_OUTFILENAME = "dehacked.deh";
 	private static final String RESOURCE_HELP_CONSTANTS = "decohack/help-constants.txt";
+	/** Buffer size for writing patches. */
+	private static final int PATCH_BUFFER_SIZE = 65536;
 	
 	private static final int ERROR_NONE = 0;
 	private static final int ERROR_BAD_OPTIONS = 1;
@@ -95,6 +99,8 @@ public final class DecoHackMain
 	public static final String SWITCH_OUTPUTCHARSET2 = "-oc";
 	public static final String SWITCH_BUDGET = "--budget";
 	public static final String SWITCH_BUDGET2 = "-b";
+	public static final String SWITCH_STATS = "--stats";
+	public static final String SWITCH_CHANGEDONLY = "--changed-only";
 	public static final String SWITCH_SOURCE_OUTPUT = "--source-output";
 	public static final String SWITCH_SOURCE_OUTPUT2 = "-s";
 
@@ -126,6 +132,8 @@ public final class DecoHackMain
 		private Charset outCharset;
 		private File outFile;
 		private boolean outputBudget;
+		private boolean outputStats;
+		private boolean changedOnly;
 
 		private File outSourceFile;
 		
@@ -150,6 +158,8 @@ public final class DecoHackMain
 			this.outCharset = StandardCharsets.US_ASCII;
 			this.outFile = null;
 			this.outputBudget = false;
+			this.outputStats = false;
+			this.changedOnly = false;
 			
 			this.outSourceFile = null;
 		}
@@ -215,6 +225,18 @@ public final class DecoHackMain
 			this.outputBudget = outputBudget;
 			return this;
 		}
+		
+		public Options setOutputStats(boolean outputStats) 
+		{
+			this.outputStats = outputStats;
+			return this;
+		}
+		
+		public Options setChangedOnly(boolean changedOnly) 
+		{
+			this.changedOnly = changedOnly;
+			return this;
+		}
 	
 		public Options setOutSourceFile(File outSourceFile) 
 		{
@@ -455,6 +477,7 @@ public final class DecoHackMain
 			
 			// Read script.
 			AbstractPatchContext<?> context;
+			DecoHackStats stats;
 			if (options.useStdin)
 			{
 				if (options.outFile == null)
@@ -467,8 +490,9 @@ public final class DecoHackMain
 				try (Reader reader = new BufferedReader(new InputStreamReader(options.stdin, options.inCharset))) 
 				{
 					DecoHackParser.Result result;
-					result = DecoHackParser.read("STDIN", options.stdin, options.inCharset);
+					result = DecoHackParser.read("STDIN", options.stdin, options.inCharset, options.outputStats);
 					context = result.getContext();
+					stats = result.getStats();
 					for (String message : result.getWarnings())
 						options.stderr.println("WARNING: " + message);
 					if (context == null)
@@ -521,8 +545,9 @@ public final class DecoHackMain
 				try 
 				{
 					DecoHackParser.Result result;
-					result = DecoHackParser.read(options.inFiles, options.inCharset);
+					result = DecoHackParser.read(options.inFiles, options.inCharset, options.outputStats);
 					context = result.getContext();
+					stats = result.getStats();
 					for (String message : result.getWarnings())
 						options.stderr.println("WARNING: " + message);
 					if (context == null)
@@ -583,6 +608,8 @@ public final class DecoHackMain
 				options.stdout.printf("--------------------------\n");
 			}
 			
+			long renderNanos = -1L;
+			long writeNanos = -1L;
 			if (!options.dryRun)
 			{
 				// Combine source.
@@ -612,13 +639,23 @@ public final class DecoHackMain
 								}
 							}
 							
+							byte[] data = bos.toByteArray();
 							int index;
 							if ((index = wad.indexOf("DECOHACK")) >= 0)
-								wad.replaceEntry(index, bos.toByteArray());
+							{
+								if (options.changedOnly && Arrays.equals(data, wad.getData(index)))
+									options.stdout.printf("Source in %s is unchanged.\n", options.outSourceFile.getPath());
+								else
+								{
+									wad.replaceEntry(index, data);
+									options.stdout.printf("Wrote source into %s as `DECOHACK`.\n", options.outSourceFile.getPath());
+								}
+							}
 							else
-								wad.addData("DECOHACK", bos.toByteArray());
-							
-							options.stdout.printf("Wrote source into %s as `DECOHACK`.\n", options.outSourceFile.getPath());
+							{
+								wad.addData("DECOHACK", data);
+								options.stdout.printf("Wrote source into %s as `DECOHACK`.\n", options.outSourceFile.getPath());
+							}
 						} 
 						catch (IOException e) 
 						{
@@ -628,13 +665,20 @@ public final class DecoHackMain
 					}
 					else
 					{
-						try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(options.outSourceFile), options.inCharset), true))
+						ChangedFileOutputStream out = null;
+						try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(out = new ChangedFileOutputStream(options.outSourceFile, options.changedOnly), options.inCharset), true))
 						{
 							for (File file : options.inFiles)
 							{
 								DecoHackJoiner.joinSourceFrom(file, Charset.defaultCharset(), writer);
 							}
-							options.stdout.printf("Wrote source to %s.\n", options.outSourceFile.getPath());
+							// PrintWriters do not throw, so only commit if nothing went wrong (or the old file is kept on close).
+							writer.flush();
+							if (!writer.checkError())
+								out.commit();
+							writer.close();
+							if (writer.checkError())
+								throw new IOException("Could not write " + options.outSourceFile.getPath());
 						} 
 						catch (FileNotFoundException e) 
 						{
@@ -646,6 +690,11 @@ public final class DecoHackMain
 							options.stderr.println("ERROR: I/O Error: " + e.getLocalizedMessage());
 							return ERROR_IOERROR;
 						}
+						
+						if (out.isChanged())
+							options.stdout.printf("Wrote source to %s.\n", options.outSourceFile.getPath());
+						else
+							options.stdout.printf("Source %s is unchanged.\n", options.outSourceFile.getPath());
 					}
 					
 				}
@@ -654,30 +703,42 @@ public final class DecoHackMain
 				try {
 					isWad = Wad.isWAD(options.outFile);
 				} catch (IOException e) {
-					options.stderr.println("ERROR: Source output file " + options.outSourceFile.getPath() + " could not be read!");
+					options.stderr.println("ERROR: Output file " + options.outFile.getPath() + " could not be read!");
 					return ERROR_IOERROR;
 				} catch (SecurityException e) {
-					options.stderr.println("ERROR: Source output file " + options.outSourceFile.getPath() + " could not be read! Access denied.");
+					options.stderr.println("ERROR: Output file " + options.outFile.getPath() + " could not be read! Access denied.");
 					return ERROR_IOERROR;
 				}
 				
+				long writeStart = System.nanoTime();
 				if (isWad)
 				{
-					try (WadFile wad = new WadFile(options.outSourceFile)) 
+					// The patch is written to memory first, so the WAD is not touched if it can't be written (or is the same).
+					try (WadFile wad = new WadFile(options.outFile)) 
 					{
 						ByteArrayOutputStream bos = new ByteArrayOutputStream();
-						try (Writer writer = new OutputStreamWriter(bos, options.outCharset)) 
+						try (Writer writer = new BufferedWriter(new OutputStreamWriter(bos, options.outCharset), PATCH_BUFFER_SIZE)) 
 						{
 							context.writePatch(writer, "Created with " + VERSION_LINE);
-						} 
+						}
+						byte[] data = bos.toByteArray();
+						renderNanos = System.nanoTime() - writeStart;
+						writeStart = System.nanoTime();
 						
-						int index;
-						if ((index = wad.indexOf("DEHACKED")) >= 0)
-							wad.replaceEntry(index, bos.toByteArray());
+						int index = wad.indexOf("DEHACKED");
+						if (options.changedOnly && index >= 0 && Arrays.equals(data, wad.getData(index)))
+						{
+							options.stdout.printf("Patch in %s is unchanged.\n", options.outFile.getPath());
+						}
 						else
-							wad.addData("DEHACKED", bos.toByteArray());
-						
-						options.stdout.printf("Wrote patch into %s as `DEHACKED`.\n", options.outSourceFile.getPath());
+						{
+							if (index >= 0)
+								wad.replaceEntry(index, data);
+							else
+								wad.addData("DEHACKED", data);
+							options.stdout.printf("Wrote patch into %s as `DEHACKED`.\n", options.outFile.getPath());
+						}
+						writeNanos = System.nanoTime() - writeStart;
 					} 
 					catch (IOException e) 
 					{
@@ -688,10 +749,18 @@ public final class DecoHackMain
 				else
 				{
 					// Write Patch.
-					try (Writer writer = new OutputStreamWriter(new FileOutputStream(options.outFile), options.outCharset)) 
+					ChangedFileOutputStream out = null;
+					try (Writer writer = new BufferedWriter(new OutputStreamWriter(out = new ChangedFileOutputStream(options.outFile, options.changedOnly), options.outCharset), PATCH_BUFFER_SIZE)) 
 					{
 						context.writePatch(writer, "Created with " + VERSION_LINE);
-						options.stdout.printf("Wrote %s.\n", options.outFile.getPath());
+						writer.flush();
+						out.commit();
+						writer.close();
+						writeNanos = System.nanoTime() - writeStart;
+						if (out.isChanged())
+							options.stdout.printf("Wrote %s.\n", options.outFile.getPath());
+						else
+							options.stdout.printf("%s is unchanged.\n", options.outFile.getPath());
 					} 
 					catch (IOException e) 
 					{
@@ -706,6 +775,17 @@ public final class DecoHackMain
 				}
 			}
 			
+			if (options.outputStats && stats != null)
+			{
+				options.stdout.printf("--- Compile Statistics ---\n");
+				stats.printReport(options.stdout);
+				if (renderNanos >= 0L)
+					options.stdout.printf("Patch render:   %10.3f ms\n", renderNanos / 1000000.0);
+				if (writeNanos >= 0L)
+					options.stdout.printf("Patch write:    %10.3f ms%s\n", writeNanos / 1000000.0, renderNanos < 0L ? " (rendered while writing)" : "");
+				options.stdout.printf("--------------------------\n");
+			}
+			
 			return ERROR_NONE;
 		}
 	}
@@ -769,6 +849,10 @@ public final class DecoHackMain
 						state = STATE_CHARSET;
 					else if (arg.equals(SWITCH_BUDGET) || arg.equals(SWITCH_BUDGET2))
 						options.outputBudget = true;
+					else if (arg.equals(SWITCH_STATS))
+						options.outputStats = true;
+					else if (arg.equals(SWITCH_CHANGEDONLY))
+						options.changedOnly = true;
 					else if (arg.equals(SWITCH_OUTPUT) || arg.equals(SWITCH_OUTPUT2))
 						state = STATE_OUTFILE;
 					else if (arg.equals(SWITCH_SOURCE_OUTPUT) || arg.equals(SWITCH_SOURCE_OUTPUT2))
@@ -985,6 +1069,14 @@ public final class DecoHackMain
 		out.println("    --budget                 Prints the state budget after compilation.");
 		out.println("    -b");
 		out.println();
+		out.println("    --stats                  Prints compile statistics after compilation (time");
+		out.println("                             spent in each phase, file, and block type, token");
+		out.println("                             counts, free state searches, and allocations).");
+		out.println();
+		out.println("    --changed-only           Only writes the output patch and source if they");
+		out.println("                             changed, so that unchanged outputs keep their");
+		out.println("                             modified dates.");
+		out.println();
 		out.println("    --dry-run                Does no output - only attempts to compile and");
 		out.println("                             return errors and/or warnings. Overrides all");
 		out.println("                             output switches.");
@@ -6,24 +6,37 @@
 package net.mtrop.doom.tools;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiFunction;
 
 import net.mtrop.doom.tools.doomfetch.DogSoftDriver;
 import net.mtrop.doom.tools.doomfetch.DoomShackDriver;
+import net.mtrop.doom.tools.doomfetch.FetchCache;
 import net.mtrop.doom.tools.doomfetch.FetchDriver;
 import net.mtrop.doom.tools.doomfetch.FetchDriver.Response;
 import net.mtrop.doom.tools.doomfetch.IdGamesDriver;
@@ -58,6 +71,9 @@ public final class DoomFetchMain
 	public static final String SWITCH_TARGET = "--target";
 	public static final String SWITCH_UPDATE = "--update";
 	public static final String SWITCH_NOLOCK = "--nolock";
+	public static final String SWITCH_THREADS = "--threads";
+	public static final String SWITCH_CACHE = "--cache";
+	public static final String SWITCH_CACHESIZE = "--cache-size";
 
 	public static final String DEFAULT_LOCK_FILENAME = "doomfetch.lock";
 
@@ -80,8 +96,8 @@ public final class DoomFetchMain
 		private static class EntryData
 		{
 			private String driver;
-			private String etag; // not implemented
-			private String date; // not implemented
+			private String etag;
+			private String date;
 
 			private EntryData(String driver, String etag, String date) 
 			{
@@ -126,11 +142,36 @@ public final class DoomFetchMain
 		 * @param etag the hash or cache tag for the file.
 		 * @param date the cache date of the file fetched.
 		 */
-		public void add(String name, String driver, String etag, String date)
+		public synchronized void add(String name, String driver, String etag, String date)
 		{
 			entries.put(name, new EntryData(driver, etag, date));
 		}
 		
+		/**
+		 * Sets the driver for an entry in this lock, if it has none.
+		 * The entry's cache tag and date are kept.
+		 * @param name the name of the entry.
+		 * @param driver the driver that fetched or found it.
+		 */
+		public synchronized void setDriver(String name, String driver)
+		{
+			EntryData entry = entries.get(name);
+			if (entry == null)
+				entries.put(name, new EntryData(driver, "", ""));
+			else if (ObjectUtils.isEmpty(entry.driver))
+				entries.put(name, new EntryData(driver, entry.etag, entry.date));
+		}
+		
+		/**
+		 * Gets an entry in this lock.
+		 * @param name the name of the entry.
+		 * @return the corresponding entry, or null if no entry.
+		 */
+		public synchronized EntryData get(String name)
+		{
+			return entries.get(name);
+		}
+		
 		/**
 		 * Attempts to load a lock file from a provided file path.
 		 * This lock object contents are replaced.
@@ -216,20 +257,26 @@ public final class DoomFetchMain
 					}
 					else if (ObjectUtils.isEmpty(date))
 					{
-						pw.println(name + " " + driver + " " + etag);
+						pw.println(name + " " + driver + " " + quote(etag));
 					}
 					else if (ObjectUtils.isEmpty(etag))
 					{
-						pw.println(name + " " + driver + " \"\" " + date);
+						pw.println(name + " " + driver + " \"\" " + quote(date));
 					}
 					else
 					{
-						pw.println(name + " " + driver + " " + etag + " " + date);
+						pw.println(name + " " + driver + " " + quote(etag) + " " + quote(date));
 					}
 				}
 			}
 		}
 		
+		// ETags are quoted, and dates have spaces in them.
+		private static String quote(String value)
+		{
+			return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+		}
+		
 		/**
 		 * Gets the entry set of this lockfile.
 		 * @return the entry set.
@@ -265,6 +312,9 @@ public final class DoomFetchMain
 		private File targetDirectory;
 		private boolean update;
 		private boolean nolock;
+		private int threads;
+		private File cacheDirectory;
+		private long cacheSize;
 		
 		private String driver;
 		private String name;
@@ -282,6 +332,9 @@ public final class DoomFetchMain
 			this.targetDirectory = new File(".");
 			this.update = false;
 			this.nolock = false;
+			this.threads = 1;
+			this.cacheDirectory = null;
+			this.cacheSize = FetchCache.DEFAULT_MAX_SIZE;
 			
 			this.driver = null;
 			this.name = null;
@@ -323,6 +376,29 @@ public final class DoomFetchMain
 			return this;
 		}
 		
+		public Options setThreads(int threads) 
+		{
+			this.threads = threads;
+			return this;
+		}
+		
+		public Options setCacheDirectory(File cacheDirectory) 
+		{
+			this.cacheDirectory = cacheDirectory;
+			return this;
+		}
+		
+		/**
+		 * Sets the maximum size of the download cache (same as <code>--cache-size</code>).
+		 * @param megabytes the maximum size, in megabytes.
+		 * @return this object.
+		 */
+		public Options setCacheSize(long megabytes) 
+		{
+			this.cacheSize = megabytes * 1024L * 1024L;
+			return this;
+		}
+		
 		public Options setDriver(String driver) 
 		{
 			this.driver = driver;
@@ -348,85 +424,243 @@ public final class DoomFetchMain
 	private static class Context implements Callable<Integer>
 	{
 		private Options options;
-	
+		
+		/** Pool for querying drivers in parallel (concurrent mode only). */
+		private ExecutorService driverPool;
+		/** Shared download cache, if any. */
+		private FetchCache cache;
+		
 		private Context(Options options)
 		{
 			this.options = options;
+			this.driverPool = null;
+			this.cache = null;
 		}
 		
 		// Returns true if the file was fetched successfully.
-		private boolean fetchFile(LockFile lockFile, String name)
+		private boolean fetchFile(LockFile lockFile, String name, PrintStream out, PrintStream err)
 		{
+			if (driverPool != null)
+				return fetchFileParallel(lockFile, name, out, err);
+			
 			boolean success = false;
 			for (Map.Entry<String, ?> entry : DRIVER_LIST.entrySet())
 			{
-				success = fetchFile(lockFile, entry.getKey(), name); 
+				success = fetchFile(lockFile, entry.getKey(), name, out, err); 
 				if (success)
 				{
-					lockFile.add(name, entry.getKey());
+					lockFile.setDriver(name, entry.getKey());
 					break;
 				}
 			}
 			return success;
 		}
 
+		// Queries all drivers at once - the first successful driver in priority order wins.
+		// Returns true if the file was fetched successfully.
+		private boolean fetchFileParallel(LockFile lockFile, String name, PrintStream out, PrintStream err)
+		{
+			if (!options.update && searchForTargetFile(options.targetDirectory, name) != null)
+			{
+				out.println("[Skipping] File found in target directory: " + name);
+				// Same as the serial search: the first driver is the one that found it.
+				lockFile.setDriver(name, DRIVER_LIST.keySet().iterator().next());
+				return true;
+			}
+			
+			if (fetchFromCache(lockFile, null, name, out, err))
+				return true;
+			
+			Map<String, Future<Response>> futures = new LinkedHashMap<>();
+			for (String driver : DRIVER_LIST.keySet())
+				futures.put(driver, driverPool.submit(() -> openResponse(lockFile, driver, name, out, err)));
+			
+			String selectedDriver = null;
+			Response selected = null;
+			List<Future<Response>> unused = new LinkedList<>();
+			for (Map.Entry<String, Future<Response>> entry : futures.entrySet())
+			{
+				// Lower priority, not needed.
+				if (selected != null)
+				{
+					unused.add(entry.getValue());
+					continue;
+				}
+				
+				try {
+					selected = entry.getValue().get();
+					selectedDriver = entry.getKey();
+				} catch (InterruptedException e) {
+					err.println("ERROR: Fetch interrupted: " + name);
+				} catch (ExecutionException e) {
+					// Already reported by the driver.
+				}
+			}
+			
+			// Close the open responses from the drivers that lost as they come in, to free up their connections.
+			for (Future<Response> future : unused)
+			{
+				if (future.cancel(false))
+					continue;
+				driverPool.execute(() -> 
+				{
+					try {
+						IOUtils.close(future.get());
+					} catch (InterruptedException | ExecutionException e) {
+						// Eat exception.
+					}
+				});
+			}
+			
+			return selected != null && download(lockFile, selectedDriver, name, selected, out, err);
+		}
+		
 		// Returns true if the file was fetched (or found locally) successfully.
-		private boolean fetchFile(LockFile lockFile, String driver, String name)
+		private boolean fetchFile(LockFile lockFile, String driver, String name, PrintStream out, PrintStream err)
 		{
-			if (!options.update && searchForTargetFile(options.targetDirectory, name))
+			if (!options.update && searchForTargetFile(options.targetDirectory, name) != null)
 			{
-				options.stdout.println("[Skipping] File found in target directory: " + name);
+				out.println("[Skipping] File found in target directory: " + name);
+				lockFile.setDriver(name, driver);
 				return true;
 			}
 			
+			if (fetchFromCache(lockFile, driver, name, out, err))
+				return true;
+			
+			Response response = openResponse(lockFile, driver, name, out, err);
+			if (response == null)
+				return false;
+			
+			return download(lockFile, driver, name, response, out, err);
+		}
+
+		// Copies a file from the download cache if the lock file entry's version is in it.
+		// Returns true if the file was found in the cache.
+		private boolean fetchFromCache(LockFile lockFile, String driver, String name, PrintStream out, PrintStream err)
+		{
+			// Unknown version or explicit update - go to the source.
+			LockFile.EntryData entry;
+			if (cache == null || options.update || (entry = lockFile.get(name)) == null)
+				return false;
+			
+			String entryDriver = !ObjectUtils.isEmpty(entry.driver) ? entry.driver : driver;
+			try {
+				FetchCache.Entry cached = cache.materialize(entryDriver, name, FetchCache.getTag(entry.etag, entry.date), options.targetDirectory);
+				if (cached == null)
+					return false;
+				out.println("[Cached] Copied from download cache: " + cached.getFilename());
+				lockFile.add(name, cached.getDriver(), entry.etag, entry.date);
+				return true;
+			} catch (IOException e) {
+				err.println("ERROR: Could not read from download cache: " + e.getLocalizedMessage());
+				return false;
+			}
+		}
+		
+		// Opens a response from a driver, or null if not found or on error.
+		private Response openResponse(LockFile lockFile, String driver, String name, PrintStream out, PrintStream err)
+		{
 			BiFunction<PrintStream, PrintStream, FetchDriver> driverFunc = DRIVER_LIST.get(driver);
-			if (driver == null)
-				options.stderr.println("ERROR: No such driver: " + driver);
+			if (driverFunc == null)
+			{
+				err.println("ERROR: No such driver: " + driver);
+				return null;
+			}
 		
-			FetchDriver fetcher = driverFunc.apply(options.stdout, options.stderr);
+			FetchDriver fetcher = driverFunc.apply(out, err);
+			fetcher.setPartDirectory(options.targetDirectory);
 			
-			Response response = null;
-			try
+			LockFile.EntryData entry = lockFile.get(name);
+			if (entry != null)
+				fetcher.setValidators(entry.etag, entry.date);
+			// Only bother with a conditional request if there's something local to compare against.
+			fetcher.setConditional(searchForTargetFile(options.targetDirectory, name) != null);
+			
+			try {
+				return fetcher.getStreamFor(name);
+			} catch (IOException e) {
+				err.println("ERROR: Can't read from source: " + driver);
+				return null;
+			}
+		}
+		
+		// Downloads a response to the target directory (through a partial file).
+		// Returns true if the file was fetched (or is unchanged) successfully.
+		private boolean download(LockFile lockFile, String driver, String name, Response response, PrintStream out, PrintStream err)
+		{
+			File targetFile = new File(options.targetDirectory.getPath() + File.separator + response.getFilename());
+			File partFile = FetchDriver.getPartFile(options.targetDirectory, response.getFilename());
+			
+			try (HTTPResponse httpResponse = response.getHTTPResponse())
 			{
-				response = fetcher.getStreamFor(name);
-				if (response == null)
+				if (httpResponse.getStatusCode() == 304)
+				{
+					out.println("[Unchanged] File is up to date: " + response.getFilename());
+					LockFile.EntryData entry = lockFile.get(name);
+					if (entry != null)
+						lockFile.add(name, driver, entry.etag, entry.date);
+					else
+						lockFile.add(name, driver);
+					// The local copy is confirmed current - share it.
+					File localFile = searchForTargetFile(options.targetDirectory, name);
+					if (entry != null && localFile != null)
+						storeInCache(driver, name, FetchCache.getTag(entry.etag, entry.date), localFile, err);
+					return true;
+				}
+				
+				if (!httpResponse.isSuccess())
+				{
+					err.println("ERROR: Received " + httpResponse.getStatusCode() + " (" + httpResponse.getStatusMessage() + ") from source.");
+					// Range not satisfiable - partial file is bad.
+					if (httpResponse.getStatusCode() == 416)
+						partFile.delete();
 					return false;
+				}
 				
-				File targetFile = new File(options.targetDirectory.getPath() + File.separator + response.getFilename());
-				if (!FileUtils.createPathForFile(targetFile))
+				if (!FileUtils.createPathForFile(partFile))
 				{
-					options.stderr.println("ERROR: Could not create target directory for file.");
+					err.println("ERROR: Could not create target directory for file.");
 					return false;
 				}
 				
-				try (HTTPResponse httpResponse = response.getHTTPResponse(); FileOutputStream fos = new FileOutputStream(targetFile))
+				// Partial Content means that the rest of the part file is coming.
+				final boolean resume = httpResponse.getStatusCode() == 206;
+				final long offset = resume ? partFile.length() : 0L;
+				final Long total = httpResponse.getLength() != null ? offset + httpResponse.getLength() : null;
+				final boolean progress = driverPool == null;
+				
+				if (resume)
+					out.println("Resuming " + response.getFilename() + " from " + (offset / 1024) + " KB...");
+				else
+					out.println("Downloading " + response.getFilename() + "...");
+				
+				final AtomicLong currentBytes = new AtomicLong(0L);
+				final AtomicLong lastDate = new AtomicLong(System.currentTimeMillis());
+				httpResponse.relayContent(partFile, resume, new AtomicBoolean(false), (cur, max) -> 
 				{
-					if (!httpResponse.isSuccess())
+					long next = System.currentTimeMillis();
+					currentBytes.set(cur);
+					if (progress && next > lastDate.get() + 250L)
 					{
-						options.stderr.println("ERROR: Received " + httpResponse.getStatusCode() + " (" + httpResponse.getStatusMessage() + ") from source.");
-						return false;
+						printProgress(offset + cur, total, out);
+						lastDate.set(next);
 					}
-					
-					options.stdout.println("Downloading " + response.getFilename() + "...");
-					final AtomicLong currentBytes = new AtomicLong(0L);
-					final AtomicLong lastDate = new AtomicLong(System.currentTimeMillis());
-					httpResponse.relayContent(fos, (cur, max) -> 
-					{
-						long next = System.currentTimeMillis();
-						currentBytes.set(cur);
-						if (next > lastDate.get() + 250L)
-						{
-							printProgress(cur, max, options.stdout);
-							lastDate.set(next);
-						}
-					});
-					printProgress(currentBytes.get(), currentBytes.get(), options.stdout);
-					options.stdout.println("\nDone.");
+				});
+				if (progress)
+				{
+					printProgress(offset + currentBytes.get(), offset + currentBytes.get(), out);
+					out.println();
 				}
+				
+				Files.move(partFile.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				out.println("Done: " + response.getFilename());
+				
+				storeInCache(driver, name, FetchCache.getTag(response.getETag(), response.getDate()), targetFile, err);
 			}
 			catch (IOException e)
 			{
-				options.stderr.println("ERROR: Can't read from source: " + driver);
+				err.println("ERROR: Can't read from source: " + driver);
 				return false;
 			}
 			finally
@@ -434,26 +668,52 @@ public final class DoomFetchMain
 				IOUtils.close(response);
 			}
 			
-			lockFile.add(name, driver);
+			lockFile.add(name, driver, response.getETag(), response.getDate());
 			return true;
 		}
 
-		// Returns true if a file that has a target name is found
-		private static boolean searchForTargetFile(File targetDirectoryPath, String name)
+		// Adds a file to the download cache, if there is one.
+		private void storeInCache(String driver, String name, String tag, File file, PrintStream err)
+		{
+			if (cache == null)
+				return;
+			try {
+				cache.store(driver, name, tag, file);
+			} catch (IOException e) {
+				err.println("WARNING: Could not add file to download cache: " + e.getLocalizedMessage());
+			}
+		}
+		
+		// Returns a file that has a target name, or null if not found.
+		private static File searchForTargetFile(File targetDirectoryPath, String name)
 		{
 			if (!targetDirectoryPath.exists())
-				return false;
+				return null;
 			
 			for (File f : targetDirectoryPath.listFiles())
 			{
+				if (f.getName().endsWith(FetchDriver.PART_EXTENSION))
+					continue;
 				String fname = FileUtils.getFileNameWithoutExtension(f);
 				if (OSUtils.isWindows() && fname.equalsIgnoreCase(name))
-					return true;
+					return f;
 				else if (fname.equals(name))
-					return true;
+					return f;
 			}
 			
-			return false;
+			return null;
+		}
+		
+		// Creates a factory for daemon threads.
+		private static ThreadFactory createThreadFactory(String threadNamePrefix)
+		{
+			final AtomicInteger threadId = new AtomicInteger(0);
+			return (runnable) -> 
+			{
+				Thread out = new Thread(runnable, threadNamePrefix + "-" + threadId.getAndIncrement());
+				out.setDaemon(true);
+				return out;
+			};
 		}
 		
 		// Prints transfer progress.
@@ -465,6 +725,66 @@ public final class DoomFetchMain
 				out.print("\r" + (current / 1024) + " KB ");
 		}
 		
+		// Fetches each lock file entry concurrently. 
+		// Output from each entry is buffered and printed in one piece when it completes.
+		// Returns {success, atleastone}.
+		private boolean[] fetchLockEntriesParallel(LockFile lock)
+		{
+			List<Map.Entry<String, String>> work = new LinkedList<>();
+			for (Map.Entry<String, LockFile.EntryData> entry : lock.entries())
+				work.add(new AbstractMap.SimpleEntry<>(entry.getKey(), entry.getValue().driver));
+			
+			ExecutorService filePool = Executors.newFixedThreadPool(options.threads, createThreadFactory("DoomFetch-File"));
+			driverPool = Executors.newFixedThreadPool(options.threads * DRIVER_LIST.size(), createThreadFactory("DoomFetch-Driver"));
+			
+			final Object outputMutex = new Object();
+			List<Future<Boolean>> results = new LinkedList<>();
+			try {
+				for (Map.Entry<String, String> entry : work)
+				{
+					results.add(filePool.submit(() -> 
+					{
+						ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
+						ByteArrayOutputStream errBuffer = new ByteArrayOutputStream();
+						boolean fetched;
+						try (PrintStream out = new PrintStream(outBuffer, true, "UTF-8"); PrintStream err = new PrintStream(errBuffer, true, "UTF-8"))
+						{
+							if (ObjectUtils.isEmpty(entry.getValue()))
+								fetched = fetchFile(lock, entry.getKey(), out, err);
+							else
+								fetched = fetchFile(lock, entry.getValue(), entry.getKey(), out, err);
+						}
+						synchronized (outputMutex)
+						{
+							options.stdout.print(new String(outBuffer.toByteArray(), StandardCharsets.UTF_8));
+							options.stderr.print(new String(errBuffer.toByteArray(), StandardCharsets.UTF_8));
+						}
+						return fetched;
+					}));
+				}
+				
+				boolean success = true;
+				boolean atleastone = false;
+				for (Future<Boolean> result : results)
+				{
+					boolean out;
+					try {
+						out = result.get();
+					} catch (InterruptedException | ExecutionException e) {
+						out = false;
+					}
+					success = out && success;
+					if (out)
+						atleastone = true;
+				}
+				return new boolean[]{success, atleastone};
+			} finally {
+				filePool.shutdownNow();
+				driverPool.shutdownNow();
+				driverPool = null;
+			}
+		}
+		
 		@Override
 		public Integer call()
 		{
@@ -510,6 +830,9 @@ public final class DoomFetchMain
 				return ERROR_NONE;
 			}
 			
+			if (options.cacheDirectory != null)
+				cache = new FetchCache(options.cacheDirectory, options.cacheSize);
+			
 			boolean success = true;
 			boolean atleastone = false;
 			
@@ -519,26 +842,44 @@ public final class DoomFetchMain
 				// Provided driver.
 				if (!ObjectUtils.isEmpty(options.driver))
 				{
-					success = fetchFile(lock, options.driver, options.name);
+					success = fetchFile(lock, options.driver, options.name, options.stdout, options.stderr);
+					if (success)
+						atleastone = true;
+				}
+				else if (options.threads > 1)
+				{
+					driverPool = Executors.newFixedThreadPool(DRIVER_LIST.size(), createThreadFactory("DoomFetch-Driver"));
+					try {
+						success = fetchFile(lock, options.name, options.stdout, options.stderr);
+					} finally {
+						driverPool.shutdownNow();
+						driverPool = null;
+					}
 					if (success)
 						atleastone = true;
 				}
 				else
 				{
-					success = fetchFile(lock, options.name); 
+					success = fetchFile(lock, options.name, options.stdout, options.stderr); 
 					if (success)
 						atleastone = true;
 				}
 			}
 			// No name. Pull from Lock file.
+			else if (options.threads > 1)
+			{
+				boolean[] result = fetchLockEntriesParallel(lock);
+				success = result[0];
+				atleastone = result[1];
+			}
 			else for (Map.Entry<String, LockFile.EntryData> entry : lock.entries())
 			{
 				boolean out;
 				String driver = entry.getValue().driver;
 				if (ObjectUtils.isEmpty(driver))
-					out = fetchFile(lock, entry.getKey()) && success;
+					out = fetchFile(lock, entry.getKey(), options.stdout, options.stderr) && success;
 				else
-					out = fetchFile(lock, driver, entry.getKey()) && success;
+					out = fetchFile(lock, driver, entry.getKey(), options.stdout, options.stderr) && success;
 				success = out;
 				if (success)
 					atleastone = true;
@@ -584,6 +925,9 @@ public final class DoomFetchMain
 		final int STATE_START = 0;
 		final int STATE_LOCKFILE = 1;
 		final int STATE_TARGET = 2;
+		final int STATE_THREADS = 3;
+		final int STATE_CACHE = 4;
+		final int STATE_CACHESIZE = 5;
 		int state = STATE_START;
 
 		for (int i = 0; i < args.length; i++)
@@ -608,6 +952,12 @@ public final class DoomFetchMain
 						state = STATE_LOCKFILE;
 					else if (arg.equals(SWITCH_TARGET))
 						state = STATE_TARGET;
+					else if (arg.equals(SWITCH_THREADS))
+						state = STATE_THREADS;
+					else if (arg.equals(SWITCH_CACHE))
+						state = STATE_CACHE;
+					else if (arg.equals(SWITCH_CACHESIZE))
+						state = STATE_CACHESIZE;
 					else if (options.name != null)
 					{
 						options.driver = options.name;
@@ -633,6 +983,43 @@ public final class DoomFetchMain
 					state = STATE_START;
 				}
 				break;
+				
+				case STATE_THREADS:
+				{
+					int threads;
+					try {
+						threads = Integer.parseInt(arg);
+					} catch (NumberFormatException e) {
+						throw new OptionParseException("ERROR: Thread count must be a positive number.");
+					}
+					if (threads < 1)
+						throw new OptionParseException("ERROR: Thread count must be a positive number.");
+					options.threads = threads;
+					state = STATE_START;
+				}
+				break;
+				
+				case STATE_CACHE:
+				{
+					options.cacheDirectory = new File(arg);
+					state = STATE_START;
+				}
+				break;
+				
+				case STATE_CACHESIZE:
+				{
+					long megabytes;
+					try {
+						megabytes = Long.parseLong(arg);
+					} catch (NumberFormatException e) {
+						throw new OptionParseException("ERROR: Cache size must be a positive number.");
+					}
+					if (megabytes < 1)
+						throw new OptionParseException("ERROR: Cache size must be a positive number.");
+					options.setCacheSize(megabytes);
+					state = STATE_START;
+				}
+				break;
 			}
 		}
 
@@ -640,6 +1027,12 @@ public final class DoomFetchMain
 			throw new OptionParseException("ERROR: Expected path to lock file.");
 		if (state == STATE_TARGET)
 			throw new OptionParseException("ERROR: Expected path to target directory.");
+		if (state == STATE_THREADS)
+			throw new OptionParseException("ERROR: Expected thread count.");
+		if (state == STATE_CACHE)
+			throw new OptionParseException("ERROR: Expected path to cache directory.");
+		if (state == STATE_CACHESIZE)
+			throw new OptionParseException("ERROR: Expected cache size.");
 
 		return options;
 	}
@@ -731,6 +1124,24 @@ public final class DoomFetchMain
 		out.println("                            Default: .");
 		out.println();
 		out.println("    --update            Tells DoomFetch to update even if a file is present.");
+		out.println("                        If the lock file has an ETag or date for the file,");
+		out.println("                        it is only downloaded again if it changed remotely.");
+		out.println();
+		out.println("    --threads [n]       Fetches up to [n] files at once, and searches all");
+		out.println("                        drivers at the same time (first in driver order wins).");
+		out.println("                            Default: 1");
+		out.println();
+		out.println("    --cache [path]      Uses [path] as a download cache that can be shared");
+		out.println("                        between projects. Files in the lock file that are");
+		out.println("                        already in the cache are not downloaded again.");
+		out.println("                            Suggested: " + FetchCache.DEFAULT_CACHE_PATH);
+		out.println();
+		out.println("    --cache-size [mb]   The maximum size of the download cache in megabytes.");
+		out.println("                        Least recently used files are removed if it is bigger.");
+		out.println("                            Default: " + (FetchCache.DEFAULT_MAX_SIZE / 1024L / 1024L));
+		out.println();
+		out.println("Interrupted downloads are kept as \"" + FetchDriver.PART_EXTENSION + "\" files in the target");
+		out.println("path, and are resumed on the next fetch.");
 		out.println();
 		out.println("    --nolock            Tells DoomFetch to not update the lock file.");
 		out.println();
@@ -10,7 +10,6 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
@@ -30,6 +29,7 @@ import net.mtrop.doom.graphics.PNGPicture;
 import net.mtrop.doom.graphics.Palette;
 import net.mtrop.doom.graphics.Picture;
 import net.mtrop.doom.object.BinaryObject;
+import net.mtrop.doom.tools.common.ChangedFileOutputStream;
 import net.mtrop.doom.tools.exception.OptionParseException;
 import net.mtrop.doom.tools.exception.UtilityException;
 import net.mtrop.doom.tools.gui.DoomToolsGUIMain;
@@ -86,6 +86,8 @@ public final class DoomImageConvertMain
 	public static final String SWITCH_PALETTE = "--palette";
 	public static final String SWITCH_PALETTE2 = "-p";
 
+	public static final String SWITCH_CHANGEDONLY = "--changed-only";
+
 	public enum Mode
 	{
 		PALETTE,
@@ -129,6 +131,9 @@ public final class DoomImageConvertMain
 		
 		private MetaInfo metaInfoFallback;
 		
+		// If true, only write changed files.
+		private boolean changedOnly;
+		
 		public Options()
 		{
 			this.stdout = null;
@@ -146,6 +151,7 @@ public final class DoomImageConvertMain
 			this.metaInfoFilename = "dimgconv.txt";
 			this.metaInfoFallback = new MetaInfo();
 			this.metaInfoFallback.mode = Mode.GRAPHIC;
+			this.changedOnly = false;
 		}
 		
 		public Options setStdout(OutputStream out) 
@@ -215,6 +221,12 @@ public final class DoomImageConvertMain
 			return this;
 		}
 		
+		public Options setChangedOnly(boolean changedOnly)
+		{
+			this.changedOnly = changedOnly;
+			return this;
+		}
+		
 		public void verboseln(String message) 
 		{
 			if (verbose)
@@ -616,10 +628,11 @@ public final class DoomImageConvertMain
 				case PALETTE:
 				{
 					Palette[] palettes = readPalette(input);
-					try (FileOutputStream fos = new FileOutputStream(output))
+					try (ChangedFileOutputStream fos = new ChangedFileOutputStream(output, options.changedOnly))
 					{
 						for (Palette p : palettes)
 							p.writeBytes(fos);
+						fos.commit();
 					}
 				}
 				break;
@@ -632,10 +645,11 @@ public final class DoomImageConvertMain
 						return ERROR_NO_PALETTE;
 					}
 					Colormap[] colormaps = readColormaps(palette, input);
-					try (FileOutputStream fos = new FileOutputStream(output))
+					try (ChangedFileOutputStream fos = new ChangedFileOutputStream(output, options.changedOnly))
 					{
 						for (Colormap c : colormaps)
 							c.writeBytes(fos);
+						fos.commit();
 					}
 				}
 				break;
@@ -648,9 +662,10 @@ public final class DoomImageConvertMain
 						return ERROR_NO_PALETTE;
 					}
 					Flat flat = readFlat(palette, input);
-					try (FileOutputStream fos = new FileOutputStream(output))
+					try (ChangedFileOutputStream fos = new ChangedFileOutputStream(output, options.changedOnly))
 					{
 						flat.writeBytes(fos);
+						fos.commit();
 					}
 				}
 				break;
@@ -664,9 +679,10 @@ public final class DoomImageConvertMain
 						return ERROR_NO_PALETTE;
 					}
 					Picture picture = readPictureFile(input, palette, info);
-					try (FileOutputStream fos = new FileOutputStream(output))
+					try (ChangedFileOutputStream fos = new ChangedFileOutputStream(output, options.changedOnly))
 					{
 						picture.writeBytes(fos);
+						fos.commit();
 					}
 				}
 				break;
@@ -923,6 +939,8 @@ public final class DoomImageConvertMain
 						options.setVerbose(true);
 					else if (arg.equalsIgnoreCase(SWITCH_RECURSIVE) || arg.equalsIgnoreCase(SWITCH_RECURSIVE2))
 						options.setRecursive(true);
+					else if (arg.equalsIgnoreCase(SWITCH_CHANGEDONLY))
+						options.setChangedOnly(true);
 					else if (arg.equalsIgnoreCase(SWITCH_MODE_PALETTES) || arg.equalsIgnoreCase(SWITCH_MODE_PALETTES2))
 						options.setMode(Mode.PALETTE);
 					else if (arg.equalsIgnoreCase(SWITCH_MODE_COLORMAPS) || arg.equalsIgnoreCase(SWITCH_MODE_COLORMAPS2))
@@ -1107,6 +1125,10 @@ public final class DoomImageConvertMain
 		out.println("    -i [name]           directory that specifies the mode for specific");
 		out.println("                        files. Default is \"dimgconv.txt\"");
 		out.println();
+		out.println("    --changed-only      Only writes output files if they changed, so that");
+		out.println("                        unchanged files keep their modified dates. Does not");
+		out.println("                        apply to WAD output.");
+		out.println();
 		out.println("    --verbose           Prints verbose output.");
 		out.println("    -v");
 		out.println();
@@ -40,6 +40,7 @@ import com.blackrook.json.JSONWriter;
 
 import net.mtrop.doom.tools.WadScriptMain.Mode;
 import net.mtrop.doom.tools.WadScriptMain.Resolver;
+import net.mtrop.doom.tools.common.ChangedFileOutputStream;
 import net.mtrop.doom.tools.common.Common;
 import net.mtrop.doom.tools.doommake.AutoBuildAgent;
 import net.mtrop.doom.tools.doommake.ProjectGenerator;
@@ -55,6 +56,7 @@ import net.mtrop.doom.tools.exception.UtilityException;
 import net.mtrop.doom.tools.gui.DoomToolsGUIMain;
 import net.mtrop.doom.tools.gui.DoomToolsGUIMain.ApplicationNames;
 import net.mtrop.doom.tools.struct.InstancedFuture;
+import net.mtrop.doom.tools.struct.TraceProfiler;
 import net.mtrop.doom.tools.struct.util.EnumUtils;
 import net.mtrop.doom.tools.struct.util.FileUtils;
 import net.mtrop.doom.tools.struct.util.IOUtils;
@@ -114,6 +116,8 @@ public final class DoomMakeMain
 	public static final String SWITCH_ACTIVATIONDEPTH1 = "--activation-depth";
 	public static final String SWITCH_STACKDEPTH1 = "--stack-depth";
 	public static final String SWITCH_DISASSEMBLE1 = "--disassemble";
+	public static final String SWITCH_VERBOSE1 = "--verbose";
+	public static final String SWITCH_PROFILE = "--profile";
 
 	private static final String SHELL_OPTIONS = "-Xms64M -Xmx4G";
 	private static final String SHELL_RESOURCE_CMD = "shell/embed/app-name.cmd";
@@ -178,6 +182,8 @@ public final class DoomMakeMain
 		private Integer runawayLimit;
 		private Integer activationDepth;
 		private Integer stackDepth;
+		private boolean verbose;
+		private boolean profile;
 
 		private String targetName;
 
@@ -209,6 +215,8 @@ public final class DoomMakeMain
 			this.runawayLimit = 0;
 			this.activationDepth = 256;
 			this.stackDepth = 2048;
+			this.verbose = false;
+			this.profile = false;
 			this.propertiesFile = new File("doommake.properties");
 			this.scriptFile = new File("doommake.script");
 			this.targetName = "make";
@@ -251,6 +259,24 @@ public final class DoomMakeMain
 			return this;
 		}
 
+		public Options setVerbose(boolean verbose)
+		{
+			this.verbose = verbose;
+			return this;
+		}
+
+		public Options setProfile(boolean profile)
+		{
+			this.profile = profile;
+			return this;
+		}
+		
+		public Options setAgentBypass(boolean agentBypass)
+		{
+			this.agentBypass = agentBypass;
+			return this;
+		}
+
 		public Options setTargetName(String targetName) 
 		{
 			this.targetName = targetName;
@@ -580,6 +606,49 @@ public final class DoomMakeMain
 		}
 		
 		private int executeTarget() 
+		{
+			if (!options.profile)
+				return executeScript();
+			
+			// Nested DoomMake calls (TOOL::DOOMMAKE, runtargets) are recorded by the outermost profiler.
+			if (TraceProfiler.isActive())
+			{
+				options.stderr.println("WARNING: Not profiling target \"" + options.targetName + "\" separately: it is already being profiled by the DoomMake call that started it.");
+				return executeScript();
+			}
+			
+			TraceProfiler profiler = TraceProfiler.start();
+			int result;
+			try (TraceProfiler.Span span = TraceProfiler.begin("DoomMake", "target " + options.targetName))
+			{
+				result = executeScript();
+			}
+			finally
+			{
+				profiler.stop();
+			}
+			
+			File traceFile = new File(getProjectPropertyPath(new File("."), System.getProperties(), "doommake.dir.build", "build"), "doommake-profile.json");
+			options.stdout.println();
+			profiler.printSummary(options.stdout);
+			if (!FileUtils.createPathForFile(traceFile))
+			{
+				options.stderr.println("ERROR: Could not create directories for profile trace: " + traceFile.getPath());
+				return result;
+			}
+			try (Writer writer = new OutputStreamWriter(new FileOutputStream(traceFile), "UTF-8"))
+			{
+				profiler.writeChromeTrace(writer);
+				options.stdout.println("Profile trace written to: " + traceFile.getPath());
+			} 
+			catch (IOException e) 
+			{
+				options.stderr.println("ERROR: Could not write profile trace: " + e.getLocalizedMessage());
+			}
+			return result;
+		}
+		
+		private int executeScript() 
 		{
 			String encodingName = System.getProperty(PROPERTY_DOOMMAKE_PROJECT_ENCODING);
 			try {
@@ -596,6 +665,7 @@ public final class DoomMakeMain
 					.setStackDepth(options.stackDepth)
 					.setActivationDepth(options.activationDepth)
 					.setRunawayLimit(options.runawayLimit)
+					.setVerbose(options.verbose)
 					.setScriptFile(options.scriptFile)
 					.setScriptCharsetName(encodingName)
 					.addResolver("DoomMake Functions", DoomMakeFunctions.createResolver())
@@ -603,7 +673,19 @@ public final class DoomMakeMain
 				;
 				for (Object obj : options.args)
 					wsOptions.addArg(obj);
-				return WadScriptMain.call(wsOptions);
+				
+				if (!options.verbose)
+					return WadScriptMain.call(wsOptions);
+				
+				final PrintStream err = options.stderr;
+				ToolInvocationFunctions.CallListener previous = ToolInvocationFunctions.setCallListener((tool, returnValue, nanos) -> 
+					err.printf("TOOL::%s finished in %d ms (returned %s).\n", tool.name(), nanos / 1000000L, returnValue.isError() ? "error" : String.valueOf(returnValue))
+				);
+				try {
+					return WadScriptMain.call(wsOptions);
+				} finally {
+					ToolInvocationFunctions.setCallListener(previous);
+				}
 			} catch (OptionParseException e) {
 				/** Will not be thrown. */
 				return ERROR_UNKNOWN;
@@ -871,6 +953,11 @@ public final class DoomMakeMain
 						state = STATE_SWITCHES_ACTIVATION;
 					else if (SWITCH_STACKDEPTH1.equalsIgnoreCase(arg))
 						state = STATE_SWITCHES_STACK;
+					// Only before the target - after it, these are the target's own arguments.
+					else if (!target && SWITCH_VERBOSE1.equalsIgnoreCase(arg))
+						options.verbose = true;
+					else if (!target && SWITCH_PROFILE.equalsIgnoreCase(arg))
+						options.profile = true;
 					else if (target)
 						options.args.add(arg);
 					else
@@ -1042,11 +1129,21 @@ public final class DoomMakeMain
 	 */
 	public static JSONObject readLockObject(File projectDirectory, Properties properties) throws IOException
 	{
-		File fullFilePath = getLockFile(projectDirectory, properties);
-	
 		if (!projectDirectory.exists())
 			return JSONObject.createEmptyObject();
-		
+		return readLockObject(getLockFile(projectDirectory, properties));
+	}
+
+	/**
+	 * Reads a lock JSON file.
+	 * If the file does not exist, an empty object is returned.
+	 * @param fullFilePath the path to the lock file.
+	 * @return the parsed object.
+	 * @throws IOException if the file could not be opened or read.
+	 * @throws JSONConversionException if the JSON is malformed.
+	 */
+	public static JSONObject readLockObject(File fullFilePath) throws IOException
+	{
 		if (!FileUtils.createPathForFile(fullFilePath))
 			throw new IOException("Could not create directories for lock file.");
 		
@@ -1071,17 +1168,30 @@ public final class DoomMakeMain
 	 */
 	public static void writeLockObject(File projectDirectory, Properties properties, JSONObject lockRoot) throws IOException
 	{
-		File fullFilePath = getLockFile(projectDirectory, properties);
-	
+		writeLockObject(getLockFile(projectDirectory, properties), lockRoot);
+	}
+
+	/**
+	 * Writes a lock JSON file.
+	 * The lock is written to a temporary file first, which then replaces the lock file, so that a reader
+	 * never sees a partly-written lock file, and a failed write leaves the old one intact.
+	 * @param fullFilePath the path to the lock file.
+	 * @param lockRoot the lock object.
+	 * @throws IOException if the file could not be opened or written.
+	 */
+	public static void writeLockObject(File fullFilePath, JSONObject lockRoot) throws IOException
+	{
 		if (!FileUtils.createPathForFile(fullFilePath))
 			throw new IOException("Could not create directories for lock file.");
 		
 		JSONWriter.Options jsonOptions = new JSONWriter.Options();
 		jsonOptions.setIndentation("\t");
 	
-		try (Writer writer = new OutputStreamWriter(new FileOutputStream(fullFilePath), "UTF-8"))
+		try (ChangedFileOutputStream out = new ChangedFileOutputStream(fullFilePath); Writer writer = new OutputStreamWriter(out, "UTF-8"))
 		{
 			JSONWriter.writeJSON(lockRoot, jsonOptions, writer);
+			writer.flush();
+			out.commit();
 		}
 	}
 
@@ -1231,6 +1341,18 @@ public final class DoomMakeMain
 		out.println("    --stack-depth [num]            Sets the stack value depth to [num].");
 		out.println("                                       Default: 2048");
 		out.println();
+		out.println("    --verbose                      Prints how long the build script took to");
+		out.println("                                       compile, and how long each TOOL");
+		out.println("                                       function call took. Only recognized");
+		out.println("                                       before the target name.");
+		out.println();
+		out.println("    --profile                      Records how long each script function call");
+		out.println("                                       took (including TOOL calls and file");
+		out.println("                                       functions), prints a summary, and writes");
+		out.println("                                       a Chrome trace file to");
+		out.println("                                       [build]/doommake-profile.json. Only");
+		out.println("                                       recognized before the target name.");
+		out.println();
 		out.println("-----------------------------------------------------------------------------");
 		out.println();
 		out.println("    --targets                      Displays all available targets for this");
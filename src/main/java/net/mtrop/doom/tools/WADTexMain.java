@@ -9,7 +9,6 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
@@ -17,6 +16,7 @@ import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.concurrent.Callable;
 
 import net.mtrop.doom.WadFile;
@@ -26,6 +26,7 @@ import net.mtrop.doom.texture.DoomTextureList;
 import net.mtrop.doom.texture.PatchNames;
 import net.mtrop.doom.texture.StrifeTextureList;
 import net.mtrop.doom.texture.TextureSet;
+import net.mtrop.doom.tools.common.ChangedFileOutputStream;
 import net.mtrop.doom.tools.common.ParseException;
 import net.mtrop.doom.tools.common.Utility;
 import net.mtrop.doom.tools.exception.OptionParseException;
@@ -66,6 +67,7 @@ public final class WADTexMain
 	public static final String SWITCH_NAME1 = "--entry-name";
 	public static final String SWITCH_NAME2 = "-n";
 	public static final String SWITCH_STRIFE = "--strife";
+	public static final String SWITCH_CHANGEDONLY = "--changed-only";
 
 	public static final String WADTEX_OUTPUT_HEADER = (new StringBuilder())
 		.append("; File generated by WADTEX v").append(Version.WADTEX).append(" by Matt Tropiano").append('\n')
@@ -92,6 +94,7 @@ public final class WADTexMain
 		private File sourceFile;
 		private File wadFile;
 		private String entryName;
+		private boolean changedOnly;
 		
 		private Options()
 		{
@@ -108,6 +111,7 @@ public final class WADTexMain
 			this.sourceFile = null;
 			this.wadFile = null;
 			this.entryName = null;
+			this.changedOnly = false;
 		}
 		
 		public Options setStdout(OutputStream out) 
@@ -164,6 +168,12 @@ public final class WADTexMain
 			return this;
 		}
 		
+		public Options setChangedOnly(boolean changedOnly) 
+		{
+			this.changedOnly = changedOnly;
+			return this;
+		}
+		
 	}
 	
 	/**
@@ -262,6 +272,7 @@ public final class WADTexMain
 			String streamName = null;
 			BufferedReader reader = null;
 			PrintWriter writer = null;
+			ChangedFileOutputStream out = null;
 		
 			try
 			{
@@ -334,7 +345,7 @@ public final class WADTexMain
 		
 					try
 					{
-						writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(options.sourceFile), Charset.forName("ASCII")), true);
+						writer = new PrintWriter(new OutputStreamWriter(out = new ChangedFileOutputStream(options.sourceFile, options.changedOnly), Charset.forName("ASCII")), true);
 						streamName = options.sourceFile.getPath();
 					}
 					catch (IOException e)
@@ -349,7 +360,21 @@ public final class WADTexMain
 					}
 		
 					Utility.writeDEUTEXFile(textureSet, WADTEX_OUTPUT_HEADER, writer);
-					options.stdout.printf("Wrote `%s`.\n", streamName);
+					// PrintWriters do not throw, so only commit if nothing went wrong (or the old file is kept on close).
+					writer.flush();
+					if (!writer.checkError())
+						out.commit();
+					writer.close();
+					if (writer.checkError())
+					{
+						options.stderr.printf("ERROR: File %s not writable.\n", options.sourceFile.getPath());
+						return ERROR_BAD_INPUTOUTPUT_FILE;
+					}
+					
+					if (out.isChanged())
+						options.stdout.printf("Wrote `%s`.\n", streamName);
+					else
+						options.stdout.printf("`%s` is unchanged.\n", streamName);
 				}
 				else // import mode
 				{
@@ -377,9 +402,13 @@ public final class WADTexMain
 		
 					if (replacePatchNames)
 					{
-						wad.replaceEntry(wad.indexOf("PNAMES"), patchNames);
-						if (options.verbose)
-							options.stdout.printf("Replaced `PNAMES` in `%s`.\n", options.wadFile.getPath());
+						if (replaceEntry(wad, "PNAMES", patchNames))
+						{
+							if (options.verbose)
+								options.stdout.printf("Replaced `PNAMES` in `%s`.\n", options.wadFile.getPath());
+						}
+						else if (options.verbose)
+							options.stdout.printf("`PNAMES` in `%s` is unchanged.\n", options.wadFile.getPath());
 					}
 					else
 					{
@@ -390,9 +419,13 @@ public final class WADTexMain
 					
 					if (replaceTextures)
 					{
-						wad.replaceEntry(wad.indexOf(textureLumpName), textures);
-						if (options.verbose)
-							options.stdout.printf("Replaced `%s` in `%s`.\n", textureLumpName, options.wadFile.getPath());
+						if (replaceEntry(wad, textureLumpName, textures))
+						{
+							if (options.verbose)
+								options.stdout.printf("Replaced `%s` in `%s`.\n", textureLumpName, options.wadFile.getPath());
+						}
+						else if (options.verbose)
+							options.stdout.printf("`%s` in `%s` is unchanged.\n", textureLumpName, options.wadFile.getPath());
 					}
 					else
 					{
@@ -424,6 +457,18 @@ public final class WADTexMain
 			}
 		}
 		
+		// Replaces an entry, unless only changed entries are replaced and the entry is the same.
+		// Returns true if replaced.
+		private boolean replaceEntry(WadFile wad, String entryName, BinaryObject object) throws IOException
+		{
+			int index = wad.indexOf(entryName);
+			byte[] data = object.toBytes();
+			if (options.changedOnly && Arrays.equals(data, wad.getData(index)))
+				return false;
+			wad.replaceEntry(index, data);
+			return true;
+		}
+		
 	}
 	
 	/**
@@ -465,6 +510,8 @@ public final class WADTexMain
 						options.additive = true;
 					else if (arg.equals(SWITCH_STRIFE))
 						options.strife = true;
+					else if (arg.equals(SWITCH_CHANGEDONLY))
+						options.changedOnly = true;
 					else if (arg.equals(SWITCH_VERSION))
 						options.version = true;
 					else if (arg.equals(SWITCH_EXPORT1) || arg.equals(SWITCH_EXPORT2))
@@ -636,6 +683,10 @@ public final class WADTexMain
 		out.println("[switches]:");
 		out.println("    --verbose           Prints verbose output.");
 		out.println("    -v");
+		out.println();
+		out.println("    --changed-only      Only writes the exported file or imported entries");
+		out.println("                        if they changed, so that unchanged files keep their");
+		out.println("                        modified dates.");
 	}
 
 }
@@ -9,7 +9,6 @@ import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
@@ -18,12 +17,14 @@ import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.concurrent.Callable;
 
 import net.mtrop.doom.WadFile;
 import net.mtrop.doom.tools.struct.util.IOUtils;
 import net.mtrop.doom.texture.Animated;
 import net.mtrop.doom.texture.Switches;
+import net.mtrop.doom.tools.common.ChangedFileOutputStream;
 import net.mtrop.doom.tools.common.ParseException;
 import net.mtrop.doom.tools.common.Utility;
 import net.mtrop.doom.tools.gui.DoomToolsGUIMain;
@@ -55,6 +56,7 @@ public final class WSwAnTablesMain
 	public static final String SWITCH_IMPORT2 = "-i";
 	public static final String SWITCH_ADDSOURCE1 = "--import-source";
 	public static final String SWITCH_ADDSOURCE2 = "-s";
+	public static final String SWITCH_CHANGEDONLY = "--changed-only";
 
 	public static final String SWANTBLS_OUTPUT_HEADER = (new StringBuilder())
 		.append("# Table file generated by WSWANTBL v").append(Version.WSWANTBL).append(" by Matt Tropiano")
@@ -78,6 +80,7 @@ public final class WSwAnTablesMain
 		private boolean importSource;
 		private File sourceFile;
 		private File wadFile;
+		private boolean changedOnly;
 		
 		private Options()
 		{
@@ -94,6 +97,7 @@ public final class WSwAnTablesMain
 			this.importSource = false;
 			this.sourceFile = null;
 			this.wadFile = null;
+			this.changedOnly = false;
 		}
 		
 		public Options setStdout(OutputStream out) 
@@ -137,6 +141,12 @@ public final class WSwAnTablesMain
 			return this;
 		}
 		
+		public Options setChangedOnly(boolean changedOnly)
+		{
+			this.changedOnly = changedOnly;
+			return this;
+		}
+		
 	}
 	
 	/**
@@ -235,6 +245,7 @@ public final class WSwAnTablesMain
 			String streamName = null;
 			BufferedReader reader = null;
 			PrintWriter writer = null;
+			ChangedFileOutputStream out = null;
 		
 			try
 			{
@@ -258,7 +269,7 @@ public final class WSwAnTablesMain
 				{
 					try
 					{
-						writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(options.sourceFile), Charset.forName("ASCII")), true);
+						writer = new PrintWriter(new OutputStreamWriter(out = new ChangedFileOutputStream(options.sourceFile, options.changedOnly), Charset.forName("ASCII")), true);
 						streamName = options.sourceFile.getPath();
 					}
 					catch (IOException e)
@@ -273,7 +284,21 @@ public final class WSwAnTablesMain
 					}
 		
 					Utility.writeSwitchAnimatedTables(switches, animated, SWANTBLS_OUTPUT_HEADER, writer);
-					options.stdout.printf("Wrote `%s`.\n", streamName);
+					// PrintWriters do not throw, so only commit if nothing went wrong (or the old file is kept on close).
+					writer.flush();
+					if (!writer.checkError())
+						out.commit();
+					writer.close();
+					if (writer.checkError())
+					{
+						options.stderr.printf("ERROR: File %s not writable.\n", options.sourceFile.getPath());
+						return ERROR_BAD_INPUTOUTPUT_FILE;
+					}
+					
+					if (out.isChanged())
+						options.stdout.printf("Wrote `%s`.\n", streamName);
+					else
+						options.stdout.printf("`%s` is unchanged.\n", streamName);
 				}
 				else // import mode
 				{
@@ -300,9 +325,13 @@ public final class WSwAnTablesMain
 		
 					if (replaceAnimated)
 					{
-						wad.replaceEntry(wad.indexOf("ANIMATED"), animated);
-						if (options.verbose)
-							options.stdout.printf("Replaced `ANIMATED` in `%s`.\n", options.wadFile.getPath());
+						if (replaceEntry(wad, wad.indexOf("ANIMATED"), animated.toBytes()))
+						{
+							if (options.verbose)
+								options.stdout.printf("Replaced `ANIMATED` in `%s`.\n", options.wadFile.getPath());
+						}
+						else if (options.verbose)
+							options.stdout.printf("`ANIMATED` in `%s` is unchanged.\n", options.wadFile.getPath());
 					}
 					else
 					{
@@ -313,9 +342,13 @@ public final class WSwAnTablesMain
 					
 					if (replaceSwitches)
 					{
-						wad.replaceEntry(wad.indexOf("SWITCHES"), switches);
-						if (options.verbose)
-							options.stdout.printf("Replaced `SWITCHES` in `%s`.\n", options.wadFile.getPath());
+						if (replaceEntry(wad, wad.indexOf("SWITCHES"), switches.toBytes()))
+						{
+							if (options.verbose)
+								options.stdout.printf("Replaced `SWITCHES` in `%s`.\n", options.wadFile.getPath());
+						}
+						else if (options.verbose)
+							options.stdout.printf("`SWITCHES` in `%s` is unchanged.\n", options.wadFile.getPath());
 					}
 					else
 					{
@@ -329,9 +362,13 @@ public final class WSwAnTablesMain
 						int defIndex = wad.indexOf("DEFSWANI");
 						if (defIndex >= 0)
 						{
-							wad.replaceEntry(defIndex, sourceData);
-							if (options.verbose)
-								options.stdout.printf("Replaced `DEFSWANI` in `%s`.\n", options.wadFile.getPath());
+							if (replaceEntry(wad, defIndex, sourceData))
+							{
+								if (options.verbose)
+									options.stdout.printf("Replaced `DEFSWANI` in `%s`.\n", options.wadFile.getPath());
+							}
+							else if (options.verbose)
+								options.stdout.printf("`DEFSWANI` in `%s` is unchanged.\n", options.wadFile.getPath());
 						}
 						else
 						{
@@ -363,6 +400,16 @@ public final class WSwAnTablesMain
 			
 			return ERROR_NONE;
 		}
+		
+		// Replaces an entry, unless only changed entries are replaced and the entry is the same.
+		// Returns true if replaced.
+		private boolean replaceEntry(WadFile wad, int index, byte[] data) throws IOException
+		{
+			if (options.changedOnly && Arrays.equals(data, wad.getData(index)))
+				return false;
+			wad.replaceEntry(index, data);
+			return true;
+		}
 	}
 	
 	/**
@@ -402,6 +449,8 @@ public final class WSwAnTablesMain
 						options.version = true;
 					else if (arg.equals(SWITCH_ADDSOURCE1) || arg.equals(SWITCH_ADDSOURCE2))
 						options.importSource = true;
+					else if (arg.equals(SWITCH_CHANGEDONLY))
+						options.changedOnly = true;
 					else if (arg.equals(SWITCH_EXPORT1) || arg.equals(SWITCH_EXPORT2))
 					{
 						state = STATE_IMPORTEXPORT;
@@ -540,6 +589,10 @@ public final class WSwAnTablesMain
 		out.println("[switches]:");
 		out.println("    --verbose           Prints verbose output.");
 		out.println("    -v");
+		out.println();
+		out.println("    --changed-only      Only writes the exported file or imported entries");
+		out.println("                        if they changed, so that unchanged files keep their");
+		out.println("                        modified dates.");
 	}
 
 }
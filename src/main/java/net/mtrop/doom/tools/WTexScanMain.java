@@ -31,8 +31,8 @@ import net.mtrop.doom.map.MapFormat;
 import net.mtrop.doom.map.data.DoomSector;
 import net.mtrop.doom.map.data.DoomSidedef;
 import net.mtrop.doom.map.udmf.UDMFObject;
-import net.mtrop.doom.map.udmf.UDMFReader;
-import net.mtrop.doom.map.udmf.UDMFTable;
+import net.mtrop.doom.map.udmf.UDMFScanner;
+import net.mtrop.doom.map.udmf.UDMFScanner.ElementType;
 import net.mtrop.doom.map.udmf.attributes.UDMFDoomSectorAttributes;
 import net.mtrop.doom.map.udmf.attributes.UDMFDoomSidedefAttributes;
 import net.mtrop.doom.tools.exception.OptionParseException;
@@ -305,67 +305,45 @@ public final class WTexScanMain
 		
 			options.println("#    Format is "+format.name()+"...");
 		
-			// filled in if UDMF.
-			UDMFTable udmf = null;
-			
 			if (format == MapFormat.UDMF)
 			{
-				try (InputStream in = wad.getInputStream("TEXTMAP", wad.lastIndexOf(mapName)))
-				{
-					udmf = UDMFReader.readData(in);
-				}
-			}
-					
-			if (options.outputTextures)
-			{
-				options.println("#        Reading SIDEDEFS...");
-		
-				switch (format)
+				if (options.outputTextures)
+					options.println("#        Reading SIDEDEFS...");
+				if (options.outputFlats)
+					options.println("#        Reading SECTORS...");
+				
+				// Scan the TEXTMAP one object at a time - the full table is never built.
+				if (options.outputTextures || options.outputFlats)
 				{
-					default:
-					case DOOM:
-					case HEXEN:
+					try (InputStream in = wad.getInputStream("TEXTMAP", wad.lastIndexOf(mapName)))
 					{
-						DoomSidedef[] sides = wad.getDataAs("SIDEDEFS", wad.lastIndexOf(mapName), DoomSidedef.class, DoomSidedef.LENGTH);
-						if (sides == null)
-							options.println("#            ERROR: No SIDEDEFS lump found! Skipping...");
+						if (in == null)
+							options.println("#            ERROR: No TEXTMAP lump found! Skipping...");
 						else
-							inspectSidedefs(sides);
-					}
-					break;
-		
-					case UDMF:
-					{
-						inspectSidedefs(udmf.getObjects("sidedef"));
+							inspectUDMF(UDMFScanner.createScanner(in));
 					}
-					break;
 				}
 			}
-		
-			if (options.outputFlats)
+			else
 			{
-				options.println("#        Reading SECTORS...");
-		
-				switch (format)
+				if (options.outputTextures)
 				{
-					default:
-					case DOOM:
-					case HEXEN:
-					{
-						DoomSector[] sectors = wad.getDataAs("SECTORS", wad.lastIndexOf(mapName), DoomSector.class, DoomSector.LENGTH);
-						if (sectors == null)
-							options.println("#            ERROR: No SECTORS lump found! Skipping...");
-						else
-							inspectSectors(sectors);
-					}
-					break;
-		
-					case UDMF:
-					{
-						inspectSectors(udmf.getObjects("sector"));
-					}
-					break;
-						
+					options.println("#        Reading SIDEDEFS...");
+					DoomSidedef[] sides = wad.getDataAs("SIDEDEFS", wad.lastIndexOf(mapName), DoomSidedef.class, DoomSidedef.LENGTH);
+					if (sides == null)
+						options.println("#            ERROR: No SIDEDEFS lump found! Skipping...");
+					else
+						inspectSidedefs(sides);
+				}
+			
+				if (options.outputFlats)
+				{
+					options.println("#        Reading SECTORS...");
+					DoomSector[] sectors = wad.getDataAs("SECTORS", wad.lastIndexOf(mapName), DoomSector.class, DoomSector.LENGTH);
+					if (sectors == null)
+						options.println("#            ERROR: No SECTORS lump found! Skipping...");
+					else
+						inspectSectors(sectors);
 				}
 			}
 			
@@ -438,17 +416,31 @@ public final class WTexScanMain
 			}
 		}
 
-		// Adds sidedef textures to the list.
-		private void inspectSidedefs(UDMFObject[] sidedefs)
+		// Adds sidedef and sector textures to the lists from a UDMF map, as it is read.
+		private void inspectUDMF(UDMFScanner scanner)
 		{
-			for (UDMFObject s : sidedefs)
+			while (scanner.hasNext())
 			{
-				addTexture(s.getString(UDMFDoomSidedefAttributes.ATTRIB_TEXTURE_TOP, NameUtils.EMPTY_TEXTURE_NAME));
-				addTexture(s.getString(UDMFDoomSidedefAttributes.ATTRIB_TEXTURE_MIDDLE, NameUtils.EMPTY_TEXTURE_NAME));
-				addTexture(s.getString(UDMFDoomSidedefAttributes.ATTRIB_TEXTURE_BOTTOM, NameUtils.EMPTY_TEXTURE_NAME));
+				UDMFScanner.Element element = scanner.next();
+				if (!element.isType(ElementType.OBJECT))
+					continue;
+				
+				String type = element.getName();
+				if (options.outputTextures && "sidedef".equalsIgnoreCase(type))
+					inspectSidedef(element.getUDMFObject());
+				else if (options.outputFlats && "sector".equalsIgnoreCase(type))
+					inspectSector(element.getUDMFObject());
 			}
 		}
 
+		// Adds sidedef textures to the list.
+		private void inspectSidedef(UDMFObject s)
+		{
+			addTexture(s.getString(UDMFDoomSidedefAttributes.ATTRIB_TEXTURE_TOP, NameUtils.EMPTY_TEXTURE_NAME));
+			addTexture(s.getString(UDMFDoomSidedefAttributes.ATTRIB_TEXTURE_MIDDLE, NameUtils.EMPTY_TEXTURE_NAME));
+			addTexture(s.getString(UDMFDoomSidedefAttributes.ATTRIB_TEXTURE_BOTTOM, NameUtils.EMPTY_TEXTURE_NAME));
+		}
+
 		// Adds sector textures to the list.
 		private void inspectSectors(DoomSector[] sectors)
 		{
@@ -460,13 +452,10 @@ public final class WTexScanMain
 		}
 
 		// Adds sector textures to the list.
-		private void inspectSectors(UDMFObject[] sectors)
+		private void inspectSector(UDMFObject s)
 		{
-			for (UDMFObject s : sectors)
-			{
-				addFlat(s.getString(UDMFDoomSectorAttributes.ATTRIB_TEXTURE_FLOOR));
-				addFlat(s.getString(UDMFDoomSectorAttributes.ATTRIB_TEXTURE_CEILING));
-			}
+			addFlat(s.getString(UDMFDoomSectorAttributes.ATTRIB_TEXTURE_FLOOR));
+			addFlat(s.getString(UDMFDoomSectorAttributes.ATTRIB_TEXTURE_CEILING));
 		}
 
 		private void addTexture(String texture)
@@ -46,6 +46,7 @@ public final class WadMergeMain
 	public static final String SWITCH_HELP2 = "-h";
 	public static final String SWITCH_VERBOSE = "--verbose";
 	public static final String SWITCH_VERBOSE2 = "-v";
+	public static final String SWITCH_PARALLEL = "--parallel";
 	public static final String SWITCH_VERSION = "--version";
 	public static final String SWITCH_CHANGELOG = "--changelog";
 	public static final String SWITCH_GUI = "--gui";
@@ -67,6 +68,7 @@ public final class WadMergeMain
 		private boolean help;
 		private boolean version;
 		private boolean verbose;
+		private boolean parallel;
 		private boolean changelog;
 		private boolean gui;
 		
@@ -83,6 +85,7 @@ public final class WadMergeMain
 			this.help = false;
 			this.version = false;
 			this.verbose = false;
+			this.parallel = false;
 			this.gui = false;
 			this.changelog = false;
 			this.useStdin = false;
@@ -115,6 +118,12 @@ public final class WadMergeMain
 			return this;
 		}
 		
+		public Options setParallel(boolean parallel) 
+		{
+			this.parallel = parallel;
+			return this;
+		}
+		
 		public Options setUseStdin(boolean useStdin) 
 		{
 			this.useStdin = useStdin;
@@ -220,7 +229,8 @@ public final class WadMergeMain
 		
 			try 
 			{
-				if (!WadMergeCommand.callScript(streamName, reader, new WadMergeContext(options.stdout, options.verbose), options.args.toArray(new String[options.args.size()])))
+				int threads = options.parallel ? Runtime.getRuntime().availableProcessors() : 1;
+				if (!WadMergeCommand.callScript(streamName, reader, new WadMergeContext(options.stdout, options.verbose), options.args.toArray(new String[options.args.size()]), threads))
 					return ERROR_BAD_SCRIPT;
 			}
 			catch (IOException e)
@@ -270,6 +280,8 @@ public final class WadMergeMain
 						options.help = true;
 					else if (arg.equals(SWITCH_VERBOSE) || arg.equals(SWITCH_VERBOSE2))
 						options.verbose = true;
+					else if (arg.equals(SWITCH_PARALLEL))
+						options.parallel = true;
 					else if (arg.equals(SWITCH_VERSION))
 						options.version = true;
 					else if (arg.equals(SWITCH_SYSTEMIN))
@@ -416,6 +428,13 @@ public final class WadMergeMain
 		out.println("    --verbose     Prints verbose output.");
 		out.println("    -v");
 		out.println();
+		out.println("    --parallel    Runs commands that work on different symbols at the same");
+		out.println("                  time. Commands on the same symbol still run in order, and");
+		out.println("                  the output is the same as without this switch. Commands");
+		out.println("                  that write to files (including CREATEFILE symbols) wait");
+		out.println("                  for every command before them, so a failed command");
+		out.println("                  leaves the same files as without this switch.");
+		out.println();
 		out.println("[scriptfile]:");
 		out.println("    <filename>    The input script file.");
 		out.println();
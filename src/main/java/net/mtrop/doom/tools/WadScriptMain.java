@@ -60,11 +60,13 @@ import net.mtrop.doom.tools.gui.DoomToolsGUIMain;
 import net.mtrop.doom.tools.gui.DoomToolsGUIMain.ApplicationNames;
 import net.mtrop.doom.tools.struct.HTMLWriter;
 import net.mtrop.doom.tools.struct.PreprocessorLexer;
+import net.mtrop.doom.tools.struct.TraceProfiler;
 import net.mtrop.doom.tools.struct.util.ArrayUtils;
 import net.mtrop.doom.tools.struct.util.IOUtils;
 import net.mtrop.doom.tools.struct.util.ObjectUtils;
 import net.mtrop.doom.tools.wadscript.DoomMapFunctions;
 import net.mtrop.doom.tools.wadscript.PK3Functions;
+import net.mtrop.doom.tools.wadscript.ProfilingFunctionResolver;
 import net.mtrop.doom.tools.wadscript.UtilityFunctions;
 import net.mtrop.doom.tools.wadscript.WadFunctions;
 
@@ -110,6 +112,8 @@ public final class WadScriptMain
 	public static final String SWITCH_RUNAWAYLIMIT1 = "--runaway-limit";
 	public static final String SWITCH_ACTIVATIONDEPTH1 = "--activation-depth";
 	public static final String SWITCH_STACKDEPTH1 = "--stack-depth";
+	public static final String SWITCH_VERBOSE1 = "--verbose";
+	public static final String SWITCH_VERBOSE2 = "-v";
 	public static final String SWITCH_SEPARATOR = "--";
 	public static final String SWITCH_SEPARATORBASH = "--X";
 	
@@ -767,6 +771,7 @@ public final class WadScriptMain
 		private List<Object> argList;
 		private List<Resolver> resolvers;
 		private List<Scope> scopes;
+		private boolean verbose;
 		
 		private Options()
 		{
@@ -787,6 +792,7 @@ public final class WadScriptMain
 			this.argList = new LinkedList<>();
 			this.resolvers = new LinkedList<>();
 			this.scopes = new LinkedList<>();
+			this.verbose = false;
 		}
 
 		public Options setStdout(OutputStream out) 
@@ -889,6 +895,12 @@ public final class WadScriptMain
 			return this;
 		}
 		
+		public Options setVerbose(boolean verbose)
+		{
+			this.verbose = verbose;
+			return this;
+		}
+		
 	}
 
 	private static class Context implements Callable<Integer>
@@ -1013,6 +1025,9 @@ public final class WadScriptMain
 		
 			ScriptInstance instance;
 			
+			TraceProfiler.Span compileSpan = TraceProfiler.begin("WadScript", "compile " + options.scriptFile.getName());
+			long nanos = System.nanoTime();
+			
 			try 
 			{
 				final Charset INCLUDER_CHARSET = options.scriptCharset;
@@ -1052,25 +1067,25 @@ public final class WadScriptMain
 					if (i == 0)
 					{
 						if (RESOLVERS[i].namespace != null)
-							builder.withFunctionResolver(RESOLVERS[i].namespace, RESOLVERS[i].resolver);
+							builder.withFunctionResolver(RESOLVERS[i].namespace, getFunctionResolver(RESOLVERS[i]));
 						else
-							builder.withFunctionResolver(RESOLVERS[i].resolver);
+							builder.withFunctionResolver(getFunctionResolver(RESOLVERS[i]));
 					}
 					else 
 					{
 						if (RESOLVERS[i].namespace != null)
-							builder.andFunctionResolver(RESOLVERS[i].namespace, RESOLVERS[i].resolver);
+							builder.andFunctionResolver(RESOLVERS[i].namespace, getFunctionResolver(RESOLVERS[i]));
 						else
-							builder.andFunctionResolver(RESOLVERS[i].resolver);
+							builder.andFunctionResolver(getFunctionResolver(RESOLVERS[i]));
 					} 
 				}
 				
 				for (Resolver resolver : options.resolvers)
 				{
 					if (resolver.namespace != null)
-						builder.andFunctionResolver(resolver.namespace, resolver.resolver);
+						builder.andFunctionResolver(resolver.namespace, getFunctionResolver(resolver));
 					else
-						builder.andFunctionResolver(resolver.resolver);
+						builder.andFunctionResolver(getFunctionResolver(resolver));
 				}
 				
 				// ============== Add Scopes ==============
@@ -1098,6 +1113,7 @@ public final class WadScriptMain
 			catch (ScriptInstanceBuilder.BuilderException e) 
 			{
 				Throwable cause = e.getCause();
+				compileSpan.close();
 				if (cause instanceof ScriptParseException)
 				{
 					options.stderr.println("Script ERROR: " + cause.getLocalizedMessage());
@@ -1115,6 +1131,11 @@ public final class WadScriptMain
 				}
 			}
 			
+			compileSpan.close();
+			
+			if (options.verbose)
+				options.stderr.printf("Compiled script in %d ms.\n", (System.nanoTime() - nanos) / 1000000L);
+			
 			if (options.mode == Mode.DISASSEMBLE)
 			{
 				options.stdout.println("Disassembly of \"" + options.scriptFile + "\":");
@@ -1169,10 +1190,13 @@ public final class WadScriptMain
 				try {
 					ScriptValue retval = ScriptValue.create(null);
 					
-					if (entryPoint.getParameterCount() > 0)
-						instance.call(options.entryPointName, entryParams);
-					else
-						instance.call(options.entryPointName);
+					try (TraceProfiler.Span span = TraceProfiler.begin("WadScript", "entry " + options.entryPointName))
+					{
+						if (entryPoint.getParameterCount() > 0)
+							instance.call(options.entryPointName, entryParams);
+						else
+							instance.call(options.entryPointName);
+					}
 
 					instance.popStackValue(retval);
 					
@@ -1197,6 +1221,14 @@ public final class WadScriptMain
 			return -1;
 		}
 
+		// Wraps the resolver for profiling, if a profiler is active.
+		private static ScriptFunctionResolver getFunctionResolver(Resolver resolver)
+		{
+			if (!TraceProfiler.isActive())
+				return resolver.resolver;
+			return new ProfilingFunctionResolver(resolver.sectionName, resolver.namespace, resolver.resolver);
+		}
+
 		private void doDisassemble(PrintStream out, ScriptInstance instance)
 		{
 			StringWriter sw = new StringWriter();
@@ -1244,6 +1276,8 @@ public final class WadScriptMain
 			out.println("                                     Default: 256");
 			out.println("    --stack-depth [num]          Sets the stack value depth to [num].");
 			out.println("                                     Default: 2048");
+			out.println("    --verbose, -v                Prints how long the script took to compile.");
+			out.println("                                     Only recognized before [filename].");
 			out.println("    --                           All tokens after this one are interpreted");
 			out.println("                                     literally as args for the script.");
 			out.println("                                     Normally, all unrecognized switches");
@@ -1412,6 +1446,9 @@ public final class WadScriptMain
 						state = STATE_SWITCHES_ACTIVATION;
 					else if (SWITCH_STACKDEPTH1.equalsIgnoreCase(arg))
 						state = STATE_SWITCHES_STACK;
+					// Only before the script file - after it, these are the script's own arguments.
+					else if (options.scriptFile == null && (SWITCH_VERBOSE1.equalsIgnoreCase(arg) || SWITCH_VERBOSE2.equalsIgnoreCase(arg)))
+						options.verbose = true;
 					else if (SWITCH_SEPARATOR.equalsIgnoreCase(arg))
 						state = STATE_ARGS;
 					else if (SWITCH_SEPARATORBASH.equalsIgnoreCase(arg))
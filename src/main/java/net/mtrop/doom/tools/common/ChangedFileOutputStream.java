@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2024 Matt Tropiano
+ * This program and the accompanying materials are made available under 
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.common;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * An output stream to a file that can leave the file alone if what is written is the same as what it already has.
+ * <p>When comparing, output is written to a temporary file next to the file and hashed as it is written.
+ * Once everything is written, the caller calls {@link #commit()}. On close, if the file exists and is the same length,
+ * it is hashed and compared, and the temporary file replaces the file (atomically, if the file system can) only if
+ * they differ. If they do not, the temporary file is deleted and the file is untouched, so its modified time does
+ * not change and build steps that look for changed files do not see one.
+ * <p>If this is closed without being committed (for example, a write threw an exception inside a try-with-resources block),
+ * the temporary file is deleted and the file is left as it was.
+ * <p>When not comparing, this writes to the file directly, like a {@link FileOutputStream}, so what was written is
+ * in the file whether or not it was committed.
+ * <p>Temporary files are named <code>.[name].[random hex].tmp</code>, and can be checked for with {@link #isTempFile(File)}.
+ * @author Matthew Tropiano
+ */
+public class ChangedFileOutputStream extends OutputStream
+{
+	private static final String HASH_ALGORITHM = "SHA-1";
+	private static final int BUFFER_SIZE = 16384;
+	private static final int TEMP_FILE_TRIES = 16;
+	private static final Pattern TEMP_FILE_NAME = Pattern.compile("^\\..+\\.[0-9a-f]{1,16}\\.tmp$");
+
+	/** The target file. */
+	private final File file;
+	/** The temporary file (null if not comparing). */
+	private final File tempFile;
+	/** The output stream. */
+	private final OutputStream out;
+	/** The hash of the output (null if not comparing). */
+	private final MessageDigest digest;
+	/** Bytes written. */
+	private long length;
+	/** If everything was written. */
+	private boolean committed;
+	/** If closed. */
+	private boolean closed;
+	/** If the file was changed. */
+	private boolean changed;
+
+	/**
+	 * Creates a new output stream that only replaces the file if its contents change.
+	 * @param file the file to write.
+	 * @throws IOException if the file (or its temporary file) could not be created.
+	 * @throws SecurityException if the file could not be created due to OS permissions.
+	 */
+	public ChangedFileOutputStream(File file) throws IOException
+	{
+		this(file, true);
+	}
+
+	/**
+	 * Creates a new output stream.
+	 * @param file the file to write.
+	 * @param compare if true, only replace the file if its contents change. If false, write the file directly.
+	 * @throws IOException if the file (or its temporary file) could not be created.
+	 * @throws SecurityException if the file could not be created due to OS permissions.
+	 */
+	public ChangedFileOutputStream(File file, boolean compare) throws IOException
+	{
+		this.file = file;
+		this.length = 0L;
+		this.committed = false;
+		this.closed = false;
+		this.changed = !compare;
+
+		if (compare)
+		{
+			this.digest = createDigest();
+			this.tempFile = createTempFile(file);
+			try {
+				this.out = new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE);
+			} catch (IOException | SecurityException e) {
+				tempFile.delete();
+				throw e;
+			}
+		}
+		else
+		{
+			this.digest = null;
+			this.tempFile = null;
+			this.out = new FileOutputStream(file);
+		}
+	}
+
+	/**
+	 * @return the file being written.
+	 */
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * Checks if a file is a temporary file made by this class (which may be left behind if the program is stopped while writing).
+	 * @param file the file to check.
+	 * @return true if so, false if not.
+	 */
+	public static boolean isTempFile(File file)
+	{
+		return TEMP_FILE_NAME.matcher(file.getName()).matches();
+	}
+
+	/**
+	 * Marks what was written as complete, so that closing this stream replaces the file with it (if different).
+	 * Call this after the last write and before closing. If this stream is closed without calling this, 
+	 * what was written is discarded.
+	 * @throws IOException if this stream is already closed.
+	 */
+	public void commit() throws IOException
+	{
+		if (closed)
+			throw new IOException("Stream is closed.");
+		committed = true;
+	}
+
+	/**
+	 * Checks if the file was changed. This is only accurate after this stream is closed.
+	 * If this stream is not comparing, this is always true.
+	 * @return true if the file was written, false if it was left alone.
+	 */
+	public boolean isChanged()
+	{
+		return changed;
+	}
+
+	@Override
+	public void write(int b) throws IOException
+	{
+		out.write(b);
+		if (digest != null)
+			digest.update((byte)b);
+		length++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		out.write(b, off, len);
+		if (digest != null)
+			digest.update(b, off, len);
+		length += len;
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if (closed)
+			return;
+		closed = true;
+
+		if (tempFile == null)
+		{
+			out.close();
+			return;
+		}
+
+		try {
+			out.close();
+			if (!committed)
+				return;
+			if (file.exists() && file.length() == length && Arrays.equals(digest.digest(), hash(file)))
+				return;
+			try {
+				Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			changed = true;
+		} finally {
+			if (!changed)
+				tempFile.delete();
+		}
+	}
+
+	// Hashes a file.
+	private static byte[] hash(File file) throws IOException
+	{
+		MessageDigest digest = createDigest();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try (InputStream in = new FileInputStream(file))
+		{
+			int buf;
+			while ((buf = in.read(buffer)) > 0)
+				digest.update(buffer, 0, buf);
+		}
+		return digest.digest();
+	}
+
+	private static MessageDigest createDigest()
+	{
+		try {
+			return MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("INTERNAL ERROR: " + HASH_ALGORITHM + " not supported.", e);
+		}
+	}
+
+	// Creates a new, unique temporary file next to a file (with default permissions, unlike File.createTempFile()).
+	private static File createTempFile(File file) throws IOException
+	{
+		File parent = file.getAbsoluteFile().getParentFile();
+		for (int i = 0; i < TEMP_FILE_TRIES; i++)
+		{
+			File out = new File(parent, "." + file.getName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+			if (out.createNewFile())
+				return out;
+		}
+		throw new IOException("Could not create a temporary file for " + file.getPath());
+	}
+
+}
@@ -62,6 +62,8 @@ public final class Utility
 	.toString();
 
 	
+	private static final byte[] PNG_SIGNATURE = {(byte)0x89, 0x50, 0x4e, 0x47, 0x0d, 0x0a, 0x1a, 0x0a};
+	
 	/** Version number. */
 	private static Map<String, String> VERSION_MAP = new HashMap<>();
 	
@@ -386,4 +388,54 @@ public final class Utility
 
 	}
 
+	/**
+	 * Reads the width and height of a picture from its header, without decoding it.
+	 * PNG data is detected by its signature, and the size is read from its <code>IHDR</code> chunk.
+	 * Anything else is assumed to be a Doom graphic (patch) and the size is read from its first two shorts.
+	 * @param data the picture data.
+	 * @param out the output array for the width and height (must be at least length 2).
+	 * @return true if the size was read, false if the data is too short to have a size.
+	 */
+	public static boolean readPictureDimensions(byte[] data, int[] out)
+	{
+		if (isPNGData(data))
+		{
+			// signature (8), chunk length (4), "IHDR" (4), width (4), height (4), big-endian.
+			if (data.length < 24 || data[12] != 'I' || data[13] != 'H' || data[14] != 'D' || data[15] != 'R')
+				return false;
+			out[0] = readIntBE(data, 16);
+			out[1] = readIntBE(data, 20);
+			return true;
+		}
+		else
+		{
+			// Doom graphic: width (2), height (2), little-endian.
+			if (data.length < 4)
+				return false;
+			out[0] = (data[0] & 0xff) | ((data[1] & 0xff) << 8);
+			out[1] = (data[2] & 0xff) | ((data[3] & 0xff) << 8);
+			return true;
+		}
+	}
+
+	/**
+	 * Checks if data starts with the PNG signature.
+	 * @param data the data to check.
+	 * @return true if so, false if not.
+	 */
+	public static boolean isPNGData(byte[] data)
+	{
+		if (data.length < PNG_SIGNATURE.length)
+			return false;
+		for (int i = 0; i < PNG_SIGNATURE.length; i++)
+			if (data[i] != PNG_SIGNATURE[i])
+				return false;
+		return true;
+	}
+
+	private static int readIntBE(byte[] data, int offset)
+	{
+		return ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16) | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+	}
+
 }
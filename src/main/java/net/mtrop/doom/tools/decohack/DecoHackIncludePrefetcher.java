@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2024 Matt Tropiano
+ * This program and the accompanying materials are made available under 
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.decohack;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.mtrop.doom.tools.struct.PreprocessorLexer;
+
+/**
+ * Reads the files in a DECOHack include tree ahead of the parser, on a pool of threads.
+ * <p>Each file that is read is scanned for <code>#include</code> lines, and the included files are read next,
+ * so the whole tree is read while the parser works through the first files. Includes are found by
+ * line, without reading <code>#if</code> blocks or macros, so files that end up not being included
+ * may be read. The parser still includes files in order, through the same {@link PreprocessorLexer.Includer},
+ * so this does not change how the source is preprocessed - it only changes where the bytes come from.
+ * <p>Files that are not read yet are waited for. Files that could not be read, includes that could not be resolved,
+ * and files that were not found by the scan are left to the includer to open, so errors are reported the same way.
+ * An include that fails does not stop the rest of a file's includes from being read.
+ * @author Matthew Tropiano
+ */
+final class DecoHackIncludePrefetcher implements AutoCloseable
+{
+	private static final String CLASSPATH_PREFIX = "classpath:";
+	private static final String DIRECTIVE_INCLUDE = "include";
+
+	private static final AtomicInteger THREAD_ID = new AtomicInteger(0);
+
+	/** The includer for resolving paths. */
+	private final PreprocessorLexer.Includer includer;
+	/** The thread pool. */
+	private final ExecutorService executor;
+	/** The paths already queued. */
+	private final Set<String> queued;
+	/** The read files by resolved path. Removed when taken. */
+	private final Map<String, Future<byte[]>> sources;
+
+	/**
+	 * Creates a new prefetcher.
+	 * @param includer the includer to use for resolving include paths (and their encodings).
+	 * @param threads the amount of threads to read files with.
+	 */
+	DecoHackIncludePrefetcher(PreprocessorLexer.Includer includer, int threads)
+	{
+		this.includer = includer;
+		this.executor = Executors.newFixedThreadPool(Math.max(1, threads), (r) ->
+		{
+			Thread thread = new Thread(r);
+			thread.setName("DecoHackPrefetch-" + THREAD_ID.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.queued = ConcurrentHashMap.newKeySet();
+		this.sources = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Queues a file (and everything that it includes) for reading.
+	 * Classpath resources are not queued.
+	 * @param path the resolved path of the file.
+	 */
+	void prefetch(String path)
+	{
+		if (path == null || path.startsWith(CLASSPATH_PREFIX) || !queued.add(path))
+			return;
+		sources.put(path, executor.submit(() -> read(path)));
+	}
+
+	/**
+	 * Takes a file that was queued for reading, waiting for it if it is not read yet.
+	 * @param path the resolved path of the file.
+	 * @return an input stream of the file's bytes, or null if the file was not queued or could not be read.
+	 */
+	InputStream take(String path)
+	{
+		Future<byte[]> source = sources.remove(path);
+		if (source == null)
+			return null;
+		try {
+			return new ByteArrayInputStream(source.get());
+		} catch (ExecutionException e) {
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		executor.shutdownNow();
+		sources.clear();
+	}
+
+	// Reads a file, and queues its includes.
+	private byte[] read(String path) throws IOException
+	{
+		byte[] data = Files.readAllBytes(new File(path).toPath());
+		Charset charset = includer.getEncodingForIncludedResource(path);
+		for (String line : new String(data, charset).split("\\r?\\n"))
+		{
+			String includePath = getIncludePath(line);
+			if (includePath == null)
+				continue;
+			try {
+				prefetch(includer.getIncludeResourcePath(path, includePath));
+			} catch (IOException | RuntimeException e) {
+				// Skip it - the includer reports it when (and if) the parser gets to it.
+			}
+		}
+		return data;
+	}
+
+	// Gets the path from an include line, or null if not an include line.
+	private static String getIncludePath(String line)
+	{
+		line = line.trim();
+		if (!line.startsWith("#"))
+			return null;
+		line = line.substring(1).trim();
+		if (!line.regionMatches(true, 0, DIRECTIVE_INCLUDE, 0, DIRECTIVE_INCLUDE.length()))
+			return null;
+		line = line.substring(DIRECTIVE_INCLUDE.length()).trim();
+		if (line.isEmpty())
+			return null;
+
+		if (line.charAt(0) == '"')
+		{
+			int end = line.indexOf('"', 1);
+			return end > 0 ? line.substring(1, end) : null;
+		}
+		else
+		{
+			int end = 0;
+			while (end < line.length() && !Character.isWhitespace(line.charAt(end)))
+				end++;
+			return line.substring(0, end);
+		}
+	}
+
+}
@@ -56,6 +56,7 @@ import net.mtrop.doom.tools.decohack.patches.DEHPatch;
 import net.mtrop.doom.tools.decohack.patches.DEHPatchBoom.EpisodeMap;
 import net.mtrop.doom.tools.struct.Lexer;
 import net.mtrop.doom.tools.struct.PreprocessorLexer;
+import net.mtrop.doom.tools.struct.TraceProfiler;
 import net.mtrop.doom.tools.struct.util.ArrayUtils;
 import net.mtrop.doom.tools.struct.util.EnumUtils;
 
@@ -67,6 +68,9 @@ public final class DecoHackParser extends Lexer.Parser
 {
 	public static final String STREAMNAME_TEXT = "[Text String]";
 
+	/** Threads for reading include files ahead of the parser (mostly waiting on I/O). */
+	private static final int PREFETCH_THREADS = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
 	private static final String KEYWORD_MISC = "misc";
 	private static final String KEYWORD_MAX_ARMOR = "maxArmor";
 	private static final String KEYWORD_MAX_HEALTH = "maxHealth";
@@ -197,6 +201,7 @@ public final class DecoHackParser extends Lexer.Parser
 		private AbstractPatchContext<?> context;
 		private String[] warnings;
 		private String[] errors;
+		private DecoHackStats stats;
 		
 		public AbstractPatchContext<?> getContext() 
 		{
@@ -212,6 +217,14 @@ public final class DecoHackParser extends Lexer.Parser
 		{
 			return errors;
 		}
+		
+		/**
+		 * @return the compile statistics, or null if they were not collected.
+		 */
+		public DecoHackStats getStats() 
+		{
+			return stats;
+		}
 	}
 	
 	/**
@@ -225,12 +238,31 @@ public final class DecoHackParser extends Lexer.Parser
 	 * @throws NullPointerException if in is null. 
 	 */
 	public static Result read(String streamName, InputStream in, Charset inputCharset) throws IOException
+	{
+		return read(streamName, in, inputCharset, false);
+	}
+
+	/**
+	 * Reads a DECOHack script.
+	 * @param streamName the name of the stream.
+	 * @param in the stream to read from.
+	 * @param inputCharset the input charset encoding for the stream.
+	 * @param collectStats if true, collect compile statistics (see {@link Result#getStats()}).
+	 * @return the result of the parse.
+	 * @throws IOException if the stream can't be read.
+	 * @throws SecurityException if a read error happens due to OS permissioning.
+	 * @throws NullPointerException if in is null. 
+	 */
+	public static Result read(String streamName, InputStream in, Charset inputCharset, boolean collectStats) throws IOException
 	{
 		DecoHackParser parser = new DecoHackParser(streamName, in, inputCharset);
+		if (collectStats)
+			parser.startStats();
 		Result out = new Result();
 		out.context = parser.parse();
 		out.warnings = parser.getWarningMessages();
 		out.errors = parser.getErrorMessages();
+		out.stats = parser.finishStats();
 		return out;
 	}
 
@@ -244,25 +276,57 @@ public final class DecoHackParser extends Lexer.Parser
 	 * @throws NullPointerException if file is null. 
 	 */
 	public static Result read(Iterable<File> files, Charset inputCharset) throws IOException
+	{
+		return read(files, inputCharset, false);
+	}
+
+	/**
+	 * Reads a DECOHack script from a starting text file.
+	 * @param files the files to read from (as though each file is included, in order).
+	 * @param inputCharset the input charset for all files.
+	 * @param collectStats if true, collect compile statistics (see {@link Result#getStats()}).
+	 * @return the result of the parse.
+	 * @throws IOException if the stream can't be read.
+	 * @throws SecurityException if a read error happens due to OS permissioning.
+	 * @throws NullPointerException if file is null. 
+	 */
+	public static Result read(Iterable<File> files, Charset inputCharset, boolean collectStats) throws IOException
 	{
 		DecoHackParser parser = new DecoHackParser(null, null, inputCharset);
-		Lexer lexer = parser.getLexer();
+		DecoHackLexer lexer = (DecoHackLexer)parser.getLexer();
+		if (collectStats)
+			parser.startStats();
 		
-		// Lexer streams are a stack, so add files backwards for the correct order.
-		Deque<File> backwards = new LinkedList<>();
-		for (File file : files)
-			backwards.push(file);
-		while (!backwards.isEmpty())
+		try (DecoHackIncludePrefetcher prefetcher = new DecoHackIncludePrefetcher(lexer.includer, PREFETCH_THREADS))
 		{
-			File file = backwards.pollFirst();
-			lexer.pushStream(file.getPath(), new InputStreamReader(new FileInputStream(file), inputCharset));
+			lexer.prefetcher = prefetcher;
+			
+			// Start reading the include trees in file order.
+			for (File file : files)
+				prefetcher.prefetch(file.getPath());
+			
+			// Lexer streams are a stack, so add files backwards for the correct order.
+			Deque<File> backwards = new LinkedList<>();
+			for (File file : files)
+				backwards.push(file);
+			while (!backwards.isEmpty())
+			{
+				File file = backwards.pollFirst();
+				InputStream in = prefetcher.take(file.getPath());
+				lexer.pushStream(file.getPath(), new InputStreamReader(in != null ? in : new FileInputStream(file), inputCharset));
+			}
+	
+			Result out = new Result();
+			out.context = parser.parse();
+			out.warnings = parser.getWarningMessages();
+			out.errors = parser.getErrorMessages();
+			out.stats = parser.finishStats();
+			return out;
+		}
+		finally
+		{
+			lexer.prefetcher = null;
 		}
-
-		Result out = new Result();
-		out.context = parser.parse();
-		out.warnings = parser.getWarningMessages();
-		out.errors = parser.getErrorMessages();
-		return out;
 	}
 
 	// =======================================================================
@@ -270,6 +334,16 @@ public final class DecoHackParser extends Lexer.Parser
 	@Override
 	protected void nextToken() 
 	{
+		if (stats != null)
+		{
+			// Time since the last token is charged to the file of the last token.
+			long now = System.nanoTime();
+			Lexer.Token token = currentToken();
+			if (token != null)
+				stats.addFileTime(((DecoHackLexer)getLexer()).getFileName(token.getStreamName()), now - statsTokenTime);
+			statsTokenTime = now;
+		}
+		
 		do {
 			super.nextToken();
 			
@@ -2706,7 +2780,7 @@ public final class DecoHackParser extends Lexer.Parser
 			return false;
 		}
 		
-		FutureLabels futureLabels = new FutureLabels();
+		FutureLabels futureLabels = new FutureLabels(stats);
 		LinkedList<String> labelList = new LinkedList<>();
 		ParsedState parsed = new ParsedState();
 		StateFillCursor stateCursor = new StateFillCursor();
@@ -3803,6 +3877,8 @@ public final class DecoHackParser extends Lexer.Parser
 	{
 		boolean isBoom = context.supports(DEHFeatureLevel.BOOM);
 		
+		long start = stats != null ? System.nanoTime() : 0L;
+		
 		Integer index = isBoom 
 			? context.findNextFreeState(cursor.lastIndexFilled)
 			: (parsed.pointer != null 
@@ -3810,6 +3886,14 @@ public final class DecoHackParser extends Lexer.Parser
 				: context.findNextFreeNonActionPointerState(cursor.lastIndexFilled)
 			);
 		
+		if (stats != null)
+		{
+			// Searches wrap around to the start index.
+			int count = context.getStateCount();
+			int length = index != null ? ((index - cursor.lastIndexFilled + count) % count) + 1 : count;
+			stats.addFreeStateSearch(System.nanoTime() - start, length);
+		}
+		
 		if (index == null) 
 		{
 			if (isBoom)
@@ -4699,6 +4783,14 @@ public final class DecoHackParser extends Lexer.Parser
 	private Map<String, String> editorKeys;
 	/** Last auto thing index (for slightly better search continuation). */
 	private int lastAutoThingIndex;
+	/** Compile statistics (null if not collected). */
+	private DecoHackStats stats;
+	/** Time that the last token was read, for statistics. */
+	private long statsTokenTime;
+	/** Time that statistics collection started. */
+	private long statsStartTime;
+	/** Compiler thread allocation when statistics collection started. */
+	private long statsStartAllocated;
 
 	// Return the exporter for the patch.
 	private DecoHackParser(String streamName, InputStream in, Charset inputCharset)
@@ -4708,6 +4800,30 @@ public final class DecoHackParser extends Lexer.Parser
 		this.errors = new LinkedList<>();
 		this.editorKeys = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
 		this.lastAutoThingIndex = 0;
+		this.stats = null;
+	}
+	
+	// Starts collecting statistics.
+	private void startStats()
+	{
+		stats = new DecoHackStats();
+		((DecoHackLexer)getLexer()).stats = stats;
+		statsStartAllocated = TraceProfiler.getCurrentThreadAllocatedBytes();
+		statsStartTime = System.nanoTime();
+		statsTokenTime = statsStartTime;
+	}
+	
+	// Finishes collecting statistics, returning them (or null if not collected).
+	private DecoHackStats finishStats()
+	{
+		if (stats == null)
+			return null;
+		stats.totalNanos = System.nanoTime() - statsStartTime;
+		long allocated = TraceProfiler.getCurrentThreadAllocatedBytes();
+		if (statsStartAllocated >= 0L && allocated >= 0L)
+			stats.allocatedBytes = allocated - statsStartAllocated;
+		((DecoHackLexer)getLexer()).stats = null;
+		return stats;
 	}
 	
 	private void addWarningMessage(String message, Object... args)
@@ -4751,7 +4867,19 @@ public final class DecoHackParser extends Lexer.Parser
 			// keep parsing entries.
 			noError = context != null;
 			while (currentToken() != null && noError)
-				noError = parseEntry(context);
+			{
+				if (stats != null)
+				{
+					String type = currentLexeme().toLowerCase();
+					long start = System.nanoTime();
+					noError = parseEntry(context);
+					stats.addBlock(type, System.nanoTime() - start);
+				}
+				else
+				{
+					noError = parseEntry(context);
+				}
+			}
 		} catch (NumberFormatException e) {
 			addErrorMessage(e.getMessage());
 			noError = false;
@@ -4824,12 +4952,15 @@ public final class DecoHackParser extends Lexer.Parser
 		private Map<String, Set<String>> futureLabelAlias;
 		/** Actual state index to field use. */
 		private Map<Integer, List<FieldSet>> stateFieldMap;
+		/** Compile statistics (can be null). */
+		private DecoHackStats stats;
 		
-		private FutureLabels()
+		private FutureLabels(DecoHackStats stats)
 		{
 			this.futureLabelMap = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
 			this.futureLabelAlias = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
 			this.stateFieldMap = new TreeMap<>();
+			this.stats = stats;
 		}
 		
 		/**
@@ -4879,6 +5010,8 @@ public final class DecoHackParser extends Lexer.Parser
 			if (!futureLabelMap.containsKey(label))
 				return;
 			
+			long start = stats != null ? System.nanoTime() : 0L;
+			
 			for (Integer index : futureLabelMap.get(label))
 			{
 				DEHState state = context.getState(index);
@@ -4933,6 +5066,8 @@ public final class DecoHackParser extends Lexer.Parser
 							break;
 					}
 					fieldIterator.remove();
+					if (stats != null)
+						stats.backfillFieldCount++;
 				}
 			}
 			
@@ -4943,6 +5078,12 @@ public final class DecoHackParser extends Lexer.Parser
 
 			futureLabelAlias.remove(label);
 			futureLabelMap.remove(label);
+			
+			if (stats != null)
+			{
+				stats.backfillNanos += System.nanoTime() - start;
+				stats.backfillCount++;
+			}
 		}
 		
 		/**
@@ -5031,7 +5172,7 @@ public final class DecoHackParser extends Lexer.Parser
 	/**
 	 * Lexer Kernel for DECOHack.
 	 */
-	private static class DecoHackKernel extends Lexer.Kernel
+	static class DecoHackKernel extends Lexer.Kernel
 	{
 		public static final int TYPE_LPAREN = 1;
 		public static final int TYPE_RPAREN = 2;
@@ -5047,7 +5188,7 @@ public final class DecoHackParser extends Lexer.Parser
 		public static final int TYPE_TRUE = 101;
 		public static final int TYPE_FALSE = 102;
 
-		private DecoHackKernel()
+		DecoHackKernel()
 		{
 			setDecimalSeparator('.');
 
@@ -5083,10 +5224,25 @@ public final class DecoHackParser extends Lexer.Parser
 	{
 		private static final Kernel KERNEL = new DecoHackKernel();
 
+		/** The includer. */
+		private final PreprocessorLexer.Includer includer;
+		/** If set, the files read ahead of the parser. */
+		private DecoHackIncludePrefetcher prefetcher;
+		/** If set, compile statistics. */
+		private DecoHackStats stats;
+		/** Macro stream names to the names of the files that they were used in (for statistics). */
+		private Map<String, String> macroStreamFiles;
+		/** Nested token read depth (macros read tokens recursively). */
+		private int tokenDepth;
+		
 		private DecoHackLexer(String streamName, Reader reader, final Charset encoding)
 		{
 			super(KERNEL, streamName, reader);
-			setIncluder(new PreprocessorLexer.Includer() 
+			this.prefetcher = null;
+			this.stats = null;
+			this.macroStreamFiles = new TreeMap<>();
+			this.tokenDepth = 0;
+			this.includer = new PreprocessorLexer.Includer() 
 			{
 				private final Map<String, String> SPECIAL_INCLUDES = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER)
 				{
@@ -5121,6 +5277,9 @@ public final class DecoHackParser extends Lexer.Parser
 				@Override
 				public InputStream getIncludeResource(String path) throws IOException 
 				{
+					InputStream in;
+					if (prefetcher != null && (in = prefetcher.take(path)) != null)
+						return in;
 					return DEFAULT_INCLUDER.getIncludeResource(path);
 				}
 				
@@ -5129,7 +5288,71 @@ public final class DecoHackParser extends Lexer.Parser
 				{
 					return encoding;
 				}
-			});
+			};
+			setIncluder(includer);
+		}
+		
+		/**
+		 * Gets the name of the file that a stream was read from.
+		 * Macro streams are named after the file that they were used in.
+		 * @param streamName the stream name.
+		 * @return the file name.
+		 */
+		private String getFileName(String streamName)
+		{
+			String out = macroStreamFiles.get(String.valueOf(streamName));
+			return out != null ? out : String.valueOf(streamName);
+		}
+		
+		@Override
+		public void pushStream(String name, Reader in) 
+		{
+			// The preprocessor names macro streams after the current stream.
+			String current;
+			if (stats != null && name != null && (current = getCurrentStreamName()) != null && name.startsWith(current + ":"))
+				macroStreamFiles.put(name, getFileName(current));
+			super.pushStream(name, in);
+		}
+		
+		@Override
+		public Token nextToken() throws IOException 
+		{
+			if (stats == null)
+				return super.nextToken();
+			
+			boolean outer = tokenDepth++ == 0;
+			long start = outer ? System.nanoTime() : 0L;
+			try {
+				Token token = super.nextToken();
+				if (outer && token != null)
+					stats.addFileToken(getFileName(token.getStreamName()));
+				return token;
+			} finally {
+				tokenDepth--;
+				if (outer)
+					stats.lexerNanos += System.nanoTime() - start;
+			}
+		}
+		
+		@Override
+		protected void preprocess() throws IOException 
+		{
+			if (stats == null)
+			{
+				super.preprocess();
+				return;
+			}
+			
+			long start = System.nanoTime();
+			try {
+				super.preprocess();
+			} finally {
+				// Directives are read inside of token reads, so this time is not lexer time.
+				long nanos = System.nanoTime() - start;
+				stats.preprocessorNanos += nanos;
+				stats.lexerNanos -= nanos;
+				stats.directiveCount++;
+			}
 		}
 	}
 
@@ -0,0 +1,303 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2024 Matt Tropiano
+ * This program and the accompanying materials are made available under 
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.decohack;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compile statistics for a DECOHack compile, collected when asked for.
+ * <p>All times are wall-clock times on the compiler thread, in nanoseconds. Lexer time does not include
+ * preprocessor time, and parser time is whatever is left of the total time after the other phases.
+ * File times are the times that each file's tokens were the current token, so they add up to about the total time.
+ * @author Matthew Tropiano
+ */
+public final class DecoHackStats
+{
+	/**
+	 * Statistics for a single file (or block type).
+	 */
+	public static final class Entry
+	{
+		private final String name;
+		private long nanos;
+		private int count;
+
+		private Entry(String name)
+		{
+			this.name = name;
+			this.nanos = 0L;
+			this.count = 0;
+		}
+
+		/**
+		 * @return the name of the file (or block type).
+		 */
+		public String getName()
+		{
+			return name;
+		}
+
+		/**
+		 * @return the time spent, in nanoseconds.
+		 */
+		public long getNanos()
+		{
+			return nanos;
+		}
+
+		/**
+		 * @return the amount of tokens (for files) or blocks (for block types).
+		 */
+		public int getCount()
+		{
+			return count;
+		}
+	}
+
+	long totalNanos;
+	long lexerNanos;
+	long preprocessorNanos;
+	long backfillNanos;
+	long freeStateSearchNanos;
+
+	int tokenCount;
+	int directiveCount;
+	int backfillCount;
+	int backfillFieldCount;
+	int freeStateSearchCount;
+	long freeStateSearchLength;
+	int freeStateSearchLongest;
+
+	long allocatedBytes;
+
+	private final Map<String, Entry> files;
+	private final Map<String, Entry> blocks;
+
+	DecoHackStats()
+	{
+		this.totalNanos = 0L;
+		this.lexerNanos = 0L;
+		this.preprocessorNanos = 0L;
+		this.backfillNanos = 0L;
+		this.freeStateSearchNanos = 0L;
+		this.tokenCount = 0;
+		this.directiveCount = 0;
+		this.backfillCount = 0;
+		this.backfillFieldCount = 0;
+		this.freeStateSearchCount = 0;
+		this.freeStateSearchLength = 0L;
+		this.freeStateSearchLongest = 0;
+		this.allocatedBytes = -1L;
+		this.files = new LinkedHashMap<>();
+		this.blocks = new LinkedHashMap<>();
+	}
+
+	// Adds time to a file.
+	void addFileTime(String name, long nanos)
+	{
+		getEntry(files, name).nanos += nanos;
+	}
+
+	// Adds a token to a file.
+	void addFileToken(String name)
+	{
+		getEntry(files, name).count++;
+		tokenCount++;
+	}
+
+	// Adds a parsed block.
+	void addBlock(String type, long nanos)
+	{
+		Entry entry = getEntry(blocks, type);
+		entry.nanos += nanos;
+		entry.count++;
+	}
+
+	// Adds a free state search.
+	void addFreeStateSearch(long nanos, int length)
+	{
+		freeStateSearchNanos += nanos;
+		freeStateSearchCount++;
+		freeStateSearchLength += length;
+		freeStateSearchLongest = Math.max(freeStateSearchLongest, length);
+	}
+
+	private static Entry getEntry(Map<String, Entry> map, String name)
+	{
+		Entry out;
+		if ((out = map.get(name)) == null)
+			map.put(name, out = new Entry(name));
+		return out;
+	}
+
+	/**
+	 * @return the total compile time.
+	 */
+	public long getTotalNanos()
+	{
+		return totalNanos;
+	}
+
+	/**
+	 * @return the time spent reading tokens, not including the preprocessor.
+	 */
+	public long getLexerNanos()
+	{
+		return lexerNanos;
+	}
+
+	/**
+	 * @return the time spent on preprocessor directives (including opening included files).
+	 */
+	public long getPreprocessorNanos()
+	{
+		return preprocessorNanos;
+	}
+
+	/**
+	 * @return the time spent filling in state labels that were used before they were defined.
+	 */
+	public long getLabelBackfillNanos()
+	{
+		return backfillNanos;
+	}
+
+	/**
+	 * @return the time spent searching for free states.
+	 */
+	public long getFreeStateSearchNanos()
+	{
+		return freeStateSearchNanos;
+	}
+
+	/**
+	 * @return the time spent parsing, not including the other phases.
+	 */
+	public long getParserNanos()
+	{
+		return Math.max(0L, totalNanos - lexerNanos - preprocessorNanos - backfillNanos - freeStateSearchNanos);
+	}
+
+	/**
+	 * @return the amount of tokens read (including comments).
+	 */
+	public int getTokenCount()
+	{
+		return tokenCount;
+	}
+
+	/**
+	 * @return the amount of preprocessor directives read.
+	 */
+	public int getDirectiveCount()
+	{
+		return directiveCount;
+	}
+
+	/**
+	 * @return the amount of state labels that were filled in after being used.
+	 */
+	public int getLabelBackfillCount()
+	{
+		return backfillCount;
+	}
+
+	/**
+	 * @return the amount of state fields that were filled in with labels after being used.
+	 */
+	public int getLabelBackfillFieldCount()
+	{
+		return backfillFieldCount;
+	}
+
+	/**
+	 * @return the amount of free state searches.
+	 */
+	public int getFreeStateSearchCount()
+	{
+		return freeStateSearchCount;
+	}
+
+	/**
+	 * @return the total length of all free state searches, in states.
+	 */
+	public long getFreeStateSearchLength()
+	{
+		return freeStateSearchLength;
+	}
+
+	/**
+	 * @return the length of the longest free state search, in states.
+	 */
+	public int getFreeStateSearchLongest()
+	{
+		return freeStateSearchLongest;
+	}
+
+	/**
+	 * @return the amount of bytes allocated on the compiler thread, or -1 if not supported by this JVM.
+	 */
+	public long getAllocatedBytes()
+	{
+		return allocatedBytes;
+	}
+
+	/**
+	 * @return the statistics for each read file, in the order that they were first read.
+	 */
+	public List<Entry> getFiles()
+	{
+		return Collections.unmodifiableList(new ArrayList<>(files.values()));
+	}
+
+	/**
+	 * @return the statistics for each top-level block type, in the order that they were first parsed.
+	 */
+	public List<Entry> getBlocks()
+	{
+		return Collections.unmodifiableList(new ArrayList<>(blocks.values()));
+	}
+
+	/**
+	 * Prints a readable report of these statistics.
+	 * @param out the stream to print to.
+	 */
+	public void printReport(PrintStream out)
+	{
+		out.printf("Total:          %10.3f ms\n", millis(totalNanos));
+		out.printf("  Lexer:        %10.3f ms (%d tokens)\n", millis(lexerNanos), tokenCount);
+		out.printf("  Preprocessor: %10.3f ms (%d directives)\n", millis(preprocessorNanos), directiveCount);
+		out.printf("  Parser:       %10.3f ms\n", millis(getParserNanos()));
+		out.printf("  Free states:  %10.3f ms (%d searches, %d states searched, longest %d)\n", millis(freeStateSearchNanos), freeStateSearchCount, freeStateSearchLength, freeStateSearchLongest);
+		out.printf("  Label fill:   %10.3f ms (%d labels, %d fields)\n", millis(backfillNanos), backfillCount, backfillFieldCount);
+		if (allocatedBytes >= 0L)
+			out.printf("Allocated:      %10.3f MB\n", allocatedBytes / (1024.0 * 1024.0));
+
+		if (!blocks.isEmpty())
+		{
+			out.println("Blocks:");
+			for (Entry entry : blocks.values())
+				out.printf("  %10.3f ms %6d  %s\n", millis(entry.nanos), entry.count, entry.name);
+		}
+		if (!files.isEmpty())
+		{
+			out.println("Files:");
+			for (Entry entry : files.values())
+				out.printf("  %10.3f ms %6d tokens  %s\n", millis(entry.nanos), entry.count, entry.name);
+		}
+	}
+
+	private static double millis(long nanos)
+	{
+		return nanos / 1000000.0;
+	}
+
+}
@@ -0,0 +1,510 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2024 Matt Tropiano
+ * This program and the accompanying materials are made available under 
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.decohack;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.mtrop.doom.tools.struct.Lexer;
+import net.mtrop.doom.tools.struct.PreprocessorLexer;
+import net.mtrop.doom.tools.struct.util.FileUtils;
+
+/**
+ * An index of the symbols defined in a set of DECOHack source files, for editors.
+ * <p>Each file is read by itself: includes are not followed, and every conditional block is read.
+ * This way, a changed file can be indexed again without reading the files that include it
+ * or the files that it includes.
+ * <p>The indexed symbols are <code>#define</code> macros, thing and weapon aliases (including "auto thing" names),
+ * and state labels. Every identifier in a file is also recorded as a usage of that name.
+ * Symbol names are not case-sensitive.
+ * <p>This class is thread-safe.
+ * @author Matthew Tropiano
+ */
+public class DecoHackSymbolIndex
+{
+	private static final String DIRECTIVE_DEFINE = "define";
+	private static final String KEYWORD_ALIAS = "alias";
+	private static final String KEYWORD_AUTO = "auto";
+	private static final String KEYWORD_THING = "thing";
+	private static final String KEYWORD_WEAPON = "weapon";
+	private static final String KEYWORD_STATES = "states";
+
+	private static final Lexer.Kernel KERNEL = new DecoHackParser.DecoHackKernel();
+
+	/**
+	 * Symbol types.
+	 */
+	public enum SymbolType
+	{
+		DEFINE,
+		THING_ALIAS,
+		WEAPON_ALIAS,
+		STATE_LABEL;
+	}
+
+	/** Indexed files. */
+	private final Map<File, FileIndex> files;
+	/** Symbol definitions by lower-case name, for all files. */
+	private final TreeMap<String, List<Symbol>> definitions;
+	/** Symbol usages by lower-case name, then by file. */
+	private final Map<String, Map<File, List<Location>>> usages;
+
+	/**
+	 * Creates a new, empty index.
+	 */
+	public DecoHackSymbolIndex()
+	{
+		this.files = new HashMap<>();
+		this.definitions = new TreeMap<>();
+		this.usages = new HashMap<>();
+	}
+
+	/**
+	 * Indexes a file, replacing anything indexed for it before.
+	 * @param file the file to read.
+	 * @param charset the file's charset.
+	 * @throws IOException if the file could not be read.
+	 */
+	public void indexFile(File file, Charset charset) throws IOException
+	{
+		indexFile(file, new String(Files.readAllBytes(file.toPath()), charset));
+	}
+
+	/**
+	 * Indexes a file's content, replacing anything indexed for the file before.
+	 * The content is read outside of this index's lock, so lookups are not held up while it is read.
+	 * @param file the file that the content is from.
+	 * @param content the file content.
+	 */
+	public void indexFile(File file, String content)
+	{
+		file = FileUtils.canonizeFile(file);
+		FileIndex index = readFile(file, content);
+		synchronized (this)
+		{
+			removeFileIndex(file);
+			files.put(file, index);
+			for (Symbol symbol : index.definitions)
+				definitions.computeIfAbsent(symbol.getName().toLowerCase(), (k) -> new ArrayList<>(2)).add(symbol);
+			for (Map.Entry<String, List<Location>> entry : index.usages.entrySet())
+				usages.computeIfAbsent(entry.getKey(), (k) -> new HashMap<>(4)).put(file, entry.getValue());
+		}
+	}
+
+	/**
+	 * Removes a file from this index.
+	 * @param file the file to remove.
+	 */
+	public synchronized void removeFile(File file)
+	{
+		removeFileIndex(FileUtils.canonizeFile(file));
+	}
+
+	/**
+	 * Removes all files from this index.
+	 */
+	public synchronized void clear()
+	{
+		files.clear();
+		definitions.clear();
+		usages.clear();
+	}
+
+	/**
+	 * @return the amount of indexed files.
+	 */
+	public synchronized int getFileCount()
+	{
+		return files.size();
+	}
+
+	/**
+	 * Gets all of the definitions of a symbol.
+	 * @param name the symbol name (not case-sensitive).
+	 * @return the list of definitions, in no particular order. Can be empty.
+	 */
+	public synchronized List<Symbol> getDefinitions(String name)
+	{
+		List<Symbol> found = definitions.get(name.toLowerCase());
+		return found != null ? new ArrayList<>(found) : Collections.emptyList();
+	}
+
+	/**
+	 * Gets the definitions of all symbols whose names start with a prefix.
+	 * @param prefix the name prefix (not case-sensitive).
+	 * @param limit the maximum amount of symbols to return.
+	 * @return the list of definitions, sorted by name. Can be empty.
+	 */
+	public synchronized List<Symbol> getDefinitionsByPrefix(String prefix, int limit)
+	{
+		String key = prefix.toLowerCase();
+		List<Symbol> out = new ArrayList<>(Math.min(limit, 64));
+		for (List<Symbol> symbols : definitions.subMap(key, true, key + Character.MAX_VALUE, true).values())
+		{
+			for (Symbol symbol : symbols)
+			{
+				if (out.size() >= limit)
+					return out;
+				out.add(symbol);
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Gets all of the usages of a symbol name (not including its definitions).
+	 * @param name the symbol name (not case-sensitive).
+	 * @return the list of usages, grouped by file, and in file order in each file. Can be empty.
+	 */
+	public synchronized List<Location> getUsages(String name)
+	{
+		Map<File, List<Location>> found = usages.get(name.toLowerCase());
+		if (found == null)
+			return Collections.emptyList();
+		List<Location> out = new ArrayList<>();
+		for (List<Location> locations : found.values())
+			out.addAll(locations);
+		return out;
+	}
+
+	// Must be called while holding the lock.
+	private void removeFileIndex(File file)
+	{
+		FileIndex previous = files.remove(file);
+		if (previous == null)
+			return;
+
+		for (Symbol symbol : previous.definitions)
+		{
+			String key = symbol.getName().toLowerCase();
+			List<Symbol> symbols = definitions.get(key);
+			if (symbols == null)
+				continue;
+			symbols.removeIf((s) -> s.getLocation().getFile().equals(file));
+			if (symbols.isEmpty())
+				definitions.remove(key);
+		}
+
+		for (String key : previous.usages.keySet())
+		{
+			Map<File, List<Location>> fileUsages = usages.get(key);
+			if (fileUsages == null)
+				continue;
+			fileUsages.remove(file);
+			if (fileUsages.isEmpty())
+				usages.remove(key);
+		}
+	}
+
+	// Reads a file's symbols.
+	private static FileIndex readFile(File file, String content)
+	{
+		final FileIndex out = new FileIndex();
+		final String[] lines = content.split("\\r?\\n", -1);
+		final int[] lineOffsets = getLineOffsets(lines);
+
+		// Reads each token, but only notes the directives.
+		PreprocessorLexer lexer = new PreprocessorLexer(KERNEL, file.getPath(), new StringReader(content))
+		{
+			@Override
+			protected void processDirectiveLine(String streamName, int lineNumber, String directiveLine)
+			{
+				String[] tokens = directiveLine.trim().split("\\s+", 3);
+				if (tokens.length < 2 || !tokens[0].equalsIgnoreCase(DIRECTIVE_DEFINE))
+					return;
+				String name = tokens[1];
+				String value = tokens.length > 2 ? tokens[2].trim() : "";
+				int lineIndex = Math.max(0, Math.min(lineNumber, lineOffsets.length) - 1);
+				// Find the name after the directive in the original line.
+				String line = lines[lineIndex];
+				int directiveIndex = line.toLowerCase().indexOf(DIRECTIVE_DEFINE);
+				int index = Math.max(0, line.indexOf(name, Math.max(0, directiveIndex + DIRECTIVE_DEFINE.length())));
+				out.definitions.add(new Symbol(name, SymbolType.DEFINE, value,
+					new Location(file, lineNumber, index, lineOffsets[lineIndex] + index, name.length())
+				));
+			}
+		};
+
+		// The lexer does not keep track of where a token starts on a line, so find each one in its line.
+		List<Lexer.Token> tokens = new ArrayList<>(1024);
+		List<Location> locations = new ArrayList<>(1024);
+		try {
+			Lexer.Token token;
+			int currentLine = 0;
+			int lineCharIndex = 0;
+			while ((token = lexer.nextToken()) != null)
+			{
+				int line = token.getLineNumber();
+				int lineIndex = Math.max(0, Math.min(line, lines.length) - 1);
+				if (line != currentLine)
+				{
+					currentLine = line;
+					lineCharIndex = 0;
+				}
+
+				String text = token.getLexeme();
+				if (token.getType() == Lexer.Kernel.TYPE_STRING)
+					text = '"' + text + '"';
+				int index = lines[lineIndex].indexOf(text, lineCharIndex);
+				if (index < 0)
+					index = lineCharIndex;
+				else
+					lineCharIndex = index + text.length();
+
+				// Comments are only read for moving past them on the line.
+				if (token.getType() == Lexer.Kernel.TYPE_COMMENT || token.getType() == Lexer.Kernel.TYPE_LINE_COMMENT)
+					continue;
+				tokens.add(token);
+				locations.add(new Location(file, line, index, lineOffsets[lineIndex] + index, text.length()));
+			}
+		} catch (IOException | RuntimeException e) {
+			// Index what was read up to the error - the file is probably still being written.
+		}
+
+		final int TYPE_IDENTIFIER = Lexer.Kernel.TYPE_IDENTIFIER;
+		final int TYPE_STRING = Lexer.Kernel.TYPE_STRING;
+
+		int depth = 0;
+		int statesDepth = -1;
+		String actor = null;
+		for (int i = 0; i < tokens.size(); i++)
+		{
+			Lexer.Token token = tokens.get(i);
+			int type = token.getType();
+
+			if (type == DecoHackParser.DecoHackKernel.TYPE_LBRACE)
+			{
+				depth++;
+				if (statesDepth < 0 && isLexeme(tokens, i - 1, KEYWORD_STATES))
+					statesDepth = depth;
+				continue;
+			}
+			else if (type == DecoHackParser.DecoHackKernel.TYPE_RBRACE)
+			{
+				if (depth == statesDepth)
+					statesDepth = -1;
+				depth = Math.max(0, depth - 1);
+				if (depth == 0)
+					actor = null;
+				continue;
+			}
+			else if (type != TYPE_IDENTIFIER && type != TYPE_STRING)
+			{
+				continue;
+			}
+
+			String lexeme = token.getLexeme();
+
+			// "alias thing NAME slot", "alias weapon NAME slot", "auto thing NAME"
+			if (depth == 0 && type == TYPE_IDENTIFIER && i >= 2 && (isLexeme(tokens, i - 2, KEYWORD_ALIAS) || isLexeme(tokens, i - 2, KEYWORD_AUTO)))
+			{
+				boolean auto = isLexeme(tokens, i - 2, KEYWORD_AUTO);
+				SymbolType symbolType = null;
+				if (isLexeme(tokens, i - 1, KEYWORD_THING))
+					symbolType = SymbolType.THING_ALIAS;
+				else if (!auto && isLexeme(tokens, i - 1, KEYWORD_WEAPON))
+					symbolType = SymbolType.WEAPON_ALIAS;
+
+				if (symbolType != null)
+				{
+					String value = auto ? KEYWORD_AUTO : (i + 1 < tokens.size() ? tokens.get(i + 1).getLexeme() : "");
+					out.definitions.add(new Symbol(lexeme, symbolType, value, locations.get(i)));
+					if (auto)
+						actor = tokens.get(i - 1).getLexeme() + " " + lexeme;
+					continue;
+				}
+			}
+
+			// Actor header: "thing NAME", "weapon NAME"
+			if (depth == 0 && (isLexeme(tokens, i - 1, KEYWORD_THING) || isLexeme(tokens, i - 1, KEYWORD_WEAPON)) && !isLexeme(tokens, i - 2, KEYWORD_ALIAS))
+				actor = tokens.get(i - 1).getLexeme() + " " + lexeme;
+
+			// State label: "Label:" in a states block.
+			if (statesDepth >= 0 && i + 1 < tokens.size() && tokens.get(i + 1).getType() == DecoHackParser.DecoHackKernel.TYPE_COLON)
+			{
+				out.definitions.add(new Symbol(lexeme, SymbolType.STATE_LABEL, actor != null ? actor : "", locations.get(i)));
+				continue;
+			}
+
+			if (type == TYPE_IDENTIFIER)
+				out.usages.computeIfAbsent(lexeme.toLowerCase(), (k) -> new LinkedList<>()).add(locations.get(i));
+		}
+
+		return out;
+	}
+
+	private static boolean isLexeme(List<Lexer.Token> tokens, int index, String lexeme)
+	{
+		if (index < 0 || index >= tokens.size())
+			return false;
+		Lexer.Token token = tokens.get(index);
+		return token.getType() == Lexer.Kernel.TYPE_IDENTIFIER && token.getLexeme().equalsIgnoreCase(lexeme);
+	}
+
+	// Gets the offset of each line's start, counting each line ending as one character (like an editor does).
+	private static int[] getLineOffsets(String[] lines)
+	{
+		int[] out = new int[lines.length];
+		int offset = 0;
+		for (int i = 0; i < lines.length; i++)
+		{
+			out[i] = offset;
+			offset += lines[i].length() + 1;
+		}
+		return out;
+	}
+
+	/**
+	 * The indexed symbols for one file.
+	 */
+	private static class FileIndex
+	{
+		private final List<Symbol> definitions;
+		private final Map<String, List<Location>> usages;
+
+		private FileIndex()
+		{
+			this.definitions = new ArrayList<>(64);
+			this.usages = new HashMap<>(256);
+		}
+	}
+
+	/**
+	 * A location in a file.
+	 */
+	public static class Location
+	{
+		private final File file;
+		private final int line;
+		private final int lineCharIndex;
+		private final int offset;
+		private final int length;
+
+		private Location(File file, int line, int lineCharIndex, int offset, int length)
+		{
+			this.file = file;
+			this.line = line;
+			this.lineCharIndex = lineCharIndex;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		/**
+		 * @return the file.
+		 */
+		public File getFile()
+		{
+			return file;
+		}
+
+		/**
+		 * @return the line number (starts at 1).
+		 */
+		public int getLine()
+		{
+			return line;
+		}
+
+		/**
+		 * @return the character index on the line.
+		 */
+		public int getLineCharIndex()
+		{
+			return lineCharIndex;
+		}
+
+		/**
+		 * @return the character offset from the start of the file (line endings count as one character).
+		 */
+		public int getOffset()
+		{
+			return offset;
+		}
+
+		/**
+		 * @return the length of the text at this location.
+		 */
+		public int getLength()
+		{
+			return length;
+		}
+
+		@Override
+		public String toString()
+		{
+			return file.getName() + " (Line " + line + ")";
+		}
+	}
+
+	/**
+	 * A defined symbol.
+	 */
+	public static class Symbol
+	{
+		private final String name;
+		private final SymbolType type;
+		private final String value;
+		private final Location location;
+
+		private Symbol(String name, SymbolType type, String value, Location location)
+		{
+			this.name = name;
+			this.type = type;
+			this.value = value;
+			this.location = location;
+		}
+
+		/**
+		 * @return the symbol name, as it was written.
+		 */
+		public String getName()
+		{
+			return name;
+		}
+
+		/**
+		 * @return the symbol type.
+		 */
+		public SymbolType getType()
+		{
+			return type;
+		}
+
+		/**
+		 * @return the symbol's value: the macro value for defines, the slot for aliases ("auto" for auto things),
+		 * or the thing or weapon that a state label is in (empty if not known).
+		 */
+		public String getValue()
+		{
+			return value;
+		}
+
+		/**
+		 * @return the location of the definition.
+		 */
+		public Location getLocation()
+		{
+			return location;
+		}
+
+		@Override
+		public String toString()
+		{
+			return name + " (" + type.name() + ") - " + location;
+		}
+	}
+
+}
@@ -7,9 +7,11 @@ package net.mtrop.doom.tools.decohack.contexts;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
@@ -810,114 +812,144 @@ public abstract class AbstractPatchContext<P extends DEHPatch> implements DEHPat
 		writer.append("Patch format = 6").append(CRLF);
 		writer.append(CRLF);
 		writer.append(CRLF);
-		writer.flush();
 	}
 
 	/**
 	 * Writes the common patch body.
+	 * Changed objects are compared and written on a few threads in large sections, 
+	 * and written to the writer in order.
 	 * @param writer the output writer.
 	 * @throws IOException if a write error occurs.
 	 */
 	protected void writeCommonPatchBody(Writer writer) throws IOException
 	{
-		for (Integer i : getUsedThingIndices())
+		final DEHFeatureLevel level = getSupportedFeatureLevel();
+		try (PatchSectionWriter sectionWriter = new PatchSectionWriter(writer))
 		{
-			DEHThing thing = getThing(i);
-			DEHThing original = getSourcePatch().getThing(i);
-			if (thing == null)
-				continue;
-			if (!thing.equals(original) || thing.hasCustomProperties())
+			List<PatchSectionWriter.Entry> entries = new ArrayList<>();
+			
+			for (Integer i : getUsedThingIndices())
 			{
-				writer.append("Thing ")
-					.append(String.valueOf(i))
-					.append(" (")
-					.append(String.valueOf(thing.getName()))
-					.append(")")
-					.append(CRLF);
-				thing.writeObject(writer, original, getSupportedFeatureLevel());
-				writer.append(CRLF);
+				final int index = i;
+				final DEHThing thing = getThing(i);
+				final DEHThing original = getSourcePatch().getThing(i);
+				if (thing == null)
+					continue;
+				entries.add((w) -> {
+					if (!thing.equals(original) || thing.hasCustomProperties())
+					{
+						w.append("Thing ")
+							.append(String.valueOf(index))
+							.append(" (")
+							.append(String.valueOf(thing.getName()))
+							.append(")")
+							.append(CRLF);
+						thing.writeObject(w, original, level);
+						w.append(CRLF);
+					}
+				});
 			}
-		}
-		writer.flush();
-	
-		for (Integer i : getUsedStateIndices())
-		{
-			DEHState state = getState(i);
-			DEHState original = getSourcePatch().getState(i);
-			if (state == null)
-				continue;
-			if (!state.equals(original) || state.hasCustomProperties())
+			sectionWriter.write(entries);
+			entries.clear();
+		
+			for (Integer i : getUsedStateIndices())
 			{
-				writer.append("Frame ").append(String.valueOf(i)).append(CRLF);
-				state.writeObject(writer, original, getSupportedFeatureLevel());
-				writer.append(CRLF);
+				final int index = i;
+				final DEHState state = getState(i);
+				final DEHState original = getSourcePatch().getState(i);
+				if (state == null)
+					continue;
+				entries.add((w) -> {
+					if (!state.equals(original) || state.hasCustomProperties())
+					{
+						w.append("Frame ").append(String.valueOf(index)).append(CRLF);
+						state.writeObject(w, original, level);
+						w.append(CRLF);
+					}
+				});
 			}
-		}
-		writer.flush();
-	
-		for (Integer i : getUsedSoundIndices())
-		{
-			DEHSound sound = getSound(i);
-			DEHSound original = getSourcePatch().getSound(i);
-			if (sound == null)
-				continue;
-			if (!sound.equals(original) || sound.hasCustomProperties())
+			sectionWriter.write(entries);
+			entries.clear();
+		
+			for (Integer i : getUsedSoundIndices())
 			{
-				// Sound ids in DeHackEd are off by 1
-				writer.append("Sound ").append(String.valueOf(i - 1)).append(CRLF);
-				sound.writeObject(writer, original, getSupportedFeatureLevel());
-				writer.append(CRLF);
+				final int index = i;
+				final DEHSound sound = getSound(i);
+				final DEHSound original = getSourcePatch().getSound(i);
+				if (sound == null)
+					continue;
+				entries.add((w) -> {
+					if (!sound.equals(original) || sound.hasCustomProperties())
+					{
+						// Sound ids in DeHackEd are off by 1
+						w.append("Sound ").append(String.valueOf(index - 1)).append(CRLF);
+						sound.writeObject(w, original, level);
+						w.append(CRLF);
+					}
+				});
 			}
-		}
-		writer.flush();
-	
-		for (Integer i : getUsedWeaponIndices())
-		{
-			DEHWeapon weapon = getWeapon(i);
-			DEHWeapon original = getSourcePatch().getWeapon(i);
-			if (weapon == null)
-				continue;
-			if (!weapon.equals(original) || weapon.hasCustomProperties())
+			sectionWriter.write(entries);
+			entries.clear();
+		
+			for (Integer i : getUsedWeaponIndices())
 			{
-				writer.append("Weapon ")
-					.append(String.valueOf(i))
-					.append(" (")
-					.append(String.valueOf(weapon.getName()))
-					.append(")")
-					.append(CRLF);
-				weapon.writeObject(writer, original, getSupportedFeatureLevel());
-				writer.append(CRLF);
+				final int index = i;
+				final DEHWeapon weapon = getWeapon(i);
+				final DEHWeapon original = getSourcePatch().getWeapon(i);
+				if (weapon == null)
+					continue;
+				entries.add((w) -> {
+					if (!weapon.equals(original) || weapon.hasCustomProperties())
+					{
+						w.append("Weapon ")
+							.append(String.valueOf(index))
+							.append(" (")
+							.append(String.valueOf(weapon.getName()))
+							.append(")")
+							.append(CRLF);
+						weapon.writeObject(w, original, level);
+						w.append(CRLF);
+					}
+				});
 			}
-		}
-		writer.flush();
-	
-		for (Integer i : getUsedAmmoIndices())
-		{
-			DEHAmmo ammo = getAmmo(i);
-			DEHAmmo original = getSourcePatch().getAmmo(i);
-			if (ammo == null)
-				continue;
-			if (!ammo.equals(original) || ammo.hasCustomProperties())
+			sectionWriter.write(entries);
+			entries.clear();
+		
+			for (Integer i : getUsedAmmoIndices())
 			{
-				writer.append("Ammo ")
-					.append(String.valueOf(i))
-					.append(" (")
-					.append(String.valueOf(ammo.getName()))
-					.append(")")
-					.append(CRLF);
-				ammo.writeObject(writer, original, getSupportedFeatureLevel());
-				writer.append(CRLF);
+				final int index = i;
+				final DEHAmmo ammo = getAmmo(i);
+				final DEHAmmo original = getSourcePatch().getAmmo(i);
+				if (ammo == null)
+					continue;
+				entries.add((w) -> {
+					if (!ammo.equals(original) || ammo.hasCustomProperties())
+					{
+						w.append("Ammo ")
+							.append(String.valueOf(index))
+							.append(" (")
+							.append(String.valueOf(ammo.getName()))
+							.append(")")
+							.append(CRLF);
+						ammo.writeObject(w, original, level);
+						w.append(CRLF);
+					}
+				});
 			}
-		}
-		writer.flush();
-	
-		DEHMiscellany misc = getMiscellany();
-		DEHMiscellany miscOriginal = getSourcePatch().getMiscellany();
-		if (!misc.equals(miscOriginal) || misc.hasCustomProperties())
-		{
-			writer.append("Misc ").append(String.valueOf(0)).append(CRLF);
-			misc.writeObject(writer, miscOriginal, getSupportedFeatureLevel());
-			writer.append(CRLF);
+			sectionWriter.write(entries);
+			entries.clear();
+		
+			final DEHMiscellany misc = getMiscellany();
+			final DEHMiscellany miscOriginal = getSourcePatch().getMiscellany();
+			entries.add((w) -> {
+				if (!misc.equals(miscOriginal) || misc.hasCustomProperties())
+				{
+					w.append("Misc ").append(String.valueOf(0)).append(CRLF);
+					misc.writeObject(w, miscOriginal, level);
+					w.append(CRLF);
+				}
+			});
+			sectionWriter.write(entries);
 		}
 		writer.flush();
 	}
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2024 Matt Tropiano
+ * This program and the accompanying materials are made available under 
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.decohack.contexts;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes the entries of patch sections to a writer, in order.
+ * <p>Entries are written into chunk buffers first, so the objects that flush after each write
+ * do not flush the output, and each chunk is written to the output all at once. Large sections are
+ * split into chunks that are written into their buffers on a pool of threads, a few chunks ahead of the output.
+ * Buffers are reused.
+ * <p>Entries are written on other threads, so they must only read the objects that they write.
+ * @author Matthew Tropiano
+ */
+final class PatchSectionWriter implements AutoCloseable
+{
+	/** Entries per chunk. */
+	private static final int CHUNK_SIZE = 256;
+	/** Threads for writing chunks. */
+	private static final int THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+	private static final AtomicInteger THREAD_ID = new AtomicInteger(0);
+
+	/**
+	 * A single patch entry.
+	 */
+	@FunctionalInterface
+	interface Entry
+	{
+		/**
+		 * Writes this entry, if it needs to be written.
+		 * @param writer the writer to write to.
+		 * @throws IOException if a write error occurs.
+		 */
+		void write(Writer writer) throws IOException;
+	}
+
+	/** The output writer. */
+	private final Writer writer;
+	/** The thread pool (created when needed). */
+	private ExecutorService executor;
+	/** Free chunk buffers. */
+	private final Queue<CharArrayWriter> buffers;
+
+	/**
+	 * Creates a new section writer.
+	 * @param writer the output writer.
+	 */
+	PatchSectionWriter(Writer writer)
+	{
+		this.writer = writer;
+		this.executor = null;
+		this.buffers = new ConcurrentLinkedQueue<>();
+	}
+
+	/**
+	 * Writes a section's entries, in order.
+	 * @param entries the entries to write.
+	 * @throws IOException if a write error occurs.
+	 */
+	void write(List<Entry> entries) throws IOException
+	{
+		if (entries.isEmpty())
+			return;
+
+		if (THREADS < 2 || entries.size() <= CHUNK_SIZE)
+		{
+			CharArrayWriter buffer = writeChunk(entries, 0, entries.size());
+			buffer.writeTo(writer);
+			releaseBuffer(buffer);
+			return;
+		}
+
+		if (executor == null)
+		{
+			executor = Executors.newFixedThreadPool(THREADS, (r) ->
+			{
+				Thread thread = new Thread(r);
+				thread.setName("PatchWriter-" + THREAD_ID.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+		int chunkCount = (entries.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		int next = 0;
+		Deque<Future<CharArrayWriter>> pending = new ArrayDeque<>(THREADS * 2);
+		try {
+			while (next < chunkCount || !pending.isEmpty())
+			{
+				// Keep a few chunks ahead of the output, so that memory stays bounded.
+				while (next < chunkCount && pending.size() < THREADS * 2)
+				{
+					final int start = next * CHUNK_SIZE;
+					final int end = Math.min(start + CHUNK_SIZE, entries.size());
+					pending.add(executor.submit(() -> writeChunk(entries, start, end)));
+					next++;
+				}
+
+				CharArrayWriter buffer = getChunk(pending.poll());
+				buffer.writeTo(writer);
+				releaseBuffer(buffer);
+			}
+		} finally {
+			for (Future<CharArrayWriter> future : pending)
+				future.cancel(true);
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		if (executor != null)
+			executor.shutdownNow();
+		buffers.clear();
+	}
+
+	private CharArrayWriter writeChunk(List<Entry> entries, int start, int end) throws IOException
+	{
+		CharArrayWriter buffer = buffers.poll();
+		if (buffer == null)
+			buffer = new CharArrayWriter(16384);
+		for (int i = start; i < end; i++)
+			entries.get(i).write(buffer);
+		return buffer;
+	}
+
+	private void releaseBuffer(CharArrayWriter buffer)
+	{
+		buffer.reset();
+		buffers.offer(buffer);
+	}
+
+	private static CharArrayWriter getChunk(Future<CharArrayWriter> future) throws IOException
+	{
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing patch.", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException)cause;
+			else if (cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			else if (cause instanceof Error)
+				throw (Error)cause;
+			throw new IOException(cause);
+		}
+	}
+
+}
@@ -51,17 +51,23 @@ public class DogSoftDriver extends FetchDriver
 			String filename = name + "." + exts[i];
 			
 			try {
-				searchResponse = HTTPRequest.post(GETWAD_URL)
+				// The search request is also the download request if the file is found.
+				searchResponse = getClient().send(prepareDownload(filename, HTTPRequest.post(GETWAD_URL)
 					.setHeader("User-Agent", USER_AGENT)
 					.content(HTTPContent.createFormContent(HTTPUtils.parameters(
 						HTTPUtils.entry("search", filename)
 					)))
-				.send();
+				));
+				
+				// Not modified or bad range: the file was found, let the caller handle it.
+				if (searchResponse.getStatusCode() == 304 || searchResponse.getStatusCode() == 416)
+					return createResponse(filename, searchResponse);
 				
 				// if HTML, we got a null response. Anything else, probably a file.
 				
-				if (!searchResponse.getContentType().endsWith("/html"))
-					return new Response(filename, "", "", searchResponse);
+				String contentType = searchResponse.getContentType();
+				if (contentType != null && !contentType.endsWith("/html"))
+					return createResponse(filename, searchResponse);
 				
 			} catch (IOException e) {
 				err.println("ERROR: Read error from Doom.DogSoft.Net.");
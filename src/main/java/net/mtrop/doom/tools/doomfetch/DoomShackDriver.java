@@ -104,9 +104,10 @@ public class DoomShackDriver extends FetchDriver
 		{
 			out.println("Pulling DoomShack WAD list...");
 			try {
-				cache = cache.build(HTTPRequest.get(WADLIST_URL)
-					.setHeader("User-Agent", USER_AGENT)
-					.send(HTTPReader.createStringReader()));
+				cache = cache.build(getClient().send(HTTPRequest.get(WADLIST_URL)
+					.setHeader("User-Agent", USER_AGENT),
+					HTTPReader.createStringReader()
+				));
 			} catch (IOException e) {
 				err.println("ERROR: Cannot fetch WAD list from DoomShack.org");
 				return null;
@@ -119,11 +120,13 @@ public class DoomShackDriver extends FetchDriver
 		if (uri == null)
 			return null;
 		
-		HTTPRequest request = HTTPRequest.get(ROOT_URL + uri)
+		String filename = uri.substring(uri.lastIndexOf('/') + 1);
+		HTTPRequest request = prepareDownload(filename, HTTPRequest.get(ROOT_URL + uri)
 			.setHeader("User-Agent", USER_AGENT)
-			.setAutoRedirect(true);
+			.setAutoRedirect(true)
+		);
 		
-		return new Response(uri.substring(uri.lastIndexOf('/') + 1), "", "", request.send());
+		return createResponse(filename, getClient().send(request));
 	}
 
 }
@@ -0,0 +1,481 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2024 Matt Tropiano
+ * This program and the accompanying materials are made available under 
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.doomfetch;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.mtrop.doom.tools.struct.TokenScanner;
+import net.mtrop.doom.tools.struct.util.FileUtils;
+import net.mtrop.doom.tools.struct.util.IOUtils;
+import net.mtrop.doom.tools.struct.util.OSUtils;
+import net.mtrop.doom.tools.struct.util.ObjectUtils;
+
+/**
+ * A shared, size-capped, content-addressed cache for fetched files.
+ * <p>
+ * Entries are keyed by driver, name, and version tag (ETag, or date if no ETag),
+ * and point to a content file named after the SHA-256 hash of its contents, so identical
+ * files fetched through different drivers are stored once. Least-recently-used entries
+ * are evicted when the cache grows past its maximum size.
+ * <p>
+ * Several DoomFetch processes can share a cache - all index reads and writes happen
+ * while holding an exclusive lock on a lock file in the cache directory. Caches in the same
+ * JVM that use the same directory also wait on each other before taking that lock.
+ * @author Matthew Tropiano
+ */
+public class FetchCache
+{
+	/** Default cache path. */
+	public static final String DEFAULT_CACHE_PATH = OSUtils.getApplicationSettingsPath() + File.separator + "DoomTools" + File.separator + "cache" + File.separator + "doomfetch";
+	/** Default maximum cache size in bytes. */
+	public static final long DEFAULT_MAX_SIZE = 1024L * 1024L * 1024L;
+
+	private static final String INDEX_FILENAME = "index";
+	private static final String LOCK_FILENAME = ".lock";
+	private static final String OBJECTS_DIRECTORY = "objects";
+
+	private static final char[] HEX_NYBBLE = "0123456789abcdef".toCharArray();
+
+	/** In-process locks, by canonical cache directory path (file locks are held per JVM, not per thread). */
+	private static final Map<String, ReentrantLock> DIRECTORY_LOCKS = new HashMap<>();
+
+	/** Cache directory. */
+	private File directory;
+	/** Content file directory. */
+	private File objectDirectory;
+	/** Max total size of the content files. */
+	private long maxSize;
+
+	/**
+	 * A single cache entry.
+	 */
+	public static class Entry
+	{
+		private String driver;
+		private String name;
+		private String tag;
+		private String filename;
+		private String hash;
+		private long size;
+		private long modified;
+		private long lastAccess;
+
+		private Entry(String driver, String name, String tag, String filename, String hash, long size, long modified, long lastAccess)
+		{
+			this.driver = driver;
+			this.name = name;
+			this.tag = tag;
+			this.filename = filename;
+			this.hash = hash;
+			this.size = size;
+			this.modified = modified;
+			this.lastAccess = lastAccess;
+		}
+
+		public String getDriver()
+		{
+			return driver;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public String getFilename()
+		{
+			return filename;
+		}
+
+		public String getHash()
+		{
+			return hash;
+		}
+
+		public long getSize()
+		{
+			return size;
+		}
+
+	}
+
+	/**
+	 * Creates a new cache.
+	 * @param directory the cache directory.
+	 * @param maxSize the maximum size of all cached content, in bytes.
+	 */
+	public FetchCache(File directory, long maxSize)
+	{
+		this.directory = directory;
+		this.objectDirectory = new File(directory, OBJECTS_DIRECTORY);
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return this cache's directory.
+	 */
+	public File getDirectory()
+	{
+		return directory;
+	}
+
+	/**
+	 * Gets the version tag used for cache keys.
+	 * @param etag the ETag.
+	 * @param date the modified date.
+	 * @return the ETag if not empty, else the date if not empty, else an empty string.
+	 */
+	public static String getTag(String etag, String date)
+	{
+		if (!ObjectUtils.isEmpty(etag))
+			return etag;
+		if (!ObjectUtils.isEmpty(date))
+			return date;
+		return "";
+	}
+
+	/**
+	 * Copies a cached file to a target directory, if it is in the cache.
+	 * The target file is hard-linked to the cached content if possible, or copied if not.
+	 * @param driver the driver name, or null for any driver.
+	 * @param name the name of the file (no extension).
+	 * @param tag the version tag of the file (see {@link #getTag(String, String)}).
+	 * @param targetDirectory the target directory.
+	 * @return the cache entry used, or null if not in the cache (or the cached content was damaged).
+	 * @throws IOException if a read or write error occurs.
+	 */
+	public Entry materialize(String driver, String name, String tag, File targetDirectory) throws IOException
+	{
+		try (IndexLock lock = lock())
+		{
+			Map<String, Entry> index = readIndex();
+			Entry entry = null;
+			for (Entry e : index.values())
+			{
+				if (!e.name.equals(name) || !e.tag.equals(tag))
+					continue;
+				if (!ObjectUtils.isEmpty(driver) && !e.driver.equals(driver))
+					continue;
+				entry = e;
+				break;
+			}
+
+			if (entry == null)
+				return null;
+
+			// Hard links can be changed from the outside - check content before use.
+			// Only re-hash if the size or modified time is not what was stored.
+			File object = getObjectFile(entry.hash);
+			if (!object.exists() || object.length() != entry.size)
+			{
+				removeEntry(index, entry);
+				return null;
+			}
+			else if (object.lastModified() != entry.modified)
+			{
+				if (!entry.hash.equals(hash(object)))
+				{
+					removeEntry(index, entry);
+					return null;
+				}
+				entry.modified = object.lastModified();
+			}
+
+			File targetFile = new File(targetDirectory, entry.filename);
+			if (!FileUtils.createPathForFile(targetFile))
+				throw new IOException("Could not create target directory for file.");
+
+			File tempFile = new File(targetDirectory, entry.filename + FetchDriver.PART_EXTENSION);
+			Files.deleteIfExists(tempFile.toPath());
+			try {
+				Files.createLink(tempFile.toPath(), object.toPath());
+			} catch (IOException | UnsupportedOperationException | SecurityException e) {
+				Files.copy(object.toPath(), tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			Files.move(tempFile.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+			entry.lastAccess = System.currentTimeMillis();
+			writeIndex(index);
+			return entry;
+		}
+	}
+
+	/**
+	 * Adds a fetched file to the cache, evicting least-recently-used entries if the cache is too big.
+	 * @param driver the driver name that fetched the file.
+	 * @param name the name of the file (no extension).
+	 * @param tag the version tag of the file (see {@link #getTag(String, String)}).
+	 * @param file the fetched file.
+	 * @return the added entry.
+	 * @throws IOException if a read or write error occurs.
+	 */
+	public Entry store(String driver, String name, String tag, File file) throws IOException
+	{
+		if (!FileUtils.createPath(objectDirectory.getPath()))
+			throw new IOException("Could not create cache directory: " + objectDirectory.getPath());
+
+		String hash = hash(file);
+		File object = getObjectFile(hash);
+
+		// Write outside of the index lock, then move into place - content is immutable once there.
+		if (!object.exists())
+		{
+			File tempFile = File.createTempFile(hash, ".tmp", objectDirectory);
+			Files.copy(file.toPath(), tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			try {
+				Files.move(tempFile.toPath(), object.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile.toPath(), object.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+
+		try (IndexLock lock = lock())
+		{
+			Map<String, Entry> index = readIndex();
+			Entry entry = new Entry(driver, name, tag, file.getName(), hash, file.length(), object.lastModified(), System.currentTimeMillis());
+			index.put(getKey(driver, name, tag), entry);
+			evict(index, entry);
+			writeIndex(index);
+			return entry;
+		}
+	}
+
+	// Removes a damaged entry (and its content, if unused) and writes the index. Must hold the lock.
+	private void removeEntry(Map<String, Entry> index, Entry entry) throws IOException
+	{
+		index.remove(getKey(entry.driver, entry.name, entry.tag));
+		if (!isReferenced(index, entry.hash))
+			getObjectFile(entry.hash).delete();
+		writeIndex(index);
+	}
+
+	// Removes least-recently-used entries until the cache fits.
+	private void evict(Map<String, Entry> index, Entry keep)
+	{
+		List<Entry> entries = new ArrayList<>(index.values());
+		entries.sort(Comparator.comparingLong((e) -> e.lastAccess));
+
+		long total = 0L;
+		Set<String> counted = new HashSet<>();
+		for (Entry e : entries)
+			if (counted.add(e.hash))
+				total += e.size;
+
+		for (Entry e : entries)
+		{
+			if (total <= maxSize)
+				break;
+			if (e == keep)
+				continue;
+
+			index.remove(getKey(e.driver, e.name, e.tag));
+			if (!isReferenced(index, e.hash))
+			{
+				getObjectFile(e.hash).delete();
+				total -= e.size;
+			}
+		}
+	}
+
+	private static boolean isReferenced(Map<String, Entry> index, String hash)
+	{
+		for (Entry e : index.values())
+			if (e.hash.equals(hash))
+				return true;
+		return false;
+	}
+
+	private static String getKey(String driver, String name, String tag)
+	{
+		return driver + "\0" + name + "\0" + tag;
+	}
+
+	private File getObjectFile(String hash)
+	{
+		return new File(objectDirectory, hash);
+	}
+
+	// Reads the cache index. Must hold the lock.
+	private Map<String, Entry> readIndex() throws IOException
+	{
+		Map<String, Entry> out = new LinkedHashMap<>();
+		File indexFile = new File(directory, INDEX_FILENAME);
+		if (!indexFile.exists())
+			return out;
+
+		try (BufferedReader br = IOUtils.openTextFile(indexFile, StandardCharsets.UTF_8))
+		{
+			String line;
+			while ((line = br.readLine()) != null)
+			{
+				try (TokenScanner scanner = new TokenScanner(line))
+				{
+					if (!scanner.hasNext())
+						continue;
+					String driver = scanner.next();
+					String name = scanner.next();
+					String tag = scanner.next();
+					String filename = scanner.next();
+					String hash = scanner.next();
+					long size = Long.parseLong(scanner.next());
+					long lastAccess = Long.parseLong(scanner.next());
+					// Older indices have no modified time - the content is re-hashed once on next use.
+					long modified = scanner.hasNext() ? Long.parseLong(scanner.next()) : -1L;
+					out.put(getKey(driver, name, tag), new Entry(driver, name, tag, filename, hash, size, modified, lastAccess));
+				}
+				catch (RuntimeException e)
+				{
+					// Skip bad lines - the entry gets refetched.
+				}
+			}
+		}
+		return out;
+	}
+
+	// Writes the cache index. Must hold the lock.
+	private void writeIndex(Map<String, Entry> index) throws IOException
+	{
+		File indexFile = new File(directory, INDEX_FILENAME);
+		File tempFile = new File(directory, INDEX_FILENAME + ".tmp");
+		try (PrintWriter pw = new PrintWriter(tempFile, "UTF-8"))
+		{
+			for (Entry e : index.values())
+			{
+				pw.println(
+					quote(e.driver) + " " + quote(e.name) + " " + quote(e.tag) + " " + quote(e.filename) + " " +
+					e.hash + " " + e.size + " " + e.lastAccess + " " + e.modified
+				);
+			}
+		}
+		Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static String quote(String value)
+	{
+		return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	// Acquires the cross-process lock for the index.
+	private IndexLock lock() throws IOException
+	{
+		if (!FileUtils.createPath(directory.getPath()))
+			throw new IOException("Could not create cache directory: " + directory.getPath());
+		return new IndexLock(getDirectoryLock(directory), new File(directory, LOCK_FILENAME));
+	}
+
+	// Gets the in-process lock for a cache directory.
+	private static ReentrantLock getDirectoryLock(File directory) throws IOException
+	{
+		String path = directory.getCanonicalPath();
+		synchronized (DIRECTORY_LOCKS)
+		{
+			ReentrantLock out;
+			if ((out = DIRECTORY_LOCKS.get(path)) == null)
+				DIRECTORY_LOCKS.put(path, out = new ReentrantLock());
+			return out;
+		}
+	}
+
+	/**
+	 * Computes the SHA-256 hash of a file's contents.
+	 * @param file the file.
+	 * @return the hash as a lowercase hex string.
+	 * @throws IOException if a read error occurs.
+	 */
+	public static String hash(File file) throws IOException
+	{
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("SHA-256 not available!", e);
+		}
+
+		byte[] buffer = new byte[65536];
+		try (InputStream in = new FileInputStream(file))
+		{
+			int buf;
+			while ((buf = in.read(buffer)) > 0)
+				digest.update(buffer, 0, buf);
+		}
+
+		byte[] bytes = digest.digest();
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes)
+		{
+			sb.append(HEX_NYBBLE[(b & 0x0f0) >> 4]);
+			sb.append(HEX_NYBBLE[b & 0x00f]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Exclusive lock on the cache index: the in-process lock for the directory, then the file lock.
+	 */
+	private static class IndexLock implements AutoCloseable
+	{
+		private ReentrantLock directoryLock;
+		private RandomAccessFile file;
+		private FileLock lock;
+
+		private IndexLock(ReentrantLock directoryLock, File lockFile) throws IOException
+		{
+			this.directoryLock = directoryLock;
+			directoryLock.lock();
+			try {
+				this.file = new RandomAccessFile(lockFile, "rw");
+				try {
+					FileChannel channel = file.getChannel();
+					this.lock = channel.lock();
+				} catch (IOException e) {
+					file.close();
+					throw e;
+				}
+			} catch (IOException | RuntimeException e) {
+				directoryLock.unlock();
+				throw e;
+			}
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			try {
+				lock.release();
+			} finally {
+				try {
+					file.close();
+				} finally {
+					directoryLock.unlock();
+				}
+			}
+		}
+	}
+
+}
@@ -5,14 +5,19 @@
  ******************************************************************************/
 package net.mtrop.doom.tools.doomfetch;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 
 import com.blackrook.json.JSONObject;
 import com.blackrook.json.JSONReader;
 
+import net.mtrop.doom.tools.struct.SingletonProvider;
+import net.mtrop.doom.tools.struct.util.HTTPUtils.HTTPClient;
 import net.mtrop.doom.tools.struct.util.HTTPUtils.HTTPReader;
+import net.mtrop.doom.tools.struct.util.HTTPUtils.HTTPRequest;
 import net.mtrop.doom.tools.struct.util.HTTPUtils.HTTPResponse;
+import net.mtrop.doom.tools.struct.util.ObjectUtils;
 
 /**
  * A DoomFetch Driver descriptor.
@@ -25,11 +30,26 @@ public abstract class FetchDriver
 		return JSONReader.readJSON(response.getContentReader());
 	};
 
+	/** Shared client for all drivers, so that lookups and downloads reuse connections to each site. */
+	private static final SingletonProvider<HTTPClient> CLIENT = new SingletonProvider<>(() -> new HTTPClient(4, 4));
+
+	/** Partial download file extension. */
+	public static final String PART_EXTENSION = ".part";
+
 	/** Output stream. */
 	protected PrintStream out; 
 	/** Error stream. */
 	protected PrintStream err;
 	
+	/** Last known ETag of the file to fetch, if any. */
+	private String etag;
+	/** Last known modified date of the file to fetch, if any. */
+	private String date;
+	/** If true, ask the server to not send the file if it did not change. */
+	private boolean conditional;
+	/** Directory that may contain a partial download to resume, if any. */
+	private File partDirectory;
+	
 	/**
 	 * Creates a fetch driver.
 	 * @param out the output stream.
@@ -39,6 +59,117 @@ public abstract class FetchDriver
 	{
 		this.out = out;
 		this.err = err;
+		this.etag = null;
+		this.date = null;
+		this.conditional = false;
+		this.partDirectory = null;
+	}
+	
+	/**
+	 * Sets the last known validators of the file to fetch.
+	 * These are used for conditional requests and for checking if a partial download can be resumed.
+	 * @param etag the last known ETag of the file, or null for none.
+	 * @param date the last known modified date of the file, or null for none.
+	 * @return this driver.
+	 */
+	public FetchDriver setValidators(String etag, String date)
+	{
+		this.etag = ObjectUtils.isEmpty(etag) ? null : etag;
+		this.date = ObjectUtils.isEmpty(date) ? null : date;
+		return this;
+	}
+	
+	/**
+	 * Sets if the download should be a conditional request using the set validators.
+	 * If the remote file did not change, the server may respond with <code>304 Not Modified</code>.
+	 * @param conditional true to make a conditional request, false to not.
+	 * @return this driver.
+	 * @see #setValidators(String, String)
+	 */
+	public FetchDriver setConditional(boolean conditional)
+	{
+		this.conditional = conditional;
+		return this;
+	}
+	
+	/**
+	 * Sets the directory to look in for partial downloads to resume.
+	 * If a partial download exists for the fetched file, a ranged request is made for the rest of the file.
+	 * @param partDirectory the directory that contains partial downloads, or null to not resume.
+	 * @return this driver.
+	 * @see #getPartFile(File, String)
+	 */
+	public FetchDriver setPartDirectory(File partDirectory)
+	{
+		this.partDirectory = partDirectory;
+		return this;
+	}
+	
+	/**
+	 * Gets the HTTP client shared by all drivers.
+	 * Responses from this client must be closed to free up their connection.
+	 * @return the client.
+	 */
+	protected static HTTPClient getClient()
+	{
+		return CLIENT.get();
+	}
+	
+	/**
+	 * Gets the file used for a partial download.
+	 * @param directory the target directory.
+	 * @param filename the name of the file being downloaded.
+	 * @return the partial download file.
+	 */
+	public static File getPartFile(File directory, String filename)
+	{
+		return new File(directory.getPath() + File.separator + filename + PART_EXTENSION);
+	}
+	
+	/**
+	 * Adds the conditional and range headers to a download request, 
+	 * according to what was set on this driver.
+	 * Drivers should call this on the request that fetches the actual file.
+	 * @param filename the name of the file that will be fetched.
+	 * @param request the download request.
+	 * @return the same request, for chaining.
+	 * @see #setValidators(String, String)
+	 * @see #setConditional(boolean)
+	 * @see #setPartDirectory(File)
+	 */
+	protected HTTPRequest prepareDownload(String filename, HTTPRequest request)
+	{
+		File partFile = partDirectory != null ? getPartFile(partDirectory, filename) : null;
+		if (partFile != null && partFile.length() > 0L)
+		{
+			request.setHeader("Range", "bytes=" + partFile.length() + "-");
+			// If the file changed since, the server sends the whole thing instead of the rest.
+			if (etag != null)
+				request.setHeader("If-Range", etag);
+			else if (date != null)
+				request.setHeader("If-Range", date);
+		}
+		else if (conditional)
+		{
+			if (etag != null)
+				request.setHeader("If-None-Match", etag);
+			if (date != null)
+				request.setHeader("If-Modified-Since", date);
+		}
+		return request;
+	}
+	
+	/**
+	 * Creates a response using the cache validators returned by the server.
+	 * @param filename the name of the file fetched.
+	 * @param httpResponse the open HTTP response.
+	 * @return a new response.
+	 */
+	protected static Response createResponse(String filename, HTTPResponse httpResponse)
+	{
+		String etag = httpResponse.getHeader("ETag");
+		String date = httpResponse.getHeader("Last-Modified");
+		return new Response(filename, etag != null ? etag : "", date != null ? date : "", httpResponse);
 	}
 	
 	/**
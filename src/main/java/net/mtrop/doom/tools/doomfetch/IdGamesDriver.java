@@ -39,14 +39,14 @@ public class IdGamesDriver extends FetchDriver
 	public Response getStreamFor(String name) throws IOException
 	{
 		out.println("Searching idGames via API...");
-		JSONObject json = HTTPRequest.get(API_URL)
+		JSONObject json = getClient().send(HTTPRequest.get(API_URL)
 			.parameters(
 				HTTPUtils.entry("action", "search"),
 				HTTPUtils.entry("type", "filename"),
 				HTTPUtils.entry("sort", "name"),
 				HTTPUtils.entry("out", "json"),
 				HTTPUtils.entry("query", name)
-		).send(JSON_READER);
+		), JSON_READER);
 		
 		JSONObject content = json.get("content");
 		JSONObject meta = json.get("meta");
@@ -105,11 +105,12 @@ public class IdGamesDriver extends FetchDriver
 		
 		String uri = selectedFile.get("dir").getString() + filenameStr;
 		
-		HTTPRequest request = HTTPRequest.get(ROOT_URL + uri)
+		HTTPRequest request = prepareDownload(filenameStr, HTTPRequest.get(ROOT_URL + uri)
 			.setHeader("User-Agent", USER_AGENT)
-			.setAutoRedirect(true);
+			.setAutoRedirect(true)
+		);
 		
-		return new Response(filenameStr, "", "", request.send());
+		return createResponse(filenameStr, getClient().send(request));
 	}
 
 }
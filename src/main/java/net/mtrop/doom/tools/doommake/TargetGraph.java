@@ -0,0 +1,379 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2024 Matt Tropiano
+ * This program and the accompanying materials are made available under 
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.doommake;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A set of DoomMake targets and the targets that they depend on.
+ * <p>Targets that do not depend on each other are run at the same time on a pool of threads.
+ * Each target's output is collected while it runs and printed all at once when it finishes,
+ * so that the output of different targets does not interleave.
+ * <p>While a target runs, its thread has a {@link Session} that collects the targets that
+ * report themselves as built, so that the script that started the run can find out what was built.
+ * @author Matthew Tropiano
+ */
+public class TargetGraph
+{
+	/** The session for the current thread, if running a target. */
+	private static final ThreadLocal<Session> CURRENT_SESSION = new ThreadLocal<>();
+
+	/** Target name to dependency names (in declaration order). */
+	private Map<String, Set<String>> dependencies;
+
+	/**
+	 * Creates a new, empty target graph.
+	 */
+	public TargetGraph()
+	{
+		this.dependencies = new LinkedHashMap<>();
+	}
+
+	/**
+	 * @return the session of the target running on this thread, or null if this thread is not running a target.
+	 */
+	public static Session currentSession()
+	{
+		return CURRENT_SESSION.get();
+	}
+
+	/**
+	 * Adds a target.
+	 * @param name the target name.
+	 * @param dependsOn the names of the targets that need to finish before this one starts. Can be null.
+	 * @return this graph.
+	 */
+	public TargetGraph addTarget(String name, Collection<String> dependsOn)
+	{
+		Set<String> set = dependencies.computeIfAbsent(name, (k) -> new LinkedHashSet<>());
+		if (dependsOn != null)
+			set.addAll(dependsOn);
+		return this;
+	}
+
+	/**
+	 * @return the amount of targets in this graph.
+	 */
+	public int size()
+	{
+		return dependencies.size();
+	}
+
+	/**
+	 * Returns the targets in an order that they can be run one at a time in.
+	 * @return the list of target names, dependencies first.
+	 * @throws IllegalStateException if a target depends on a target that is not in this graph, or on itself (directly or not).
+	 */
+	public List<String> getOrder()
+	{
+		Map<String, Integer> waitingOn = new HashMap<>();
+		Map<String, List<String>> dependents = getDependents();
+		Queue<String> ready = new LinkedList<>();
+		for (Map.Entry<String, Set<String>> entry : dependencies.entrySet())
+		{
+			for (String dependency : entry.getValue())
+			{
+				if (!dependencies.containsKey(dependency))
+					throw new IllegalStateException("Target \"" + entry.getKey() + "\" depends on unknown target \"" + dependency + "\".");
+			}
+			waitingOn.put(entry.getKey(), entry.getValue().size());
+			if (entry.getValue().isEmpty())
+				ready.add(entry.getKey());
+		}
+
+		List<String> out = new ArrayList<>(dependencies.size());
+		while (!ready.isEmpty())
+		{
+			String name = ready.poll();
+			out.add(name);
+			for (String dependent : dependents.get(name))
+			{
+				if (waitingOn.merge(dependent, -1, Integer::sum) == 0)
+					ready.add(dependent);
+			}
+		}
+
+		if (out.size() < dependencies.size())
+		{
+			List<String> cycle = new LinkedList<>();
+			for (String name : dependencies.keySet())
+				if (!out.contains(name))
+					cycle.add(name);
+			throw new IllegalStateException("Targets depend on each other: " + cycle);
+		}
+		return out;
+	}
+
+	/**
+	 * Runs all of the targets in this graph and waits for them to finish.
+	 * A target is started once all of its dependencies have finished successfully.
+	 * If a target fails, no new targets are started, but targets that are already running are allowed to finish.
+	 * @param threads the maximum amount of targets to run at once.
+	 * @param out the print stream to print each target's output to.
+	 * @param executor the executor that runs a single target.
+	 * @return the results of the run.
+	 * @throws IllegalStateException if the targets can't be run (see {@link #getOrder()}).
+	 * @throws InterruptedException if the calling thread is interrupted while waiting.
+	 */
+	public Result run(int threads, PrintStream out, TargetExecutor executor) throws InterruptedException
+	{
+		List<String> order = getOrder();
+		Map<String, List<String>> dependents = getDependents();
+		Map<String, Integer> waitingOn = new HashMap<>();
+		for (Map.Entry<String, Set<String>> entry : dependencies.entrySet())
+			waitingOn.put(entry.getKey(), entry.getValue().size());
+
+		final Session session = new Session();
+		final Result result = new Result(session);
+		final AtomicInteger threadId = new AtomicInteger(0);
+		ExecutorService service = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, order.size())), (r) ->
+		{
+			Thread thread = new Thread(r);
+			thread.setName("DoomMakeTarget-" + threadId.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+		CompletionService<TargetResult> completion = new ExecutorCompletionService<>(service);
+
+		try {
+			int running = 0;
+			for (String name : order)
+			{
+				if (waitingOn.get(name) == 0)
+				{
+					completion.submit(() -> runTarget(name, session, executor));
+					running++;
+				}
+			}
+
+			while (running > 0)
+			{
+				TargetResult targetResult;
+				try {
+					targetResult = completion.take().get();
+				} catch (ExecutionException e) {
+					throw new IllegalStateException("Target runner failed unexpectedly.", e.getCause()); // runTarget catches everything.
+				}
+				running--;
+
+				synchronized (out)
+				{
+					out.println("[" + targetResult.name + "]");
+					out.print(targetResult.output);
+					out.flush();
+				}
+
+				result.exitCodes.put(targetResult.name, targetResult.exitCode);
+				if (targetResult.exitCode != 0)
+					result.failed.add(targetResult.name);
+				if (!result.failed.isEmpty())
+					continue;
+
+				for (String dependent : dependents.get(targetResult.name))
+				{
+					if (waitingOn.merge(dependent, -1, Integer::sum) == 0)
+					{
+						completion.submit(() -> runTarget(dependent, session, executor));
+						running++;
+					}
+				}
+			}
+		} finally {
+			service.shutdownNow();
+		}
+
+		for (String name : order)
+			if (!result.exitCodes.containsKey(name))
+				result.skipped.add(name);
+		return result;
+	}
+
+	// Target name to the names of targets that depend on it.
+	private Map<String, List<String>> getDependents()
+	{
+		Map<String, List<String>> out = new HashMap<>();
+		for (String name : dependencies.keySet())
+			out.put(name, new LinkedList<>());
+		for (Map.Entry<String, Set<String>> entry : dependencies.entrySet())
+			for (String dependency : entry.getValue())
+				if (out.containsKey(dependency))
+					out.get(dependency).add(entry.getKey());
+		return out;
+	}
+
+	// Runs a single target on a pool thread.
+	private static TargetResult runTarget(String name, Session session, TargetExecutor executor)
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(4096);
+		int exitCode;
+		CURRENT_SESSION.set(session);
+		try (PrintStream targetOut = new PrintStream(bos, true, "UTF-8"))
+		{
+			try {
+				exitCode = executor.execute(name, targetOut);
+			} catch (Exception e) {
+				targetOut.println("ERROR: " + e.getClass().getSimpleName() + ": " + e.getLocalizedMessage());
+				exitCode = -1;
+			}
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			throw new RuntimeException(e); // Should not happen - UTF-8 is always available.
+		}
+		finally
+		{
+			CURRENT_SESSION.remove();
+		}
+
+		try {
+			return new TargetResult(name, exitCode, bos.toString("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e); // Should not happen.
+		}
+	}
+
+	/**
+	 * Runs a single target.
+	 */
+	@FunctionalInterface
+	public interface TargetExecutor
+	{
+		/**
+		 * Runs a target.
+		 * @param name the target name.
+		 * @param out the print stream for all of the target's output.
+		 * @return the target's exit code (0 is success).
+		 * @throws Exception if the target could not be run.
+		 */
+		int execute(String name, PrintStream out) throws Exception;
+	}
+
+	/**
+	 * Shared state between all of the targets in one run.
+	 */
+	public static class Session
+	{
+		private Set<String> built;
+
+		private Session()
+		{
+			this.built = Collections.newSetFromMap(new ConcurrentHashMap<>());
+		}
+
+		/**
+		 * Reports that a target was built (as opposed to skipped because it was up to date).
+		 * @param name the name of the built target.
+		 */
+		public void setBuilt(String name)
+		{
+			built.add(name);
+		}
+
+		/**
+		 * Checks if a target was reported as built.
+		 * @param name the target name.
+		 * @return true if so, false if not.
+		 */
+		public boolean wasBuilt(String name)
+		{
+			return built.contains(name);
+		}
+	}
+
+	/**
+	 * The results of a run.
+	 */
+	public static class Result
+	{
+		private Session session;
+		private Map<String, Integer> exitCodes;
+		private List<String> failed;
+		private List<String> skipped;
+
+		private Result(Session session)
+		{
+			this.session = session;
+			this.exitCodes = new LinkedHashMap<>();
+			this.failed = new LinkedList<>();
+			this.skipped = new LinkedList<>();
+		}
+
+		/**
+		 * @return the names reported as built during the run, in no particular order.
+		 */
+		public Set<String> getBuilt()
+		{
+			return Collections.unmodifiableSet(session.built);
+		}
+
+		/**
+		 * @return the exit codes of the targets that were run, in the order that they finished.
+		 */
+		public Map<String, Integer> getExitCodes()
+		{
+			return Collections.unmodifiableMap(exitCodes);
+		}
+
+		/**
+		 * @return the names of the targets that failed.
+		 */
+		public List<String> getFailed()
+		{
+			return Collections.unmodifiableList(failed);
+		}
+
+		/**
+		 * @return the names of the targets that were not run because a target failed.
+		 */
+		public List<String> getSkipped()
+		{
+			return Collections.unmodifiableList(skipped);
+		}
+
+		/**
+		 * @return true if every target ran successfully.
+		 */
+		public boolean isSuccessful()
+		{
+			return failed.isEmpty() && skipped.isEmpty();
+		}
+	}
+
+	private static class TargetResult
+	{
+		private final String name;
+		private final int exitCode;
+		private final String output;
+
+		private TargetResult(String name, int exitCode, String output)
+		{
+			this.name = name;
+			this.exitCode = exitCode;
+			this.output = output;
+		}
+	}
+
+}
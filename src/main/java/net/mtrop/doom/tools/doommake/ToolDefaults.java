@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2024 Matt Tropiano
+ * This program and the accompanying materials are made available under 
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.doommake;
+
+import com.blackrook.rookscript.ScriptInstance;
+import com.blackrook.rookscript.ScriptIteratorType.IteratorPair;
+import com.blackrook.rookscript.ScriptValue;
+
+import net.mtrop.doom.tools.doommake.functions.ToolInvocationFunctions;
+
+/**
+ * Default options and call timing for a tool that is called many times from a script.
+ * <p>This keeps no tool state between calls: every call is a normal tool call, and the tool reads and
+ * applies every option each time. It only saves the script from rebuilding the options map for each call.
+ * <p>The default options are copied once, on creation. A call without call-specific options passes the
+ * defaults to the tool as-is. A call with them builds a new options map from the defaults and lays the
+ * call-specific options over it.
+ * <p>All copies are shallow: list and map option values are shared with the map that they came from,
+ * so changing one of them after this is created changes it for later calls.
+ * @author Matthew Tropiano
+ */
+public class ToolDefaults
+{
+	/** The tool to call. */
+	private ToolInvocationFunctions tool;
+	/** The options for every call (map). */
+	private ScriptValue defaults;
+	/** The options map for the current call. */
+	private ScriptValue callOptions;
+
+	private int calls;
+	private long totalNanos;
+	private long maxNanos;
+	private long lastNanos;
+
+	/**
+	 * Creates a new set of tool defaults.
+	 * @param tool the tool to call.
+	 * @param defaults the options used for every call (must be a map or null). This is copied, shallowly.
+	 */
+	public ToolDefaults(ToolInvocationFunctions tool, ScriptValue defaults)
+	{
+		this.tool = tool;
+		this.defaults = ScriptValue.create(null);
+		this.defaults.setEmptyMap();
+		if (defaults != null && defaults.isMap()) for (IteratorPair pair : defaults)
+			this.defaults.mapSet(pair.getKey().asString(), pair.getValue());
+		this.callOptions = ScriptValue.create(null);
+		this.calls = 0;
+		this.totalNanos = 0L;
+		this.maxNanos = 0L;
+		this.lastNanos = 0L;
+	}
+
+	/**
+	 * @return the tool called with these defaults.
+	 */
+	public ToolInvocationFunctions getTool()
+	{
+		return tool;
+	}
+
+	/**
+	 * Calls the tool with the default options, plus (or overridden by) a set of call-specific options.
+	 * @param scriptInstance the calling script instance.
+	 * @param options the call-specific options (must be a map or null).
+	 * @param returnValue the return value (the tool's return value).
+	 */
+	public synchronized void call(ScriptInstance scriptInstance, ScriptValue options, ScriptValue returnValue)
+	{
+		ScriptValue toolOptions = defaults;
+		if (options != null && options.isMap())
+		{
+			callOptions.setEmptyMap();
+			for (IteratorPair pair : defaults)
+				callOptions.mapSet(pair.getKey().asString(), pair.getValue());
+			for (IteratorPair pair : options)
+				callOptions.mapSet(pair.getKey().asString(), pair.getValue());
+			toolOptions = callOptions;
+		}
+
+		long nanos = System.nanoTime();
+		try {
+			tool.call(scriptInstance, toolOptions, returnValue);
+		} finally {
+			lastNanos = System.nanoTime() - nanos;
+			totalNanos += lastNanos;
+			maxNanos = Math.max(maxNanos, lastNanos);
+			calls++;
+			callOptions.setNull();
+		}
+	}
+
+	/**
+	 * Sets a script value to a map of the timing statistics of the calls made with these defaults:
+	 * <code>{tool:STRING, calls:INTEGER, totalMillis:FLOAT, averageMillis:FLOAT, maxMillis:FLOAT, lastMillis:FLOAT}</code>
+	 * @param out the output value.
+	 */
+	public synchronized void getStatistics(ScriptValue out)
+	{
+		out.setEmptyMap();
+		out.mapSet("tool", tool.name().toLowerCase());
+		out.mapSet("calls", calls);
+		out.mapSet("totalMillis", totalNanos / 1000000.0);
+		out.mapSet("averageMillis", calls > 0 ? totalNanos / 1000000.0 / calls : 0.0);
+		out.mapSet("maxMillis", maxNanos / 1000000.0);
+		out.mapSet("lastMillis", lastNanos / 1000000.0);
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return String.format("ToolDefaults %s: %d calls, %.3f ms total, %.3f ms max", tool.name().toLowerCase(), calls, totalNanos / 1000000.0, maxNanos / 1000000.0);
+	}
+
+}
@@ -5,6 +5,7 @@
  ******************************************************************************/
 package net.mtrop.doom.tools.doommake.functions;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
@@ -23,6 +24,10 @@ import java.nio.charset.Charset;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.regex.Pattern;
@@ -32,6 +37,8 @@ import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
 
+import com.blackrook.json.JSONConversionException;
+import com.blackrook.json.JSONObject;
 import com.blackrook.rookscript.ScriptInstance;
 import com.blackrook.rookscript.ScriptIteratorType.IteratorPair;
 import com.blackrook.rookscript.ScriptValue;
@@ -43,10 +50,16 @@ import com.blackrook.rookscript.resolvers.ScriptFunctionResolver;
 import com.blackrook.rookscript.resolvers.hostfunction.EnumFunctionResolver;
 import com.blackrook.rookscript.struct.PatternUtils;
 
+import net.mtrop.doom.tools.DoomMakeMain;
+import net.mtrop.doom.tools.doommake.TargetGraph;
+import net.mtrop.doom.tools.doommake.ToolDefaults;
+import net.mtrop.doom.tools.exception.OptionParseException;
 import net.mtrop.doom.tools.struct.ReplacerReader;
+import net.mtrop.doom.tools.struct.util.EnumUtils;
 import net.mtrop.doom.tools.struct.util.FileUtils;
 import net.mtrop.doom.tools.struct.util.IOUtils;
 import net.mtrop.doom.tools.struct.util.ObjectUtils;
+import net.mtrop.doom.tools.common.ChangedFileOutputStream;
 import net.mtrop.doom.tools.common.Common;
 
 import static com.blackrook.rookscript.lang.ScriptFunctionUsage.type;
@@ -838,7 +851,8 @@ public enum DoomMakeFunctions implements ScriptFunctionType
 			return ScriptFunctionUsage.create()
 				.instructions(
 					"Hashes file information in a directory. " +
-					"No data content is hashed, just file paths, length, and modified date."
+					"No data content is hashed, just file paths, length, and modified date. " +
+					"Temporary files made by tools writing with --changed-only are skipped."
 				)
 				.parameter("path", 
 					type(Type.STRING, "Directory path."),
@@ -914,6 +928,418 @@ public enum DoomMakeFunctions implements ScriptFunctionType
 		
 	},
 	
+	RUNTARGETS(3)
+	{
+		@Override
+		protected Usage usage() 
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Runs a set of DoomMake targets, running targets that do not depend on each other at the same time. " +
+					"Each target is run by a separate instance of DoomMake (like TOOL::DOOMMAKE), so targets do not share script state. " +
+					"A target's output is printed all at once when it finishes. " +
+					"If a target fails, no more targets are started, but targets that are already running are allowed to finish."
+				)
+				.parameter("targets", 
+					type(Type.MAP, "{targetName:[dependencyTargetName, ...], ...}", "Map of target name to the list of target names that need to finish before it starts (can be an empty list or null).")
+				)
+				.parameter("threads", 
+					type(Type.NULL, "Use the amount of available processors."),
+					type(Type.INTEGER, "The maximum amount of targets to run at once.")
+				)
+				.parameter("options", 
+					type(Type.NULL, "Use defaults."),
+					type(Type.MAP, 
+						"{" + String.join(", ",
+							"propertiesFile:OBJECTREF(File)",
+							"scriptFile:OBJECTREF(File)",
+							"runawayLimit:INTEGER",
+							"activationDepth:INTEGER",
+							"stackDepth:INTEGER"
+						) + "}",
+						"Map of options applied to each DoomMake instance (see TOOL::DOOMMAKE)."
+					)
+				)
+				.returns(
+					type(Type.LIST, "[STRING, ...]", "The names of the targets that reported themselves as built with markbuilt(...)."),
+					type(Type.ERROR, "BadTargets", "If [targets] is not a map, or a target depends on an unknown target, or targets depend on each other."),
+					type(Type.ERROR, "BadOptions", "If the options map could not be applied."),
+					type(Type.ERROR, "TargetFailed", "If a target did not finish successfully.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue options = CACHEVALUE2.get();
+			ScriptValue targets = CACHEVALUE3.get();
+			try 
+			{
+				scriptInstance.popStackValue(options);
+				scriptInstance.popStackValue(temp);
+				int threads = temp.isNull() ? Runtime.getRuntime().availableProcessors() : temp.asInt();
+				scriptInstance.popStackValue(targets);
+				
+				if (!targets.isMap())
+				{
+					returnValue.setError("BadTargets", "Targets parameter needs to be a Map type.");
+					return true;
+				}
+				if (!options.isNull() && !options.isMap())
+				{
+					returnValue.setError("BadOptions", "Options parameter needs to be a Map type.");
+					return true;
+				}
+				
+				// Build all options on this thread - script values are not shared with the target threads.
+				TargetGraph graph = new TargetGraph();
+				final Map<String, DoomMakeMain.Options> targetOptions = new HashMap<>();
+				for (IteratorPair pair : targets)
+				{
+					String name = pair.getKey().asString();
+					ScriptValue dependencies = pair.getValue();
+					List<String> dependencyNames = new LinkedList<>();
+					if (dependencies.isList()) for (int i = 0; i < dependencies.length(); i++)
+					{
+						dependencies.listGetByIndex(i, temp);
+						dependencyNames.add(temp.asString());
+					}
+					else if (!dependencies.isNull())
+					{
+						dependencyNames.add(dependencies.asString());
+					}
+					graph.addTarget(name, dependencyNames);
+					
+					DoomMakeMain.Options targetOption = DoomMakeMain.options(null, null, new ByteArrayInputStream(new byte[0]));
+					if (!options.isNull() && !options.mapApply(targetOption))
+					{
+						returnValue.setError("BadOptions", "Options Map could not be applied.");
+						return true;
+					}
+					// This instance already passed the Auto-Build agent check.
+					targetOptions.put(name, targetOption.setTargetName(name).setAgentBypass(true));
+				}
+				
+				TargetGraph.Result result;
+				try {
+					result = graph.run(threads, scriptInstance.getEnvironment().getStandardOut(), (name, out) -> 
+						DoomMakeMain.call(targetOptions.get(name).setStdout(out).setStderr(out))
+					);
+				} catch (IllegalStateException e) {
+					returnValue.setError("BadTargets", e.getMessage(), e.getLocalizedMessage());
+					return true;
+				} catch (InterruptedException e) {
+					returnValue.setError("Interrupted", "Interrupted while waiting for targets to finish.");
+					return true;
+				}
+				
+				if (!result.isSuccessful())
+				{
+					StringBuilder sb = new StringBuilder("Targets failed:");
+					for (String name : result.getFailed())
+						sb.append(' ').append(name).append(" (").append(result.getExitCodes().get(name)).append(')');
+					if (!result.getSkipped().isEmpty())
+						sb.append("; not run: ").append(String.join(", ", result.getSkipped()));
+					returnValue.setError("TargetFailed", sb.toString());
+					return true;
+				}
+				
+				returnValue.setEmptyList(result.getBuilt().size());
+				for (String name : new TreeSet<>(result.getBuilt()))
+					returnValue.listAdd(name);
+				return true;
+			} catch (OptionParseException e) {
+				returnValue.setError("BadOptions", "Option argument parse failed: " + e.getLocalizedMessage());
+				return true;
+			} catch (ClassCastException e) {
+				returnValue.setError("BadOptions", "Options Map could not be applied: " + e.getLocalizedMessage());
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+				options.setNull();
+				targets.setNull();
+			}
+		}
+	},
+	
+	MARKBUILT(1)
+	{
+		@Override
+		protected Usage usage() 
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Reports that a target was built (as opposed to skipped because it was up to date) to the runtargets(...) call " +
+					"that started this DoomMake instance, if any."
+				)
+				.parameter("target", 
+					type(Type.STRING, "The target name.")
+				)
+				.returns(
+					type(Type.BOOLEAN, "True if this instance was started by runtargets(...), false if not.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			try 
+			{
+				scriptInstance.popStackValue(temp);
+				TargetGraph.Session session = TargetGraph.currentSession();
+				if (session != null)
+					session.setBuilt(temp.asString());
+				returnValue.set(session != null);
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+			}
+		}
+	},
+	
+	STOREDIRHASH(3)
+	{
+		@Override
+		protected Usage usage() 
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Stores a directory hash in the \"dirHashes\" object of a build lock file, leaving the rest of the file as-is. " +
+					"The file is read and written again while holding a lock, so that targets running at the same time " +
+					"(see runtargets(...)) do not overwrite each other's hashes. " +
+					"It is written to a temporary file that then replaces it, so it is never left partly written."
+				)
+				.parameter("lockFile", 
+					type(Type.STRING, "Path to the lock file."),
+					type(Type.OBJECTREF, "File", "Path to the lock file.")
+				)
+				.parameter("dirPath", 
+					type(Type.STRING, "The directory path (key).")
+				)
+				.parameter("hash", 
+					type(Type.STRING, "The directory hash.")
+				)
+				.returns(
+					type(Type.NULL, "If [lockFile] is null."),
+					type(Type.BOOLEAN, "True."),
+					type(Type.ERROR, "IOError", "If the lock file could not be read or written."),
+					type(Type.ERROR, "Security", "If the OS is preventing the read or write.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			try 
+			{
+				scriptInstance.popStackValue(temp);
+				String hash = temp.asString();
+				scriptInstance.popStackValue(temp);
+				String dirPath = temp.asString();
+				File lockFile = popFile(scriptInstance, temp);
+				
+				if (lockFile == null)
+				{
+					returnValue.setNull();
+					return true;
+				}
+				
+				synchronized (LOCK_FILE_MUTEX)
+				{
+					try {
+						JSONObject lockRoot = DoomMakeMain.readLockObject(lockFile);
+						JSONObject dirHashes = lockRoot.get("dirHashes");
+						if (dirHashes == null || !dirHashes.isObject())
+						{
+							dirHashes = JSONObject.createEmptyObject();
+							lockRoot.addMember("dirHashes", dirHashes);
+						}
+						dirHashes.addMember(dirPath, hash);
+						DoomMakeMain.writeLockObject(lockFile, lockRoot);
+						returnValue.set(true);
+					} catch (IOException | JSONConversionException e) {
+						returnValue.setError("IOError", e.getMessage(), e.getLocalizedMessage());
+					} catch (SecurityException e) {
+						returnValue.setError("Security", e.getMessage(), e.getLocalizedMessage());
+					}
+				}
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+			}
+		}
+	},
+	
+	TOOLDEFAULTS(2)
+	{
+		@Override
+		protected Usage usage() 
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Sets up default options for calling one of the TOOL functions many times with mostly the same options. " +
+					"The options are copied (shallowly) once, so each call with toolcall(...) only needs to pass the options that differ. " +
+					"Calls made with the defaults are timed (see toolstats(...)). " +
+					"No tool state is kept between calls: each call is a normal TOOL call, and the tool applies all of its options every time."
+				)
+				.parameter("toolName", 
+					type(Type.STRING, "The name of the tool function, without namespace (for example, \"wadmerge\" for TOOL::WADMERGE).")
+				)
+				.parameter("options", 
+					type(Type.NULL, "No default options."),
+					type(Type.MAP, "The options used for every call (see the tool function for the accepted options).")
+				)
+				.returns(
+					type(Type.OBJECTREF, "ToolDefaults", "The new tool defaults."),
+					type(Type.ERROR, "BadTool", "If the tool name is not a TOOL function."),
+					type(Type.ERROR, "BadOptions", "If [options] is not a map.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue options = CACHEVALUE2.get();
+			try 
+			{
+				scriptInstance.popStackValue(options);
+				scriptInstance.popStackValue(temp);
+				
+				ToolInvocationFunctions tool = temp.isNull() ? null : TOOL_MAP.get(temp.asString());
+				if (tool == null)
+				{
+					returnValue.setError("BadTool", "Unknown tool: " + temp.asString());
+					return true;
+				}
+				if (!options.isNull() && !options.isMap())
+				{
+					returnValue.setError("BadOptions", "Options parameter needs to be a Map type.");
+					return true;
+				}
+				
+				returnValue.set(new ToolDefaults(tool, options));
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+				options.setNull();
+			}
+		}
+	},
+	
+	TOOLCALL(2)
+	{
+		@Override
+		protected Usage usage() 
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Calls a tool with default options made by tooldefaults(...). " +
+					"The call uses the default options, plus the provided options (which replace default options with the same name)."
+				)
+				.parameter("defaults", 
+					type(Type.OBJECTREF, "ToolDefaults", "The tool defaults.")
+				)
+				.parameter("options", 
+					type(Type.NULL, "Use only the default options."),
+					type(Type.MAP, "The options for this call.")
+				)
+				.returns(
+					type(Type.INTEGER, "The normal return of the tool's process."),
+					type(Type.ERROR, "BadDefaults", "If [defaults] is not a set of tool defaults."),
+					type(Type.ERROR, "BadOptions", "If the options map could not be applied.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue options = CACHEVALUE2.get();
+			try 
+			{
+				scriptInstance.popStackValue(options);
+				scriptInstance.popStackValue(temp);
+				
+				if (!temp.isObjectRef(ToolDefaults.class))
+				{
+					returnValue.setError("BadDefaults", "First parameter is not a set of tool defaults.");
+					return true;
+				}
+				if (!options.isNull() && !options.isMap())
+				{
+					returnValue.setError("BadOptions", "Options parameter needs to be a Map type.");
+					return true;
+				}
+				
+				temp.asObjectType(ToolDefaults.class).call(scriptInstance, options, returnValue);
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+				options.setNull();
+			}
+		}
+	},
+	
+	TOOLSTATS(1)
+	{
+		@Override
+		protected Usage usage() 
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Returns the timing statistics of the calls made with tool defaults from tooldefaults(...)."
+				)
+				.parameter("defaults", 
+					type(Type.OBJECTREF, "ToolDefaults", "The tool defaults.")
+				)
+				.returns(
+					type(Type.MAP, "{tool:STRING, calls:INTEGER, totalMillis:FLOAT, averageMillis:FLOAT, maxMillis:FLOAT, lastMillis:FLOAT}", "The call statistics."),
+					type(Type.ERROR, "BadDefaults", "If [defaults] is not a set of tool defaults.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			try 
+			{
+				scriptInstance.popStackValue(temp);
+				if (!temp.isObjectRef(ToolDefaults.class))
+				{
+					returnValue.setError("BadDefaults", "Parameter is not a set of tool defaults.");
+					return true;
+				}
+				temp.asObjectType(ToolDefaults.class).getStatistics(returnValue);
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+			}
+		}
+	},
+	
 	;
 	
 	private final int parameterCount;
@@ -925,6 +1351,10 @@ public enum DoomMakeFunctions implements ScriptFunctionType
 	}
 	
 	private static final Charset UTF8 = Charset.forName("UTF-8");
+	/** Mutex for lock file updates. */
+	private static final Object LOCK_FILE_MUTEX = new Object();
+	/** Tool functions by name. */
+	private static final Map<String, ToolInvocationFunctions> TOOL_MAP = EnumUtils.createCaseInsensitiveNameMap(ToolInvocationFunctions.class);
 	
 	/**
 	 * @return a function resolver that handles all of the functions in this enum.
@@ -1191,6 +1621,7 @@ public enum DoomMakeFunctions implements ScriptFunctionType
 
 	private static void digestDirectory(MessageDigest digest, boolean recursive, File directory, ScriptValue returnValue) 
 	{
+		// Temporary files of tools writing with --changed-only come and go, and would look like changes.
 		for (File f : directory.listFiles())
 		{
 			if (f.isDirectory() && recursive)
@@ -1199,7 +1630,7 @@ public enum DoomMakeFunctions implements ScriptFunctionType
 				if (returnValue.isError())
 					return;
 			}
-			else 
+			else if (!ChangedFileOutputStream.isTempFile(f))
 			{
 				digestFileInfo(digest, f, returnValue);
 				if (returnValue.isError())
@@ -1241,5 +1672,6 @@ public enum DoomMakeFunctions implements ScriptFunctionType
 	// Threadlocal "stack" values.
 	private static final ThreadLocal<ScriptValue> CACHEVALUE1 = ThreadLocal.withInitial(()->ScriptValue.create(null));
 	private static final ThreadLocal<ScriptValue> CACHEVALUE2 = ThreadLocal.withInitial(()->ScriptValue.create(null));
+	private static final ThreadLocal<ScriptValue> CACHEVALUE3 = ThreadLocal.withInitial(()->ScriptValue.create(null));
 
 }
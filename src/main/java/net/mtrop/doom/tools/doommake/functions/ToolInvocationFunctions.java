@@ -22,6 +22,7 @@ import com.blackrook.rookscript.resolvers.hostfunction.EnumFunctionResolver;
 
 import net.mtrop.doom.tools.DMXConvertMain;
 import net.mtrop.doom.tools.DecoHackMain;
+import net.mtrop.doom.tools.DoomFetchMain;
 import net.mtrop.doom.tools.DoomImageConvertMain;
 import net.mtrop.doom.tools.DoomMakeMain;
 import net.mtrop.doom.tools.DoomToolsMain;
@@ -68,7 +69,7 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 		}
 		
 		@Override
-		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		protected boolean invoke(ScriptInstance scriptInstance, ScriptValue optionsValue, ScriptValue returnValue)
 		{
 			ScriptValue temp = CACHEVALUE1.get();
 			try 
@@ -76,7 +77,7 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 				PrintStream stdout = scriptInstance.getEnvironment().getStandardOut();
 				PrintStream stderr = scriptInstance.getEnvironment().getStandardErr();
 				DoomToolsMain.Options options = DoomToolsMain.options(stdout, stderr);
-				scriptInstance.popStackValue(temp);
+				temp.set(optionsValue);
 				if (!temp.isNull())
 				{
 					if (!temp.isMap())
@@ -125,6 +126,9 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 							"targetDirectory:OBJECTREF(File)",
 							"update:BOOLEAN",
 							"nolock:BOOLEAN",
+							"threads:INTEGER",
+							"cacheDirectory:OBJECTREF(File)",
+							"cacheSize:INTEGER",
 							"driver:STRING",
 							"name:STRING"
 						) + "}",
@@ -139,7 +143,7 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 		}
 		
 		@Override
-		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		protected boolean invoke(ScriptInstance scriptInstance, ScriptValue optionsValue, ScriptValue returnValue)
 		{
 			ScriptValue temp = CACHEVALUE1.get();
 			try 
@@ -147,8 +151,8 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 				PrintStream stdout = scriptInstance.getEnvironment().getStandardOut();
 				PrintStream stderr = scriptInstance.getEnvironment().getStandardErr();
 				InputStream stdin = scriptInstance.getEnvironment().getStandardIn();
-				DoomMakeMain.Options options = DoomMakeMain.options(stdout, stderr, stdin);
-				scriptInstance.popStackValue(temp);
+				DoomFetchMain.Options options = DoomFetchMain.options(stdout, stderr, stdin);
+				temp.set(optionsValue);
 				if (!temp.isNull())
 				{
 					if (!temp.isMap())
@@ -162,7 +166,7 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 						return true;
 					}
 				}
-				returnValue.set(DoomMakeMain.call(options));
+				returnValue.set(DoomFetchMain.call(options));
 				return true;
 			} catch (OptionParseException e) {
 				returnValue.setError("BadOptions", "Option argument parse failed: " + e.getLocalizedMessage());
@@ -213,7 +217,7 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 		}
 		
 		@Override
-		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		protected boolean invoke(ScriptInstance scriptInstance, ScriptValue optionsValue, ScriptValue returnValue)
 		{
 			ScriptValue temp = CACHEVALUE1.get();
 			try 
@@ -222,7 +226,7 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 				PrintStream stderr = scriptInstance.getEnvironment().getStandardErr();
 				InputStream stdin = scriptInstance.getEnvironment().getStandardIn();
 				DoomMakeMain.Options options = DoomMakeMain.options(stdout, stderr, stdin);
-				scriptInstance.popStackValue(temp);
+				temp.set(optionsValue);
 				if (!temp.isNull())
 				{
 					if (!temp.isMap())
@@ -276,7 +280,9 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 							"outFile:OBJECTREF(File)",
 							"outSourceFile:OBJECTREF(File)",
 							"outCharsetName:STRING",
-							"outputBudget:BOOLEAN"
+							"outputBudget:BOOLEAN",
+							"outputStats:BOOLEAN",
+							"changedOnly:BOOLEAN"
 						) + "}",
 						"Map of options."
 					)
@@ -289,7 +295,7 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 		}
 		
 		@Override
-		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		protected boolean invoke(ScriptInstance scriptInstance, ScriptValue optionsValue, ScriptValue returnValue)
 		{
 			ScriptValue temp = CACHEVALUE1.get();
 			try 
@@ -298,7 +304,7 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 				PrintStream stderr = scriptInstance.getEnvironment().getStandardErr();
 				InputStream stdin = scriptInstance.getEnvironment().getStandardIn();
 				DecoHackMain.Options options = DecoHackMain.options(stdout, stderr, stdin);
-				scriptInstance.popStackValue(temp);
+				temp.set(optionsValue);
 				if (!temp.isNull())
 				{
 					if (!temp.isMap())
@@ -348,7 +354,8 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 							"paletteSourcePath:OBJECTREF(File)",
 							"modeType:STRING (one of 'palettes', 'colormaps', 'graphics', 'flats')",
 							"metaInfoFilename:STRING",
-							"verbose:BOOLEAN"
+							"verbose:BOOLEAN",
+							"changedOnly:BOOLEAN"
 						) + "}",
 						"Map of options."
 					)
@@ -361,7 +368,7 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 		}
 		
 		@Override
-		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		protected boolean invoke(ScriptInstance scriptInstance, ScriptValue optionsValue, ScriptValue returnValue)
 		{
 			ScriptValue temp = CACHEVALUE1.get();
 			ScriptValue files = CACHEVALUE2.get();
@@ -370,7 +377,7 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 				PrintStream stdout = scriptInstance.getEnvironment().getStandardOut();
 				PrintStream stderr = scriptInstance.getEnvironment().getStandardErr();
 				DoomImageConvertMain.Options options = DoomImageConvertMain.options(stdout, stderr);
-				scriptInstance.popStackValue(temp);
+				temp.set(optionsValue);
 				if (!temp.isNull())
 				{
 					if (!temp.isMap())
@@ -432,7 +439,7 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 		}
 		
 		@Override
-		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		protected boolean invoke(ScriptInstance scriptInstance, ScriptValue optionsValue, ScriptValue returnValue)
 		{
 			ScriptValue temp = CACHEVALUE1.get();
 			ScriptValue files = CACHEVALUE2.get();
@@ -441,7 +448,7 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 				PrintStream stdout = scriptInstance.getEnvironment().getStandardOut();
 				PrintStream stderr = scriptInstance.getEnvironment().getStandardErr();
 				DMXConvertMain.Options options = DMXConvertMain.options(stdout, stderr);
-				scriptInstance.popStackValue(temp);
+				temp.set(optionsValue);
 				if (!temp.isNull())
 				{
 					if (!temp.isMap())
@@ -517,7 +524,7 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 		}
 		
 		@Override
-		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		protected boolean invoke(ScriptInstance scriptInstance, ScriptValue optionsValue, ScriptValue returnValue)
 		{
 			ScriptValue temp = CACHEVALUE1.get();
 			ScriptValue args = CACHEVALUE2.get();
@@ -527,7 +534,7 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 				PrintStream stderr = scriptInstance.getEnvironment().getStandardErr();
 				InputStream stdin = scriptInstance.getEnvironment().getStandardIn();
 				WadMergeMain.Options options = WadMergeMain.options(stdout, stderr, stdin);
-				scriptInstance.popStackValue(temp);
+				temp.set(optionsValue);
 				if (!temp.isNull())
 				{
 					if (!temp.isMap())
@@ -604,7 +611,7 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 		}
 		
 		@Override
-		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		protected boolean invoke(ScriptInstance scriptInstance, ScriptValue optionsValue, ScriptValue returnValue)
 		{
 			ScriptValue temp = CACHEVALUE1.get();
 			ScriptValue args = CACHEVALUE2.get();
@@ -614,7 +621,7 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 				PrintStream stderr = scriptInstance.getEnvironment().getStandardErr();
 				InputStream stdin = scriptInstance.getEnvironment().getStandardIn();
 				WadScriptMain.Options options = WadScriptMain.options(stdout, stderr, stdin);
-				scriptInstance.popStackValue(temp);
+				temp.set(optionsValue);
 				if (!temp.isNull())
 				{
 					if (!temp.isMap())
@@ -676,7 +683,8 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 							"exportMode:BOOLEAN",
 							"entryName:STRING",
 							"strife:BOOLEAN",
-							"verbose:BOOLEAN"
+							"verbose:BOOLEAN",
+							"changedOnly:BOOLEAN"
 						) + "}",
 						"Map of options."
 					)
@@ -689,7 +697,7 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 		}
 		
 		@Override
-		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		protected boolean invoke(ScriptInstance scriptInstance, ScriptValue optionsValue, ScriptValue returnValue)
 		{
 			ScriptValue temp = CACHEVALUE1.get();
 			try 
@@ -697,7 +705,7 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 				PrintStream stdout = scriptInstance.getEnvironment().getStandardOut();
 				PrintStream stderr = scriptInstance.getEnvironment().getStandardErr();
 				WADTexMain.Options options = WADTexMain.options(stdout, stderr);
-				scriptInstance.popStackValue(temp);
+				temp.set(optionsValue);
 				if (!temp.isNull())
 				{
 					if (!temp.isMap())
@@ -745,7 +753,8 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 							"wadFile:OBJECTREF(File)",
 							"exportMode:BOOLEAN",
 							"importSource:BOOLEAN",
-							"verbose:BOOLEAN"
+							"verbose:BOOLEAN",
+							"changedOnly:BOOLEAN"
 						) + "}",
 						"Map of options."
 					)
@@ -758,7 +767,7 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 		}
 		
 		@Override
-		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		protected boolean invoke(ScriptInstance scriptInstance, ScriptValue optionsValue, ScriptValue returnValue)
 		{
 			ScriptValue temp = CACHEVALUE1.get();
 			try 
@@ -766,7 +775,7 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 				PrintStream stdout = scriptInstance.getEnvironment().getStandardOut();
 				PrintStream stderr = scriptInstance.getEnvironment().getStandardErr();
 				WSwAnTablesMain.Options options = WSwAnTablesMain.options(stdout, stderr);
-				scriptInstance.popStackValue(temp);
+				temp.set(optionsValue);
 				if (!temp.isNull())
 				{
 					if (!temp.isMap())
@@ -827,7 +836,7 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 		}
 		
 		@Override
-		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		protected boolean invoke(ScriptInstance scriptInstance, ScriptValue optionsValue, ScriptValue returnValue)
 		{
 			ScriptValue temp = CACHEVALUE1.get();
 			ScriptValue args = CACHEVALUE2.get();
@@ -837,7 +846,7 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 				PrintStream stderr = scriptInstance.getEnvironment().getStandardErr();
 				InputStream stdin = scriptInstance.getEnvironment().getStandardIn();
 				WTExportMain.Options options = WTExportMain.options(stdout, stderr, stdin);
-				scriptInstance.popStackValue(temp);
+				temp.set(optionsValue);
 				if (!temp.isNull())
 				{
 					if (!temp.isMap())
@@ -913,7 +922,7 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 		}
 		
 		@Override
-		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		protected boolean invoke(ScriptInstance scriptInstance, ScriptValue optionsValue, ScriptValue returnValue)
 		{
 			ScriptValue temp = CACHEVALUE1.get();
 			ScriptValue args = CACHEVALUE2.get();
@@ -922,7 +931,7 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 				PrintStream stdout = scriptInstance.getEnvironment().getStandardOut();
 				PrintStream stderr = scriptInstance.getEnvironment().getStandardErr();
 				WTexScanMain.Options options = WTexScanMain.options(stdout, stderr);
-				scriptInstance.popStackValue(temp);
+				temp.set(optionsValue);
 				if (!temp.isNull())
 				{
 					if (!temp.isMap())
@@ -1000,11 +1009,79 @@ public enum ToolInvocationFunctions implements ScriptFunctionType
 	
 	protected abstract Usage usage();
 
+	/**
+	 * Sets the listener that is notified after each tool call made on the current thread.
+	 * @param listener the listener, or null to remove it.
+	 * @return the previous listener, or null if none.
+	 */
+	public static CallListener setCallListener(CallListener listener)
+	{
+		CallListener out = CALL_LISTENER.get();
+		if (listener != null)
+			CALL_LISTENER.set(listener);
+		else
+			CALL_LISTENER.remove();
+		return out;
+	}
+	
 	@Override
-	public abstract boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue);
+	public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+	{
+		ScriptValue optionsValue = CACHEVALUE3.get();
+		try
+		{
+			scriptInstance.popStackValue(optionsValue);
+			return call(scriptInstance, optionsValue, returnValue);
+		}
+		finally
+		{
+			optionsValue.setNull();
+		}
+	}
+
+	/**
+	 * Calls this tool with a map of options, as though it were called from a script.
+	 * The call is reported to this thread's call listener, if any.
+	 * @param scriptInstance the calling script instance (for its standard streams).
+	 * @param optionsValue the options map (or null).
+	 * @param returnValue the return value.
+	 * @return true (see {@link ScriptFunctionType#execute(ScriptInstance, ScriptValue)}).
+	 */
+	public boolean call(ScriptInstance scriptInstance, ScriptValue optionsValue, ScriptValue returnValue)
+	{
+		long nanos = System.nanoTime();
+		try {
+			return invoke(scriptInstance, optionsValue, returnValue);
+		} finally {
+			CallListener listener = CALL_LISTENER.get();
+			if (listener != null)
+				listener.onToolCall(this, returnValue, System.nanoTime() - nanos);
+		}
+	}
+	
+	protected abstract boolean invoke(ScriptInstance scriptInstance, ScriptValue optionsValue, ScriptValue returnValue);
+
+	/**
+	 * Listener for tool calls.
+	 */
+	@FunctionalInterface
+	public interface CallListener
+	{
+		/**
+		 * Called after a tool call.
+		 * @param tool the tool that was called.
+		 * @param returnValue the value returned to the script (the tool's exit code, or an error).
+		 * @param nanos the time taken by the call, in nanoseconds.
+		 */
+		void onToolCall(ToolInvocationFunctions tool, ScriptValue returnValue, long nanos);
+	}
+
+	// Listener per thread - scripts (and parallel DoomMake targets) each run on their own thread.
+	private static final ThreadLocal<CallListener> CALL_LISTENER = new ThreadLocal<>();
 
 	// Threadlocal "stack" values.
 	private static final ThreadLocal<ScriptValue> CACHEVALUE1 = ThreadLocal.withInitial(()->ScriptValue.create(null));
 	private static final ThreadLocal<ScriptValue> CACHEVALUE2 = ThreadLocal.withInitial(()->ScriptValue.create(null));
+	private static final ThreadLocal<ScriptValue> CACHEVALUE3 = ThreadLocal.withInitial(()->ScriptValue.create(null));
 
 }
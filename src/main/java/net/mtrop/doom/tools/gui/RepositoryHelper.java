@@ -78,6 +78,19 @@ public interface RepositoryHelper
 	 */
 	List<String> fetchBranches(); 
 	
+	/**
+	 * Fetches the repository's file statuses and current branch status together,
+	 * using as few calls to the repository client as possible.
+	 * @param includeBranches if true, also fetch the local branches.
+	 * @return the repository status.
+	 */
+	default RepositoryStatus fetchRepositoryStatus(boolean includeBranches)
+	{
+		BranchStatus branchStatus = fetchBranchStatus();
+		List<StatusEntry> entries = fetchStatus();
+		return new RepositoryStatus(branchStatus, entries, includeBranches ? fetchBranches() : null);
+	}
+	
 	/**
 	 * A single status entry.
 	 */
@@ -202,6 +215,41 @@ public interface RepositoryHelper
 		}
 	}
 	
+	/**
+	 * A full repository status, fetched all at once.
+	 */
+	static class RepositoryStatus
+	{
+		private BranchStatus branchStatus;
+		private List<StatusEntry> entries;
+		private List<String> branches;
+		
+		protected RepositoryStatus(BranchStatus branchStatus, List<StatusEntry> entries, List<String> branches)
+		{
+			this.branchStatus = branchStatus;
+			this.entries = entries;
+			this.branches = branches;
+		}
+		
+		public BranchStatus getBranchStatus() 
+		{
+			return branchStatus;
+		}
+		
+		public List<StatusEntry> getEntries() 
+		{
+			return entries;
+		}
+		
+		/**
+		 * @return the local branches, or null if they were not fetched.
+		 */
+		public List<String> getBranches() 
+		{
+			return branches;
+		}
+	}
+	
 	/**
 	 * Helper class for Git repositories.
 	 */
@@ -334,39 +382,7 @@ public interface RepositoryHelper
 							continue;
 						boolean staged = i == 0;
 						
-						StatusType type;
-						switch (status)
-						{
-							default:
-							case '?':
-								type = StatusType.UNKNOWN;
-								break;
-							case 'M':
-								type = StatusType.MODIFIED;
-								break;
-							case 'A':
-								type = StatusType.ADDED;
-								break;
-							case 'T':
-								type = StatusType.TYPE_CHANGED;
-								break;
-							case 'U':
-								type = StatusType.UPDATED;
-								break;
-							case 'R':
-								type = StatusType.RENAMED;
-								break;
-							case 'C':
-								type = StatusType.COPIED;
-								break;
-							case 'D':
-								type = StatusType.DELETED;
-								break;
-							case '!':
-								type = StatusType.IGNORED;
-								break;
-						}
-						outList.add(new StatusEntry(type, staged, path));
+						outList.add(new StatusEntry(getStatusType(status), staged, path));
 					}
 				}
 			} 
@@ -419,6 +435,82 @@ public interface RepositoryHelper
 			return new BranchStatus(name, remoteName, commit, ahead, behind);
 		}
 
+		@Override
+		public RepositoryStatus fetchRepositoryStatus(boolean includeBranches)
+		{
+			StringWriter out = new StringWriter();
+			StringWriter err = new StringWriter();
+
+			// One call for both the branch headers and the file entries.
+			doCall(start(out, err).args("status", "--branch", "--porcelain=v2"), "STATUS-ALL");
+			
+			String name = null;
+			String remoteName = null;
+			String commit = null;
+			int ahead = 0;
+			int behind = 0;
+			List<StatusEntry> outList = new LinkedList<>();
+			
+			try (BufferedReader br = readFrom(out))
+			{
+				String line;
+				while ((line = br.readLine()) != null)
+				{
+					if (line.trim().length() == 0)
+						continue;
+					
+					if (line.startsWith("# branch.oid "))
+						commit = line.substring("# branch.oid ".length());
+					else if (line.startsWith("# branch.head "))
+						name = line.substring("# branch.head ".length());
+					else if (line.startsWith("# branch.upstream "))
+						remoteName = line.substring("# branch.upstream ".length());
+					else if (line.startsWith("# branch.ab "))
+					{
+						String[] ab = line.substring("# branch.ab ".length()).split("\\s+");
+						ahead = Integer.parseInt(ab[0]);
+						behind = Math.abs(Integer.parseInt(ab[1]));
+					}
+					else if (line.startsWith("? "))
+					{
+						outList.add(new StatusEntry(StatusType.UNKNOWN, false, unquote(line.substring(2))));
+					}
+					else if (line.startsWith("1 ") || line.startsWith("2 ") || line.startsWith("u "))
+					{
+						// Ordinary (1), renamed/copied (2), and unmerged (u) entries have a different amount of fields before the path.
+						int fields = line.charAt(0) == '1' ? 9 : line.charAt(0) == '2' ? 10 : 11;
+						String[] tokens = line.split(" ", fields);
+						if (tokens.length < fields)
+							continue;
+						
+						String path = tokens[fields - 1];
+						int tab;
+						if ((tab = path.indexOf('\t')) >= 0) // renamed/copied: "path<TAB>origPath"
+							path = path.substring(0, tab);
+						path = unquote(path);
+						
+						for (int i = 0; i < 2; i++)
+						{
+							char status = tokens[1].charAt(i);
+							if (status == '.')
+								continue;
+							outList.add(new StatusEntry(getStatusType(status), i == 0, path));
+						}
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				// Should not be thrown.
+			}
+			
+			return new RepositoryStatus(
+				new BranchStatus(name, remoteName, commit, ahead, behind), 
+				outList, 
+				includeBranches ? fetchBranches() : null
+			);
+		}
+
 		@Override
 		public List<String> fetchBranches()
 		{
@@ -665,6 +757,39 @@ public interface RepositoryHelper
 			return new BufferedReader(new StringReader(writer.toString()));
 		}
 		
+		private static String unquote(String path)
+		{
+			if (path.length() > 1 && path.charAt(0) == '"')
+				return path.substring(1, path.length() - 1);
+			return path;
+		}
+		
+		private static StatusType getStatusType(char status)
+		{
+			switch (status)
+			{
+				default:
+				case '?':
+					return StatusType.UNKNOWN;
+				case 'M':
+					return StatusType.MODIFIED;
+				case 'A':
+					return StatusType.ADDED;
+				case 'T':
+					return StatusType.TYPE_CHANGED;
+				case 'U':
+					return StatusType.UPDATED;
+				case 'R':
+					return StatusType.RENAMED;
+				case 'C':
+					return StatusType.COPIED;
+				case 'D':
+					return StatusType.DELETED;
+				case '!':
+					return StatusType.IGNORED;
+			}
+		}
+		
 	}
 
 	/**
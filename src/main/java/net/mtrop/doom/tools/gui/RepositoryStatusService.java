@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2024 Matt Tropiano
+ * This program and the accompanying materials are made available under 
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.gui;
+
+import java.util.function.Consumer;
+
+import net.mtrop.doom.tools.gui.RepositoryHelper.RepositoryStatus;
+import net.mtrop.doom.tools.gui.managers.DoomToolsLogger;
+import net.mtrop.doom.tools.gui.managers.DoomToolsTaskManager;
+import net.mtrop.doom.tools.gui.managers.DoomToolsTaskManager.Lane;
+import net.mtrop.doom.tools.struct.LoggingFactory.Logger;
+import net.mtrop.doom.tools.struct.swing.SwingUtils;
+
+/**
+ * Fetches repository status in the background.
+ * <p>Refresh requests are coalesced: while a fetch is running, any amount of new requests
+ * result in only one more fetch after it. Deferred requests (like the ones from file changes)
+ * also wait a short time for more changes before fetching, so that a burst of file changes
+ * is only one fetch.
+ * <p>The listener is always called on the Swing event thread.
+ * @author Matthew Tropiano
+ */
+public class RepositoryStatusService
+{
+	private static final Logger LOG = DoomToolsLogger.getLogger(RepositoryStatusService.class);
+
+	/** Default time to wait for more requests on a deferred refresh, in milliseconds. */
+	public static final long DEFAULT_SETTLE_MILLIS = 300L;
+
+	private final DoomToolsTaskManager tasks;
+	private final RepositoryHelper helper;
+	private final Consumer<RepositoryStatus> listener;
+	private final long settleMillis;
+
+	// Guarded by this.
+	private boolean running;
+	private boolean pending;
+	private boolean pendingBranches;
+	private boolean pendingDeferred;
+	private long pendingTime;
+	private long pendingMaxTime;
+
+	/**
+	 * Creates a new status service.
+	 * @param helper the repository helper to use for fetching status.
+	 * @param listener the listener to call with each fetched status (called on the Swing event thread).
+	 */
+	public RepositoryStatusService(RepositoryHelper helper, Consumer<RepositoryStatus> listener)
+	{
+		this(helper, listener, DEFAULT_SETTLE_MILLIS);
+	}
+
+	/**
+	 * Creates a new status service.
+	 * @param helper the repository helper to use for fetching status.
+	 * @param listener the listener to call with each fetched status (called on the Swing event thread).
+	 * @param settleMillis the time to wait for more requests on a deferred refresh, in milliseconds.
+	 */
+	public RepositoryStatusService(RepositoryHelper helper, Consumer<RepositoryStatus> listener, long settleMillis)
+	{
+		this.tasks = DoomToolsTaskManager.get();
+		this.helper = helper;
+		this.listener = listener;
+		this.settleMillis = settleMillis;
+		this.running = false;
+		this.pending = false;
+		this.pendingBranches = false;
+		this.pendingDeferred = false;
+		this.pendingTime = 0L;
+		this.pendingMaxTime = 0L;
+	}
+
+	/**
+	 * Requests a status refresh as soon as possible.
+	 * @param includeBranches if true, also fetch the local branches.
+	 */
+	public void refresh(boolean includeBranches)
+	{
+		request(includeBranches, 0L);
+	}
+
+	/**
+	 * Requests a status refresh after a short wait, for coalescing bursts of requests.
+	 * Each deferred request pushes the refresh back (up to a few times the wait time), 
+	 * unless a refresh is requested with {@link #refresh(boolean)}.
+	 * @param includeBranches if true, also fetch the local branches.
+	 */
+	public void refreshLater(boolean includeBranches)
+	{
+		request(includeBranches, settleMillis);
+	}
+
+	private void request(boolean includeBranches, long delayMillis)
+	{
+		synchronized (this)
+		{
+			long now = System.currentTimeMillis();
+			if (!pending)
+			{
+				pendingTime = now + delayMillis;
+				pendingMaxTime = now + (delayMillis * 4);
+				pendingDeferred = delayMillis > 0L;
+			}
+			else if (delayMillis <= 0L)
+			{
+				pendingTime = now;
+				pendingDeferred = false;
+			}
+			else if (pendingDeferred)
+			{
+				pendingTime = Math.min(now + delayMillis, pendingMaxTime);
+			}
+			pending = true;
+			pendingBranches |= includeBranches;
+			if (running)
+			{
+				notifyAll();
+				return;
+			}
+			running = true;
+		}
+		tasks.spawn(Lane.IO, this::fetchLoop);
+	}
+
+	private void fetchLoop()
+	{
+		while (true)
+		{
+			boolean includeBranches;
+			synchronized (this)
+			{
+				long waitMillis;
+				while (pending && (waitMillis = pendingTime - System.currentTimeMillis()) > 0L)
+				{
+					try {
+						wait(waitMillis);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						running = false;
+						return;
+					}
+				}
+
+				if (!pending)
+				{
+					running = false;
+					return;
+				}
+				includeBranches = pendingBranches;
+				pending = false;
+				pendingBranches = false;
+			}
+
+			try {
+				final RepositoryStatus status = helper.fetchRepositoryStatus(includeBranches);
+				SwingUtils.invoke(() -> listener.accept(status));
+			} catch (RuntimeException e) {
+				LOG.error(e, "Could not fetch repository status.");
+			}
+		}
+	}
+
+}
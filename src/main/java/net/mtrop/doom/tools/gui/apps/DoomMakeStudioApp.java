@@ -13,7 +13,9 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -32,6 +34,7 @@ import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
 import net.mtrop.doom.Wad;
 import net.mtrop.doom.tools.DoomMakeMain;
 import net.mtrop.doom.tools.WadScriptMain;
+import net.mtrop.doom.tools.decohack.DecoHackSymbolIndex;
 import net.mtrop.doom.tools.gui.DoomToolsApplicationInstance;
 import net.mtrop.doom.tools.gui.DoomToolsGUIMain;
 import net.mtrop.doom.tools.gui.DoomToolsGUIMain.ApplicationNames;
@@ -40,12 +43,15 @@ import net.mtrop.doom.tools.gui.RepositoryHelper.Mercurial;
 import net.mtrop.doom.tools.gui.apps.data.MergeSettings;
 import net.mtrop.doom.tools.gui.apps.data.ScriptExecutionSettings;
 import net.mtrop.doom.tools.gui.managers.AppCommon;
+import net.mtrop.doom.tools.gui.managers.DoomMakeProjectHelper;
 import net.mtrop.doom.tools.gui.managers.DoomToolsEditorProvider;
 import net.mtrop.doom.tools.gui.managers.DoomToolsGUIPreWarmer;
 import net.mtrop.doom.tools.gui.managers.DoomToolsGUIUtils;
 import net.mtrop.doom.tools.gui.managers.DoomToolsIconManager;
 import net.mtrop.doom.tools.gui.managers.DoomToolsLanguageManager;
 import net.mtrop.doom.tools.gui.managers.DoomToolsLogger;
+import net.mtrop.doom.tools.gui.managers.DoomToolsTaskManager;
+import net.mtrop.doom.tools.gui.managers.DoomToolsTaskManager.Lane;
 import net.mtrop.doom.tools.gui.managers.settings.DoomMakeSettingsManager;
 import net.mtrop.doom.tools.gui.managers.settings.DoomMakeStudioSettingsManager;
 import net.mtrop.doom.tools.gui.swing.panels.DirectoryTreePanel.DirectoryTreeListener;
@@ -61,6 +67,7 @@ import net.mtrop.doom.tools.gui.swing.panels.settings.DoomMakeSettingsPanel;
 import net.mtrop.doom.tools.gui.swing.panels.GitRepositoryPanel;
 import net.mtrop.doom.tools.gui.swing.panels.MercurialRepositoryPanel;
 import net.mtrop.doom.tools.gui.swing.panels.ProjectSearchPanel;
+import net.mtrop.doom.tools.gui.swing.panels.ProjectSearchPanel.SearchResult;
 import net.mtrop.doom.tools.gui.swing.panels.WadMergeExecuteWithArgsPanel;
 import net.mtrop.doom.tools.gui.swing.panels.WadScriptExecuteWithArgsPanel;
 import net.mtrop.doom.tools.struct.LoggingFactory.Logger;
@@ -69,7 +76,9 @@ import net.mtrop.doom.tools.struct.WatchServiceThread;
 import net.mtrop.doom.tools.struct.swing.ComponentFactory.MenuNode;
 import net.mtrop.doom.tools.struct.swing.SwingUtils;
 import net.mtrop.doom.tools.struct.util.ArrayUtils;
+import net.mtrop.doom.tools.struct.util.FileUtils;
 import net.mtrop.doom.tools.struct.util.FileUtils.TempFile;
+import net.mtrop.doom.tools.struct.util.ObjectUtils;
 import net.mtrop.doom.util.MapUtils;
 import net.mtrop.doom.util.WadUtils;
 
@@ -99,6 +108,8 @@ public class DoomMakeStudioApp extends DoomToolsApplicationInstance
     /** Settings manager. */
 	private DoomMakeSettingsManager settings;
 	private DoomMakeStudioSettingsManager studioSettings;
+	/** Task manager. */
+	private DoomToolsTaskManager tasks;
 
 	// Components
 
@@ -119,6 +130,8 @@ public class DoomMakeStudioApp extends DoomToolsApplicationInstance
 	private Action runWadScriptParametersAction;
 	private Action runDoomMakeAction;
 	private Action runDoomMakeParametersAction;
+	private Action goToDefinitionAction;
+	private Action findUsagesAction;
 	
 	// Fields
     
@@ -133,6 +146,7 @@ public class DoomMakeStudioApp extends DoomToolsApplicationInstance
 	private ScriptExecutionSettings doomMakeSettings;
 	
 	private ProjectWatcher watcher;
+	private DecoHackSymbolIndex symbolIndex;
 	
 	/**
 	 * Creates a new open project application.
@@ -152,6 +166,7 @@ public class DoomMakeStudioApp extends DoomToolsApplicationInstance
 		
 		this.settings = DoomMakeSettingsManager.get();
 		this.studioSettings = DoomMakeStudioSettingsManager.get();
+		this.tasks = DoomToolsTaskManager.get();
 		
 		this.editorPanel = new DoomMakeEditorPanel(new EditorMultiFilePanel.Options() 
 		{
@@ -188,6 +203,7 @@ public class DoomMakeStudioApp extends DoomToolsApplicationInstance
 			@Override
 			public void onOpen(EditorHandle handle) 
 			{
+				handle.putClientProperty(DecoHackSymbolIndex.class, symbolIndex);
 				statusPanel.setSuccessMessage(language.getText("doommake.status.message.editor.open", handle.getEditorTabName()));
 			}
 
@@ -282,10 +298,13 @@ public class DoomMakeStudioApp extends DoomToolsApplicationInstance
 		this.runWadScriptParametersAction = utils.createActionFromLanguageKey("doommake.menu.run.item.wadscript.params", (e) -> onRunWadScriptWithArgs());
 		this.runDoomMakeAction = utils.createActionFromLanguageKey("doommake.menu.run.item.doommake.run", (e) -> onRunDoomMakeAgain());
 		this.runDoomMakeParametersAction = utils.createActionFromLanguageKey("doommake.menu.run.item.doommake.params", (e) -> onRunDoomMakeWithArgs());
+		this.goToDefinitionAction = utils.createActionFromLanguageKey("doommake.menu.editor.item.definition", (e) -> onGoToDefinition());
+		this.findUsagesAction = utils.createActionFromLanguageKey("doommake.menu.editor.item.usages", (e) -> onFindUsages());
 
 		this.handleToWadScriptSettingsMap = new HashMap<>();
 		this.handleToWadMergeSettingsMap = new HashMap<>();
 		this.doomMakeSettings = null;
+		this.symbolIndex = new DecoHackSymbolIndex();
 		
 		this.projectDirectory = targetDirectory;
 		onHandleChange();
@@ -427,6 +446,7 @@ public class DoomMakeStudioApp extends DoomToolsApplicationInstance
 		onNewEditor();
 		watcher = new ProjectWatcher();
 		watcher.start();
+		indexProjectSymbols();
 	}
 	
 	@Override
@@ -520,6 +540,9 @@ public class DoomMakeStudioApp extends DoomToolsApplicationInstance
 			utils.createItemFromLanguageKey("texteditor.action.goto", editorPanel.getActionFor(ActionNames.ACTION_GOTO)),
 			utils.createItemFromLanguageKey("texteditor.action.find", editorPanel.getActionFor(ActionNames.ACTION_FIND)),
 			separator(),
+			utils.createItemFromLanguageKey("doommake.menu.editor.item.definition", goToDefinitionAction),
+			utils.createItemFromLanguageKey("doommake.menu.editor.item.usages", findUsagesAction),
+			separator(),
 			editorPanel.getToggleLineWrapMenuItem(),
 			editorPanel.getChangeEncodingMenuItem(),
 			editorPanel.getChangeSpacingMenuItem(),
@@ -611,10 +634,13 @@ public class DoomMakeStudioApp extends DoomToolsApplicationInstance
 		{
 			boolean wadscript = currentHandle.getCurrentStyleType().equalsIgnoreCase(DoomToolsEditorProvider.SYNTAX_STYLE_WADSCRIPT);
 			boolean wadmerge = currentHandle.getCurrentStyleType().equalsIgnoreCase(DoomToolsEditorProvider.SYNTAX_STYLE_WADMERGE);
+			boolean decohack = currentHandle.getCurrentStyleType().equalsIgnoreCase(DoomToolsEditorProvider.SYNTAX_STYLE_DECOHACK);
 			runWadMergeAction.setEnabled(wadmerge);
 			runWadMergeParametersAction.setEnabled(wadmerge);
 			runWadScriptAction.setEnabled(wadscript);
 			runWadScriptParametersAction.setEnabled(wadscript);
+			goToDefinitionAction.setEnabled(decohack);
+			findUsagesAction.setEnabled(decohack);
 		}
 		else
 		{
@@ -622,7 +648,65 @@ public class DoomMakeStudioApp extends DoomToolsApplicationInstance
 			runWadMergeParametersAction.setEnabled(false);
 			runWadScriptAction.setEnabled(false);
 			runWadScriptParametersAction.setEnabled(false);
+			goToDefinitionAction.setEnabled(false);
+			findUsagesAction.setEnabled(false);
+		}
+	}
+
+	private void onGoToDefinition()
+	{
+		String word = editorPanel.getCurrentEditorWordAtCaret();
+		if (ObjectUtils.isEmpty(word))
+			return;
+		
+		List<DecoHackSymbolIndex.Symbol> definitions = symbolIndex.getDefinitions(word);
+		if (definitions.isEmpty())
+		{
+			statusPanel.setErrorMessage(language.getText("doommake.status.message.definition.none", word));
 		}
+		else if (definitions.size() == 1)
+		{
+			DecoHackSymbolIndex.Location location = definitions.get(0).getLocation();
+			onOpenFile(location.getFile(), location.getOffset());
+		}
+		else
+		{
+			List<SearchResult> results = new ArrayList<>(definitions.size());
+			for (DecoHackSymbolIndex.Symbol symbol : definitions)
+				results.add(createSearchResult(symbol.getLocation()));
+			showSearchResults(word, results);
+		}
+	}
+
+	private void onFindUsages()
+	{
+		String word = editorPanel.getCurrentEditorWordAtCaret();
+		if (ObjectUtils.isEmpty(word))
+			return;
+		
+		List<SearchResult> results = new ArrayList<>();
+		for (DecoHackSymbolIndex.Symbol symbol : symbolIndex.getDefinitions(word))
+			results.add(createSearchResult(symbol.getLocation()));
+		for (DecoHackSymbolIndex.Location location : symbolIndex.getUsages(word))
+			results.add(createSearchResult(location));
+		showSearchResults(word, results);
+	}
+	
+	private void showSearchResults(String phrase, List<SearchResult> results)
+	{
+		searchPanel.showResults(phrase, results);
+		tabPanel.setSelectedIndex(1);
+	}
+	
+	private static SearchResult createSearchResult(DecoHackSymbolIndex.Location location)
+	{
+		return new SearchResult(
+			location.getFile(), 
+			location.getLine(), 
+			location.getLineCharIndex(), 
+			location.getLineCharIndex() + location.getLength() - 1, 
+			location.getOffset()
+		);
 	}
 
 	private void onNewEditor()
@@ -1084,19 +1168,94 @@ public class DoomMakeStudioApp extends DoomToolsApplicationInstance
 			((MercurialRepositoryPanel)repositoryPanel).refreshEntries();
 	}
 
+	// Refreshes the repository status for a changed project file. The refreshes are coalesced by the panel.
+	private void refreshRepositoryLater(File file) 
+	{
+		if (isRepositoryFile(file))
+			return;
+		if (repositoryPanel instanceof GitRepositoryPanel)
+			((GitRepositoryPanel)repositoryPanel).refreshEntriesLater();
+		else if (repositoryPanel instanceof MercurialRepositoryPanel)
+			((MercurialRepositoryPanel)repositoryPanel).refreshEntriesLater();
+	}
+
+	// Files in the repository's own directory change on every status call, so they are skipped.
+	private boolean isRepositoryFile(File file)
+	{
+		File parent = file;
+		while (parent != null && !parent.equals(projectDirectory))
+		{
+			String name = parent.getName();
+			if (name.equals(".git") || name.equals(".hg"))
+				return true;
+			parent = parent.getParentFile();
+		}
+		return false;
+	}
+
+	// Indexes the symbols in all of the project's DECOHack files.
+	private void indexProjectSymbols()
+	{
+		tasks.spawn(Lane.BACKGROUND, () -> {
+			Charset charset = DoomMakeProjectHelper.get().getProjectCharset(projectDirectory);
+			for (File file : FileUtils.explodeFiles(projectDirectory))
+			{
+				if (isDecoHackFile(file) && !isRepositoryFile(file))
+					indexSymbols(file, charset);
+			}
+			LOG.infof("Indexed DECOHack symbols in %d file(s).", symbolIndex.getFileCount());
+		});
+	}
+	
+	// Re-indexes the symbols in a changed file, if it is a DECOHack file.
+	private void reindexSymbolsLater(File file)
+	{
+		if (isDecoHackFile(file) && !isRepositoryFile(file))
+			tasks.spawn(Lane.BACKGROUND, () -> indexSymbols(file, DoomMakeProjectHelper.get().getProjectCharset(projectDirectory)));
+	}
+	
+	// Files are read in the project's encoding, the same as DoomMake reads them when building.
+	private void indexSymbols(File file, Charset charset)
+	{
+		if (!file.exists())
+		{
+			symbolIndex.removeFile(file);
+			return;
+		}
+		
+		try {
+			symbolIndex.indexFile(file, charset);
+		} catch (IOException e) {
+			LOG.warnf("Could not index symbols in %s: %s", file.getPath(), e.getLocalizedMessage());
+		}
+	}
+	
+	private static boolean isDecoHackFile(File file)
+	{
+		return file.isFile() && DoomToolsEditorProvider.SYNTAX_STYLE_DECOHACK.equals(DoomToolsEditorProvider.get().getStyleByFile(file));
+	}
+
 	private void onProjectFileCreated(File file)
 	{
+		treePanel.fileCreated(file);
 		searchPanel.registerFile(file);
+		refreshRepositoryLater(file);
+		reindexSymbolsLater(file);
 	}
 	
 	private void onProjectFileModified(File file)
 	{
 		searchPanel.registerFile(file);
+		refreshRepositoryLater(file);
+		reindexSymbolsLater(file);
 	}
 	
 	private void onProjectFileDeleted(File file)
 	{
+		treePanel.fileDeleted(file);
 		searchPanel.deregisterFile(file);
+		refreshRepositoryLater(file);
+		symbolIndex.removeFile(file);
 	}
 	
 	private void onWatcherError(String message)
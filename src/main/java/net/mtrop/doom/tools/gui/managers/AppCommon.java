@@ -366,6 +366,7 @@ public final class AppCommon
 			target, 
 			args, 
 			agentOverride, 
+			false,
 			onStart, onEnd
 		);
 	}
@@ -381,6 +382,7 @@ public final class AppCommon
 	 * @param target the target name.
 	 * @param args the script arguments, if any.
 	 * @param agentOverride if true, override the agent warning. 
+	 * @param profile if true, profiles the target (see {@link DoomMakeMain#SWITCH_PROFILE}).
 	 * @param onStart what to call on process start.
 	 * @param onEnd what to call on process end.
 	 */
@@ -394,6 +396,7 @@ public final class AppCommon
 		final String target, 
 		final String[] args, 
 		boolean agentOverride,
+		boolean profile,
 		Runnable onStart,
 		Runnable onEnd
 	){
@@ -409,7 +412,7 @@ public final class AppCommon
 				language.getText("doommake.project.build.message.success"), 
 				language.getText("doommake.project.build.message.interrupt"), 
 				language.getText("doommake.project.build.message.error"), 
-				callDoomMake(projectDirectory, target, agentOverride, args, stdout, stderr, stdin)
+				callDoomMake(projectDirectory, target, agentOverride, profile, args, stdout, stderr, stdin)
 			)
 		).start(tasks, onStart, onEnd);
 	}
@@ -826,15 +829,19 @@ public final class AppCommon
 	 * @param stderr the standard error stream. 
 	 * @param targetName the target name.
 	 * @param agentOverride if true, bypasses agent detection.
+	 * @param profile if true, profiles the target (see {@link DoomMakeMain#SWITCH_PROFILE}).
 	 * @param args script arguments.
 	 * @param stdin standard in.
 	 * @return the list of project targets.
 	 */
-	public InstancedFuture<Integer> callDoomMake(File projectDirectory, String targetName, boolean agentOverride, String[] args, PrintStream stdout, PrintStream stderr, InputStream stdin)
+	public InstancedFuture<Integer> callDoomMake(File projectDirectory, String targetName, boolean agentOverride, boolean profile, String[] args, PrintStream stdout, PrintStream stderr, InputStream stdin)
 	{
 		ProcessCallable callable = Common.spawnJava(DoomMakeMain.class).setWorkingDirectory(projectDirectory);
 		if (agentOverride)
 			callable.arg(DoomMakeMain.SWITCH_AGENT_BYPASS);
+		// Switches must come before the target name, or they are passed to the target.
+		if (profile)
+			callable.arg(DoomMakeMain.SWITCH_PROFILE);
 		
 		callable.arg(targetName)
 			.args(args)
@@ -11,6 +11,9 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
 import java.util.Properties;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -141,6 +144,24 @@ public final class DoomMakeProjectHelper
 		return new File(projectDirectory + File.separator + path);
 	}
 	
+	/**
+	 * Gets the charset of a project's text files (the "doommake.project.encoding" property).
+	 * @param projectDirectory the project directory.
+	 * @return the project charset, or the default charset if not set or not valid.
+	 */
+	public Charset getProjectCharset(File projectDirectory)
+	{
+		String name = getProjectProperties(projectDirectory).getProperty("doommake.project.encoding");
+		if (ObjectUtils.isEmpty(name))
+			return Charset.defaultCharset();
+		try {
+			return Charset.forName(name);
+		} catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+			LOG.warnf("Bad project encoding \"%s\", using the default charset.", name);
+			return Charset.defaultCharset();
+		}
+	}
+	
 	/**
 	 * Opens SLADE for the project source folder.
 	 * The source folder is lifted straight from the local properties.
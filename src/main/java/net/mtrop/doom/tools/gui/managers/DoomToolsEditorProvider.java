@@ -23,7 +23,6 @@ import org.fife.ui.rsyntaxtextarea.TokenMakerFactory;
 import org.fife.ui.rsyntaxtextarea.folding.CurlyFoldParser;
 import org.fife.ui.rsyntaxtextarea.folding.FoldParserManager;
 
-import net.mtrop.doom.tools.common.Common;
 import net.mtrop.doom.tools.gui.managers.parsing.DEUTEXTokenMaker;
 import net.mtrop.doom.tools.gui.managers.parsing.DecoHackCompletionProvider;
 import net.mtrop.doom.tools.gui.managers.parsing.DecoHackTokenMaker;
@@ -363,7 +362,7 @@ public final class DoomToolsEditorProvider
 		if ((styleName = EXTENSION_TO_STYLE_MAP.get(ext)) != null)
 			return styleName;
 
-		if (Common.isBinaryFile(file))
+		if (DoomToolsFileClassifier.get().isBinaryFile(file))
 			return null;
 		
 		return SYNTAX_STYLE_NONE;
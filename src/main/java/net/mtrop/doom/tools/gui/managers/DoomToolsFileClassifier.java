@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2024 Matt Tropiano
+ * This program and the accompanying materials are made available under 
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.gui.managers;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.mtrop.doom.tools.common.Common;
+import net.mtrop.doom.tools.struct.LoggingFactory.Logger;
+import net.mtrop.doom.tools.struct.SingletonProvider;
+import net.mtrop.doom.tools.struct.util.FileUtils;
+
+/**
+ * DoomTools GUI binary file classifier singleton.
+ * <p>Remembers whether a file is binary or text, keyed by path, modified date, and length,
+ * so that panels that look at the same files (search, directory trees, editors) only
+ * open and scan each file once per change. Files with well-known binary extensions are
+ * never opened at all.
+ * @author Matthew Tropiano
+ */
+public final class DoomToolsFileClassifier
+{
+    /** Logger. */
+    private static final Logger LOG = DoomToolsLogger.getLogger(DoomToolsFileClassifier.class);
+    /** The instance encapsulator. */
+    private static final SingletonProvider<DoomToolsFileClassifier> INSTANCE = new SingletonProvider<>(() -> new DoomToolsFileClassifier());
+
+    /** File extensions that are always considered binary. */
+	private static final Set<String> BINARY_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+		// images
+		"png", "gif", "jpg", "jpeg", "bmp", "tga", "pcx", "ico",
+		// sound and music
+		"wav", "ogg", "mp3", "flac", "mid", "midi", "mus", "mod", "it", "s3m", "xm",
+		// archives
+		"wad", "pk3", "pk7", "pke", "zip", "7z", "gz", "rar",
+		// executables and libraries
+		"exe", "dll", "so", "dylib", "jar", "class",
+		// documents
+		"pdf"
+	)));
+
+	/**
+	 * @return the singleton instance of this classifier.
+	 */
+	public static DoomToolsFileClassifier get()
+	{
+		return INSTANCE.get();
+	}
+
+	/* ==================================================================== */
+
+	/** Verdict cache, keyed by absolute path. */
+	private Map<String, Verdict> cache;
+	/** Pool for bulk classification. */
+	private ExecutorService executor;
+
+	private DoomToolsFileClassifier()
+	{
+		final AtomicLong threadId = new AtomicLong(0L);
+		this.cache = new ConcurrentHashMap<>();
+		this.executor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors() / 2), (r) ->
+		{
+			Thread out = new Thread(r);
+			out.setName("DoomToolsClassifierThread" + threadId.getAndIncrement());
+			out.setDaemon(true);
+			out.setPriority(Thread.MIN_PRIORITY);
+			return out;
+		});
+	}
+
+	/**
+	 * Checks if a file is a binary file.
+	 * If the file has a known binary extension, this returns true without opening the file.
+	 * Otherwise, if the file has not changed since it was last checked, the previous verdict is returned.
+	 * @param file the file to inspect.
+	 * @return true if so, false if not.
+	 * @see Common#isBinaryFile(File)
+	 */
+	public boolean isBinaryFile(File file)
+	{
+		if (BINARY_EXTENSIONS.contains(FileUtils.getFileExtension(file.getName()).toLowerCase()))
+			return true;
+
+		String key = file.getAbsolutePath();
+		long modified = file.lastModified();
+		long length = file.length();
+
+		Verdict verdict = cache.get(key);
+		if (verdict != null && verdict.modified == modified && verdict.length == length)
+			return verdict.binary;
+
+		boolean binary = Common.isBinaryFile(file);
+		// Don't remember files that don't exist (lastModified is 0).
+		if (modified != 0L)
+			cache.put(key, new Verdict(modified, length, binary));
+		return binary;
+	}
+
+	/**
+	 * Classifies a set of files at once, in parallel, and waits for them to complete.
+	 * Should be called from a background task, such as on project open,
+	 * so that later calls to {@link #isBinaryFile(File)} on these files are answered from the cache.
+	 * Directories are skipped.
+	 * @param files the files to classify.
+	 * @throws InterruptedException if the calling thread is interrupted while waiting.
+	 */
+	public void classifyAll(Collection<File> files) throws InterruptedException
+	{
+		final int batchSize = 64;
+		List<Callable<Void>> batches = new ArrayList<>(files.size() / batchSize + 1);
+		List<File> batch = new ArrayList<>(batchSize);
+		for (File file : files)
+		{
+			if (file.isDirectory())
+				continue;
+			batch.add(file);
+			if (batch.size() == batchSize)
+			{
+				batches.add(createBatch(batch));
+				batch = new ArrayList<>(batchSize);
+			}
+		}
+		if (!batch.isEmpty())
+			batches.add(createBatch(batch));
+
+		long time = System.currentTimeMillis();
+		executor.invokeAll(batches);
+		LOG.debugf("Classified %d files in %d ms.", files.size(), System.currentTimeMillis() - time);
+	}
+
+	/**
+	 * Removes a file's verdict from the cache.
+	 * Should be called when a file is deleted.
+	 * @param file the file to forget.
+	 */
+	public void forget(File file)
+	{
+		cache.remove(file.getAbsolutePath());
+	}
+
+	private Callable<Void> createBatch(final List<File> batch)
+	{
+		return () ->
+		{
+			for (File file : batch)
+				isBinaryFile(file);
+			return null;
+		};
+	}
+
+	/**
+	 * A cached verdict.
+	 */
+	private static class Verdict
+	{
+		private final long modified;
+		private final long length;
+		private final boolean binary;
+
+		private Verdict(long modified, long length, boolean binary)
+		{
+			this.modified = modified;
+			this.length = length;
+			this.binary = binary;
+		}
+	}
+
+}
@@ -8,6 +8,7 @@ package net.mtrop.doom.tools.gui.managers;
 import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
 
 import net.mtrop.doom.tools.struct.LoggingFactory.Logger;
+import net.mtrop.doom.tools.gui.managers.DoomToolsTaskManager.Lane;
 import net.mtrop.doom.tools.gui.swing.panels.EditorMultiFilePanel;
 import net.mtrop.doom.tools.struct.SingletonProvider;
 
@@ -52,7 +53,7 @@ public final class DoomToolsGUIPreWarmer
 	{
 		DoomToolsTaskManager tasks = DoomToolsTaskManager.get();
 		LOG.info("Pre-warming completion providers...");
-		tasks.spawn(() -> {
+		tasks.spawn(Lane.BACKGROUND, () -> {
 			DoomToolsEditorProvider editorProvider = DoomToolsEditorProvider.get();
 			editorProvider.getProviderByStyle(DoomToolsEditorProvider.SYNTAX_STYLE_DECOHACK);
 			editorProvider.getProviderByStyle(DoomToolsEditorProvider.SYNTAX_STYLE_DEFSWANI);
@@ -72,7 +73,7 @@ public final class DoomToolsGUIPreWarmer
 	{
 		DoomToolsTaskManager tasks = DoomToolsTaskManager.get();
 		LOG.info("Pre-warming common icons...");
-		tasks.spawn(() -> {
+		tasks.spawn(Lane.BACKGROUND, () -> {
 			DoomToolsIconManager iconManager = DoomToolsIconManager.get();
 			iconManager.getImage("activity.gif");
 			LOG.info("Icon pre-warm finished.");
@@ -86,7 +87,7 @@ public final class DoomToolsGUIPreWarmer
 	{
 		DoomToolsTaskManager tasks = DoomToolsTaskManager.get();
 		LOG.info("Pre-warming common images...");
-		tasks.spawn(() -> {
+		tasks.spawn(Lane.BACKGROUND, () -> {
 			DoomToolsImageManager imageManager = DoomToolsImageManager.get();
 			imageManager.getImage("doomtools-logo-16.png"); 
 			imageManager.getImage("doomtools-logo-32.png"); 
@@ -110,7 +111,7 @@ public final class DoomToolsGUIPreWarmer
 	{
 		DoomToolsTaskManager tasks = DoomToolsTaskManager.get();
 		LOG.info("Pre-warming common components...");
-		tasks.spawn(() -> {
+		tasks.spawn(Lane.BACKGROUND, () -> {
 			DoomToolsEditorProvider editorProvider = DoomToolsEditorProvider.get();
 			editorProvider.initCustomLanguages();
 			new EditorMultiFilePanel();
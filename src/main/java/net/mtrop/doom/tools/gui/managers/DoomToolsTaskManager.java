@@ -5,10 +5,15 @@
  ******************************************************************************/
 package net.mtrop.doom.tools.gui.managers;
 
+import java.lang.reflect.InvocationTargetException;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import net.mtrop.doom.tools.struct.InstancedFuture;
@@ -17,7 +22,11 @@ import net.mtrop.doom.tools.struct.LoggingFactory.Logger;
 import net.mtrop.doom.tools.struct.SingletonProvider;
 
 /**
- * DoomTools GUI logger singleton.
+ * DoomTools GUI task manager singleton.
+ * <p>Tasks are spawned into one of several lanes (see {@link Lane}), each with its own threads,
+ * so that background work (like pre-warming) never holds up work that a user is waiting on.
+ * <p>If the system property <code>doomtools.tasks.virtualThreads</code> is set to <code>true</code>
+ * and the running JVM supports virtual threads, {@link Lane#IO} tasks are run on virtual threads.
  * @author Matthew Tropiano
  */
 public final class DoomToolsTaskManager 
@@ -27,6 +36,9 @@ public final class DoomToolsTaskManager
     /** The instance encapsulator. */
     private static final SingletonProvider<DoomToolsTaskManager> INSTANCE = new SingletonProvider<>(() -> new DoomToolsTaskManager());
 	
+	/** System property for using virtual threads for I/O tasks, if available. */
+	public static final String PROPERTY_VIRTUAL_THREADS = "doomtools.tasks.virtualThreads";
+	
 	/**
 	 * @return the singleton instance of this settings object.
 	 */
@@ -35,70 +47,306 @@ public final class DoomToolsTaskManager
 		return INSTANCE.get();
 	}
 
+	/**
+	 * Task lanes.
+	 */
+	public enum Lane
+	{
+		/** Tasks that a user is waiting on: tool runs, searches, opening things. */
+		INTERACTIVE,
+		/** Tasks that no one is waiting on: pre-warming, cache filling. */
+		BACKGROUND,
+		/** Tasks that mostly wait on I/O or other processes: version control, network. */
+		IO;
+	}
+	
 	/* ==================================================================== */
 	
-	/** Thread pool. */
-	private Executor executor;
+	/** Lanes. */
+	private Map<Lane, LaneState> lanes;
 	
 	private DoomToolsTaskManager()
 	{
-		this.executor = Executors.newFixedThreadPool(8, new DefaultThreadFactory("DoomToolsThread"));
+		this.lanes = new EnumMap<>(Lane.class);
+		this.lanes.put(Lane.INTERACTIVE, new LaneState(Executors.newFixedThreadPool(8, new DefaultThreadFactory("DoomToolsThread", Thread.NORM_PRIORITY))));
+		this.lanes.put(Lane.BACKGROUND, new LaneState(Executors.newFixedThreadPool(2, new DefaultThreadFactory("DoomToolsBackgroundThread", Thread.MIN_PRIORITY))));
+		this.lanes.put(Lane.IO, new LaneState(createIOExecutor()));
 	}
 
+	// Creates the I/O lane executor, using virtual threads if asked for and available (Java 21+).
+	private static ExecutorService createIOExecutor()
+	{
+		if (Boolean.getBoolean(PROPERTY_VIRTUAL_THREADS))
+		{
+			try {
+				ExecutorService out = (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+				LOG.info("Using virtual threads for I/O tasks.");
+				return out;
+			} catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+				LOG.warn("Virtual threads are not available in this JVM. Using platform threads for I/O tasks.");
+			}
+		}
+		return Executors.newFixedThreadPool(8, new DefaultThreadFactory("DoomToolsIOThread", Thread.NORM_PRIORITY));
+	}
+	
 	/**
-	 * Spawns a new asynchronous task from a {@link Runnable}.
+	 * Spawns a new asynchronous interactive task from a {@link Runnable}.
 	 * @param runnable the callable to use.
 	 * @return the new instance.
 	 */
 	public InstancedFuture<Void> spawn(Runnable runnable)
 	{
-		return spawn(() -> { runnable.run(); return null; });
+		return spawn(Lane.INTERACTIVE, runnable);
 	}
 	
 	/**
-	 * Spawns a new asynchronous task from a {@link Callable}.
+	 * Spawns a new asynchronous interactive task from a {@link Callable}.
 	 * @param <T> the return type for the future.
 	 * @param callable the callable to use.
 	 * @return the new instance.
 	 */
 	public <T> InstancedFuture<T> spawn(Callable<T> callable)
 	{
-		return InstancedFuture.instance(callable)
-			.listener(createListener())
-			.spawn(executor);
+		return spawn(Lane.INTERACTIVE, callable);
+	}
+
+	/**
+	 * Spawns a new asynchronous task from a {@link Runnable}.
+	 * @param lane the lane to run the task in.
+	 * @param runnable the callable to use.
+	 * @return the new instance.
+	 */
+	public InstancedFuture<Void> spawn(Lane lane, Runnable runnable)
+	{
+		return spawn(lane, null, runnable);
+	}
+	
+	/**
+	 * Spawns a new asynchronous task from a {@link Callable}.
+	 * @param <T> the return type for the future.
+	 * @param lane the lane to run the task in.
+	 * @param callable the callable to use.
+	 * @return the new instance.
+	 */
+	public <T> InstancedFuture<T> spawn(Lane lane, Callable<T> callable)
+	{
+		return spawn(lane, null, callable);
+	}
+
+	/**
+	 * Spawns a new asynchronous task from a {@link Runnable}.
+	 * @param lane the lane to run the task in.
+	 * @param cancelSwitch if not null and set to true before the task starts, the task is skipped. 
+	 * 		The task itself can also check this to stop early.
+	 * @param runnable the callable to use.
+	 * @return the new instance.
+	 */
+	public InstancedFuture<Void> spawn(Lane lane, AtomicBoolean cancelSwitch, Runnable runnable)
+	{
+		return spawn(lane, cancelSwitch, () -> { runnable.run(); return null; });
+	}
+	
+	/**
+	 * Spawns a new asynchronous task from a {@link Callable}.
+	 * @param <T> the return type for the future.
+	 * @param lane the lane to run the task in.
+	 * @param cancelSwitch if not null and set to true before the task starts, the task is skipped and its result is null. 
+	 * 		The task itself can also check this to stop early.
+	 * @param callable the callable to use.
+	 * @return the new instance.
+	 */
+	public <T> InstancedFuture<T> spawn(Lane lane, AtomicBoolean cancelSwitch, Callable<T> callable)
+	{
+		final LaneState state = lanes.get(lane);
+		final long queuedNanos = System.nanoTime();
+		state.queued.incrementAndGet();
+		return InstancedFuture.instance(() -> 
+		{
+			long startNanos = System.nanoTime();
+			state.queued.decrementAndGet();
+			state.waitNanos.addAndGet(startNanos - queuedNanos);
+			if (cancelSwitch != null && cancelSwitch.get())
+			{
+				state.cancelled.incrementAndGet();
+				return null;
+			}
+			
+			state.running.incrementAndGet();
+			try {
+				return callable.call();
+			} finally {
+				state.running.decrementAndGet();
+				state.completed.incrementAndGet();
+				state.runNanos.addAndGet(System.nanoTime() - startNanos);
+			}
+		})
+		.listener(createListener(lane, queuedNanos))
+		.spawn(state.executor);
 	}
 
-	private <T> InstanceListener<T> createListener()
+	/**
+	 * Gets a snapshot of the statistics for a task lane.
+	 * @param lane the lane.
+	 * @return the lane statistics.
+	 */
+	public LaneStatistics getStatistics(Lane lane)
+	{
+		return new LaneStatistics(lane, lanes.get(lane));
+	}
+	
+	private <T> InstanceListener<T> createListener(final Lane lane, final long queuedNanos)
 	{
 		return new InstanceListener<T>()
 		{
+			private long startNanos;
+			
 			@Override
 			public void onStart(InstancedFuture<T> instance) 
 			{
-				LOG.infof("Started task.");
+				startNanos = System.nanoTime();
+				LOG.debugf("Started %s task (waited %d ms).", lane.name(), (startNanos - queuedNanos) / 1000000L);
 			}
 
 			@Override
 			public void onEnd(InstancedFuture<T> instance)
 			{
-				LOG.infof("Finished task.");
+				LOG.debugf("Finished %s task in %d ms.", lane.name(), (System.nanoTime() - startNanos) / 1000000L);
 			}
 		};
 	}
 	
 	/**
-	 * The thread factory used for the Thread Pool.
-	 * Makes non-daemon threads that start with the name <code>"AsyncUtilsThread-"</code>.
+	 * Statistics for a single task lane at the time they were fetched.
+	 */
+	public static class LaneStatistics
+	{
+		private Lane lane;
+		private int queued;
+		private int running;
+		private long completed;
+		private long cancelled;
+		private long waitNanos;
+		private long runNanos;
+		
+		private LaneStatistics(Lane lane, LaneState state)
+		{
+			this.lane = lane;
+			this.queued = state.queued.get();
+			this.running = state.running.get();
+			this.completed = state.completed.get();
+			this.cancelled = state.cancelled.get();
+			this.waitNanos = state.waitNanos.get();
+			this.runNanos = state.runNanos.get();
+		}
+		
+		/**
+		 * @return the lane.
+		 */
+		public Lane getLane() 
+		{
+			return lane;
+		}
+		
+		/**
+		 * @return the amount of tasks waiting to start.
+		 */
+		public int getQueued() 
+		{
+			return queued;
+		}
+		
+		/**
+		 * @return the amount of tasks running.
+		 */
+		public int getRunning() 
+		{
+			return running;
+		}
+		
+		/**
+		 * @return the amount of tasks that have run to completion.
+		 */
+		public long getCompleted() 
+		{
+			return completed;
+		}
+		
+		/**
+		 * @return the amount of tasks that were cancelled before starting.
+		 */
+		public long getCancelled() 
+		{
+			return cancelled;
+		}
+		
+		/**
+		 * @return the total time tasks have spent waiting to start, in milliseconds.
+		 */
+		public long getWaitMillis() 
+		{
+			return waitNanos / 1000000L;
+		}
+		
+		/**
+		 * @return the total time tasks have spent running, in milliseconds.
+		 */
+		public long getRunMillis() 
+		{
+			return runNanos / 1000000L;
+		}
+		
+		@Override
+		public String toString() 
+		{
+			long started = completed + cancelled;
+			return String.format("%s: %d queued, %d running, %d completed, %d cancelled, avg wait %d ms, avg run %d ms", 
+				lane.name(), queued, running, completed, cancelled, 
+				started > 0 ? getWaitMillis() / started : 0L, 
+				completed > 0 ? getRunMillis() / completed : 0L
+			);
+		}
+	}
+	
+	/**
+	 * A lane's executor and counters.
+	 */
+	private static class LaneState
+	{
+		private ExecutorService executor;
+		private AtomicInteger queued;
+		private AtomicInteger running;
+		private AtomicLong completed;
+		private AtomicLong cancelled;
+		private AtomicLong waitNanos;
+		private AtomicLong runNanos;
+		
+		private LaneState(ExecutorService executor)
+		{
+			this.executor = executor;
+			this.queued = new AtomicInteger(0);
+			this.running = new AtomicInteger(0);
+			this.completed = new AtomicLong(0L);
+			this.cancelled = new AtomicLong(0L);
+			this.waitNanos = new AtomicLong(0L);
+			this.runNanos = new AtomicLong(0L);
+		}
+	}
+	
+	/**
+	 * The thread factory used for the Thread Pools.
+	 * Makes daemon threads that start with the provided name prefix.
 	 */
 	private static class DefaultThreadFactory implements ThreadFactory
 	{
 		private AtomicLong threadId;
 		private String threadNamePrefix;
+		private int priority;
 
-		private DefaultThreadFactory(String threadNamePrefix)
+		private DefaultThreadFactory(String threadNamePrefix, int priority)
 		{
 			this.threadId = new AtomicLong(0L);
 			this.threadNamePrefix = threadNamePrefix;
+			this.priority = priority;
 		}
 
 		@Override
@@ -107,7 +355,7 @@ public final class DoomToolsTaskManager
 			Thread out = new Thread(r);
 			out.setName(threadNamePrefix + threadId.getAndIncrement());
 			out.setDaemon(true);
-			out.setPriority(Thread.NORM_PRIORITY);
+			out.setPriority(priority);
 			return out;
 		}
 		
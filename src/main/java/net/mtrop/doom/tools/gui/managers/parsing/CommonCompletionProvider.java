@@ -41,4 +41,38 @@ public abstract class CommonCompletionProvider extends DefaultCompletionProvider
 		return out.toString();
 	}
 	
+	/**
+	 * A completion summary that is only written the first time that it is needed 
+	 * (when its completion is displayed), instead of when the provider is created.
+	 */
+	protected static class LazySummary
+	{
+		private Consumer<HTMLWriter> writeFunc;
+		private String summary;
+		
+		/**
+		 * Creates a new lazy summary.
+		 * @param writeFunc the writing function to call with a new HTMLWriter.
+		 * @see #writeHTML(Consumer)
+		 */
+		public LazySummary(Consumer<HTMLWriter> writeFunc)
+		{
+			this.writeFunc = writeFunc;
+			this.summary = null;
+		}
+		
+		/**
+		 * @return the summary HTML, written on the first call.
+		 */
+		public synchronized String get()
+		{
+			if (summary == null)
+			{
+				summary = writeHTML(writeFunc);
+				writeFunc = null;
+			}
+			return summary;
+		}
+	}
+	
 }
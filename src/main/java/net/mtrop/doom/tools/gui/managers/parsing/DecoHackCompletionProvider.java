@@ -8,18 +8,27 @@ package net.mtrop.doom.tools.gui.managers.parsing;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.function.Consumer;
 
+import javax.swing.text.JTextComponent;
+
 import org.fife.ui.autocomplete.BasicCompletion;
+import org.fife.ui.autocomplete.Completion;
 import org.fife.ui.autocomplete.CompletionProvider;
 import org.fife.ui.autocomplete.TemplateCompletion;
 
 import net.mtrop.doom.tools.decohack.DecoHackPatchType;
+import net.mtrop.doom.tools.decohack.DecoHackSymbolIndex;
+import net.mtrop.doom.tools.decohack.DecoHackSymbolIndex.Symbol;
+import net.mtrop.doom.tools.decohack.DecoHackSymbolIndex.SymbolType;
 import net.mtrop.doom.tools.decohack.data.DEHActionPointer;
 import net.mtrop.doom.tools.decohack.data.DEHActionPointer.Usage.PointerParameter;
 import net.mtrop.doom.tools.decohack.data.enums.DEHActionPointerDoom19;
@@ -40,10 +49,17 @@ import net.mtrop.doom.tools.struct.util.ObjectUtils;
 
 /** 
  * DECOHack Completion Provider.
+ * <p>Completion summaries are written the first time they are displayed, and all of the
+ * completions are added to the provider at once, so that they are only sorted once.
+ * <p>If an editor has a {@link DecoHackSymbolIndex} set on it, symbols defined in the project
+ * are also offered.
  * @author Matthew Tropiano
  */
 public class DecoHackCompletionProvider extends CommonCompletionProvider
 {
+	/** Maximum amount of project symbols to add to the completions. */
+	private static final int PROJECT_SYMBOL_LIMIT = 200;
+	
 	/** Logger. */
     private static final Logger LOG = DoomToolsLogger.getLogger(DecoHackCompletionProvider.class); 
 
@@ -343,75 +359,107 @@ public class DecoHackCompletionProvider extends CommonCompletionProvider
 	public DecoHackCompletionProvider()
 	{
 		super();
+		List<Completion> completions = new ArrayList<>(4096);
+		
 		for (DEHActionPointerDoom19 pointer : DEHActionPointerDoom19.values())
 		{
 			if (pointer == DEHActionPointerDoom19.NULL)
 				continue;
-			addCompletion(new PointerCompletion(this, pointer));
+			completions.add(new PointerCompletion(this, pointer));
 		}
 		
 		for (DEHActionPointerMBF pointer : DEHActionPointerMBF.values())
-			addCompletion(new PointerCompletion(this, pointer));
+			completions.add(new PointerCompletion(this, pointer));
 		for (DEHActionPointerMBF21 pointer : DEHActionPointerMBF21.values())
-			addCompletion(new PointerCompletion(this, pointer));
+			completions.add(new PointerCompletion(this, pointer));
 
 		for (DecoHackTemplateCompletion completion : DecoHackTemplateCompletion.values())
-			addCompletion(completion.createCompletion(this));
+			completions.add(completion.createCompletion(this));
 		
-		addDefineCompletions(DecoHackPatchType.DOOM19,   "Thing Slot", "decohack/constants/doom19/things.dh",   THING_HARDCODE_DOCS);
-		addDefineCompletions(DecoHackPatchType.BOOM,     "Thing Slot", "decohack/constants/boom/things.dh",     THING_HARDCODE_DOCS);
-		addDefineCompletions(DecoHackPatchType.MBF,      "Thing Slot", "decohack/constants/mbf/things.dh",      THING_HARDCODE_DOCS);
-		addDefineCompletions(DecoHackPatchType.EXTENDED, "Thing Slot", "decohack/constants/extended/things.dh", THING_HARDCODE_DOCS);
+		addDefineCompletions(completions, DecoHackPatchType.DOOM19,   "Thing Slot", "decohack/constants/doom19/things.dh",   THING_HARDCODE_DOCS);
+		addDefineCompletions(completions, DecoHackPatchType.BOOM,     "Thing Slot", "decohack/constants/boom/things.dh",     THING_HARDCODE_DOCS);
+		addDefineCompletions(completions, DecoHackPatchType.MBF,      "Thing Slot", "decohack/constants/mbf/things.dh",      THING_HARDCODE_DOCS);
+		addDefineCompletions(completions, DecoHackPatchType.EXTENDED, "Thing Slot", "decohack/constants/extended/things.dh", THING_HARDCODE_DOCS);
 		
-		addDefineCompletions(DecoHackPatchType.DOOM19,   "Thing Slot (Friendly Macro)", "decohack/constants/doom19/friendly_things.dh",   THING_HARDCODE_DOCS);
-		addDefineCompletions(DecoHackPatchType.BOOM,     "Thing Slot (Friendly Macro)", "decohack/constants/boom/friendly_things.dh",     THING_HARDCODE_DOCS);
-		addDefineCompletions(DecoHackPatchType.MBF,      "Thing Slot (Friendly Macro)", "decohack/constants/mbf/friendly_things.dh",      THING_HARDCODE_DOCS);
-		addDefineCompletions(DecoHackPatchType.EXTENDED, "Thing Slot (Friendly Macro)", "decohack/constants/extended/friendly_things.dh", THING_HARDCODE_DOCS);
+		addDefineCompletions(completions, DecoHackPatchType.DOOM19,   "Thing Slot (Friendly Macro)", "decohack/constants/doom19/friendly_things.dh",   THING_HARDCODE_DOCS);
+		addDefineCompletions(completions, DecoHackPatchType.BOOM,     "Thing Slot (Friendly Macro)", "decohack/constants/boom/friendly_things.dh",     THING_HARDCODE_DOCS);
+		addDefineCompletions(completions, DecoHackPatchType.MBF,      "Thing Slot (Friendly Macro)", "decohack/constants/mbf/friendly_things.dh",      THING_HARDCODE_DOCS);
+		addDefineCompletions(completions, DecoHackPatchType.EXTENDED, "Thing Slot (Friendly Macro)", "decohack/constants/extended/friendly_things.dh", THING_HARDCODE_DOCS);
 
-		addDefineCompletions(DecoHackPatchType.DOOM19,   "Weapon Slot", "decohack/constants/doom19/weapons.dh", WEAPON_HARDCODE_DOCS);
+		addDefineCompletions(completions, DecoHackPatchType.DOOM19,   "Weapon Slot", "decohack/constants/doom19/weapons.dh", WEAPON_HARDCODE_DOCS);
 
-		addDefineCompletions(DecoHackPatchType.DOOM19,   "State Slot", "decohack/constants/doom19/states.dh",   STATE_HARDCODE_DOCS);
-		addDefineCompletions(DecoHackPatchType.BOOM,     "State Slot", "decohack/constants/boom/states.dh",     STATE_HARDCODE_DOCS);
-		addDefineCompletions(DecoHackPatchType.MBF,      "State Slot", "decohack/constants/mbf/states.dh",      STATE_HARDCODE_DOCS);
-		addDefineCompletions(DecoHackPatchType.EXTENDED, "State Slot", "decohack/constants/extended/states.dh", STATE_HARDCODE_DOCS);
+		addDefineCompletions(completions, DecoHackPatchType.DOOM19,   "State Slot", "decohack/constants/doom19/states.dh",   STATE_HARDCODE_DOCS);
+		addDefineCompletions(completions, DecoHackPatchType.BOOM,     "State Slot", "decohack/constants/boom/states.dh",     STATE_HARDCODE_DOCS);
+		addDefineCompletions(completions, DecoHackPatchType.MBF,      "State Slot", "decohack/constants/mbf/states.dh",      STATE_HARDCODE_DOCS);
+		addDefineCompletions(completions, DecoHackPatchType.EXTENDED, "State Slot", "decohack/constants/extended/states.dh", STATE_HARDCODE_DOCS);
 
-		addDefineCompletions(DecoHackPatchType.DOOM19,   "Ammo Type", "decohack/constants/doom19/ammo.dh", null);
+		addDefineCompletions(completions, DecoHackPatchType.DOOM19,   "Ammo Type", "decohack/constants/doom19/ammo.dh", null);
 
-		addStringDefineCompletions("decohack/constants/doom19/strings.dh", "decohack/constants/boom/strings.dh");
+		addStringDefineCompletions(completions, "decohack/constants/doom19/strings.dh", "decohack/constants/boom/strings.dh");
 
-		addAliasCompletions("thing", DecoHackPatchType.DOOM19, "Thing Slot Alias", "decohack/constants/doom19/things_aliases.dh", THING_HARDCODE_DOCS);
-		addAliasCompletions("thing", DecoHackPatchType.BOOM,   "Thing Slot Alias", "decohack/constants/boom/things_aliases.dh",   THING_HARDCODE_DOCS);
-		addAliasCompletions("thing", DecoHackPatchType.MBF,    "Thing Slot Alias", "decohack/constants/mbf/things_aliases.dh",    THING_HARDCODE_DOCS);
+		addAliasCompletions(completions, "thing", DecoHackPatchType.DOOM19, "Thing Slot Alias", "decohack/constants/doom19/things_aliases.dh", THING_HARDCODE_DOCS);
+		addAliasCompletions(completions, "thing", DecoHackPatchType.BOOM,   "Thing Slot Alias", "decohack/constants/boom/things_aliases.dh",   THING_HARDCODE_DOCS);
+		addAliasCompletions(completions, "thing", DecoHackPatchType.MBF,    "Thing Slot Alias", "decohack/constants/mbf/things_aliases.dh",    THING_HARDCODE_DOCS);
 
-		addAliasCompletions("weapon", DecoHackPatchType.DOOM19, "Weapon Slot Alias", "decohack/constants/doom19/weapons_aliases.dh", WEAPON_HARDCODE_DOCS);
+		addAliasCompletions(completions, "weapon", DecoHackPatchType.DOOM19, "Weapon Slot Alias", "decohack/constants/doom19/weapons_aliases.dh", WEAPON_HARDCODE_DOCS);
 
-		addFlagCompletions(DecoHackPatchType.DOOM19, "Thing",  DEHThingDoom19Flag.values());
-		addFlagCompletions(DecoHackPatchType.BOOM,   "Thing",  DEHThingBoomFlag.values());
-		addFlagCompletions(DecoHackPatchType.MBF,    "Thing",  DEHThingMBFFlag.values());
-		addFlagCompletions(DecoHackPatchType.MBF21,  "Thing",  DEHThingMBF21Flag.values());
-		addFlagCompletions(DecoHackPatchType.MBF21,  "Weapon", DEHWeaponMBF21Flag.values());
+		addFlagCompletions(completions, DecoHackPatchType.DOOM19, "Thing",  DEHThingDoom19Flag.values());
+		addFlagCompletions(completions, DecoHackPatchType.BOOM,   "Thing",  DEHThingBoomFlag.values());
+		addFlagCompletions(completions, DecoHackPatchType.MBF,    "Thing",  DEHThingMBFFlag.values());
+		addFlagCompletions(completions, DecoHackPatchType.MBF21,  "Thing",  DEHThingMBF21Flag.values());
+		addFlagCompletions(completions, DecoHackPatchType.MBF21,  "Weapon", DEHWeaponMBF21Flag.values());
 
+		addCompletions(completions);
+	}
+
+	/**
+	 * Adds the matching symbols from the project's symbol index, if the text component 
+	 * has one (set as the client property {@link DecoHackSymbolIndex}.class).
+	 */
+	@Override
+	protected List<Completion> getCompletionsImpl(JTextComponent comp)
+	{
+		List<Completion> out = super.getCompletionsImpl(comp);
+		Object property = comp.getClientProperty(DecoHackSymbolIndex.class);
+		if (!(property instanceof DecoHackSymbolIndex))
+			return out;
+		
+		String text = getAlreadyEnteredText(comp);
+		if (ObjectUtils.isEmpty(text))
+			return out;
+
+		List<Symbol> symbols = ((DecoHackSymbolIndex)property).getDefinitionsByPrefix(text, PROJECT_SYMBOL_LIMIT);
+		if (symbols.isEmpty())
+			return out;
+		
+		out = new ArrayList<>(out);
+		for (Symbol symbol : symbols)
+			out.add(new ProjectSymbolCompletion(this, symbol));
+		Collections.sort(out);
+		return out;
 	}
 
 	/**
 	 * Adds define completions from parsing a resource.
+	 * @param out the output list.
 	 * @param type the patch type.
 	 * @param category the category.
 	 * @param resourcePath the resource path.
 	 * @param valueToNotesLookup lookup for summaries for specific defines.
 	 */
-	private void addDefineCompletions(DecoHackPatchType type, final String category, String resourcePath, Map<String, Consumer<HTMLWriter>> valueToNotesLookup)
+	private void addDefineCompletions(List<Completion> out, DecoHackPatchType type, final String category, String resourcePath, Map<String, Consumer<HTMLWriter>> valueToNotesLookup)
 	{
 		for (Map.Entry<String, String> entry : readDefines(resourcePath).entrySet())
-			createCompletion(type, category, entry.getKey(), entry.getValue(), valueToNotesLookup);
+			out.add(createCompletion(type, category, entry.getKey(), entry.getValue(), valueToNotesLookup));
 	}
 
 	/**
 	 * Adds define completions for strings.
+	 * @param out the output list.
 	 * @param resourceDoom19Path the path to the Doom 1.9 defines.
 	 * @param resourceBoomPath the path to the Boom defines.
 	 */
-	private void addStringDefineCompletions(String resourceDoom19Path, String resourceBoomPath)
+	private void addStringDefineCompletions(List<Completion> out, String resourceDoom19Path, String resourceBoomPath)
 	{
 		Map<String, String> doom19Defines = readDefines(resourceDoom19Path);
 		Map<String, String> boomDefines = readDefines(resourceBoomPath);
@@ -419,18 +467,19 @@ public class DecoHackCompletionProvider extends CommonCompletionProvider
 		stringKeys.addAll(doom19Defines.keySet());
 		stringKeys.addAll(boomDefines.keySet());
 		for (String key : stringKeys)
-			addCompletion(new StringDefineCompletion(this, key, doom19Defines.get(key), boomDefines.get(key)));
+			out.add(new StringDefineCompletion(this, key, doom19Defines.get(key), boomDefines.get(key)));
 	}
 	
 	/**
 	 * Adds alias completions from parsing a resource.
+	 * @param out the output list.
 	 * @param aliasType the type of alias ("thing" or "weapon").
 	 * @param type the patch type.
 	 * @param category the category.
 	 * @param resourcePath the resource path.
 	 * @param valueToNotesLookup lookup for summaries for specific defines.
 	 */
-	private void addAliasCompletions(String aliasType, DecoHackPatchType type, final String category, String resourcePath, Map<String, Consumer<HTMLWriter>> valueToNotesLookup)
+	private void addAliasCompletions(List<Completion> out, String aliasType, DecoHackPatchType type, final String category, String resourcePath, Map<String, Consumer<HTMLWriter>> valueToNotesLookup)
 	{
 		final String ALIAS_CLAUSE = "alias " + aliasType;
 
@@ -462,7 +511,7 @@ public class DecoHackCompletionProvider extends CommonCompletionProvider
 
 				value = tokenizer.nextToken();
 				
-				createCompletion(type, category, token, value, valueToNotesLookup);
+				out.add(createCompletion(type, category, token, value, valueToNotesLookup));
 			}
 		} 
 		catch (IOException e) 
@@ -473,11 +522,12 @@ public class DecoHackCompletionProvider extends CommonCompletionProvider
 	
 	/**
 	 * Adds flag completions from a flag enum.
+	 * @param out the output list.
 	 * @param type the patch type.
 	 * @param category the category.
 	 * @param flags the flags.
 	 */
-	private void addFlagCompletions(DecoHackPatchType type, String category, DEHFlag[] flags)
+	private void addFlagCompletions(List<Completion> out, DecoHackPatchType type, String category, DEHFlag[] flags)
 	{
 		for (int i = 0; i < flags.length; i++)
 		{
@@ -491,7 +541,7 @@ public class DecoHackCompletionProvider extends CommonCompletionProvider
 			final String prefix = sb.toString();
 			final String hexValue = "0x" + prefix + value;
 			
-			String summary = writeHTML((html) -> {
+			LazySummary summary = new LazySummary((html) -> {
 				html.push("div")
 					.tag("strong", token)
 					.text(" = ")
@@ -507,7 +557,7 @@ public class DecoHackCompletionProvider extends CommonCompletionProvider
 				html.tag("div", flag.getUsage());
 			});
 			
-			addCompletion(new BasicCompletion(this, token, type.name() + " " + category + " Flag (" + hexValue + ")", summary));
+			out.add(new FlagCompletion(this, token, type.name() + " " + category + " Flag (" + hexValue + ")", summary));
 		}
 	}
 	
@@ -551,11 +601,11 @@ public class DecoHackCompletionProvider extends CommonCompletionProvider
 		return defineMap;
 	}
 	
-	private void createCompletion(DecoHackPatchType type, final String category, final String token, final String value, Map<String, Consumer<HTMLWriter>> valueToNotesLookup)
+	private Completion createCompletion(DecoHackPatchType type, final String category, final String token, final String value, Map<String, Consumer<HTMLWriter>> valueToNotesLookup)
 	{
 		final Consumer<HTMLWriter> addendum = valueToNotesLookup != null ? valueToNotesLookup.get(value) : null;
 		
-		String summary = writeHTML((html) -> {
+		LazySummary summary = new LazySummary((html) -> {
 			html.push("div")
 				.tag("strong", token)
 				.text(" = ")
@@ -576,7 +626,7 @@ public class DecoHackCompletionProvider extends CommonCompletionProvider
 			}
 		});
 		
-		addCompletion(new DefineCompletion(this, type, token, value, addendum != null, summary));
+		return new DefineCompletion(this, type, token, value, addendum != null, summary);
 	}
 	
 	/**
@@ -584,6 +634,8 @@ public class DecoHackCompletionProvider extends CommonCompletionProvider
 	 */
 	protected static class DefineCompletion extends BasicCompletion
 	{
+		private final LazySummary summary;
+		
 		/**
 		 * Creates a define completion.
 		 * @param parent the completion provider.
@@ -593,11 +645,17 @@ public class DecoHackCompletionProvider extends CommonCompletionProvider
 		 * @param hardcode has hardcode notes.
 		 * @param summary the summary.
 		 */
-		public DefineCompletion(CompletionProvider parent, DecoHackPatchType type, String token, String value, boolean hardcode, String summary) 
+		public DefineCompletion(CompletionProvider parent, DecoHackPatchType type, String token, String value, boolean hardcode, LazySummary summary) 
 		{
 			super(parent, token);
 			setShortDescription("(" + type.name() + ") " + value + (hardcode ? " [Hardcode Warning]" : ""));
-			setSummary(summary);
+			this.summary = summary;
+		}
+		
+		@Override
+		public String getSummary()
+		{
+			return summary.get();
 		}
 		
 		@Override
@@ -613,6 +671,8 @@ public class DecoHackCompletionProvider extends CommonCompletionProvider
 	 */
 	protected static class StringDefineCompletion extends BasicCompletion
 	{
+		private final LazySummary summary;
+		
 		/**
 		 * Creates a string define completion.
 		 * @param parent the completion provider.
@@ -624,7 +684,7 @@ public class DecoHackCompletionProvider extends CommonCompletionProvider
 		{
 			super(parent, token);
 			setShortDescription("(String Macro)");
-			setSummary(writeHTML((html) -> {
+			this.summary = new LazySummary((html) -> {
 				html.push("div")
 					.tag("strong", token)
 				.pop();
@@ -647,7 +707,109 @@ public class DecoHackCompletionProvider extends CommonCompletionProvider
 						.tag("span", boomValue)
 					.pop();
 				}
-			}));
+			});
+		}
+		
+		@Override
+		public String getSummary()
+		{
+			return summary.get();
+		}
+		
+		@Override
+		public String toString() 
+		{
+			return getReplacementText() + " - " + getShortDescription();
+		}
+
+	}
+	
+	/**
+	 * A completion object for flags.
+	 */
+	protected static class FlagCompletion extends BasicCompletion
+	{
+		private final LazySummary summary;
+		
+		/**
+		 * Creates a flag completion.
+		 * @param parent the completion provider.
+		 * @param token the flag name.
+		 * @param shortDescription the short description.
+		 * @param summary the summary.
+		 */
+		public FlagCompletion(CompletionProvider parent, String token, String shortDescription, LazySummary summary) 
+		{
+			super(parent, token, shortDescription);
+			this.summary = summary;
+		}
+		
+		@Override
+		public String getSummary()
+		{
+			return summary.get();
+		}
+		
+	}
+	
+	/**
+	 * A completion object for symbols defined in project files.
+	 */
+	protected static class ProjectSymbolCompletion extends BasicCompletion
+	{
+		private final LazySummary summary;
+		
+		/**
+		 * Creates a project symbol completion.
+		 * @param parent the completion provider.
+		 * @param symbol the indexed symbol.
+		 */
+		public ProjectSymbolCompletion(CompletionProvider parent, final Symbol symbol) 
+		{
+			super(parent, symbol.getName());
+			setShortDescription("(" + getSymbolTypeName(symbol.getType()) + ") " + symbol.getValue());
+			this.summary = new LazySummary((html) -> {
+				html.push("div")
+					.tag("strong", symbol.getName())
+				.pop();
+				if (!ObjectUtils.isEmpty(symbol.getValue()))
+				{
+					html.push("div")
+						.tag("em", getSymbolTypeName(symbol.getType()))
+						.text(" = ")
+						.tag("span", symbol.getValue())
+					.pop();
+				}
+				html.push("div").html("&nbsp;").pop();
+				html.push("div")
+					.text("Defined in ")
+					.tag("code", symbol.getLocation().getFile().getPath())
+					.text(", line " + symbol.getLocation().getLine() + ".")
+				.pop();
+			});
+		}
+		
+		private static String getSymbolTypeName(SymbolType type)
+		{
+			switch (type)
+			{
+				case DEFINE:
+					return "Macro";
+				case THING_ALIAS:
+					return "Thing Alias";
+				case WEAPON_ALIAS:
+					return "Weapon Alias";
+				case STATE_LABEL:
+					return "State Label";
+				default:
+					return type.name();
+			}
+		}
+		
+		@Override
+		public String getSummary()
+		{
+			return summary.get();
 		}
 		
 		@Override
@@ -663,6 +825,8 @@ public class DecoHackCompletionProvider extends CommonCompletionProvider
 	 */
 	protected static class PointerCompletion extends TemplateCompletion
 	{
+		private final LazySummary summary;
+		
 		/**
 		 * Creates a pointer completion.
 		 * @param parent the completion provider.
@@ -675,8 +839,15 @@ public class DecoHackCompletionProvider extends CommonCompletionProvider
 				getInstructions(pointer.getUsage()), 
 				getFullSignatureTemplate(pointer), 
 				getTypeText(pointer) + " " + getInstructions(pointer.getUsage()), 
-				getFunctionDescriptionHTML(pointer)
+				null
 			);
+			this.summary = new LazySummary((html) -> writeFunctionUsageHTML(html, pointer));
+		}
+		
+		@Override
+		public String getSummary()
+		{
+			return summary.get();
 		}
 		
 		@Override
@@ -746,11 +917,6 @@ public class DecoHackCompletionProvider extends CommonCompletionProvider
 			return sb.toString();
 		}
 
-		private static String getFunctionDescriptionHTML(final DEHActionPointer pointer)
-		{
-			return writeHTML((html) -> writeFunctionUsageHTML(html, pointer));
-		}
-
 		private static void writeFunctionUsageHTML(HTMLWriter html, DEHActionPointer pointer)
 		{
 			DEHActionPointer.Usage usage = pointer.getUsage();
@@ -5,7 +5,10 @@
  ******************************************************************************/
 package net.mtrop.doom.tools.gui.managers.parsing;
 
-import com.blackrook.rookscript.lang.ScriptFunctionType;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fife.ui.autocomplete.Completion;
 
 import net.mtrop.doom.tools.DoomMakeMain;
 import net.mtrop.doom.tools.WadScriptMain.Resolver;
@@ -19,9 +22,10 @@ public class DoomMakeCompletionProvider extends WadScriptCompletionProvider
 	public DoomMakeCompletionProvider()
 	{
 		super();
+		List<Completion> completions = new ArrayList<>(256);
 		for (Resolver r : DoomMakeMain.getAllDoomMakeResolvers())
-			for (ScriptFunctionType type : r.resolver.getFunctions())
-				addCompletion(new FunctionCompletion(this, r.namespace, type));
+			addFunctionCompletions(completions, r);
+		addCompletions(completions);
 	}
 }
 
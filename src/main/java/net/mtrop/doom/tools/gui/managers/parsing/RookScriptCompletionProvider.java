@@ -5,9 +5,10 @@
  ******************************************************************************/
 package net.mtrop.doom.tools.gui.managers.parsing;
 
-import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.List;
 
+import org.fife.ui.autocomplete.Completion;
 import org.fife.ui.autocomplete.CompletionProvider;
 import org.fife.ui.autocomplete.TemplateCompletion;
 
@@ -18,7 +19,6 @@ import com.blackrook.rookscript.lang.ScriptFunctionType.Usage.TypeUsage;
 import net.mtrop.doom.tools.WadScriptMain;
 import net.mtrop.doom.tools.WadScriptMain.Resolver;
 import net.mtrop.doom.tools.struct.HTMLWriter;
-import net.mtrop.doom.tools.struct.HTMLWriter.Options;
 
 /**
  * RookScript completion provider.
@@ -29,12 +29,24 @@ public class RookScriptCompletionProvider extends CommonCompletionProvider
 	public RookScriptCompletionProvider()
 	{
 		super();
+		List<Completion> completions = new ArrayList<>(256);
 		for (Resolver r : WadScriptMain.getAllBaseResolvers())
-			for (ScriptFunctionType type : r.resolver.getFunctions())
-				addCompletion(new FunctionCompletion(this, r.namespace, type));
+			addFunctionCompletions(completions, r);
 		
 		for (RookScriptTemplateCompletion completion : RookScriptTemplateCompletion.values())
-			addCompletion(completion.createCompletion(this));
+			completions.add(completion.createCompletion(this));
+		addCompletions(completions);
+	}
+	
+	/**
+	 * Adds completions for all of the functions in a resolver.
+	 * @param out the output list.
+	 * @param resolver the resolver.
+	 */
+	protected void addFunctionCompletions(List<Completion> out, Resolver resolver)
+	{
+		for (ScriptFunctionType type : resolver.resolver.getFunctions())
+			out.add(new FunctionCompletion(this, resolver.namespace, type));
 	}
 	
 	/**
@@ -42,6 +54,8 @@ public class RookScriptCompletionProvider extends CommonCompletionProvider
 	 */
 	protected static class FunctionCompletion extends TemplateCompletion
 	{
+		private final LazySummary summary;
+		
 		/**
 		 * Creates a RookScript function completion.
 		 * @param parent the completion provider.
@@ -55,8 +69,15 @@ public class RookScriptCompletionProvider extends CommonCompletionProvider
 				getInstructions(type.getUsage()), 
 				getFullSignatureTemplate(namespace, type), 
 				getInstructions(type.getUsage()), 
-				getFunctionDescriptionHTML(namespace, type)
+				null
 			);
+			this.summary = new LazySummary((html) -> writeFunctionUsageHTML(html, namespace, type.name().toLowerCase(), type.getUsage()));
+		}
+		
+		@Override
+		public String getSummary()
+		{
+			return summary.get();
 		}
 		
 		@Override
@@ -99,18 +120,6 @@ public class RookScriptCompletionProvider extends CommonCompletionProvider
 			return sb.toString();
 		}
 
-		private static String getFunctionDescriptionHTML(String namespace, ScriptFunctionType type)
-		{
-			StringWriter out = new StringWriter(1024);
-			try (HTMLWriter html = new HTMLWriter(out, Options.SLASHES_IN_SINGLE_TAGS)) 
-			{
-				html.push("html").push("body");
-				writeFunctionUsageHTML(html, namespace, type.name().toLowerCase(), type.getUsage());
-				html.end();
-			} 
-			return out.toString();
-		}
-
 		private static void writeFunctionTypeUsageHTML(HTMLWriter html, List<TypeUsage> typeUsages)
 		{
 			html.push("ul");
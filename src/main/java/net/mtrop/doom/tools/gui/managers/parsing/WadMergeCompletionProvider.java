@@ -7,7 +7,10 @@ package net.mtrop.doom.tools.gui.managers.parsing;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
 
+import org.fife.ui.autocomplete.Completion;
 import org.fife.ui.autocomplete.CompletionProvider;
 import org.fife.ui.autocomplete.TemplateCompletion;
 
@@ -22,8 +25,10 @@ public class WadMergeCompletionProvider extends CommonCompletionProvider
 	public WadMergeCompletionProvider()
 	{
 		super();
+		List<Completion> completions = new ArrayList<>(64);
 		for (WadMergeCommand command : WadMergeCommand.values())
-			addCompletion(new CommandCompletion(this, command));
+			completions.add(new CommandCompletion(this, command));
+		addCompletions(completions);
 	}
 	
 	/**
@@ -31,7 +36,7 @@ public class WadMergeCompletionProvider extends CommonCompletionProvider
 	 */
 	public class CommandCompletion extends TemplateCompletion
 	{
-		private final String summaryText;
+		private final LazySummary summaryText;
 		
 		protected CommandCompletion(CompletionProvider parent, WadMergeCommand command) 
 		{
@@ -41,18 +46,20 @@ public class WadMergeCompletionProvider extends CommonCompletionProvider
 				command.usage().toLowerCase().replace("[", "${").replace("]", "}")
 			);
 			
-			final ByteArrayOutputStream bos = new ByteArrayOutputStream(1024);
-			try (PrintStream textOut = new PrintStream(bos, true))
-			{
-				command.help(textOut);
-			}
-			this.summaryText = writeHTML((html) -> html.tag("pre", (new String(bos.toByteArray()))));
+			this.summaryText = new LazySummary((html) -> {
+				final ByteArrayOutputStream bos = new ByteArrayOutputStream(1024);
+				try (PrintStream textOut = new PrintStream(bos, true))
+				{
+					command.help(textOut);
+				}
+				html.tag("pre", (new String(bos.toByteArray())));
+			});
 		}
 		
 		@Override
 		public String getSummary()
 		{
-			return summaryText;
+			return summaryText.get();
 		}
 
 	}
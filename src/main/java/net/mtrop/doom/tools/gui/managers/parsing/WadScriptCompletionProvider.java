@@ -5,7 +5,10 @@
  ******************************************************************************/
 package net.mtrop.doom.tools.gui.managers.parsing;
 
-import com.blackrook.rookscript.lang.ScriptFunctionType;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fife.ui.autocomplete.Completion;
 
 import net.mtrop.doom.tools.WadScriptMain;
 import net.mtrop.doom.tools.WadScriptMain.Resolver;
@@ -18,9 +21,10 @@ public class WadScriptCompletionProvider extends RookScriptCompletionProvider
 {
 	public WadScriptCompletionProvider()
 	{
+		List<Completion> completions = new ArrayList<>(256);
 		for (Resolver r : WadScriptMain.getAllWadScriptResolvers())
-			for (ScriptFunctionType type : r.resolver.getFunctions())
-				addCompletion(new FunctionCompletion(this, r.namespace, type));
+			addFunctionCompletions(completions, r);
+		addCompletions(completions);
 	}
 }
 
@@ -17,6 +17,9 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.Action;
@@ -203,12 +206,21 @@ public class DoomToolsMainWindow extends JFrame
 		out.setWindowWidth(getWidth());
 		out.setWindowHeight(getHeight());
 		
-		try (Writer writer = new OutputStreamWriter(new FileOutputStream(workspaceFile), "UTF-8"))
+		// Write to a temporary file first so that a failed save does not wreck the previous workspace.
+		File tempFile = new File(workspaceFile.getAbsolutePath() + ".tmp");
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"))
 		{
 			JSONWriter.writeJSON(out, JSON_OPTIONS, writer);
+			writer.close();
+			try {
+				Files.move(tempFile.toPath(), workspaceFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile.toPath(), workspaceFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
 		} 
 		catch (IOException e) 
 		{
+			tempFile.delete();
 			LOG.errorf(e, "I/O Error saving workspace: %s", workspaceFile.getAbsolutePath());
 			SwingUtils.error(this, language.getText("doomtools.workspace.saveas.notwritten", workspaceFile.getAbsolutePath()));
 			return false;
@@ -20,6 +20,11 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -40,6 +45,7 @@ import javax.swing.JPopupMenu;
 import javax.swing.JProgressBar;
 import javax.swing.JTree;
 import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 import javax.swing.TransferHandler;
 import javax.swing.event.TreeExpansionEvent;
 import javax.swing.event.TreeExpansionListener;
@@ -59,6 +65,7 @@ import net.mtrop.doom.tools.gui.managers.DoomToolsGUIUtils;
 import net.mtrop.doom.tools.gui.managers.DoomToolsLanguageManager;
 import net.mtrop.doom.tools.gui.managers.DoomToolsLogger;
 import net.mtrop.doom.tools.gui.managers.DoomToolsTaskManager;
+import net.mtrop.doom.tools.gui.managers.DoomToolsTaskManager.Lane;
 import net.mtrop.doom.tools.struct.InstancedFuture;
 import net.mtrop.doom.tools.struct.LoggingFactory.Logger;
 import net.mtrop.doom.tools.struct.swing.ClipboardUtils;
@@ -263,6 +270,49 @@ public class DirectoryTreePanel extends JPanel
 		((FileTreeModel)fileTree.getModel()).reload();
 	}
 	
+	/**
+	 * Notifies this tree that a file was created outside of it (for example, from a file watcher).
+	 * Only directories that were already loaded are updated - unloaded ones pick up the file when they are expanded.
+	 * Can be called from any thread.
+	 * @param file the file created.
+	 */
+	public void fileCreated(File file)
+	{
+		final File created = FileUtils.canonizeFile(file);
+		SwingUtils.invoke(() -> 
+		{
+			File parentFile = created.getParentFile();
+			FileNode parentNode = parentFile != null ? getLoadedNodeForFile(parentFile) : null;
+			if (parentNode == null)
+				return;
+			int index = parentNode.addLoadedChild(created);
+			if (index >= 0)
+				((FileTreeModel)fileTree.getModel()).nodesWereInserted(parentNode, new int[]{index});
+		});
+	}
+	
+	/**
+	 * Notifies this tree that a file was deleted outside of it (for example, from a file watcher).
+	 * Can be called from any thread.
+	 * @param file the file deleted.
+	 */
+	public void fileDeleted(File file)
+	{
+		final File deleted = FileUtils.canonizeFile(file);
+		SwingUtils.invoke(() -> 
+		{
+			FileNode node = getLoadedNodeForFile(deleted);
+			if (node == null || node.parent == null)
+				return;
+			FileNode parentNode = node.parent;
+			int index = parentNode.getLoadedIndex(node);
+			if (index < 0)
+				return;
+			parentNode.remove(index);
+			((FileTreeModel)fileTree.getModel()).nodesWereRemoved(parentNode, new int[]{index}, new Object[]{node});
+		});
+	}
+	
 	/**
 	 * Sets the new root directory (temporarily).
 	 * @param rootDirectory
@@ -400,6 +450,8 @@ public class DirectoryTreePanel extends JPanel
 				nextFile = new File(filePathString);
 			}
 
+			// Path lookups need the directory contents now, not later.
+			currentNode.loadChildren();
 			int index = currentNode.getIndex(new FileNode(currentNode, nextFile));
 			if (index >= 0)
 			{
@@ -417,6 +469,32 @@ public class DirectoryTreePanel extends JPanel
 		return new TreePath(treeNodes.toArray(new Object[treeNodes.size()]));
 	}
 	
+	// Gets the node for a file path, but only if all of the directories on the way to it are loaded.
+	private FileNode getLoadedNodeForFile(File filePath)
+	{
+		FileNode rootNode = (FileNode)((FileTreeModel)fileTree.getModel()).getRoot();
+		if (rootNode.file == null)
+			return null;
+		
+		LinkedList<File> pathFiles = new LinkedList<>();
+		File current = filePath;
+		while (current != null && !FileUtils.filePathEquals(current, rootNode.file))
+		{
+			pathFiles.push(current);
+			current = current.getParentFile();
+		}
+		if (current == null)
+			return null;
+		
+		FileNode currentNode = rootNode;
+		for (File file : pathFiles)
+		{
+			if ((currentNode = currentNode.getLoadedChild(file)) == null)
+				return null;
+		}
+		return currentNode;
+	}
+	
 	private String getNewName(File targetDirectory, String namePrefix, String title, String message)
 	{
 		int i = 1;
@@ -617,7 +695,8 @@ public class DirectoryTreePanel extends JPanel
 	 */
 	private void onPasteFiles(File parent, File[] filesToPaste)
 	{
-		int fileCount = countFilesToCopy(filesToPaste);
+		// Full count (with directory contents) is done in the background during the copy.
+		int fileCount = filesToPaste.length;
 		
 		String dialogtitle = language.getText("dirtree.modal.paste.title");
 		String dialogLabel = language.getText("dirtree.modal.paste.message", fileCount, parent.getAbsolutePath());
@@ -643,7 +722,8 @@ public class DirectoryTreePanel extends JPanel
 	 */
 	private void onDroppedFiles(File[] filesToPaste)
 	{
-		int fileCount = countFilesToCopy(filesToPaste);
+		// Full count (with directory contents) is done in the background during the copy.
+		int fileCount = filesToPaste.length;
 		File parent = ((FileNode)fileTree.getDropLocation().getPath().getLastPathComponent()).file;
 		if (!parent.isDirectory())
 			parent = parent.getParentFile();
@@ -758,12 +838,10 @@ public class DirectoryTreePanel extends JPanel
 		final AtomicBoolean cancelSwitch = new AtomicBoolean(false);
 		final AtomicInteger result = new AtomicInteger(0);
 		
-		final int fileCount = countFilesToCopy(filesToPaste);
-		
 		JLabel fileLabel = label();
 		JProgressBar progressBar = progressBar();
+		progressBar.setIndeterminate(true);
 		progressBar.setMinimum(0);
-		progressBar.setMaximum(fileCount);
 		progressBar.setPreferredSize(dimension(100, 20));
 		
 		final Modal<Void> modal = modal(language.getText(titleKey), containerOf(dimension(200, 64), gridLayout(2, 1, 0, 4),
@@ -771,12 +849,17 @@ public class DirectoryTreePanel extends JPanel
 			node(BorderLayout.SOUTH, progressBar)
 		));
 		
-		InstancedFuture<Void> copyTask = tasks.spawn(createCopyTask(parent, filesToPaste, overwrite, cancelSwitch, result, (file) -> {
-			fileLabel.setText(file != null ? file.getName() + "..." : "");
-			progressBar.setValue(result.get());
-			if (result.get() == fileCount)
-				modal.dispose();
-		}));
+		InstancedFuture<Void> copyTask = tasks.spawn(Lane.IO, cancelSwitch, createCopyTask(parent, filesToPaste, overwrite, cancelSwitch, result, 
+			(fileCount) -> SwingUtils.invoke(() -> {
+				progressBar.setMaximum(fileCount);
+				progressBar.setIndeterminate(false);
+			}),
+			(file) -> SwingUtils.invoke(() -> {
+				fileLabel.setText(file != null ? file.getName() + "..." : "");
+				progressBar.setValue(result.get());
+			}),
+			() -> SwingUtils.invoke(modal::dispose)
+		));
 		
 		modal.openThenDispose(); // on close, continue
 		cancelSwitch.set(true);  // cancel to stop task if not over.
@@ -787,22 +870,41 @@ public class DirectoryTreePanel extends JPanel
 		reloadNode((FileNode)getTreePathForFile(parent).getLastPathComponent());
 	}
 
-	private int countFilesToCopy(File[] toCopy)
+	// Returns -1 if cancelled.
+	private static int countFilesToCopy(File[] toCopy, AtomicBoolean cancelSwitch)
 	{
 		int out = 0;
 		for (int i = 0; i < toCopy.length; i++)
 		{
+			if (cancelSwitch.get())
+				return -1;
 			File file = toCopy[i];
 			if (file.isDirectory())
-				out += countFilesToCopy(file.listFiles());
+			{
+				int count = countFilesToCopy(listDirectory(file), cancelSwitch);
+				if (count < 0)
+					return -1;
+				out += count;
+			}
 			out++;
 		}
 		return out;
 	}
 	
-	private Runnable createCopyTask(File parent, File[] toCopy, boolean overwrite, AtomicBoolean cancelSwitch, AtomicInteger result, Consumer<File> eachFile)
+	private Runnable createCopyTask(File parent, File[] toCopy, boolean overwrite, AtomicBoolean cancelSwitch, AtomicInteger result, Consumer<Integer> onCount, Consumer<File> eachFile, Runnable onDone)
 	{
-		return () -> copyFolder(parent, toCopy, overwrite, cancelSwitch, result, eachFile);
+		return () -> 
+		{
+			try {
+				int fileCount = countFilesToCopy(toCopy, cancelSwitch);
+				if (fileCount < 0)
+					return;
+				onCount.accept(fileCount);
+				copyFolder(parent, toCopy, overwrite, cancelSwitch, result, eachFile);
+			} finally {
+				onDone.run();
+			}
+		};
 	}
 	
 	private void copyFolder(File parent, File[] toCopy, boolean overwrite, AtomicBoolean cancelSwitch, AtomicInteger result, Consumer<File> eachFile)
@@ -846,7 +948,7 @@ public class DirectoryTreePanel extends JPanel
 			else
 			{
 				FileUtils.createPath(target.getAbsolutePath());
-				copyFolder(target, source.listFiles(), overwrite, cancelSwitch, result, eachFile);
+				copyFolder(target, listDirectory(source), overwrite, cancelSwitch, result, eachFile);
 				result.incrementAndGet();
 				eachFile.accept(target);
 			}
@@ -1121,7 +1223,10 @@ public class DirectoryTreePanel extends JPanel
 		{
 			JLabel label = (JLabel)super.getTreeCellRendererComponent(tree, value, sel, expanded, leaf, row, hasFocus);
 			if (value instanceof FileNode)
-				label.setText(((FileNode)value).file.getName());
+			{
+				FileNode node = (FileNode)value;
+				label.setText(node.placeholder ? DoomToolsLanguageManager.get().getText("dirtree.loading") : node.file.getName());
+			}
 			return label;
 		}
 	}
@@ -1138,6 +1243,12 @@ public class DirectoryTreePanel extends JPanel
 		private File file;
 		/** List of children. */
 		private ArrayList<FileNode> children;
+		/** If true, this is the "loading" node shown while the parent's children are read. */
+		private boolean placeholder;
+		/** If true, the children are being read in the background. */
+		private boolean loading;
+		/** Incremented on each clear, so that stale background reads are thrown away. */
+		private int generation;
 		
 		/**
 		 * Creates a node.
@@ -1149,6 +1260,23 @@ public class DirectoryTreePanel extends JPanel
 			this.parent = parent;
 			this.file = FileUtils.canonizeFile(file);
 			this.children = null;
+			this.placeholder = false;
+			this.loading = false;
+			this.generation = 0;
+		}
+
+		/**
+		 * Creates a placeholder node.
+		 * @param parent the parent node.
+		 */
+		private FileNode(FileNode parent)
+		{
+			this.parent = parent;
+			this.file = parent.file;
+			this.children = new ArrayList<>(0);
+			this.placeholder = true;
+			this.loading = false;
+			this.generation = 0;
 		}
 
 		/**
@@ -1157,25 +1285,148 @@ public class DirectoryTreePanel extends JPanel
 		public synchronized void clearChildren()
 		{
 			children = null;
+			loading = false;
+			generation++;
 		}
 		
 		/**
-		 * Refreshes the children.
+		 * Refreshes the children, if not loaded.
+		 * The children are read in the background, and a placeholder node is
+		 * shown until they are - the model is notified when they arrive.
 		 */
 		public synchronized void refreshChildren()
 		{
-			if (children != null)
+			if (children != null || placeholder)
 				return;
 			
-			File[] files = file.listFiles();
-			if (files == null)
+			if (file == null || !file.isDirectory())
+			{
+				children = new ArrayList<>(0);
 				return;
+			}
+			
+			children = new ArrayList<>(1);
+			children.add(new FileNode(this));
+			loading = true;
+			
+			final int loadGeneration = generation;
+			tasks.spawn(() -> 
+			{
+				final List<FileNode> loaded = createChildren(listDirectory(file));
+				SwingUtils.invoke(() -> 
+				{
+					synchronized (this)
+					{
+						if (!loading || generation != loadGeneration)
+							return;
+						children = new ArrayList<>(loaded);
+						loading = false;
+					}
+					((FileTreeModel)fileTree.getModel()).nodeStructureChanged(this);
+				});
+			});
+		}
+		
+		/**
+		 * Loads the children now, if they are not loaded or are still loading.
+		 * If the placeholder is showing, the children are swapped in and the model is notified
+		 * in the same step on the Swing thread, so the tree never sees one without the other.
+		 */
+		public void loadChildren()
+		{
+			synchronized (this)
+			{
+				if (placeholder || (children != null && !loading))
+					return;
+				// Never shown - nothing to notify.
+				if (!loading)
+				{
+					children = new ArrayList<>(createChildren(file != null ? listDirectory(file) : NO_FILES));
+					return;
+				}
+			}
 			
-			Arrays.sort(files, FileUtils.getFileListComparator());
+			final List<FileNode> loaded = createChildren(listDirectory(file));
+			Runnable swap = () -> 
+			{
+				synchronized (this)
+				{
+					if (!loading)
+						return;
+					children = new ArrayList<>(loaded);
+					// Discard the pending background read.
+					loading = false;
+					generation++;
+				}
+				((FileTreeModel)fileTree.getModel()).nodeStructureChanged(this);
+			};
 			
-			children = new ArrayList<>(files.length);
+			if (SwingUtilities.isEventDispatchThread())
+			{
+				swap.run();
+			}
+			else
+			{
+				try {
+					SwingUtils.invokeAndWait(swap);
+				} catch (InvocationTargetException e) {
+					LOG.errorf(e.getCause(), "Could not load directory %s", file.getPath());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		
+		/**
+		 * Gets a child node, only if children are loaded.
+		 * @param childFile the child file.
+		 * @return the corresponding node, or null if not found or not loaded.
+		 */
+		public synchronized FileNode getLoadedChild(File childFile)
+		{
+			if (children == null || loading)
+				return null;
+			for (FileNode node : children)
+				if (FileUtils.filePathEquals(node.file, childFile))
+					return node;
+			return null;
+		}
+		
+		/**
+		 * Gets a child node's index, only if children are loaded.
+		 * @param node the child node.
+		 * @return the corresponding index, or -1 if not found or not loaded.
+		 */
+		public synchronized int getLoadedIndex(FileNode node)
+		{
+			if (children == null || loading)
+				return -1;
+			return children.indexOf(node);
+		}
+		
+		/**
+		 * Adds a child node in sorted order, only if children are loaded and it does not exist.
+		 * @param childFile the child file.
+		 * @return the index of the new node, or -1 if not added.
+		 */
+		public synchronized int addLoadedChild(File childFile)
+		{
+			if (children == null || loading || getLoadedChild(childFile) != null)
+				return -1;
+			FileNode node = new FileNode(this, childFile);
+			int index = 0;
+			while (index < children.size() && CHILD_COMPARATOR.compare(children.get(index), node) < 0)
+				index++;
+			children.add(index, node);
+			return index;
+		}
+		
+		private List<FileNode> createChildren(File[] files)
+		{
+			List<FileNode> out = new ArrayList<>(files.length);
 			for (int i = 0; i < files.length; i++) 
-				children.add(new FileNode(this, files[i]));
+				out.add(new FileNode(this, files[i]));
+			return out;
 		}
 
 		@Override
@@ -1208,13 +1459,13 @@ public class DirectoryTreePanel extends JPanel
 		@Override
 		public boolean getAllowsChildren() 
 		{
-			return file.isDirectory();
+			return !placeholder && file.isDirectory();
 		}
 
 		@Override
 		public boolean isLeaf() 
 		{
-			return !file.isDirectory();
+			return placeholder || !file.isDirectory();
 		}
 
 		@Override
@@ -1292,6 +1543,8 @@ public class DirectoryTreePanel extends JPanel
 			if (obj instanceof FileNode)
 			{
 				FileNode node = (FileNode)obj;
+				if (placeholder || node.placeholder)
+					return this == node;
 				return CHILD_COMPARATOR.compare(this, node) == 0;
 			}
 			else
@@ -1347,6 +1600,26 @@ public class DirectoryTreePanel extends JPanel
 
 	// =======================================================================
 
+	// Lists a directory's contents, sorted.
+	// Uses a directory stream instead of File.listFiles() so that huge directories are not buffered twice.
+	private static File[] listDirectory(File directory)
+	{
+		List<File> out = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath()))
+		{
+			for (Path path : stream)
+				out.add(path.toFile());
+		} 
+		catch (IOException | InvalidPathException | SecurityException e) 
+		{
+			LOG.warnf("Could not list directory %s: %s", directory.getPath(), e.getLocalizedMessage());
+			return NO_FILES;
+		}
+		File[] files = out.toArray(new File[out.size()]);
+		Arrays.sort(files, FileUtils.getFileListComparator());
+		return files;
+	}
+
 	// Make an Enumeration from an Iterator.
 	private static <T> Enumeration<T> enumeration(final Iterator<T> iter)
 	{
@@ -62,6 +62,8 @@ public class DoomMakeExecutionPanel extends JPanel
     private DoomMakeProjectTargetListPanel listPanel;
     /** Checkbox for flagging auto-build. */
     private JCheckBox autoBuildCheckbox;
+    /** Checkbox for profiling a build. */
+    private JCheckBox profileCheckbox;
     /** Target run action. */
     private Action targetRunAction;
 
@@ -109,6 +111,7 @@ public class DoomMakeExecutionPanel extends JPanel
 			else
 				shutDownAgent();
 		});
+		this.profileCheckbox = checkBox(language.getText("doommake.project.profile"), false, (v) -> {});
 		
 		this.targetRunAction = actionItem(language.getText("doommake.project.buildaction"), (e) -> runCurrentTarget());
 
@@ -136,7 +139,10 @@ public class DoomMakeExecutionPanel extends JPanel
 						node(scroll(listPanel))
 					)),
 					node(BorderLayout.SOUTH, containerOf(borderLayout(0, 4),
-						node(BorderLayout.CENTER, autoBuildCheckbox),
+						node(BorderLayout.CENTER, containerOf(borderLayout(4, 0),
+							node(BorderLayout.WEST, autoBuildCheckbox),
+							node(BorderLayout.CENTER, profileCheckbox)
+						)),
 						node(BorderLayout.EAST, button(targetRunAction))
 					))
 				))
@@ -294,7 +300,7 @@ public class DoomMakeExecutionPanel extends JPanel
 			{
 				try {
 					statusPanel.setActivityMessage(language.getText("doommake.project.build.message.running", target));
-					int result = appCommon.callDoomMake(projectDirectory, target, true, NO_ARGS, outputStream, outputStream, null).get();
+					int result = appCommon.callDoomMake(projectDirectory, target, true, false, NO_ARGS, outputStream, outputStream, null).get();
 					if (result != 0)
 						statusPanel.setErrorMessage(language.getText("doommake.project.build.message.error"));
 					else
@@ -337,7 +343,7 @@ public class DoomMakeExecutionPanel extends JPanel
 		if (currentTarget == null)
 			return;
 		
-		appCommon.onExecuteDoomMake(this, outputPanel != null ? outputPanel : new DoomToolsTextOutputPanel(), statusPanel, outputPanel != null, projectDirectory, null, currentTarget, NO_ARGS, false,
+		appCommon.onExecuteDoomMake(this, outputPanel != null ? outputPanel : new DoomToolsTextOutputPanel(), statusPanel, outputPanel != null, projectDirectory, null, currentTarget, NO_ARGS, false, profileCheckbox.isSelected(),
 			()->updateTargetsEnabled(false), ()->updateTargetsEnabled(true)
 		);
 	}
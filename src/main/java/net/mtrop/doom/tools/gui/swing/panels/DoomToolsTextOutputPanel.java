@@ -6,23 +6,27 @@
 package net.mtrop.doom.tools.gui.swing.panels;
 
 import java.awt.Font;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintStream;
-import java.io.Reader;
-import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 
 import javax.swing.JTextArea;
-
-import net.mtrop.doom.tools.struct.util.IOUtils;
+import javax.swing.Timer;
+import javax.swing.text.BadLocationException;
 
 /**
  * Text output panel.
  * This panel also provides two streams for writing to the text panel like a console.
  * Both streams are synchronized such that output does not step on each other.
+ * <p>
+ * Written text is collected and added to the text area in batches on the Swing thread,
+ * at most once per frame, and the oldest lines are dropped once there are more than
+ * a maximum amount of lines (see {@link #setMaxLines(int)}).
  * @author Matthew Tropiano
  */
 public class DoomToolsTextOutputPanel extends JTextArea
@@ -31,7 +35,22 @@ public class DoomToolsTextOutputPanel extends JTextArea
 
 	private static final Font DEFAULT_FONT = new Font("Monospaced", Font.PLAIN, 12);
 	
+	/** Default maximum amount of lines kept. */
+	public static final int DEFAULT_MAX_LINES = 50000;
+	/** Milliseconds between batched updates. */
+	private static final int FRAME_MILLIS = 33;
+	/** Average characters per line, for guessing how much pending text to keep. */
+	private static final int PENDING_CHARS_PER_LINE = 128;
+
 	private Object printMutex;
+	/** Text waiting to be added on the next update. */
+	private StringBuilder pending;
+	/** If true, an update is scheduled. */
+	private boolean updateScheduled;
+	/** The update timer. */
+	private Timer updateTimer;
+	/** Maximum amount of lines. */
+	private int maxLines;
 	
 	/**
 	 * Creates a new output panel.
@@ -40,10 +59,37 @@ public class DoomToolsTextOutputPanel extends JTextArea
 	{
 		super(25, 84);
 		this.printMutex = new Object();
+		this.pending = new StringBuilder(1024);
+		this.updateScheduled = false;
+		this.updateTimer = new Timer(FRAME_MILLIS, (e) -> update());
+		this.updateTimer.setRepeats(false);
+		this.updateTimer.setCoalesce(false); // coalescing is done with updateScheduled - the timer dropping an event would lose text.
+		this.maxLines = DEFAULT_MAX_LINES;
 		setFont(DEFAULT_FONT);
 		setEditable(false);
 	}
 
+	/**
+	 * Sets the maximum amount of lines to keep in this panel.
+	 * Once the output goes past this amount, the oldest lines are removed.
+	 * @param maxLines the maximum amount of lines (at least 1).
+	 */
+	public void setMaxLines(int maxLines)
+	{
+		synchronized (printMutex)
+		{
+			this.maxLines = Math.max(1, maxLines);
+		}
+	}
+
+	/**
+	 * @return the maximum amount of lines kept in this panel.
+	 */
+	public int getMaxLines()
+	{
+		return maxLines;
+	}
+
 	/**
 	 * Writes a character to this panel.
 	 * @param c the character.
@@ -52,8 +98,8 @@ public class DoomToolsTextOutputPanel extends JTextArea
 	{
 		synchronized (printMutex) 
 		{
-			append(String.valueOf(c));
-			setCaretPosition(getDocument().getLength());
+			pending.append(c);
+			scheduleUpdate();
 		}
 	}
 	
@@ -62,11 +108,21 @@ public class DoomToolsTextOutputPanel extends JTextArea
 	 * @param str the string.
 	 */
 	public void writeString(String str)
+	{
+		writeChars(str);
+	}
+
+	/**
+	 * Writes a sequence of characters to this panel.
+	 * @param chars the characters.
+	 */
+	public void writeChars(CharSequence chars)
 	{
 		synchronized (printMutex) 
 		{
-			append(str);
-			setCaretPosition(getDocument().getLength());
+			pending.append(chars);
+			trimPending();
+			scheduleUpdate();
 		}
 	}
 	
@@ -102,15 +158,76 @@ public class DoomToolsTextOutputPanel extends JTextArea
 		return new PrintStream(new Printer()); // do not enable flush - Printer auto-flushes.
 	}
 	
+	// Must be called holding printMutex.
+	private void scheduleUpdate()
+	{
+		if (updateScheduled)
+			return;
+		updateScheduled = true;
+		updateTimer.start(); // Swing timers can be started from any thread.
+	}
+
+	// Must be called holding printMutex.
+	// If the Swing thread can't keep up, drop the oldest pending text that would be trimmed anyway.
+	private void trimPending()
+	{
+		long maxPending = (long)maxLines * PENDING_CHARS_PER_LINE;
+		if (pending.length() <= maxPending * 2)
+			return;
+		int cut = pending.indexOf("\n", pending.length() - (int)maxPending);
+		if (cut >= 0)
+			pending.delete(0, cut + 1);
+	}
+
+	// Called on the Swing thread.
+	private void update()
+	{
+		String text;
+		int lines;
+		synchronized (printMutex)
+		{
+			updateScheduled = false;
+			if (pending.length() == 0)
+				return;
+			text = pending.toString();
+			lines = maxLines;
+			// Don't hold on to a huge buffer after a burst.
+			if (pending.capacity() > 65536)
+				pending = new StringBuilder(1024);
+			else
+				pending.setLength(0);
+		}
+
+		append(text);
+		int excess = getLineCount() - lines;
+		if (excess > 0)
+		{
+			try {
+				replaceRange(null, 0, getLineStartOffset(excess));
+			} catch (BadLocationException e) {
+				// Should not happen.
+			}
+		}
+		setCaretPosition(getDocument().getLength());
+	}
+
+	/**
+	 * Output stream that decodes bytes into characters as they are written,
+	 * and sends them to the panel on each newline.
+	 */
 	private class Printer extends OutputStream
 	{
-		private ByteArrayOutputStream buffer;
-		private StringWriter charBuffer;
+		private CharsetDecoder decoder;
+		private ByteBuffer byteBuffer;
+		private CharBuffer charBuffer;
 		
 		public Printer()
 		{
-			this.buffer = new ByteArrayOutputStream(512);
-			this.charBuffer = new StringWriter(512);
+			this.decoder = Charset.defaultCharset().newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			this.byteBuffer = ByteBuffer.allocate(512);
+			this.charBuffer = CharBuffer.allocate(512);
 		}
 		
 		@Override
@@ -120,28 +237,57 @@ public class DoomToolsTextOutputPanel extends JTextArea
 		}
 		
 		@Override
-		public void flush() throws IOException 
+		public synchronized void flush() throws IOException
 		{
-			if (buffer.size() == 0)
-				return;
-			
-			// TODO: Creates far too much garbage on flush. Write better in-place solution.
-			try (Reader reader = new InputStreamReader(new ByteArrayInputStream(buffer.toByteArray())))
-			{
-				charBuffer.getBuffer().delete(0, charBuffer.getBuffer().length());
-				IOUtils.relay(reader, charBuffer);
-			}
-			writeString(charBuffer.toString());
-			buffer.reset();
+			decode();
+			sendChars();
 		}
 		
 		@Override
-		public void write(int b) throws IOException 
+		public synchronized void write(int b) throws IOException
 		{
-			buffer.write(b);
+			if (!byteBuffer.hasRemaining())
+				decode();
+			byteBuffer.put((byte)b);
 			if (b == '\n')
 				flush();
 		}
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len) throws IOException
+		{
+			boolean newline = false;
+			while (len > 0)
+			{
+				if (!byteBuffer.hasRemaining())
+					decode();
+				int amount = Math.min(len, byteBuffer.remaining());
+				for (int i = 0; i < amount && !newline; i++)
+					newline = b[off + i] == '\n';
+				byteBuffer.put(b, off, amount);
+				off += amount;
+				len -= amount;
+			}
+			if (newline)
+				flush();
+		}
+
+		// Decodes the buffered bytes - incomplete characters stay in the byte buffer.
+		private void decode()
+		{
+			byteBuffer.flip();
+			while (decoder.decode(byteBuffer, charBuffer, false).isOverflow())
+				sendChars();
+			byteBuffer.compact();
+		}
+
+		private void sendChars()
+		{
+			charBuffer.flip();
+			if (charBuffer.hasRemaining())
+				writeChars(charBuffer);
+			charBuffer.clear();
+		}
 		
 	}
 	
@@ -134,6 +134,26 @@ public class EditorDirectoryTreePanel extends JPanel
 		treePanel.setSelectedFile(file);
 	}
 
+	/**
+	 * Notifies the tree that a file was created outside of it.
+	 * @param file the file created.
+	 * @see DirectoryTreePanel#fileCreated(File)
+	 */
+	public void fileCreated(File file)
+	{
+		treePanel.fileCreated(file);
+	}
+
+	/**
+	 * Notifies the tree that a file was deleted outside of it.
+	 * @param file the file deleted.
+	 * @see DirectoryTreePanel#fileDeleted(File)
+	 */
+	public void fileDeleted(File file)
+	{
+		treePanel.fileDeleted(file);
+	}
+
 	private void onResetTop()
 	{
 		if (rootDirectory != null)
@@ -58,6 +58,7 @@ import javax.swing.event.DocumentListener;
 import javax.swing.event.HyperlinkEvent;
 import javax.swing.filechooser.FileFilter;
 import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
 
 import org.fife.ui.autocomplete.AutoCompletion;
 import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
@@ -406,6 +407,7 @@ public class EditorMultiFilePanel extends JPanel
 	
 	/**
 	 * Saves this editor's state to a state map.
+	 * <p>The contents of editors are only saved if they are not attached to a file or have unsaved changes.
 	 * @param prefix the key prefix.
 	 * @param stateMap the output state map.
 	 * @return the amount of editor tabs saved.
@@ -423,11 +425,8 @@ public class EditorMultiFilePanel extends JPanel
 				stateMap.put(keyPrefix + ".contentSourceFile", handle.contentSourceFile.getAbsolutePath());
 			stateMap.put(keyPrefix + ".contentCharset", handle.contentCharset.displayName());
 			stateMap.put(keyPrefix + ".currentStyle", handle.currentStyle);
-			try {
-				stateMap.put(keyPrefix + ".content", EncodingUtils.asBase64(EncodingUtils.gzipBytes(handle.getContent().getBytes(UTF8))));
-			} catch (IOException e) {
-				stateMap.put(keyPrefix + ".content", "");
-			}
+			if (handle.contentSourceFile == null || handle.needsToSave())
+				stateMap.put(keyPrefix + ".content", getEncodedContent(handle));
 			stateMap.put(keyPrefix + ".caretPosition", String.valueOf(handle.editorPanel.textArea.getCaretPosition()));
 			
 			stateMap.put(keyPrefix + ".currentLineEnding", handle.currentLineEnding.name());
@@ -438,6 +437,22 @@ public class EditorMultiFilePanel extends JPanel
 		return mainEditorTabs.getTabCount();
 	}
 
+	// Gets the editor's content encoded for the state map, encoding it only if it changed since it was last encoded.
+	private String getEncodedContent(EditorHandle handle)
+	{
+		if (handle.encodedContent == null || handle.encodedRevision != handle.contentRevision)
+		{
+			try {
+				handle.encodedContent = EncodingUtils.asBase64(EncodingUtils.gzipBytes(handle.getContent().getBytes(UTF8)));
+			} catch (IOException e) {
+				LOG.error(e, "Could not encode content.");
+				return "";
+			}
+			handle.encodedRevision = handle.contentRevision;
+		}
+		return handle.encodedContent;
+	}
+	
 	/**
 	 * Loads this editor's state from a state map and sets its state.
 	 * @param prefix the key prefix.
@@ -475,11 +490,13 @@ public class EditorMultiFilePanel extends JPanel
 			
 			String originalContent;
 			
-			// If attached file date is later than content date, load from disk.
+			String savedContent = stateMap.get(keyPrefix + ".content");
+			
+			// If attached file date is later than content date, or no content was saved, load from disk.
 			
 			try {
 				long fileModified = attachedFile != null ? attachedFile.lastModified() : -1L;
-				if (fileModified > contentSourceFileLastModified)
+				if (fileModified > contentSourceFileLastModified || (attachedFile != null && ObjectUtils.isEmpty(savedContent)))
 				{
 					try (InputStream in = new FileInputStream(attachedFile))
 					{
@@ -499,7 +516,7 @@ public class EditorMultiFilePanel extends JPanel
 				}
 				else
 				{
-					originalContent = ValueUtils.parse(stateMap.get(keyPrefix + ".content"), (input) -> {
+					originalContent = ValueUtils.parse(savedContent, (input) -> {
 						if (!ObjectUtils.isEmpty(input))
 						{
 							try {
@@ -910,6 +927,37 @@ public class EditorMultiFilePanel extends JPanel
 			return text;
 	}
 	
+	/**
+	 * Gets the identifier-like word around the caret in the current editor 
+	 * (letters, digits, and underscores).
+	 * @return the word at the caret, an empty string if no word, or null if no current editor.
+	 */
+	public String getCurrentEditorWordAtCaret()
+	{
+		if (currentEditor == null)
+			return null;
+		RSyntaxTextArea textArea = getCurrentEditorTextArea();
+		Document document = textArea.getDocument();
+		int caret = textArea.getCaretPosition();
+		try {
+			String text = document.getText(0, document.getLength());
+			int start = caret;
+			int end = caret;
+			while (start > 0 && isWordChar(text.charAt(start - 1)))
+				start--;
+			while (end < text.length() && isWordChar(text.charAt(end)))
+				end++;
+			return text.substring(start, end);
+		} catch (BadLocationException e) {
+			return "";
+		}
+	}
+	
+	private static boolean isWordChar(char c)
+	{
+		return Character.isLetterOrDigit(c) || c == '_';
+	}
+	
 	/**
 	 * @return the number of open editors.
 	 */
@@ -2000,6 +2048,12 @@ public class EditorMultiFilePanel extends JPanel
 		private long contentLastModified;
 		/** Timestamp of last change to file. */
 		private long contentSourceFileLastModified;
+		/** Incremented on each change to the buffer. */
+		private long contentRevision;
+		/** The content revision last encoded for a saved state. */
+		private long encodedRevision;
+		/** The encoded content at the encoded revision. */
+		private String encodedContent;
 		/** Current RSyntaxTextArea style. */
 		private String currentStyle;
 		/** Current line ending. */
@@ -2024,6 +2078,9 @@ public class EditorMultiFilePanel extends JPanel
 			this.contentCharset = sourceCharset;
 			this.contentLastModified = -1L;
 			this.contentSourceFileLastModified = -1L;
+			this.contentRevision = 0L;
+			this.encodedRevision = -1L;
+			this.encodedContent = null;
 			this.currentStyle = styleName;
 			this.currentLineEnding = OSUtils.isWindows() ? LineEnding.CRLF : LineEnding.LF;
 	
@@ -2164,6 +2221,18 @@ public class EditorMultiFilePanel extends JPanel
 			return currentStyle;
 		}
 		
+		/**
+		 * Sets a client property on this editor's text area, 
+		 * for passing things to the completion providers.
+		 * @param key the property key.
+		 * @param value the property value (null to remove).
+		 * @see javax.swing.JComponent#putClientProperty(Object, Object)
+		 */
+		public void putClientProperty(Object key, Object value)
+		{
+			editorPanel.textArea.putClientProperty(key, value);
+		}
+		
 		/**
 		 * @return true if this editor has unsaved data.
 		 */
@@ -2230,6 +2299,7 @@ public class EditorMultiFilePanel extends JPanel
 		private void onChange()
 		{
 			contentLastModified = System.currentTimeMillis();
+			contentRevision++;
 			updateIcon();
 			updateActionsIfCurrent(this);
 		}
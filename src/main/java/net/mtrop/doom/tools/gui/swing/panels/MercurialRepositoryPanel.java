@@ -31,11 +31,14 @@ import javax.swing.event.ListDataEvent;
 import javax.swing.event.ListDataListener;
 
 import net.mtrop.doom.tools.gui.RepositoryHelper.StatusEntry;
+import net.mtrop.doom.tools.gui.RepositoryStatusService;
 import net.mtrop.doom.tools.gui.managers.DoomToolsGUIUtils;
 import net.mtrop.doom.tools.gui.managers.DoomToolsIconManager;
 import net.mtrop.doom.tools.gui.managers.DoomToolsLanguageManager;
 import net.mtrop.doom.tools.gui.managers.DoomToolsTaskManager;
+import net.mtrop.doom.tools.gui.managers.DoomToolsTaskManager.Lane;
 import net.mtrop.doom.tools.gui.RepositoryHelper.BranchStatus;
+import net.mtrop.doom.tools.gui.RepositoryHelper.RepositoryStatus;
 import net.mtrop.doom.tools.gui.RepositoryHelper.Mercurial;
 import net.mtrop.doom.tools.struct.Loader.LoaderFuture;
 import net.mtrop.doom.tools.struct.swing.FormFactory.JFormField;
@@ -65,6 +68,7 @@ public class MercurialRepositoryPanel extends JPanel
 	private final DoomToolsTaskManager tasks;
 	
 	private final Mercurial client;
+	private final RepositoryStatusService statusService;
 	
 	private final JList<StatusEntry> unstagedChanges;
 	private final EntryModel unstagedChangesModel;
@@ -76,6 +80,8 @@ public class MercurialRepositoryPanel extends JPanel
 	private final JLabel aheadBehindPanel;
 	
 	private JPopupMenu branchMenu;
+	private String currentBranch;
+	private List<String> currentBranches;
 	
 	private final Action stageAction;
 	private final Action stageAllAction;
@@ -107,6 +113,7 @@ public class MercurialRepositoryPanel extends JPanel
 		this.tasks = DoomToolsTaskManager.get();
 		
 		this.client = new Mercurial(directory);
+		this.statusService = new RepositoryStatusService(client, this::onStatus);
 		
 		this.unstagedChangesModel = new EntryModel();
 		this.unstagedChanges = new JList<>(unstagedChangesModel);
@@ -181,11 +188,7 @@ public class MercurialRepositoryPanel extends JPanel
 		this.commitAction = utils.createActionFromLanguageKey("hg.repo.commit", (e) -> onCommit());
 		this.pullAction = utils.createActionFromLanguageKey("hg.repo.pull", (e) -> onPull());
 		this.pushAction = utils.createActionFromLanguageKey("hg.repo.push", (e) -> onPush());
-		this.refreshAction = actionItem(refreshIcon.result(), (e) -> {
-			refreshInfoSynchronous();
-			refreshEntries();
-			refreshBranches();
-		});
+		this.refreshAction = actionItem(refreshIcon.result(), (e) -> statusService.refresh(true));
 		
 		this.commitArea = textArea();
 		this.statusPanel = new DoomToolsStatusPanel();
@@ -257,62 +260,91 @@ public class MercurialRepositoryPanel extends JPanel
 			))
 		);
 		
-		refreshInfoSynchronous();
-		refreshEntries();
-		refreshBranches();
+		this.currentBranch = "";
+		this.currentBranches = Collections.emptyList();
+		this.branchMenu = createBranchMenu();
+		statusService.refresh(true);
 	}
 	
+	/**
+	 * Refreshes the branch status.
+	 */
 	public void refreshInfo()
 	{
-		tasks.spawn(() -> 
-		{
-			refreshInfoSynchronous();
-		});
+		statusService.refresh(false);
 	}
 
-	public void refreshInfoSynchronous()
+	/**
+	 * Refreshes the changed file entries.
+	 */
+	public void refreshEntries()
 	{
-		BranchStatus bs = client.fetchBranchStatus();
-		branchPanel.setText(bs.getName());
-		String remote = bs.getRemoteName();
-		remoteBranchPanel.setText(remote != null ? remote : "");
-		aheadBehindPanel.setText("+" + bs.getAhead() + ", " + "-" + bs.getBehind());
+		statusService.refresh(false);
 	}
 
-	public void refreshEntries()
+	/**
+	 * Refreshes the changed file entries after a short wait,
+	 * so that many calls in a row (like for file changes) result in one refresh.
+	 */
+	public void refreshEntriesLater()
 	{
-		tasks.spawn(() -> 
-		{
-			List<StatusEntry> staged = new LinkedList<>(); 
-			List<StatusEntry> unstaged = new LinkedList<>();
-			for (StatusEntry status : client.fetchStatus())
-			{
-				if (status.isStaged())
-					staged.add(status);
-				else
-					unstaged.add(status);
-			}
-			stagedChangesModel.setEntries(staged.toArray(new StatusEntry[staged.size()]));
-			unstagedChangesModel.setEntries(unstaged.toArray(new StatusEntry[unstaged.size()]));
-			
-			stageAction.setEnabled(!unstaged.isEmpty());
-			stageAllAction.setEnabled(!unstaged.isEmpty());
-			unstageAction.setEnabled(!staged.isEmpty());
-			unstageAllAction.setEnabled(!staged.isEmpty());
-		});
+		statusService.refreshLater(false);
 	}
 
+	/**
+	 * Refreshes the branch status and the list of branches.
+	 */
 	public void refreshBranches()
 	{
-		tasks.spawn(() ->
-		{
-			List<MenuNode> menuNodes = new LinkedList<>();
-			for (String branch : client.fetchBranches())
-				menuNodes.add(checkBoxItem(branch, branchPanel.getText().equals(branch), (c) -> onCheckout(branch)));
-			menuNodes.add(separator());
-			menuNodes.add(utils.createItemFromLanguageKey("hg.repo.branch.create", (i) -> onBranchCreate()));
-			branchMenu = popupMenu(ArrayUtils.items(menuNodes, MenuNode.class));
-		});
+		statusService.refresh(true);
+	}
+	
+	// Called on the Swing thread.
+	private void onStatus(RepositoryStatus status)
+	{
+		BranchStatus bs = status.getBranchStatus();
+		String branchName = bs.getName() != null ? bs.getName() : "";
+		branchPanel.setText(branchName);
+		String remote = bs.getRemoteName();
+		remoteBranchPanel.setText(remote != null ? remote : "");
+		aheadBehindPanel.setText("+" + bs.getAhead() + ", " + "-" + bs.getBehind());
+		
+		List<StatusEntry> staged = new LinkedList<>(); 
+		List<StatusEntry> unstaged = new LinkedList<>();
+		for (StatusEntry entry : status.getEntries())
+		{
+			if (entry.isStaged())
+				staged.add(entry);
+			else
+				unstaged.add(entry);
+		}
+		stagedChangesModel.setEntries(staged.toArray(new StatusEntry[staged.size()]));
+		unstagedChangesModel.setEntries(unstaged.toArray(new StatusEntry[unstaged.size()]));
+		
+		stageAction.setEnabled(!unstaged.isEmpty());
+		stageAllAction.setEnabled(!unstaged.isEmpty());
+		unstageAction.setEnabled(!staged.isEmpty());
+		unstageAllAction.setEnabled(!staged.isEmpty());
+		
+		// Only rebuild the branch menu if something in it changed.
+		List<String> branches = status.getBranches();
+		if ((branches != null && !branches.equals(currentBranches)) || !branchName.equals(currentBranch))
+		{
+			if (branches != null)
+				currentBranches = branches;
+			currentBranch = branchName;
+			branchMenu = createBranchMenu();
+		}
+	}
+
+	private JPopupMenu createBranchMenu()
+	{
+		List<MenuNode> menuNodes = new LinkedList<>();
+		for (String branch : currentBranches)
+			menuNodes.add(checkBoxItem(branch, currentBranch.equals(branch), (c) -> onCheckout(branch)));
+		menuNodes.add(separator());
+		menuNodes.add(utils.createItemFromLanguageKey("hg.repo.branch.create", (i) -> onBranchCreate()));
+		return popupMenu(ArrayUtils.items(menuNodes, MenuNode.class));
 	}
 	
 	private void onBranchCreate()
@@ -340,11 +372,10 @@ public class MercurialRepositoryPanel extends JPanel
 		}
 		
 		setActionsEnabled(false);
-		tasks.spawn(() ->
+		tasks.spawn(Lane.IO, () ->
 		{
 			if (client.branch(branch) == 0)
 				client.checkout(branch);
-			refreshInfoSynchronous();
 			refreshBranches();
 			setActionsEnabled(true);
 		});
@@ -498,7 +529,6 @@ public class MercurialRepositoryPanel extends JPanel
 		commitArea.setText("");
 		
 		statusPanel.setSuccessMessage(language.getText("hg.repo.status.commit"));
-		refreshInfo();
 		refreshEntries();
 		setActionsEnabled(true);
 	}
@@ -522,7 +552,7 @@ public class MercurialRepositoryPanel extends JPanel
 		setActionsEnabled(false);
 		statusPanel.setActivityMessage(language.getText("hg.repo.status.pushing"));
 
-		tasks.spawn(() -> 
+		tasks.spawn(Lane.IO, () -> 
 		{
 			int result;
 			if ((result = client.push()) != 0)
@@ -534,7 +564,6 @@ public class MercurialRepositoryPanel extends JPanel
 			}
 
 			statusPanel.setSuccessMessage(language.getText("hg.repo.status.push"));
-			refreshInfo();
 			refreshEntries();
 			setActionsEnabled(true);
 		});
@@ -567,7 +596,7 @@ public class MercurialRepositoryPanel extends JPanel
 		setActionsEnabled(false);
 		statusPanel.setActivityMessage(language.getText("hg.repo.status.pushing"));
 
-		tasks.spawn(() -> 
+		tasks.spawn(Lane.IO, () -> 
 		{
 			int result;
 			if ((result = client.pushNewBranch(branchName)) != 0)
@@ -579,7 +608,6 @@ public class MercurialRepositoryPanel extends JPanel
 			}
 
 			statusPanel.setSuccessMessage(language.getText("hg.repo.status.push"));
-			refreshInfo();
 			refreshEntries();
 			setActionsEnabled(true);
 		});
@@ -596,7 +624,7 @@ public class MercurialRepositoryPanel extends JPanel
 		setActionsEnabled(false);
 		statusPanel.setActivityMessage(language.getText("hg.repo.status.pulling"));
 
-		tasks.spawn(() -> 
+		tasks.spawn(Lane.IO, () -> 
 		{
 			int result;
 			if ((result = client.pull()) != 0)
@@ -608,7 +636,6 @@ public class MercurialRepositoryPanel extends JPanel
 			}
 
 			statusPanel.setSuccessMessage(language.getText("hg.repo.status.pull"));
-			refreshInfo();
 			refreshEntries();
 			setActionsEnabled(true);
 		});
@@ -619,7 +646,7 @@ public class MercurialRepositoryPanel extends JPanel
 		setActionsEnabled(false);
 		statusPanel.setActivityMessage(language.getText("hg.repo.status.checkingout", branchName));
 
-		tasks.spawn(() -> 
+		tasks.spawn(Lane.IO, () -> 
 		{
 			int result;
 			if ((result = client.checkout(branchName)) != 0)
@@ -631,8 +658,6 @@ public class MercurialRepositoryPanel extends JPanel
 			}
 
 			statusPanel.setSuccessMessage(language.getText("hg.repo.status.checkout", branchName));
-			refreshInfoSynchronous();
-			refreshEntries();
 			refreshBranches();
 			setActionsEnabled(true);
 		});
@@ -682,17 +707,57 @@ public class MercurialRepositoryPanel extends JPanel
 		
 		/**
 		 * Sets the list's entries.
+		 * Listeners are only notified if the entries are different from the current ones.
 		 * @param entries the new entries.
 		 */
 		public void setEntries(StatusEntry[] entries)
 		{
-			this.entries = ArrayUtils.copyAnd(entries, (arr) -> {
+			StatusEntry[] sorted = ArrayUtils.copyAnd(entries, (arr) -> {
 				Arrays.sort(arr, (a, b) -> a.toDisplayString().compareTo(b.toDisplayString()));
 			});
 			
-			listeners.forEach((listener) -> listener.intervalAdded(
-				new ListDataEvent(this, ListDataEvent.CONTENTS_CHANGED, 0, 0)
-			));
+			if (sameEntries(this.entries, sorted))
+				return;
+			
+			int previousSize = this.entries.length;
+			this.entries = sorted;
+			
+			// Changed rows, then added or removed rows at the end.
+			int common = Math.min(previousSize, sorted.length);
+			if (common > 0)
+				fire(new ListDataEvent(this, ListDataEvent.CONTENTS_CHANGED, 0, common - 1));
+			if (sorted.length > previousSize)
+				fire(new ListDataEvent(this, ListDataEvent.INTERVAL_ADDED, previousSize, sorted.length - 1));
+			else if (sorted.length < previousSize)
+				fire(new ListDataEvent(this, ListDataEvent.INTERVAL_REMOVED, sorted.length, previousSize - 1));
+		}
+		
+		private void fire(ListDataEvent event)
+		{
+			listeners.forEach((listener) -> {
+				switch (event.getType())
+				{
+					case ListDataEvent.INTERVAL_ADDED:
+						listener.intervalAdded(event);
+						break;
+					case ListDataEvent.INTERVAL_REMOVED:
+						listener.intervalRemoved(event);
+						break;
+					default:
+						listener.contentsChanged(event);
+						break;
+				}
+			});
+		}
+		
+		private static boolean sameEntries(StatusEntry[] a, StatusEntry[] b)
+		{
+			if (a.length != b.length)
+				return false;
+			for (int i = 0; i < a.length; i++)
+				if (!a[i].toString().equals(b[i].toString()))
+					return false;
+			return true;
 		}
 		
 		@Override
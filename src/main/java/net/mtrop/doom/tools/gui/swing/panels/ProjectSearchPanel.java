@@ -17,6 +17,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -30,11 +31,12 @@ import javax.swing.ListSelectionModel;
 import javax.swing.event.ListDataEvent;
 import javax.swing.event.ListDataListener;
 
-import net.mtrop.doom.tools.common.Common;
+import net.mtrop.doom.tools.gui.managers.DoomToolsFileClassifier;
 import net.mtrop.doom.tools.gui.managers.DoomToolsGUIUtils;
 import net.mtrop.doom.tools.gui.managers.DoomToolsLanguageManager;
 import net.mtrop.doom.tools.gui.managers.DoomToolsLogger;
 import net.mtrop.doom.tools.gui.managers.DoomToolsTaskManager;
+import net.mtrop.doom.tools.gui.managers.DoomToolsTaskManager.Lane;
 import net.mtrop.doom.tools.struct.LoggingFactory.Logger;
 import net.mtrop.doom.tools.struct.util.FileUtils;
 import net.mtrop.doom.tools.struct.util.ObjectUtils;
@@ -59,6 +61,7 @@ public class ProjectSearchPanel extends JPanel
 	private DoomToolsTaskManager tasks;
 	private DoomToolsLanguageManager language;
 	private DoomToolsGUIUtils utils;
+	private DoomToolsFileClassifier classifier;
 	
 	private Set<File> registeredFiles;
 	
@@ -79,14 +82,21 @@ public class ProjectSearchPanel extends JPanel
 		this.tasks = DoomToolsTaskManager.get();
 		this.language = DoomToolsLanguageManager.get();
 		this.utils = DoomToolsGUIUtils.get();
+		this.classifier = DoomToolsFileClassifier.get();
 		
 		this.registeredFiles = Collections.synchronizedSet(new TreeSet<>());
 		
 		this.statusPanel = new DoomToolsStatusPanel();
 		
-		tasks.spawn(() -> {
+		tasks.spawn(Lane.BACKGROUND, () -> {
 			statusPanel.setActivityMessage(language.getText("doommake.search.prep"));
-			for (File file : FileUtils.explodeFiles(projectDirectory))
+			List<File> files = Arrays.asList(FileUtils.explodeFiles(projectDirectory));
+			try {
+				classifier.classifyAll(files);
+			} catch (InterruptedException e) {
+				LOG.warn("Interrupted while classifying project files.");
+			}
+			for (File file : files)
 				registerFile(file);
 			statusPanel.setSuccessMessage(language.getText("doommake.search.ready"));
 		});
@@ -145,18 +155,20 @@ public class ProjectSearchPanel extends JPanel
 	public void registerFile(File file)
 	{
 		// detect a change.
-		if (Common.isBinaryFile(file) || file.isHidden() || file.isDirectory())
-			deregisterFile(file);
+		if (file.isDirectory() || file.isHidden() || classifier.isBinaryFile(file))
+			registeredFiles.remove(FileUtils.canonizeFile(file));
 		else
 			registeredFiles.add(FileUtils.canonizeFile(file));
 	}
 	
 	/**
 	 * De-registers a file from search.
+	 * Should be called when a file is deleted, as this also drops its cached binary verdict.
 	 * @param file the file to de-register.
 	 */
 	public void deregisterFile(File file)
 	{
+		classifier.forget(file);
 		registeredFiles.remove(FileUtils.canonizeFile(file));
 	}
 	
@@ -229,6 +241,24 @@ public class ProjectSearchPanel extends JPanel
 		search(findField.getValue(), caseSensitiveField.getValue());
 	}
 	
+	/**
+	 * Replaces the current results with a set of results found elsewhere 
+	 * (for example, symbol usages from an index).
+	 * @param phrase the phrase that the results are for (put in the find field).
+	 * @param results the results.
+	 */
+	public void showResults(String phrase, List<SearchResult> results)
+	{
+		findField.setValue(phrase);
+		searchResultListModel.clear();
+		for (SearchResult result : results)
+			searchResultListModel.addResult(result);
+		if (results.isEmpty())
+			statusPanel.setSuccessMessage(language.getText("doommake.search.results.none"));
+		else
+			statusPanel.setSuccessMessage(language.getText("doommake.search.results.some", results.size()));
+	}
+	
 	/**
 	 * A single search result.
 	 */
@@ -240,7 +270,15 @@ public class ProjectSearchPanel extends JPanel
 		private long characterEnd;
 		private long offset;
 		
-		private SearchResult(File source, long line, long characterStart, long characterEnd, long offset) 
+		/**
+		 * Creates a new search result.
+		 * @param source the source file.
+		 * @param line the line number (starts at 1).
+		 * @param characterStart the starting character index on the line.
+		 * @param characterEnd the ending character index on the line (inclusive).
+		 * @param offset the character offset from the start of the file (line endings count as one character).
+		 */
+		public SearchResult(File source, long line, long characterStart, long characterEnd, long offset) 
 		{
 			this.source = source;
 			this.line = line;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2020-2023 Matt Tropiano
+ * Copyright (c) 2020-2024 Matt Tropiano
  * This program and the accompanying materials are made available under 
  * the terms of the MIT License, which accompanies this distribution.
  ******************************************************************************/
@@ -11,12 +11,22 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Some kind of logger for logging messages.
+ * <p>Logged messages are put on a lock-free queue and written to the drivers in batches
+ * by a separate thread. Messages at levels that are not logged are discarded before any
+ * string work is done, and formatted messages are formatted on the logging thread, so
+ * arguments passed to the formatted logging methods should not be changed after they are logged.
  * @author Matthew Tropiano
  */
 public class LoggingFactory
@@ -198,17 +208,36 @@ public class LoggingFactory
 		 */
 		public void log(Date time, LogLevel level, String source, String message, Throwable throwable);
 		
+		/**
+		 * Called after a batch of messages is sent to {@link #log(Date, LogLevel, String, String, Throwable)}.
+		 * Drivers that buffer output should flush it here.
+		 * Does nothing by default.
+		 */
+		default void flush()
+		{
+			// Do nothing.
+		}
+		
 	}
 
+	/** Size of the out queue. Must be a power of two. */
+	private static final int QUEUE_SIZE = 8192;
+	/** Most messages written to the drivers at once. */
+	private static final int BATCH_SIZE = 256;
+	/** Nanoseconds that the logger thread waits when there is nothing to write. */
+	private static final long IDLE_WAIT_NANOS = 1000000L;
+	/** Amount of idle waits before the logger thread ends (it is restarted on the next message). */
+	private static final int IDLE_WAIT_COUNT = 100;
+	
 	/** Out queue. */
-	private Queue<LogObject> outQueue;
+	private LogQueue outQueue;
+	/** If true, the logger thread is running or starting. */
+	private AtomicBoolean loggerRunning;
 	
 	/** Stream to send logs out to. */
-	private Queue<Driver> drivers;
+	private List<Driver> drivers;
 	/** This logging factory's logging level. */
-	private LogLevel loggingLevel;
-	/** Logger thread. */
-	private LoggerThread loggerThread;
+	private volatile LogLevel loggingLevel;
 	
 	/**
 	 * Creates a new logging factory.
@@ -227,8 +256,9 @@ public class LoggingFactory
 	 */
 	public LoggingFactory(LogLevel level, Driver... drivers)
 	{
-		this.drivers = new LinkedList<Driver>();
-		this.outQueue = new LinkedList<LogObject>(); 
+		this.drivers = new CopyOnWriteArrayList<Driver>();
+		this.outQueue = new LogQueue(QUEUE_SIZE); 
+		this.loggerRunning = new AtomicBoolean(false);
 		this.loggingLevel = level;
 
 		addDriver(drivers);
@@ -376,19 +406,12 @@ public class LoggingFactory
 	{
 		if (!checkLoggingLevel(level, localLevel))
 			return;
-		
-		synchronized (outQueue)
-		{
-			outQueue.add(new LogObject(new Date(), level, source, String.valueOf(message), throwable));
-			if (loggerThread == null || !loggerThread.isAlive())
-				(loggerThread = new LoggerThread()).start();
-			outQueue.notify();
-			try {Thread.sleep(0L);} catch (InterruptedException e) {}
-		}
+		enqueue(new LogObject(System.currentTimeMillis(), level, source, String.valueOf(message), null, throwable));
 	}
 
 	/**
 	 * Adds a log message to the logger queue.
+	 * The message is formatted later, on the logger thread.
 	 * @param level the target logging level.
 	 * @param source the source name.
 	 * @param throwable the throwable to dump, if any.
@@ -399,15 +422,24 @@ public class LoggingFactory
 	{
 		if (!checkLoggingLevel(level, localLevel))
 			return;
-		
-		synchronized (outQueue)
+		enqueue(new LogObject(System.currentTimeMillis(), level, source, message, args, throwable));
+	}
+	
+	// Adds an object to the queue, waiting for room if the queue is full, and makes sure the logger thread is running.
+	private void enqueue(LogObject logobj)
+	{
+		while (!outQueue.offer(logobj))
 		{
-			outQueue.add(new LogObject(new Date(), level, source, String.format(message, args), throwable));
-			if (loggerThread == null || !loggerThread.isAlive())
-				(loggerThread = new LoggerThread()).start();
-			outQueue.notify();
-			try {Thread.sleep(0L);} catch (InterruptedException e) {}
+			startLoggerThread();
+			Thread.yield();
 		}
+		startLoggerThread();
+	}
+	
+	private void startLoggerThread()
+	{
+		if (!loggerRunning.get() && loggerRunning.compareAndSet(false, true))
+			(new LoggerThread()).start();
 	}
 	
 	/**
@@ -444,20 +476,116 @@ public class LoggingFactory
 	 */
 	private static class LogObject
 	{
-		Date time;
+		long time;
 		LogLevel level;
 		String source;
 		String message;
+		Object[] args;
 		Throwable throwable;
 		
-		private LogObject(Date time, LogLevel level, String source, String message, Throwable throwable)
+		private LogObject(long time, LogLevel level, String source, String message, Object[] args, Throwable throwable)
 		{
 			this.time = time;
 			this.level = level;
 			this.source = source;
 			this.message = message;
+			this.args = args;
 			this.throwable = throwable;
 		}
+		
+		// Called on the logger thread.
+		private String getMessage()
+		{
+			if (args == null)
+				return message;
+			try {
+				return String.format(message, args);
+			} catch (Exception e) {
+				return message + " [bad format: " + e.getMessage() + "]";
+			}
+		}
+	}
+
+	/**
+	 * A bounded, lock-free queue for many producers and one consumer.
+	 * Each slot has a sequence number that tells producers and the consumer 
+	 * whose turn it is to use the slot.
+	 */
+	private static class LogQueue
+	{
+		private int mask;
+		private AtomicReferenceArray<LogObject> slots;
+		private AtomicLongArray sequences;
+		/** Next position to write. */
+		private AtomicLong head;
+		/** Next position to read (consumer only). */
+		private long tail;
+		
+		private LogQueue(int size)
+		{
+			this.mask = size - 1;
+			this.slots = new AtomicReferenceArray<>(size);
+			this.sequences = new AtomicLongArray(size);
+			for (int i = 0; i < size; i++)
+				sequences.set(i, i);
+			this.head = new AtomicLong(0L);
+			this.tail = 0L;
+		}
+		
+		/**
+		 * Adds an object to the queue.
+		 * @param logobj the object to add.
+		 * @return true if added, false if the queue is full.
+		 */
+		private boolean offer(LogObject logobj)
+		{
+			long position;
+			int index;
+			while (true)
+			{
+				position = head.get();
+				index = (int)position & mask;
+				long diff = sequences.get(index) - position;
+				if (diff == 0L)
+				{
+					if (head.compareAndSet(position, position + 1))
+						break;
+				}
+				else if (diff < 0L)
+				{
+					return false;
+				}
+			}
+			slots.set(index, logobj);
+			sequences.set(index, position + 1);
+			return true;
+		}
+		
+		/**
+		 * Removes the next object from the queue.
+		 * Must only be called from one thread at a time.
+		 * @return the next object, or null if the queue is empty.
+		 */
+		private LogObject poll()
+		{
+			int index = (int)tail & mask;
+			if (sequences.get(index) != tail + 1)
+				return null;
+			LogObject out = slots.get(index);
+			slots.lazySet(index, null);
+			sequences.lazySet(index, tail + mask + 1);
+			tail++;
+			return out;
+		}
+		
+		/**
+		 * @return true if there is nothing to read from this queue.
+		 * Must only be called from the consumer thread.
+		 */
+		private boolean isEmpty()
+		{
+			return sequences.get((int)tail & mask) != tail + 1;
+		}
 	}
 
 	/**
@@ -491,7 +619,7 @@ public class LoggingFactory
 		@Override
 		public void fatal(Object message)
 		{
-			addLog(LogLevel.FATAL, localLevel, source, null, String.valueOf(message));
+			addLog(LogLevel.FATAL, localLevel, source, null, message);
 		}
 
 		@Override
@@ -503,7 +631,7 @@ public class LoggingFactory
 		@Override
 		public void fatal(Throwable t, Object message)
 		{
-			addLog(LogLevel.FATAL, localLevel, source, t, String.valueOf(message));
+			addLog(LogLevel.FATAL, localLevel, source, t, message);
 		}
 
 		@Override
@@ -515,7 +643,7 @@ public class LoggingFactory
 		@Override
 		public void severe(Object message)
 		{
-			addLog(LogLevel.SEVERE, localLevel, source, null, String.valueOf(message));
+			addLog(LogLevel.SEVERE, localLevel, source, null, message);
 		}
 
 		@Override
@@ -527,7 +655,7 @@ public class LoggingFactory
 		@Override
 		public void severe(Throwable t, Object message)
 		{
-			addLog(LogLevel.SEVERE, localLevel, source, t, String.valueOf(message));
+			addLog(LogLevel.SEVERE, localLevel, source, t, message);
 		}
 
 		@Override
@@ -539,7 +667,7 @@ public class LoggingFactory
 		@Override
 		public void error(Object message)
 		{
-			addLog(LogLevel.ERROR, localLevel, source, null, String.valueOf(message));
+			addLog(LogLevel.ERROR, localLevel, source, null, message);
 		}
 
 		@Override
@@ -551,7 +679,7 @@ public class LoggingFactory
 		@Override
 		public void error(Throwable t, Object message)
 		{
-			addLog(LogLevel.ERROR, localLevel, source, t, String.valueOf(message));
+			addLog(LogLevel.ERROR, localLevel, source, t, message);
 		}
 
 		@Override
@@ -563,7 +691,7 @@ public class LoggingFactory
 		@Override
 		public void warn(Object message)
 		{
-			addLog(LogLevel.WARNING, localLevel, source, null, String.valueOf(message));
+			addLog(LogLevel.WARNING, localLevel, source, null, message);
 		}
 
 		@Override
@@ -575,7 +703,7 @@ public class LoggingFactory
 		@Override
 		public void info(Object message)
 		{
-			addLog(LogLevel.INFO, localLevel, source, null, String.valueOf(message));
+			addLog(LogLevel.INFO, localLevel, source, null, message);
 		}
 
 		@Override
@@ -587,7 +715,7 @@ public class LoggingFactory
 		@Override
 		public void debug(Object message)
 		{
-			addLog(LogLevel.DEBUG, localLevel, source, null, String.valueOf(message));
+			addLog(LogLevel.DEBUG, localLevel, source, null, message);
 		}
 
 		@Override
@@ -599,7 +727,8 @@ public class LoggingFactory
 	}
 	
 	/**
-	 * The thread that reads the output queue and dumps stuff. 
+	 * The thread that reads the output queue and dumps stuff in batches.
+	 * Ends after being idle for a while - it is restarted on the next message. 
 	 */
 	private class LoggerThread extends Thread
 	{
@@ -612,23 +741,55 @@ public class LoggingFactory
 		@Override
 		public void run()
 		{
+			List<LogObject> batch = new ArrayList<>(BATCH_SIZE);
+			int idle = 0;
 			while (true)
 			{
-				try {
-					
-					LogObject logobj = null;
-					synchronized (outQueue)
-					{
-						if (outQueue.isEmpty())
-							outQueue.wait(100);
-						if (outQueue.isEmpty())
-							break;
-						logobj = outQueue.poll();
+				LogObject logobj;
+				while (batch.size() < BATCH_SIZE && (logobj = outQueue.poll()) != null)
+					batch.add(logobj);
+				
+				if (!batch.isEmpty())
+				{
+					idle = 0;
+					write(batch);
+					batch.clear();
+				}
+				else if (idle < IDLE_WAIT_COUNT)
+				{
+					idle++;
+					LockSupport.parkNanos(IDLE_WAIT_NANOS);
+				}
+				else
+				{
+					loggerRunning.set(false);
+					// A message may have been added just before the flag was cleared.
+					if (outQueue.isEmpty() || !loggerRunning.compareAndSet(false, true))
+						break;
+					idle = 0;
+				}
+			}
+		}
+		
+		private void write(List<LogObject> batch)
+		{
+			for (LogObject logobj : batch)
+			{
+				Date time = new Date(logobj.time);
+				String message = logobj.getMessage();
+				for (Driver d : drivers)
+				{
+					try {
+						d.log(time, logobj.level, logobj.source, message, logobj.throwable);
+					} catch (Throwable e) {
+						e.printStackTrace(System.err);
 					}
-					
-					for (Driver d : drivers)
-						d.log(logobj.time, logobj.level, logobj.source, logobj.message, logobj.throwable);
-					
+				}
+			}
+			for (Driver d : drivers)
+			{
+				try {
+					d.flush();
 				} catch (Throwable e) {
 					e.printStackTrace(System.err);
 				}
@@ -673,6 +834,13 @@ public class LoggingFactory
 			}
 		}
 	
+		@Override
+		public void flush()
+		{
+			if (out != null)
+				out.flush();
+		}
+		
 	}
 
 	/**
@@ -731,7 +899,7 @@ public class LoggingFactory
 				}
 				
 				file = logFile;
-				writer = new PrintWriter(new FileOutputStream(file), true);
+				writer = new PrintWriter(new FileOutputStream(file), false);
 			}
 		}
 		
@@ -759,6 +927,18 @@ public class LoggingFactory
 					throwable.printStackTrace(writer);
 			}
 		}
+		
+		@Override
+		public void flush()
+		{
+			if (writer == null)
+				return;
+			
+			synchronized (MUTEX)
+			{
+				writer.flush();
+			}
+		}
 	}
 
 }
@@ -0,0 +1,508 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2024 Matt Tropiano
+ * This program and the accompanying materials are made available under 
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.struct;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A profiler that records nested, timed spans across threads.
+ * <p>A profiler is active on the thread that started it, and on the threads that thread (or those threads) start
+ * until it is stopped, so separate tool invocations on other threads are not recorded by it.
+ * Code that wants to be profiled calls {@link #begin(String, String)}, which does nothing (and returns a shared
+ * no-op span) if no profiler is active on the current thread.
+ * <p>Each span records its wall time and, where the JVM supports it, the bytes allocated by its thread.
+ * Spans that are not inside another span on the same thread also record the bytes read and written by their
+ * thread (Linux only, through <code>/proc/thread-self/io</code>), as reading that file for every span would cost more
+ * than many of the spans.
+ * <p>The recorded spans can be written as a Chrome trace-event file (readable by <code>chrome://tracing</code>
+ * or Perfetto) and summarized as a table.
+ * @author Matthew Tropiano
+ */
+public final class TraceProfiler
+{
+	/** Maximum amount of spans kept for the trace file. Summaries include all spans. */
+	public static final int DEFAULT_MAX_EVENTS = 250000;
+
+	/** Per-thread IO statistics file. */
+	private static final File THREAD_IO_FILE = new File("/proc/thread-self/io");
+	/** Thread MX bean, if allocation counting is supported. */
+	private static final com.sun.management.ThreadMXBean THREAD_BEAN = getThreadBean();
+	/** The no-op span. */
+	private static final Span NO_SPAN = new Span(null, null, null);
+
+	/** The active profiler for each thread (inherited by new threads). */
+	private static final InheritableThreadLocal<TraceProfiler> ACTIVE = new InheritableThreadLocal<>();
+
+	/** Open spans per thread. */
+	private final ThreadLocal<Deque<Span>> openSpans;
+	/** Thread IO counters per thread (or null if not available). */
+	private final ThreadLocal<IOCounter> ioCounter;
+	/** Recorded spans, in the order they ended. */
+	private final List<Event> events;
+	/** Summaries by category and name. */
+	private final Map<String, Summary> summaries;
+	/** Start time. */
+	private final long startNanos;
+	/** Maximum amount of trace events kept. */
+	private final int maxEvents;
+	/** Amount of events dropped from the trace. */
+	private int droppedEvents;
+	/** If stopped. */
+	private volatile boolean stopped;
+
+	private TraceProfiler(int maxEvents)
+	{
+		this.openSpans = ThreadLocal.withInitial(() -> new ArrayDeque<>());
+		this.ioCounter = ThreadLocal.withInitial(() -> THREAD_IO_FILE.exists() ? new IOCounter() : null);
+		this.events = new ArrayList<>(1024);
+		this.summaries = new HashMap<>();
+		this.startNanos = System.nanoTime();
+		this.maxEvents = maxEvents;
+		this.droppedEvents = 0;
+		this.stopped = false;
+	}
+
+	private static com.sun.management.ThreadMXBean getThreadBean()
+	{
+		try {
+			java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (!(bean instanceof com.sun.management.ThreadMXBean))
+				return null;
+			com.sun.management.ThreadMXBean out = (com.sun.management.ThreadMXBean)bean;
+			if (!out.isThreadAllocatedMemorySupported())
+				return null;
+			if (!out.isThreadAllocatedMemoryEnabled())
+				out.setThreadAllocatedMemoryEnabled(true);
+			return out;
+		} catch (Throwable t) { // not HotSpot, or not permitted.
+			return null;
+		}
+	}
+
+	/**
+	 * Starts a new profiler and makes it the active one for the current thread.
+	 * @return the new profiler.
+	 * @throws IllegalStateException if a profiler is already active on the current thread.
+	 */
+	public static TraceProfiler start()
+	{
+		return start(DEFAULT_MAX_EVENTS);
+	}
+
+	/**
+	 * Starts a new profiler and makes it the active one for the current thread.
+	 * @param maxEvents the maximum amount of spans to keep for the trace file.
+	 * @return the new profiler.
+	 * @throws IllegalStateException if a profiler is already active on the current thread.
+	 */
+	public static TraceProfiler start(int maxEvents)
+	{
+		if (isActive())
+			throw new IllegalStateException("A profiler is already active on this thread.");
+		TraceProfiler out = new TraceProfiler(maxEvents);
+		ACTIVE.set(out);
+		return out;
+	}
+
+	/**
+	 * @return true if a profiler is active on the current thread, false if not.
+	 */
+	public static boolean isActive()
+	{
+		return current() != null;
+	}
+
+	// Gets the active profiler for the current thread, or null if none (or it was stopped).
+	private static TraceProfiler current()
+	{
+		TraceProfiler profiler = ACTIVE.get();
+		return profiler != null && !profiler.stopped ? profiler : null;
+	}
+
+	/**
+	 * Gets the amount of bytes allocated so far by the current thread.
+	 * Allocation counting is turned on when this class is loaded, if the JVM supports it and it is off.
+	 * @return the amount of bytes, or -1 if not supported by this JVM.
+	 */
+	public static long getCurrentThreadAllocatedBytes()
+	{
+		return THREAD_BEAN != null ? THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1L;
+	}
+
+	/**
+	 * Begins a span on the current thread in the active profiler.
+	 * The span must be ended (see {@link Span#close()}) on the same thread, preferably in a try-with-resources block.
+	 * @param category the span category (for example, "tool" or "file").
+	 * @param name the span name.
+	 * @return the new span, or a span that does nothing if no profiler is active.
+	 */
+	public static Span begin(String category, String name)
+	{
+		TraceProfiler profiler = current();
+		if (profiler == null)
+			return NO_SPAN;
+		Span span = new Span(profiler, category, name);
+		Deque<Span> stack = profiler.openSpans.get();
+		boolean topLevel = stack.isEmpty();
+		stack.push(span);
+		span.start(topLevel);
+		return span;
+	}
+
+	/**
+	 * Stops this profiler. Spans that end after this are not recorded, including spans on other threads.
+	 */
+	public void stop()
+	{
+		stopped = true;
+		if (ACTIVE.get() == this)
+			ACTIVE.remove();
+	}
+
+	/**
+	 * Writes the recorded spans as a Chrome trace-event JSON file.
+	 * @param writer the writer to write to.
+	 * @throws IOException if a write error occurs.
+	 */
+	public synchronized void writeChromeTrace(Writer writer) throws IOException
+	{
+		writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+		boolean first = true;
+		for (Event event : events)
+		{
+			if (!first)
+				writer.write(",\n");
+			first = false;
+			writer.write("{\"ph\":\"X\",\"pid\":1,\"tid\":");
+			writer.write(String.valueOf(event.threadId));
+			writer.write(",\"cat\":");
+			writeString(writer, event.category);
+			writer.write(",\"name\":");
+			writeString(writer, event.name);
+			writer.write(",\"ts\":");
+			writer.write(String.format(Locale.ROOT, "%.3f", (event.startNanos - startNanos) / 1000.0));
+			writer.write(",\"dur\":");
+			writer.write(String.format(Locale.ROOT, "%.3f", event.durationNanos / 1000.0));
+			writer.write(",\"args\":{\"thread\":");
+			writeString(writer, event.threadName);
+			if (event.allocatedBytes >= 0)
+				writer.write(",\"allocatedBytes\":" + event.allocatedBytes);
+			if (event.bytesRead >= 0)
+				writer.write(",\"bytesRead\":" + event.bytesRead + ",\"bytesWritten\":" + event.bytesWritten);
+			writer.write("}}");
+		}
+		writer.write("\n]}\n");
+		writer.flush();
+	}
+
+	/**
+	 * Prints a summary table of all recorded spans, grouped by category and name, most total time first.
+	 * "Self" time is total time minus the time of spans started inside it on the same thread.
+	 * @param out the print stream to print to.
+	 */
+	public synchronized void printSummary(PrintStream out)
+	{
+		List<Summary> list = new ArrayList<>(summaries.values());
+		Collections.sort(list, (a, b) -> Long.compare(b.totalNanos, a.totalNanos));
+
+		out.printf("%-40s %8s %11s %11s %11s %11s %11s %11s\n", "Span", "Calls", "Total ms", "Self ms", "Max ms", "Alloc KB", "Read KB", "Write KB");
+		for (Summary summary : list)
+		{
+			String label = summary.category + ": " + summary.name;
+			if (label.length() > 40)
+				label = label.substring(0, 37) + "...";
+			out.printf("%-40s %8d %11.2f %11.2f %11.2f %11s %11s %11s\n",
+				label,
+				summary.calls,
+				summary.totalNanos / 1000000.0,
+				summary.selfNanos / 1000000.0,
+				summary.maxNanos / 1000000.0,
+				kilobytes(summary.allocatedBytes),
+				kilobytes(summary.bytesRead),
+				kilobytes(summary.bytesWritten)
+			);
+		}
+		if (droppedEvents > 0)
+			out.printf("(%d spans were left out of the trace file, but are included above.)\n", droppedEvents);
+	}
+
+	private static String kilobytes(long bytes)
+	{
+		return bytes < 0 ? "-" : String.format("%.1f", bytes / 1024.0);
+	}
+
+	private static void writeString(Writer writer, String s) throws IOException
+	{
+		writer.write('"');
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			switch (c)
+			{
+				case '"': writer.write("\\\""); break;
+				case '\\': writer.write("\\\\"); break;
+				case '\n': writer.write("\\n"); break;
+				case '\r': writer.write("\\r"); break;
+				case '\t': writer.write("\\t"); break;
+				default:
+					if (c < 0x20)
+						writer.write(String.format("\\u%04x", (int)c));
+					else
+						writer.write(c);
+					break;
+			}
+		}
+		writer.write('"');
+	}
+
+	// Called when a span ends.
+	private synchronized void record(Event event, long childNanos)
+	{
+		if (stopped)
+			return;
+		String key = event.category + "\0" + event.name;
+		Summary summary = summaries.get(key);
+		if (summary == null)
+			summaries.put(key, summary = new Summary(event.category, event.name));
+		summary.add(event, childNanos);
+
+		if (events.size() < maxEvents)
+			events.add(event);
+		else
+			droppedEvents++;
+	}
+
+	/**
+	 * A single span. Ending it records it in the profiler that it was started in.
+	 */
+	public static final class Span implements AutoCloseable
+	{
+		private final TraceProfiler profiler;
+		private final String category;
+		private final String name;
+
+		private long startNanos;
+		private long startAllocated;
+		private long startRead;
+		private long startWritten;
+		private long childNanos;
+
+		private Span(TraceProfiler profiler, String category, String name)
+		{
+			this.profiler = profiler;
+			this.category = category;
+			this.name = name;
+			this.childNanos = 0L;
+		}
+
+		private void start(boolean topLevel)
+		{
+			IOCounter io = topLevel ? profiler.ioCounter.get() : null;
+			if (io != null && io.sample())
+			{
+				startRead = io.read;
+				startWritten = io.written;
+			}
+			else
+			{
+				startRead = -1L;
+			}
+			startAllocated = getCurrentThreadAllocatedBytes();
+			startNanos = System.nanoTime();
+		}
+
+		/**
+		 * Ends this span.
+		 */
+		@Override
+		public void close()
+		{
+			if (profiler == null)
+				return;
+
+			long endNanos = System.nanoTime();
+			long allocated = startAllocated >= 0 ? getCurrentThreadAllocatedBytes() - startAllocated : -1L;
+			long read = -1L;
+			long written = -1L;
+			IOCounter io = startRead >= 0 ? profiler.ioCounter.get() : null;
+			if (io != null && io.sample())
+			{
+				read = io.read - startRead;
+				written = io.written - startWritten;
+			}
+
+			Deque<Span> stack = profiler.openSpans.get();
+			// Remove this span (and any that were not closed inside of it).
+			while (!stack.isEmpty() && stack.pop() != this);
+
+			long duration = endNanos - startNanos;
+			Span parent = stack.peek();
+			if (parent != null)
+				parent.childNanos += duration;
+
+			Thread thread = Thread.currentThread();
+			profiler.record(new Event(category, name, thread.getId(), thread.getName(), startNanos, duration, allocated, read, written), childNanos);
+		}
+	}
+
+	/**
+	 * Reads the current thread's IO counters, without counting the profiler's own reads of the counter file.
+	 */
+	private static class IOCounter
+	{
+		private byte[] buffer;
+		private long ownRead;
+		private long read;
+		private long written;
+
+		private IOCounter()
+		{
+			this.buffer = new byte[512];
+			this.ownRead = 0L;
+		}
+
+		// Returns false if the counters could not be read.
+		private boolean sample()
+		{
+			int length = 0;
+			try (InputStream in = new FileInputStream(THREAD_IO_FILE))
+			{
+				int n;
+				while (length < buffer.length && (n = in.read(buffer, length, buffer.length - length)) > 0)
+					length += n;
+			}
+			catch (IOException e)
+			{
+				return false;
+			}
+
+			long rchar = parseField(buffer, length, "rchar:");
+			long wchar = parseField(buffer, length, "wchar:");
+			if (rchar < 0 || wchar < 0)
+				return false;
+			// The counters read were updated before this read, so only earlier profiler reads are subtracted.
+			read = rchar - ownRead;
+			written = wchar;
+			ownRead += length;
+			return true;
+		}
+
+		private static long parseField(byte[] buffer, int length, String field)
+		{
+			outer: for (int i = 0; i + field.length() <= length; i++)
+			{
+				if (i > 0 && buffer[i - 1] != '\n')
+					continue;
+				for (int j = 0; j < field.length(); j++)
+					if (buffer[i + j] != field.charAt(j))
+						continue outer;
+				long out = 0L;
+				boolean digits = false;
+				for (int k = i + field.length(); k < length; k++)
+				{
+					byte b = buffer[k];
+					if (b >= '0' && b <= '9')
+					{
+						out = out * 10 + (b - '0');
+						digits = true;
+					}
+					else if (digits || b == '\n')
+						break;
+				}
+				return digits ? out : -1L;
+			}
+			return -1L;
+		}
+	}
+
+	/**
+	 * A recorded span.
+	 */
+	private static class Event
+	{
+		private final String category;
+		private final String name;
+		private final long threadId;
+		private final String threadName;
+		private final long startNanos;
+		private final long durationNanos;
+		private final long allocatedBytes;
+		private final long bytesRead;
+		private final long bytesWritten;
+
+		private Event(String category, String name, long threadId, String threadName, long startNanos, long durationNanos, long allocatedBytes, long bytesRead, long bytesWritten)
+		{
+			this.category = category;
+			this.name = name;
+			this.threadId = threadId;
+			this.threadName = threadName;
+			this.startNanos = startNanos;
+			this.durationNanos = durationNanos;
+			this.allocatedBytes = allocatedBytes;
+			this.bytesRead = bytesRead;
+			this.bytesWritten = bytesWritten;
+		}
+	}
+
+	/**
+	 * Totals for one kind of span.
+	 */
+	private static class Summary
+	{
+		private final String category;
+		private final String name;
+		private int calls;
+		private long totalNanos;
+		private long selfNanos;
+		private long maxNanos;
+		private long allocatedBytes;
+		private long bytesRead;
+		private long bytesWritten;
+
+		private Summary(String category, String name)
+		{
+			this.category = category;
+			this.name = name;
+			this.calls = 0;
+			this.totalNanos = 0L;
+			this.selfNanos = 0L;
+			this.maxNanos = 0L;
+			this.allocatedBytes = -1L;
+			this.bytesRead = -1L;
+			this.bytesWritten = -1L;
+		}
+
+		private void add(Event event, long childNanos)
+		{
+			calls++;
+			totalNanos += event.durationNanos;
+			selfNanos += Math.max(0L, event.durationNanos - childNanos);
+			maxNanos = Math.max(maxNanos, event.durationNanos);
+			if (event.allocatedBytes >= 0)
+				allocatedBytes = Math.max(allocatedBytes, 0L) + event.allocatedBytes;
+			if (event.bytesRead >= 0)
+			{
+				bytesRead = Math.max(bytesRead, 0L) + event.bytesRead;
+				bytesWritten = Math.max(bytesWritten, 0L) + event.bytesWritten;
+			}
+		}
+	}
+
+}
@@ -15,6 +15,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
@@ -22,13 +23,21 @@ import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.net.HttpURLConnection;
+import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.ProtocolException;
+import java.net.Proxy;
+import java.net.ProxySelector;
 import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
 import java.util.AbstractMap;
 import java.util.ArrayList;
@@ -47,9 +56,13 @@ import java.util.TimeZone;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -57,13 +70,14 @@ import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
  * HTTP Utilities.
  * <p>All of the HTTP functions are <em>synchronous</em>. If you want to make them asynchronous,
- * you will have to wire them up to your favorite asynchronous task library.
+ * you will have to wire them up to your favorite asynchronous task library, or use an {@link HTTPClient}.
  * @author Matthew Tropiano
  */
 public final class HTTPUtils
@@ -524,6 +538,29 @@ public final class HTTPUtils
 			}
 		}
 		
+		/** Sends request through a client and gets an object. */
+		private static class ClientObjectResponse<T> extends HTTPRequestFuture<T>
+		{
+			private HTTPClient client;
+			private HTTPReader<T> reader;
+			
+			private ClientObjectResponse(HTTPClient client, HTTPRequest request, HTTPReader<T> reader)
+			{
+				super(request);
+				this.client = client;
+				this.reader = reader;
+			}
+	
+			@Override
+			protected T execute() throws Throwable
+			{
+				try (HTTPResponse resp = (response = client.send(request, cancelSwitch)))
+				{
+					return resp != null ? resp.read(reader, cancelSwitch) : null;
+				}
+			}
+		}
+		
 		/** Sends request and gets an object. */
 		private static class ObjectResponse<T> extends HTTPRequestFuture<T>
 		{
@@ -561,6 +598,183 @@ public final class HTTPUtils
 		
 	}
 	
+	/**
+	 * Timing breakdown of a single HTTP request.
+	 * <p> Phases that did not happen (for example, connecting on a reused keep-alive connection) 
+	 * are near zero. The transfer phase is only complete once the response content has been 
+	 * read to the end or the response is closed.
+	 * <p> The host name is only looked up separately (and timed) for requests with a timing listener 
+	 * that do not go through a proxy. Otherwise, DNS time is zero and the lookup is part of the connect time.
+	 */
+	public static final class HTTPTimings
+	{
+		private long startNanos;
+		private long dnsNanos;
+		private long connectNanos;
+		private long firstByteNanos;
+		private long transferStartNanos;
+		private long transferEndNanos;
+		private long bytesTransferred;
+		
+		private HTTPTimings()
+		{
+			this.startNanos = System.nanoTime();
+			this.dnsNanos = 0L;
+			this.connectNanos = 0L;
+			this.firstByteNanos = 0L;
+			this.transferStartNanos = 0L;
+			this.transferEndNanos = 0L;
+			this.bytesTransferred = 0L;
+		}
+		
+		/**
+		 * @return the time spent resolving the host name, in nanoseconds.
+		 */
+		public long getDNSNanos()
+		{
+			return dnsNanos;
+		}
+		
+		/**
+		 * @return the time spent connecting to the host (including the TLS handshake), in nanoseconds.
+		 */
+		public long getConnectNanos()
+		{
+			return connectNanos;
+		}
+		
+		/**
+		 * @return the time from the start of the request to the response headers arriving, in nanoseconds.
+		 */
+		public long getTimeToFirstByteNanos()
+		{
+			return firstByteNanos;
+		}
+		
+		/**
+		 * @return the time spent reading the response content, in nanoseconds.
+		 */
+		public long getTransferNanos()
+		{
+			if (transferStartNanos == 0L)
+				return 0L;
+			return (transferEndNanos != 0L ? transferEndNanos : System.nanoTime()) - transferStartNanos;
+		}
+		
+		/**
+		 * @return the total time of this request so far, in nanoseconds.
+		 */
+		public long getTotalNanos()
+		{
+			return (transferEndNanos != 0L ? transferEndNanos : System.nanoTime()) - startNanos;
+		}
+		
+		/**
+		 * @return the amount of response content bytes read so far.
+		 */
+		public long getBytesTransferred()
+		{
+			return bytesTransferred;
+		}
+		
+		/**
+		 * @return true if the response content has been completely read or closed, false if not.
+		 */
+		public boolean isComplete()
+		{
+			return transferEndNanos != 0L;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return String.format("dns: %.3f ms, connect: %.3f ms, ttfb: %.3f ms, transfer: %.3f ms (%d bytes)",
+				dnsNanos / 1000000.0, connectNanos / 1000000.0, firstByteNanos / 1000000.0, getTransferNanos() / 1000000.0, bytesTransferred
+			);
+		}
+	}
+	
+	/**
+	 * Content stream that records transfer timing.
+	 */
+	private static class TimedInputStream extends InputStream
+	{
+		private InputStream in;
+		private HTTPTimings timings;
+		private Runnable onComplete;
+		
+		private TimedInputStream(InputStream in, HTTPTimings timings, Runnable onComplete)
+		{
+			this.in = in;
+			this.timings = timings;
+			this.onComplete = onComplete;
+		}
+		
+		private void start()
+		{
+			if (timings.transferStartNanos == 0L)
+				timings.transferStartNanos = System.nanoTime();
+		}
+		
+		private void end()
+		{
+			if (timings.transferEndNanos == 0L)
+			{
+				if (timings.transferStartNanos == 0L)
+					timings.transferStartNanos = System.nanoTime();
+				timings.transferEndNanos = System.nanoTime();
+				if (onComplete != null)
+					onComplete.run();
+			}
+		}
+		
+		@Override
+		public int read() throws IOException
+		{
+			start();
+			int out = in.read();
+			if (out < 0)
+				end();
+			else
+				timings.bytesTransferred++;
+			return out;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			start();
+			int out = in.read(b, off, len);
+			if (out < 0)
+				end();
+			else
+				timings.bytesTransferred += out;
+			return out;
+		}
+		
+		@Override
+		public long skip(long n) throws IOException
+		{
+			return in.skip(n);
+		}
+		
+		@Override
+		public int available() throws IOException
+		{
+			return in.available();
+		}
+		
+		@Override
+		public void close() throws IOException
+		{
+			try {
+				in.close();
+			} finally {
+				end();
+			}
+		}
+	}
+	
 	/**
 	 * Interface for reading an HTTPResponse from a URL call.
 	 * @param <R> the return type.
@@ -693,9 +907,9 @@ public final class HTTPUtils
 				if (createDirectories)
 					targetFile.getParentFile().mkdirs();
 				
-				try (FileOutputStream fos = new FileOutputStream(targetFile))
+				try (FileChannel channel = openFileChannel(targetFile, false))
 				{
-					relay(response.getContentStream(), fos, 8192, response.getLength(), cancelSwitch, monitor);
+					response.relayContent(channel, cancelSwitch, monitor);
 				}
 				if (cancelSwitch.get())
 				{
@@ -2221,9 +2435,14 @@ public final class HTTPUtils
 		private String contentDisposition;
 		private String filename;
 		
-		private HTTPResponse(HTTPRequest request, HttpURLConnection conn, String defaultResponseCharset) throws IOException
+		private HTTPTimings timings;
+		private Runnable onClose;
+		
+		private HTTPResponse(HTTPRequest request, HttpURLConnection conn, String defaultResponseCharset, HTTPTimings timings) throws IOException
 		{
 			this.request = request;
+			this.timings = timings;
+			this.onClose = null;
 			this.statusCode = conn.getResponseCode();
 			this.statusMessage = conn.getResponseMessage();
 
@@ -2286,6 +2505,19 @@ public final class HTTPUtils
 				contentStream = conn.getErrorStream() != null ? conn.getErrorStream() : INPUTSTREAM_BLANK;
 			else 
 				contentStream = conn.getInputStream() != null ? conn.getInputStream() : INPUTSTREAM_BLANK;
+			
+			final BiConsumer<HTTPRequest, HTTPTimings> listener = request.timingListener;
+			contentStream = new TimedInputStream(contentStream, timings, listener != null ? () -> listener.accept(request, timings) : null);
+		}
+		
+		/**
+		 * Gets the timing breakdown of the request that produced this response.
+		 * The transfer time is complete once the content is read or this response is closed.
+		 * @return the timings.
+		 */
+		public HTTPTimings getTimings()
+		{
+			return timings;
 		}
 		
 		/**
@@ -2579,6 +2811,39 @@ public final class HTTPUtils
 			return relay(getContentStream(), out, bufferSize, getLength(), cancelSwitch, monitor);
 		}
 		
+		/**
+		 * Convenience function for transferring the entirety of the content 
+		 * stream to a file channel at its current position, monitoring the progress as it goes.
+		 * The content is moved by the channel, not through an intermediate buffer in this class.
+		 * @param channel the file channel to write to.
+		 * @param cancelSwitch the cancel switch for cancelling the transfer. Set to true to stop.
+		 * @param monitor the optional monitor. Can be null.
+		 * @return the amount of bytes moved.
+		 * @throws IOException if an I/O error occurs during transfer.
+		 */
+		public long relayContent(FileChannel channel, AtomicBoolean cancelSwitch, TransferMonitor monitor) throws IOException
+		{
+			return relay(Channels.newChannel(getContentStream()), channel, 65536, getLength(), cancelSwitch, monitor);
+		}
+		
+		/**
+		 * Convenience function for transferring the entirety of the content 
+		 * stream to a file, monitoring the progress as it goes.
+		 * @param file the target file.
+		 * @param append if true, the content is added to the end of the file. If false, the file is replaced.
+		 * @param cancelSwitch the cancel switch for cancelling the transfer. Set to true to stop.
+		 * @param monitor the optional monitor. Can be null.
+		 * @return the amount of bytes moved.
+		 * @throws IOException if an I/O error occurs during transfer.
+		 */
+		public long relayContent(File file, boolean append, AtomicBoolean cancelSwitch, TransferMonitor monitor) throws IOException
+		{
+			try (FileChannel channel = openFileChannel(file, append))
+			{
+				return relayContent(channel, cancelSwitch, monitor);
+			}
+		}
+		
 		/**
 		 * Reads this response with an HTTPReader and returns the read result.
 		 * @param <T> the reader return type - the desired object type.
@@ -2682,6 +2947,11 @@ public final class HTTPUtils
 		public void close()
 		{
 			HTTPUtils.close(contentStream);
+			if (onClose != null)
+			{
+				onClose.run();
+				onClose = null;
+			}
 		}
 	}
 
@@ -2712,6 +2982,8 @@ public final class HTTPUtils
 		private boolean autoRedirect;
 		/** Set of previous URLs from redirects. */
 		private List<String> redirectedURLs;
+		/** Listener for completed request timings. */
+		private BiConsumer<HTTPRequest, HTTPTimings> timingListener;
 		
 		private HTTPRequest()
 		{
@@ -2726,6 +2998,7 @@ public final class HTTPUtils
 			this.monitor = null;
 			this.autoRedirect = true;
 			this.redirectedURLs = null;
+			this.timingListener = null;
 		}
 		
 		// Checks if a URI pattern is valid.
@@ -2861,7 +3134,9 @@ public final class HTTPUtils
 			out.defaultCharsetEncoding = this.defaultCharsetEncoding;
 			out.content = this.content;
 			out.monitor = this.monitor;
+			out.autoRedirect = this.autoRedirect;
 			out.redirectedURLs = this.redirectedURLs != null ? new LinkedList<>(this.redirectedURLs) : null;
+			out.timingListener = this.timingListener;
 			return out;
 		}
 
@@ -3125,6 +3400,18 @@ public final class HTTPUtils
 			return this;
 		}
 		
+		/**
+		 * Sets a listener that is called with the timings of this request once its response is read or closed.
+		 * @param timingListener the listener, or null for no listener.
+		 * @return this request, for chaining.
+		 * @see HTTPResponse#getTimings()
+		 */
+		public HTTPRequest setTimingListener(BiConsumer<HTTPRequest, HTTPTimings> timingListener) 
+		{
+			this.timingListener = timingListener;
+			return this;
+		}
+		
 		/**
 		 * Sends this request and gets an open response.
 		 * <p>
@@ -3421,6 +3708,179 @@ public final class HTTPUtils
 
 	}
 	
+	/**
+	 * An HTTP client that sends independent requests concurrently through its own pool of threads,
+	 * and limits the amount of simultaneous connections per host so that kept-alive connections are reused.
+	 * <p>
+	 * {@link HttpURLConnection} keeps a connection alive for reuse once its response is read to the end and closed,
+	 * up to <code>http.maxConnections</code> (system property, 5 by default) connections per host. Requests made to
+	 * the same host past that amount open connections that are thrown out after use, so this client makes 
+	 * extra requests to a host wait for a response to that host to be closed.
+	 * <p>
+	 * Responses from {@link #send(HTTPRequest)} hold their host's connection slot until they are closed, 
+	 * so always close them (use try-with-resources).
+	 */
+	public static final class HTTPClient implements AutoCloseable
+	{
+		private static final AtomicLong CLIENT_THREAD_ID = new AtomicLong(0L);
+		
+		/** The executor for async requests. */
+		private ExecutorService executor;
+		/** Max connections per host. */
+		private int maxConnectionsPerHost;
+		/** Connection slots per host. */
+		private Map<String, Semaphore> hostPermits;
+		/** Listener for completed request timings. */
+		private BiConsumer<HTTPRequest, HTTPTimings> timingListener;
+		
+		/**
+		 * Creates a new client.
+		 * @param threads the amount of threads to use for asynchronous requests.
+		 * @param maxConnectionsPerHost the maximum amount of open connections to a single host at once.
+		 * @throws IllegalArgumentException if threads or maxConnectionsPerHost is less than 1.
+		 */
+		public HTTPClient(int threads, int maxConnectionsPerHost)
+		{
+			if (threads < 1)
+				throw new IllegalArgumentException("threads cannot be less than 1");
+			if (maxConnectionsPerHost < 1)
+				throw new IllegalArgumentException("maxConnectionsPerHost cannot be less than 1");
+			
+			this.executor = Executors.newFixedThreadPool(threads, (runnable) -> 
+			{
+				Thread out = new Thread(runnable, "HTTPClient-" + CLIENT_THREAD_ID.getAndIncrement());
+				out.setDaemon(true);
+				return out;
+			});
+			this.maxConnectionsPerHost = maxConnectionsPerHost;
+			this.hostPermits = new ConcurrentHashMap<>();
+			this.timingListener = null;
+		}
+		
+		/**
+		 * Sets a listener that is called with the timings of each request sent through this client,
+		 * once its response is read or closed.
+		 * Requests that have their own timing listener keep theirs.
+		 * @param timingListener the listener, or null for no listener.
+		 * @return this client.
+		 */
+		public HTTPClient setTimingListener(BiConsumer<HTTPRequest, HTTPTimings> timingListener)
+		{
+			this.timingListener = timingListener;
+			return this;
+		}
+		
+		private Semaphore getPermit(URL url)
+		{
+			int port = url.getPort() >= 0 ? url.getPort() : url.getDefaultPort();
+			String key = url.getProtocol() + "://" + url.getHost().toLowerCase() + ":" + port;
+			return hostPermits.computeIfAbsent(key, (k) -> new Semaphore(maxConnectionsPerHost, true));
+		}
+		
+		/**
+		 * Sends a request and gets an open response, waiting for a free connection to the host, if need be.
+		 * @param request the request to send.
+		 * @return an HTTPResponse object.
+		 * @throws IOException if an error happens during the read/write, or the wait was interrupted.
+		 * @see HTTPRequest#send()
+		 */
+		public HTTPResponse send(HTTPRequest request) throws IOException
+		{
+			return send(request, new AtomicBoolean(false));
+		}
+		
+		/**
+		 * Sends a request and gets an open response, waiting for a free connection to the host, if need be.
+		 * @param request the request to send.
+		 * @param cancelSwitch the cancel switch. Set to <code>true</code> to attempt to cancel.
+		 * @return an HTTPResponse object, or null if the call was cancelled.
+		 * @throws IOException if an error happens during the read/write, or the wait was interrupted.
+		 * @see HTTPRequest#send(AtomicBoolean)
+		 */
+		public HTTPResponse send(HTTPRequest request, AtomicBoolean cancelSwitch) throws IOException
+		{
+			HTTPRequest toSend = request;
+			if (timingListener != null && request.timingListener == null)
+				toSend = request.copy().setTimingListener(timingListener);
+			
+			Semaphore permit = getPermit(request.url);
+			try {
+				permit.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for a connection.");
+			}
+			
+			HTTPResponse out;
+			try {
+				out = toSend.send(cancelSwitch);
+			} catch (IOException | RuntimeException e) {
+				permit.release();
+				throw e;
+			}
+			
+			if (out == null)
+				permit.release();
+			else
+				out.onClose = permit::release;
+			return out;
+		}
+		
+		/**
+		 * Sends a request and gets a decoded response via an {@link HTTPReader}.
+		 * The response is closed after the read.
+		 * @param <T> the return type.
+		 * @param request the request to send.
+		 * @param reader the reader to use to read the response.
+		 * @return the decoded object from the response.
+		 * @throws IOException if an error happens during the read/write, or the wait was interrupted.
+		 */
+		public <T> T send(HTTPRequest request, HTTPReader<T> reader) throws IOException
+		{
+			AtomicBoolean cancelSwitch = new AtomicBoolean(false);
+			try (HTTPResponse response = send(request, cancelSwitch))
+			{
+				return response != null ? response.read(reader, cancelSwitch) : null;
+			}
+		}
+		
+		/**
+		 * Sends a request on this client's threads and gets a decoded response via an {@link HTTPReader}.
+		 * The response is closed after the read.
+		 * @param <T> the return type.
+		 * @param request the request to send.
+		 * @param reader the reader to use to read the response.
+		 * @return a future for inspecting later, containing the decoded object.
+		 */
+		public <T> HTTPRequestFuture<T> sendAsync(HTTPRequest request, HTTPReader<T> reader)
+		{
+			HTTPRequestFuture<T> out;
+			executor.execute(out = new HTTPRequestFuture.ClientObjectResponse<T>(this, request, reader));
+			return out;
+		}
+		
+		/**
+		 * Sends a request on this client's threads and writes the response content to a file.
+		 * @param request the request to send.
+		 * @param targetFile the target file (created or overwritten).
+		 * @return a future for inspecting later, containing the file.
+		 * @see HTTPReader#createFileDownloader(File)
+		 */
+		public HTTPRequestFuture<File> download(HTTPRequest request, File targetFile)
+		{
+			return sendAsync(request, HTTPReader.createFileDownloader(targetFile));
+		}
+		
+		/**
+		 * Shuts down this client's threads once its queued requests are sent.
+		 */
+		@Override
+		public void close()
+		{
+			executor.shutdown();
+		}
+	}
+	
 	/**
 	 * Makes an HTTP-acceptable ISO date string from a Date.
 	 * @param date the date to format.
@@ -3658,6 +4118,22 @@ public final class HTTPUtils
 		{
 			return null;
 		}
+		
+		HTTPTimings timings = new HTTPTimings();
+		
+		// Resolved addresses are cached by the JVM, so the connection does not look it up again.
+		// Only look up if someone wants the timing, and never through a proxy (the client may not be able to resolve names).
+		long phaseStart;
+		if (request.timingListener != null && !isProxied(url))
+		{
+			phaseStart = System.nanoTime();
+			try {
+				InetAddress.getAllByName(url.getHost());
+			} catch (UnknownHostException e) {
+				// Let the connection report it.
+			}
+			timings.dnsNanos = System.nanoTime() - phaseStart;
+		}
 
 		HttpURLConnection conn = (HttpURLConnection)url.openConnection();
 		conn.setReadTimeout(socketTimeoutMillis);
@@ -3691,9 +4167,18 @@ public final class HTTPUtils
 				conn.setRequestProperty("Content-Encoding", content.getEncoding());
 			
 			conn.setDoOutput(true);
+		}
+		
+		// Connects, or picks up a kept-alive connection to the same host.
+		phaseStart = System.nanoTime();
+		conn.connect();
+		timings.connectNanos = System.nanoTime() - phaseStart;
+		
+		if (content != null)
+		{
 			try (DataOutputStream dos = new DataOutputStream(conn.getOutputStream()))
 			{
-				relay(content.getInputStream(), dos, 8192, uploadLen, cancelSwitch, uploadMonitor);
+				relay(content.getInputStream(), dos, 8192, content.getLength(), cancelSwitch, uploadMonitor);
 				dos.flush();
 			}
 		}
@@ -3707,7 +4192,26 @@ public final class HTTPUtils
 			return null;
 		}
 		
-		return new HTTPResponse(request, conn, defaultResponseCharset);
+		conn.getResponseCode();
+		timings.firstByteNanos = System.nanoTime() - timings.startNanos;
+		
+		return new HTTPResponse(request, conn, defaultResponseCharset, timings);
+	}
+	
+	// Checks if a URL would be fetched through a proxy.
+	private static boolean isProxied(URL url)
+	{
+		ProxySelector selector = ProxySelector.getDefault();
+		if (selector == null)
+			return false;
+		try {
+			for (Proxy proxy : selector.select(url.toURI()))
+				if (proxy.type() != Proxy.Type.DIRECT)
+					return true;
+			return false;
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			return true;
+		}
 	}
 	
 	private static final char[] HEX_NYBBLE = "0123456789ABCDEF".toCharArray();
@@ -3745,7 +4249,7 @@ public final class HTTPUtils
 	{
 		long total = 0;
 		int buf = 0;
-		long origMax = maxLength;
+		Long origMax = maxLength;
 		final byte[] RELAY_BUFFER = new byte[bufferSize];
 		
 		while (!cancelSwitch.get() && (buf = in.read(RELAY_BUFFER, 0, Math.min(maxLength == null ? Integer.MAX_VALUE : (int)Math.min(maxLength, Integer.MAX_VALUE), bufferSize))) > 0)
@@ -3761,6 +4265,52 @@ public final class HTTPUtils
 		return total;
 	}
 	
+	/**
+	 * Reads from a channel, writing the data to a file channel at its current position.
+	 * The file channel pulls the data from the source channel directly.
+	 * This method finishes when the end of the source channel is reached.
+	 * @param in the channel to grab data from.
+	 * @param out the file channel to write the data to.
+	 * @param chunkSize the maximum amount of bytes to move per transfer (also the granularity of cancellation and monitoring). Must be &gt; 0.
+	 * @param maxLength the expected amount of bytes, or null for unknown (for the monitor).
+	 * @param cancelSwitch the cancel switch. Set to <code>true</code> to attempt to cancel.
+	 * @param monitor the transfer monitor to call on changes.
+	 * @return the total amount of bytes relayed.
+	 * @throws IOException if a read or write error occurs.
+	 */
+	private static long relay(ReadableByteChannel in, FileChannel out, int chunkSize, Long maxLength, AtomicBoolean cancelSwitch, TransferMonitor monitor) throws IOException
+	{
+		long total = 0;
+		long buf = 0;
+		long position = out.position();
+		
+		while (!cancelSwitch.get() && (buf = out.transferFrom(in, position, chunkSize)) > 0)
+		{
+			position += buf;
+			total += buf;
+			if (monitor != null)
+				monitor.onProgressChange(total, maxLength);
+		}
+		out.position(position);
+		return total;
+	}
+	
+	// Opens a file channel for writing.
+	// Not opened in APPEND mode - positional writes are not reliable in that mode.
+	private static FileChannel openFileChannel(File file, boolean append) throws IOException
+	{
+		if (append)
+		{
+			FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			out.position(out.size());
+			return out;
+		}
+		else
+		{
+			return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		}
+	}
+	
 	/**
 	 * Reads from a reader, reading in a consistent set of characters
 	 * and writing it to the writer. The read/write is buffered
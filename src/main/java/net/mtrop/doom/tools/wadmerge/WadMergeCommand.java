@@ -1270,64 +1270,102 @@ public enum WadMergeCommand
 			line = line.trim();
 			if (line.isEmpty() || line.startsWith("#"))
 				continue;
-			WadMergeCommand mergeCommand = null;
-			try (TokenScanner scanner = new ArgumentScanner(arguments, line)) 
+			Boolean out = callLine(streamName, linenum, line, context, arguments);
+			if (out == null)
+				return true;
+			if (!out)
+				return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Executes the provided script, running commands that work on different symbols at the same time.
+	 * Commands that use the same symbol (or file) still run in script order, and the log output 
+	 * is the same as {@link #callScript(String, BufferedReader, WadMergeContext, String[])}.
+	 * @param streamName stream name.
+	 * @param reader the reader to read the script from.
+	 * @param context the WAD merge context.
+	 * @param arguments the WadMerge arguments.
+	 * @param threads the maximum amount of commands to run at the same time. If 1 or less, this runs the script in order.
+	 * @return true if no errors, false otherwise.
+	 * @throws IOException if the script can't be read.
+	 */
+	public static boolean callScript(String streamName, BufferedReader reader, WadMergeContext context, String[] arguments, int threads) throws IOException
+	{
+		if (threads <= 1)
+			return callScript(streamName, reader, context, arguments);
+		return WadMergeScriptGraph.read(streamName, reader, arguments).run(context, threads);
+	}
+	
+	/**
+	 * Executes a single script line.
+	 * @param streamName stream name.
+	 * @param linenum the line number.
+	 * @param line the line (trimmed, not empty, not a comment).
+	 * @param context the WAD merge context.
+	 * @param arguments the WadMerge arguments.
+	 * @return true if the command succeeded, false if not, or null if the script should end.
+	 */
+	static Boolean callLine(String streamName, int linenum, String line, WadMergeContext context, String[] arguments)
+	{
+		WadMergeCommand mergeCommand = null;
+		try (TokenScanner scanner = new ArgumentScanner(arguments, line)) 
+		{
+			String command = scanner.nextString();
+			try 
 			{
-				String command = scanner.nextString();
-				try 
-				{
-					mergeCommand = WadMergeCommand.VALUES.get(command);
-					if (mergeCommand == null)
-					{
-						context.logf("ERROR: %s, line %d: Unknown command: \"%s\".\n", streamName, linenum, command);
-						return false;
-					}
-					
-					Response out = mergeCommand.execute(context, scanner);
-					if (out == null)
-						return true;
-					if (out != Response.OK)
-					{
-						context.logf("ERROR: %s, line %d: Command %s returned %s.\n", streamName, linenum, command, out.name());
-						return false;
-					}
-				}
-				catch (ParseException e)
+				mergeCommand = WadMergeCommand.VALUES.get(command);
+				if (mergeCommand == null)
 				{
-					context.logf("ERROR: %s, line %d: An argument in command %s could not be parsed: %s\n", streamName, linenum, command, e.getLocalizedMessage());
-					context.logf("    %s\n", line);
+					context.logf("ERROR: %s, line %d: Unknown command: \"%s\".\n", streamName, linenum, command);
 					return false;
 				}
-				catch (NoSuchElementException e)
+				
+				Response out = mergeCommand.execute(context, scanner);
+				if (out == null)
+					return null;
+				if (out != Response.OK)
 				{
-					context.logf("ERROR: %s, line %d: Command %s is missing an argument.\n", streamName, linenum, command);
-					context.logf("    %s ...?\n", line);
-					context.logln();
-					mergeCommand.help(System.out);
-					return false;
-				}
-				catch (NumberFormatException e)
-				{
-					context.logf("ERROR: %s, line %d: Command %s requires a numeric argument: %s\n", streamName, linenum, command, e.getLocalizedMessage());
-					context.logf("    %s\n", line);
-					context.logln();
-					mergeCommand.help(System.out);
-					return false;
-				}
-				catch (Exception e)
-				{
-					context.logf("ERROR: %s, line %d: Bad command call: %s. Internal error.\n", streamName, linenum, command);
-					context.logf("    Caused by: %s: %s\n", e.getClass().getSimpleName(), e.getLocalizedMessage());
+					context.logf("ERROR: %s, line %d: Command %s returned %s.\n", streamName, linenum, command, out.name());
 					return false;
 				}
 			}
-			catch (NoSuchElementException e) 
+			catch (ParseException e)
+			{
+				context.logf("ERROR: %s, line %d: An argument in command %s could not be parsed: %s\n", streamName, linenum, command, e.getLocalizedMessage());
+				context.logf("    %s\n", line);
+				return false;
+			}
+			catch (NoSuchElementException e)
+			{
+				context.logf("ERROR: %s, line %d: Command %s is missing an argument.\n", streamName, linenum, command);
+				context.logf("    %s ...?\n", line);
+				context.logln();
+				mergeCommand.help(System.out);
+				return false;
+			}
+			catch (NumberFormatException e)
 			{
-				context.logf("ERROR: %s, line %d: Missing command.\n", streamName, linenum);
+				context.logf("ERROR: %s, line %d: Command %s requires a numeric argument: %s\n", streamName, linenum, command, e.getLocalizedMessage());
+				context.logf("    %s\n", line);
+				context.logln();
+				mergeCommand.help(System.out);
+				return false;
+			}
+			catch (Exception e)
+			{
+				context.logf("ERROR: %s, line %d: Bad command call: %s. Internal error.\n", streamName, linenum, command);
+				context.logf("    Caused by: %s: %s\n", e.getClass().getSimpleName(), e.getLocalizedMessage());
 				return false;
 			}
 		}
-		
+		catch (NoSuchElementException e) 
+		{
+			context.logf("ERROR: %s, line %d: Missing command.\n", streamName, linenum);
+			return false;
+		}
 		return true;
 	}
 	
@@ -14,9 +14,12 @@ import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -26,8 +29,6 @@ import net.mtrop.doom.WadBuffer;
 import net.mtrop.doom.WadEntry;
 import net.mtrop.doom.WadFile;
 import net.mtrop.doom.exception.WadException;
-import net.mtrop.doom.graphics.PNGPicture;
-import net.mtrop.doom.struct.io.SerialReader;
 import net.mtrop.doom.texture.Animated;
 import net.mtrop.doom.texture.CommonTextureList;
 import net.mtrop.doom.texture.DoomTextureList;
@@ -77,7 +78,7 @@ public class WadMergeContext
 	};
 
 	/** Map of open wads. */
-	private TreeMap<String, Wad> currentWads;
+	private Map<String, Wad> currentWads;
 	/** Log out print stream. */
 	private PrintStream logout;
 	/** If verbosity is enabled. */
@@ -100,12 +101,34 @@ public class WadMergeContext
 	 */
 	public WadMergeContext(PrintStream log, boolean verbose)
 	{
-		this.currentWads = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		this.currentWads = Collections.synchronizedMap(new TreeMap<>(String.CASE_INSENSITIVE_ORDER));
 		this.charSubstitutions = new TreeMap<>();
 		this.logout = log;
 		this.verbose = verbose;
 	}
 	
+	/**
+	 * Creates a new context that shares its buffers and character substitutions with another context,
+	 * but logs to a different stream. Used for running commands at the same time.
+	 * @param parent the context to share buffers with.
+	 * @param log the output print stream to use for logging (can be null).
+	 */
+	WadMergeContext(WadMergeContext parent, PrintStream log)
+	{
+		this.currentWads = parent.currentWads;
+		this.charSubstitutions = parent.charSubstitutions;
+		this.logout = log;
+		this.verbose = parent.verbose;
+	}
+	
+	/**
+	 * @return the log stream for this context (can be null).
+	 */
+	PrintStream getLogStream()
+	{
+		return logout;
+	}
+	
 	public void verboseln(String seq)
 	{
 		if (verbose)
@@ -1006,9 +1029,10 @@ public class WadMergeContext
 		}
 		
 		TextureSet textureSet = new TextureSet(pout, tout);
-		WadFile.Adder adder = (buffer instanceof WadFile) ? ((WadFile)buffer).createAdder() : null;
+		InsertBatch batch = new InsertBatch(buffer, symbol, insertIndex);
 
 		File[] files;
+		int[] dimensions = new int[2];
 		
 		// Sort files first, directories last, alphabetical order.
 		Arrays.sort(files = textureDirectory.listFiles(), DIR_FILESORT);
@@ -1023,30 +1047,29 @@ public class WadMergeContext
 				}
 				else
 				{
-					Response resp;
 					String namenoext = subCharString(FileUtils.getFileNameWithoutExtension(f));
-					if (adder != null)
-					{
-						if ((resp = mergeFileData(adder, symbol, f, namenoext, insertIndex)) != Response.OK)
-							return resp;
-					}
-					else
-					{
-						if ((resp = mergeFileData(buffer, symbol, f, namenoext, insertIndex)) != Response.OK)
-							return resp;
-					}
-					insertIndex++;
+					String entryName = NameUtils.toValidEntryName(namenoext);
+					
+					// Read once - the same bytes are added and probed for the texture size.
+					byte[] data = IOUtils.getBinaryContents(f);
+					batch.add(entryName, data);
+					verbosef("Added `%s` to `%s` (from `%s`).\n", entryName, symbol, f.getPath());
 					
 					String textureName = NameUtils.toValidTextureName(namenoext);
 					Texture texture = textureSet.createTexture(textureName);
-					setTextureDimensions(texture, f);
+					if (Utility.readPictureDimensions(data, dimensions))
+					{
+						texture.setWidth(dimensions[0]);
+						texture.setHeight(dimensions[1]);
+					}
 					texture.createPatch(textureName);
 					verbosef("Add texture `%s`...\n", textureName);
 				}
 			}
 		} finally {
-			IOUtils.close(adder);
+			batch.close();
 		}
+		buffer = batch.getWad();
 
 		if (strife)
 			textureSet.export(pout, (CommonTextureList<StrifeTextureList.Texture>)(tout = new StrifeTextureList(128)));
@@ -1126,35 +1149,6 @@ public class WadMergeContext
 		}
 	}
 
-	private Response setTextureDimensions(Texture t, File f)
-	{
-		try (FileInputStream fis = new FileInputStream(f))
-		{
-			if (FileUtils.getFileExtension(f).toLowerCase().equals("png"))
-			{
-				PNGPicture picture = new PNGPicture();
-				picture.readBytes(fis);
-				t.setWidth(picture.getWidth());
-				t.setHeight(picture.getHeight());
-			}
-			else
-			{
-				// Quick scan Doom Graphic
-				SerialReader sr = new SerialReader(SerialReader.LITTLE_ENDIAN);
-				int x = sr.readUnsignedShort(fis);
-				int y = sr.readUnsignedShort(fis);
-				t.setWidth(x);
-				t.setHeight(y);
-			}
-		}
-		catch (IOException e)
-		{
-			return Response.BAD_FILE;
-		}
-		
-		return Response.OK;
-	}
-	
 	// Merge map into buffer, with rename.
 	private Response mergeMap(Wad targetBuffer, String bufferName, String newHeader, Wad source, String sourceName, String header) throws IOException
 	{
@@ -1181,20 +1175,15 @@ public class WadMergeContext
 
 	private Response mergeBulkData(Wad targetWad, String targetSymbol, int targetIndex, Wad sourceWad, String sourceName, WadEntry[] entries) throws IOException
 	{
-		WadFile.Adder adder = (targetWad instanceof WadFile) ? ((WadFile)targetWad).createAdder() : null;
-
+		InsertBatch batch = new InsertBatch(targetWad, targetSymbol, targetIndex);
 		try {
 			for (WadEntry e : entries)
 			{
-				if (adder != null)
-					adder.addDataAt(targetIndex, e.getName(), sourceWad.getData(e));
-				else
-					targetWad.addDataAt(targetIndex, e.getName(), sourceWad.getData(e));
+				batch.add(e.getName(), sourceWad.getData(e));
 				verbosef("Added `%s` to `%s` (from `%s`).\n", e.getName(), targetSymbol, sourceName);
-				targetIndex++;
 			}
 		} finally {
-			IOUtils.close(adder);
+			batch.close();
 		}
 		return Response.OK;
 	}
@@ -1214,5 +1203,117 @@ public class WadMergeContext
 		verbosef("Added `%s` to `%s` (from `%s`).\n", entryName, targetSymbol, inFile.getPath());
 		return Response.OK;
 	}
+
+	/**
+	 * A set of entries inserted into a buffer, in order, starting at one index.
+	 * <p>Inserting entries one at a time in the middle of a large buffer shifts the rest of its 
+	 * directory on every insert. This applies all of them at once instead: 
+	 * WAD files get all of their data appended in order and their directory written once (through a {@link WadFile.Adder}),
+	 * and in-memory buffers are rebuilt once, on {@link #close()}, unless the entries go at the end.
+	 * <p>Since an in-memory buffer may be replaced (under the batch's symbol), get the buffer again with {@link #getWad()} after closing.
+	 */
+	private class InsertBatch implements AutoCloseable
+	{
+		private String symbol;
+		private Wad wad;
+		private int index;
+		private WadFile.Adder adder;
+		private List<String> pendingNames;
+		private List<byte[]> pendingData;
+		private long pendingBytes;
+		
+		private InsertBatch(Wad wad, String symbol, int index)
+		{
+			this.symbol = symbol;
+			this.wad = wad;
+			this.index = index;
+			this.adder = (wad instanceof WadFile) ? ((WadFile)wad).createAdder() : null;
+			this.pendingNames = new ArrayList<>();
+			this.pendingData = new ArrayList<>();
+			this.pendingBytes = 0L;
+		}
+		
+		/**
+		 * Adds an entry after the previously added entry.
+		 * @param name the entry name.
+		 * @param data the entry data.
+		 * @throws IOException if the data could not be written.
+		 */
+		public void add(String name, byte[] data) throws IOException
+		{
+			if (adder != null)
+				adder.addDataAt(index++, name, data);
+			else if (pendingNames.isEmpty() && index == wad.getEntryCount())
+			{
+				wad.addData(name, data);
+				index++;
+			}
+			else
+			{
+				pendingNames.add(name);
+				pendingData.add(data);
+				pendingBytes += data.length;
+			}
+		}
+
+		/**
+		 * @return the buffer that the entries were added to.
+		 */
+		public Wad getWad()
+		{
+			return wad;
+		}
+		
+		@Override
+		public void close() throws IOException
+		{
+			if (adder != null)
+			{
+				adder.close();
+				adder = null;
+			}
+			else if (!pendingNames.isEmpty())
+			{
+				if (wad instanceof WadBuffer)
+					rebuild((WadBuffer)wad);
+				else for (int i = 0; i < pendingNames.size(); i++)
+					wad.addDataAt(index++, pendingNames.get(i), pendingData.get(i));
+				pendingNames.clear();
+				pendingData.clear();
+				pendingBytes = 0L;
+			}
+		}
+
+		// Copies the buffer into a new one with the pending entries in place, and replaces it.
+		private void rebuild(WadBuffer source) throws IOException
+		{
+			long size = pendingBytes;
+			for (WadEntry e : source)
+				size += e.getSize();
+			
+			WadBuffer out = new WadBuffer((int)Math.min(Integer.MAX_VALUE - 8, Math.max(size, source.getCapacity())), source.getCapacityIncrement());
+			if (source.isIWAD())
+				out.setType(Type.IWAD);
+			
+			int count = source.getEntryCount();
+			for (int i = 0; i < index; i++)
+			{
+				WadEntry e = source.getEntry(i);
+				out.addData(e.getName(), source.getData(e));
+			}
+			for (int i = 0; i < pendingNames.size(); i++)
+				out.addData(pendingNames.get(i), pendingData.get(i));
+			for (int i = index; i < count; i++)
+			{
+				WadEntry e = source.getEntry(i);
+				out.addData(e.getName(), source.getData(e));
+			}
+			
+			index += pendingNames.size();
+			currentWads.put(symbol, out);
+			source.close();
+			wad = out;
+		}
+	}
 	
 }
@@ -0,0 +1,464 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2024 Matt Tropiano
+ * This program and the accompanying materials are made available under 
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.wadmerge;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.mtrop.doom.tools.struct.ArgumentScanner;
+import net.mtrop.doom.tools.struct.TokenScanner;
+import net.mtrop.doom.tools.struct.util.OSUtils;
+
+/**
+ * A WadMerge script, read all at once, with the order that its commands need to run in.
+ * <p>Each command is checked for the symbols and files that it uses. A command waits for the
+ * commands before it that use the same symbols or files, and commands that don't share any
+ * can run at the same time. Some commands need every command before them to finish first:
+ * FILECHARSUB (it changes how later commands name entries), commands that create or write files
+ * (CREATEFILE, CLEAR, SAVE, FINISH), and lines that can't be checked (these are run as-is and report their own errors).
+ * <p>A symbol made with CREATEFILE is written to its file by every command that adds to it, so commands that use
+ * that symbol also use its file and the directories that contain it, and wait for (or are waited on by)
+ * commands that read them, like MERGEDIR or MERGEWADDIR. These commands also need every command before them
+ * to finish first, so if a command fails, no file is written that would not have been written when running
+ * the script in order.
+ * <p>Each command logs to its own buffer, and the buffers are written out in script order,
+ * so the log is the same as running the script in order. If a command fails, no commands after it
+ * are started, the commands before it are allowed to finish, and the log stops at the failed command.
+ * @author Matthew Tropiano
+ */
+final class WadMergeScriptGraph
+{
+	private String streamName;
+	private String[] arguments;
+	private List<Node> nodes;
+
+	private WadMergeScriptGraph(String streamName, String[] arguments)
+	{
+		this.streamName = streamName;
+		this.arguments = arguments;
+		this.nodes = new ArrayList<>();
+	}
+
+	/**
+	 * Reads a script and works out the order that its commands need to run in.
+	 * Reading stops at the end of the script or the first END command.
+	 * @param streamName stream name.
+	 * @param reader the reader to read the script from.
+	 * @param arguments the WadMerge arguments.
+	 * @return the script graph.
+	 * @throws IOException if the script can't be read.
+	 */
+	static WadMergeScriptGraph read(String streamName, BufferedReader reader, String[] arguments) throws IOException
+	{
+		WadMergeScriptGraph out = new WadMergeScriptGraph(streamName, arguments);
+		Map<String, Node> lastUse = new HashMap<>();
+		Map<String, Set<String>> symbolFiles = new HashMap<>();
+		Node lastBarrier = null;
+
+		String line;
+		int linenum = 0;
+		while ((line = reader.readLine()) != null)
+		{
+			linenum++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#"))
+				continue;
+
+			List<String> tokens = getTokens(arguments, line);
+			WadMergeCommand command = tokens != null && !tokens.isEmpty() ? WadMergeCommand.VALUES.get(tokens.get(0)) : null;
+			if (command == WadMergeCommand.END)
+				break;
+
+			Node node = new Node(out.nodes.size(), linenum, line);
+			Set<String> resources = command != null ? getResources(command, tokens) : null;
+			if (resources == null)
+			{
+				node.barrier = true;
+				node.afterAll = true;
+				lastBarrier = node;
+			}
+			else
+			{
+				boolean usesFile = addSymbolFiles(resources, symbolFiles);
+				setSymbolFiles(command, tokens, symbolFiles);
+				node.afterAll = usesFile || isAfterAll(command);
+				if (lastBarrier != null)
+					node.dependencies.add(lastBarrier);
+				for (String resource : resources)
+				{
+					Node previous = lastUse.put(resource, node);
+					if (previous != null)
+						node.dependencies.add(previous);
+				}
+			}
+			out.nodes.add(node);
+		}
+
+		return out;
+	}
+
+	/**
+	 * Runs the commands in this script.
+	 * @param context the WAD merge context.
+	 * @param threads the maximum amount of commands to run at the same time.
+	 * @return true if no errors, false otherwise.
+	 */
+	boolean run(WadMergeContext context, int threads)
+	{
+		final Object mutex = new Object();
+		final AtomicInteger threadId = new AtomicInteger(0);
+		ExecutorService service = Executors.newFixedThreadPool(Math.max(1, threads), (r) ->
+		{
+			Thread thread = new Thread(r);
+			thread.setName("WadMerge-" + threadId.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		int flushed = 0;
+		int failedIndex = nodes.size();
+		try {
+			while (true)
+			{
+				synchronized (mutex)
+				{
+					// Don't start anything after a failed command.
+					for (int i = flushed; i < failedIndex; i++)
+					{
+						Node node = nodes.get(i);
+						if (node.state == Node.DONE && node.failed())
+						{
+							failedIndex = i + 1; // keep the failed command so that its log is written.
+							break;
+						}
+					}
+
+					// Write out finished commands in order.
+					while (flushed < failedIndex && nodes.get(flushed).state == Node.DONE)
+					{
+						Node node = nodes.get(flushed);
+						node.flush(context);
+						flushed++;
+						if (node.exception != null)
+							throw node.exception;
+						if (!node.result)
+							return false;
+					}
+					if (flushed == nodes.size())
+						return true;
+
+					// Start every command that is ready.
+					for (int i = flushed; i < failedIndex; i++)
+					{
+						Node node = nodes.get(i);
+						if (node.state == Node.WAITING && node.isReady(flushed))
+						{
+							node.state = Node.RUNNING;
+							service.execute(() ->
+							{
+								node.execute(context, streamName, arguments);
+								synchronized (mutex)
+								{
+									node.state = Node.DONE;
+									mutex.notifyAll();
+								}
+							});
+						}
+						// Nothing after a barrier can start until it's done.
+						if (node.barrier && node.state != Node.DONE)
+							break;
+					}
+
+					try {
+						mutex.wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						context.logln("ERROR: Interrupted.");
+						return false;
+					}
+				}
+			}
+		} finally {
+			// Wait for commands that already started, so that nothing changes after this returns.
+			service.shutdown();
+			try {
+				service.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	// Returns null if the line can't be tokenized.
+	private static List<String> getTokens(String[] arguments, String line)
+	{
+		List<String> out = new ArrayList<>(8);
+		try (TokenScanner scanner = new ArgumentScanner(arguments, line))
+		{
+			while (scanner.hasNext())
+				out.add(scanner.nextString());
+		}
+		catch (RuntimeException e)
+		{
+			return null;
+		}
+		return out;
+	}
+
+	// Commands that need everything before them to be done.
+	private static boolean isAfterAll(WadMergeCommand command)
+	{
+		switch (command)
+		{
+			case CREATEFILE:
+			case CLEAR:
+			case SAVE:
+			case FINISH:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Gets the symbols and files that a command uses.
+	 * @param command the command.
+	 * @param tokens the command tokens (including the command).
+	 * @return the set of resource keys, or null if this command needs to run by itself.
+	 */
+	private static Set<String> getResources(WadMergeCommand command, List<String> tokens)
+	{
+		Set<String> out = new LinkedHashSet<>();
+		switch (command)
+		{
+			case ECHO:
+				return out;
+
+			case CREATE:
+			case CREATEBUFFER:
+			case CLEAR:
+			case DISCARD:
+			case VALID:
+			case MARKER:
+			case DATEMARKER:
+				return addSymbol(out, tokens, 1) ? out : null;
+
+			case CREATEFILE:
+			case SAVE:
+			case FINISH:
+				return addSymbol(out, tokens, 1) && addWrittenFile(out, tokens, 2) ? out : null;
+
+			case LOAD:
+			case MERGEWAD:
+			case MERGENAMESPACEFILE:
+			case MERGEFILE:
+			case MERGEDIR:
+			case MERGEWADDIR:
+			case MERGESWANTBLS:
+			case MERGEDEUTEXFILE:
+			case MERGETEXTUREDIR:
+				return addSymbol(out, tokens, 1) && addFile(out, tokens, 2) ? out : null;
+
+			case MERGE:
+			case MERGENAMESPACE:
+				return addSymbol(out, tokens, 1) && addSymbol(out, tokens, 2) ? out : null;
+
+			case MERGEMAP:
+			case MERGEENTRY:
+				return addSymbol(out, tokens, 1) && addSymbol(out, tokens, 3) ? out : null;
+
+			case MERGEMAPFILE:
+			case MERGEENTRYFILE:
+				return addSymbol(out, tokens, 1) && addFile(out, tokens, 3) ? out : null;
+
+			default:
+				return null;
+		}
+	}
+
+	// Adds the files of the WAD file symbols that a command uses.
+	// Returns true if the command uses a WAD file symbol.
+	private static boolean addSymbolFiles(Set<String> resources, Map<String, Set<String>> symbolFiles)
+	{
+		boolean out = false;
+		List<String> added = new ArrayList<>(4);
+		for (String resource : resources)
+		{
+			Set<String> files = symbolFiles.get(resource);
+			if (files != null)
+			{
+				added.addAll(files);
+				out = true;
+			}
+		}
+		resources.addAll(added);
+		return out;
+	}
+
+	// Keeps track of which symbols are WAD files after a command.
+	private static void setSymbolFiles(WadMergeCommand command, List<String> tokens, Map<String, Set<String>> symbolFiles)
+	{
+		switch (command)
+		{
+			case CREATEFILE:
+			{
+				Set<String> files = new LinkedHashSet<>();
+				addWrittenFile(files, tokens, 2);
+				symbolFiles.put(getSymbolKey(tokens.get(1)), files);
+				break;
+			}
+			case CREATE:
+			case CREATEBUFFER:
+			case DISCARD:
+			case FINISH:
+				symbolFiles.remove(getSymbolKey(tokens.get(1)));
+				break;
+			default:
+				break;
+		}
+	}
+
+	private static boolean addSymbol(Set<String> out, List<String> tokens, int index)
+	{
+		if (index >= tokens.size())
+			return false;
+		out.add(getSymbolKey(tokens.get(index)));
+		return true;
+	}
+
+	private static String getSymbolKey(String symbol)
+	{
+		return "symbol:" + symbol.toLowerCase();
+	}
+
+	private static boolean addFile(Set<String> out, List<String> tokens, int index)
+	{
+		if (index >= tokens.size())
+			return false;
+		out.add(getFileKey(new File(tokens.get(index)).getAbsoluteFile().toPath().normalize()));
+		return true;
+	}
+
+	// A written file also uses the directories that contain it, so that directory merges wait for it.
+	private static boolean addWrittenFile(Set<String> out, List<String> tokens, int index)
+	{
+		if (index >= tokens.size())
+			return false;
+		Path path = new File(tokens.get(index)).getAbsoluteFile().toPath().normalize();
+		while (path != null)
+		{
+			out.add(getFileKey(path));
+			path = path.getParent();
+		}
+		return true;
+	}
+
+	private static String getFileKey(Path path)
+	{
+		String name = path.toString();
+		return "file:" + (OSUtils.isWindows() ? name.toLowerCase() : name);
+	}
+
+	/**
+	 * A single command.
+	 */
+	private static class Node
+	{
+		private static final int WAITING = 0;
+		private static final int RUNNING = 1;
+		private static final int DONE = 2;
+
+		private int index;
+		private int linenum;
+		private String line;
+		private Set<Node> dependencies;
+		/** If true, nothing after this starts until it's done. */
+		private boolean barrier;
+		/** If true, this does not start until everything before it is done. */
+		private boolean afterAll;
+
+		// Guarded by the run mutex.
+		private int state;
+
+		private ByteArrayOutputStream log;
+		private Boolean result;
+		private RuntimeException exception;
+
+		private Node(int index, int linenum, String line)
+		{
+			this.index = index;
+			this.linenum = linenum;
+			this.line = line;
+			this.dependencies = new LinkedHashSet<>(4);
+			this.barrier = false;
+			this.afterAll = false;
+			this.state = WAITING;
+			this.log = null;
+			this.result = null;
+			this.exception = null;
+		}
+
+		private boolean isReady(int flushed)
+		{
+			if (afterAll)
+				return flushed == index;
+			for (Node dependency : dependencies)
+				if (dependency.state != DONE)
+					return false;
+			return true;
+		}
+
+		private boolean failed()
+		{
+			return exception != null || !result;
+		}
+
+		private void execute(WadMergeContext context, String streamName, String[] arguments)
+		{
+			PrintStream logStream = null;
+			if (context.getLogStream() != null)
+			{
+				log = new ByteArrayOutputStream(256);
+				logStream = new PrintStream(log, true);
+			}
+			try {
+				// END is not added to the graph, so a null result does not happen.
+				result = !Boolean.FALSE.equals(WadMergeCommand.callLine(streamName, linenum, line, new WadMergeContext(context, logStream), arguments));
+			} catch (RuntimeException e) {
+				exception = e;
+			} finally {
+				if (logStream != null)
+					logStream.flush();
+			}
+		}
+
+		private void flush(WadMergeContext context)
+		{
+			PrintStream out = context.getLogStream();
+			if (out != null && log != null)
+			{
+				out.write(log.toByteArray(), 0, log.size());
+				out.flush();
+			}
+			log = null;
+		}
+	}
+
+}
@@ -58,18 +58,22 @@ import net.mtrop.doom.map.udmf.attributes.UDMFMBFThingAttributes;
 import net.mtrop.doom.map.udmf.attributes.UDMFStrifeLinedefAttributes;
 import net.mtrop.doom.map.udmf.attributes.UDMFStrifeThingAttributes;
 import net.mtrop.doom.map.udmf.attributes.UDMFZDoomLinedefAttributes;
+import net.mtrop.doom.object.BinaryObject;
 import net.mtrop.doom.util.MapUtils;
 import net.mtrop.doom.util.NameUtils;
 
 import static com.blackrook.rookscript.lang.ScriptFunctionUsage.type;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Script functions for Doom Maps.
@@ -1035,6 +1039,209 @@ public enum DoomMapFunctions implements ScriptFunctionType
 		}
 	},
 	
+	CURSOR(4)
+	{
+		@Override
+		protected Usage usage()
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Creates an iterator that iterates through one type of element in a map in a Wad, without loading the whole map " +
+					"(like VIEW() does). Binary map elements are decoded from their entry one at a time as the iterator advances, and " +
+					"UDMF maps are scanned one object at a time (the TEXTMAP entry is still read into memory first, but is not parsed all at once). This is faster and uses far less memory than a MapView if a script only " +
+					"needs to look through each element once. The value that this produces can be used in an each(...) loop. " +
+					"The key is the index (starts at 0), and values are maps (see THING(), VERTEX(), LINEDEF(), SIDEDEF(), SECTOR())."
+				)
+				.parameter("wad", 
+					type(Type.OBJECTREF, "Wad", "An open Wad.")
+				)
+				.parameter("header", 
+					type(Type.INTEGER, "The entry index of the map's header."),
+					type(Type.STRING, "The name of the map entry to read (last one in the Wad is used).")
+				)
+				.parameter("type", 
+					type(Type.STRING, "The element type (\"thing\", \"vertex\", \"linedef\", \"sidedef\", \"sector\").")
+				)
+				.parameter("strife", 
+					type(Type.BOOLEAN, "If true, interpret each thing as a Strife thing (different flags).")
+				)
+				.returns(
+					type(Type.NULL, "If the map could not be found."),
+					type(Type.OBJECTREF, "ScriptIteratorType", "The iterator returned."),
+					type(Type.ERROR, "BadParameter", "If [wad] is not a valid open Wad file."),
+					type(Type.ERROR, "BadType", "If [type] is not a valid type name."),
+					type(Type.ERROR, "BadMap", "If the element's entry could not be found in the map."),
+					type(Type.ERROR, "IOError", "If [wad] could not be read.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue entry = CACHEVALUE2.get();
+			try 
+			{
+				scriptInstance.popStackValue(temp);
+				boolean strife = temp.asBoolean();
+				scriptInstance.popStackValue(temp);
+				String type = temp.asString().toLowerCase();
+				scriptInstance.popStackValue(entry);
+				scriptInstance.popStackValue(temp);
+				if (!temp.isObjectRef(Wad.class))
+				{
+					returnValue.setError("BadParameter", "First parameter is not a Wad.");
+					return true;
+				}
+				if (getElementEntryName(type) == null)
+				{
+					returnValue.setError("BadType", "Third parameter is not a valid type. Expected one of (\"thing\", \"vertex\", \"linedef\", \"sidedef\", \"sector\").");
+					return true;
+				}
+
+				Wad wad = temp.asObjectType(Wad.class);
+				try
+				{
+					int headerIndex = getMapHeaderIndex(wad, entry);
+					MapFormat format = headerIndex >= 0 ? MapUtils.getMapFormat(wad, headerIndex) : null;
+					if (format == null)
+					{
+						returnValue.setNull();
+						return true;
+					}
+					
+					int entryIndex = getMapEntryIndex(wad, headerIndex, format, format == MapFormat.UDMF ? "TEXTMAP" : getElementEntryName(type));
+					if (entryIndex < 0)
+					{
+						returnValue.setError("BadMap", "Could not find the entry for " + type + " in the map.");
+						return true;
+					}
+					
+					// The entry is read into memory up front (not streamed from the Wad), so that the script
+					// can still read the Wad while it iterates. For UDMF, that is the whole TEXTMAP.
+					byte[] data = wad.getData(entryIndex);
+					if (format == MapFormat.UDMF)
+						returnValue.set(new UDMFElementCursor(UDMFScanner.createScanner(new ByteArrayInputStream(data)), type));
+					else
+						returnValue.set(new BinaryElementCursor(data, createElement(type, format), getElementLength(type, format), strife));
+				} 
+				catch (IOException e)
+				{
+					returnValue.setError("IOError", e.getMessage(), e.getLocalizedMessage());
+				}
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+				entry.setNull();
+			}
+		}
+	},
+	
+	ELEMENTCOUNT(3)
+	{
+		@Override
+		protected Usage usage()
+		{
+			return ScriptFunctionUsage.create()
+				.instructions(
+					"Counts one type of element in a map in a Wad, without loading the whole map (like VIEW() does). " +
+					"Binary maps are counted from their entry sizes, and UDMF maps are scanned for the element type as the TEXTMAP entry is read."
+				)
+				.parameter("wad", 
+					type(Type.OBJECTREF, "Wad", "An open Wad.")
+				)
+				.parameter("header", 
+					type(Type.INTEGER, "The entry index of the map's header."),
+					type(Type.STRING, "The name of the map entry to read (last one in the Wad is used).")
+				)
+				.parameter("type", 
+					type(Type.STRING, "The element type (\"thing\", \"vertex\", \"linedef\", \"sidedef\", \"sector\").")
+				)
+				.returns(
+					type(Type.NULL, "If the map could not be found."),
+					type(Type.INTEGER, "The amount of elements of that type in the map."),
+					type(Type.ERROR, "BadParameter", "If [wad] is not a valid open Wad file."),
+					type(Type.ERROR, "BadType", "If [type] is not a valid type name."),
+					type(Type.ERROR, "IOError", "If [wad] could not be read.")
+				)
+			;
+		}
+		
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			ScriptValue temp = CACHEVALUE1.get();
+			ScriptValue entry = CACHEVALUE2.get();
+			try 
+			{
+				scriptInstance.popStackValue(temp);
+				String type = temp.asString().toLowerCase();
+				scriptInstance.popStackValue(entry);
+				scriptInstance.popStackValue(temp);
+				if (!temp.isObjectRef(Wad.class))
+				{
+					returnValue.setError("BadParameter", "First parameter is not a Wad.");
+					return true;
+				}
+				if (getElementEntryName(type) == null)
+				{
+					returnValue.setError("BadType", "Third parameter is not a valid type. Expected one of (\"thing\", \"vertex\", \"linedef\", \"sidedef\", \"sector\").");
+					return true;
+				}
+
+				Wad wad = temp.asObjectType(Wad.class);
+				try
+				{
+					int headerIndex = getMapHeaderIndex(wad, entry);
+					MapFormat format = headerIndex >= 0 ? MapUtils.getMapFormat(wad, headerIndex) : null;
+					if (format == null)
+					{
+						returnValue.setNull();
+						return true;
+					}
+					
+					int entryIndex = getMapEntryIndex(wad, headerIndex, format, format == MapFormat.UDMF ? "TEXTMAP" : getElementEntryName(type));
+					if (entryIndex < 0)
+					{
+						returnValue.set(0);
+					}
+					else if (format == MapFormat.UDMF)
+					{
+						int count = 0;
+						try (InputStream in = wad.getInputStream(wad.getEntry(entryIndex)))
+						{
+							UDMFScanner scanner = UDMFScanner.createScanner(in);
+							while (scanner.hasNext())
+							{
+								UDMFScanner.Element element = scanner.next();
+								if (element.isType(ElementType.OBJECT) && type.equalsIgnoreCase(element.getName()))
+									count++;
+							}
+						}
+						returnValue.set(count);
+					}
+					else
+					{
+						returnValue.set(wad.getEntry(entryIndex).getSize() / getElementLength(type, format));
+					}
+				} 
+				catch (IOException e)
+				{
+					returnValue.setError("IOError", e.getMessage(), e.getLocalizedMessage());
+				}
+				return true;
+			}
+			finally
+			{
+				temp.setNull();
+				entry.setNull();
+			}
+		}
+	},
+	
 	WRITEUDMFELEMENT(3)
 	{
 		@Override
@@ -2030,6 +2237,94 @@ public enum DoomMapFunctions implements ScriptFunctionType
 
 	protected abstract Usage usage();
 
+	// Gets the map header index from a script value (index or name), or -1 if not found.
+	private static int getMapHeaderIndex(Wad wad, ScriptValue header)
+	{
+		if (header.isNull())
+			return -1;
+		else if (header.isNumeric())
+		{
+			int index = header.asInt();
+			return index >= 0 && index < wad.getEntryCount() ? index : -1;
+		}
+		else
+			return wad.lastIndexOf(header.asString());
+	}
+	
+	// Finds the index of a map data entry in the entries that follow a map header, or -1 if not found.
+	// The search stops at the end of the map: ENDMAP for UDMF maps, or the first entry that is not binary map data
+	// (like the next map's header), so that the next map's entries are never used.
+	private static int getMapEntryIndex(Wad wad, int headerIndex, MapFormat format, String entryName)
+	{
+		for (int i = headerIndex + 1; i < wad.getEntryCount(); i++)
+		{
+			String name = wad.getEntry(i).getName();
+			if (name.equalsIgnoreCase(entryName))
+				return i;
+			if (format == MapFormat.UDMF ? name.equalsIgnoreCase("ENDMAP") : !BINARY_MAP_ENTRY_NAMES.contains(name.toUpperCase()))
+				break;
+		}
+		return -1;
+	}
+	
+	// Gets the binary map entry name for an element type, or null if not a valid type.
+	private static String getElementEntryName(String type)
+	{
+		switch (type)
+		{
+			case "thing":
+				return "THINGS";
+			case "vertex":
+				return "VERTEXES";
+			case "linedef":
+				return "LINEDEFS";
+			case "sidedef":
+				return "SIDEDEFS";
+			case "sector":
+				return "SECTORS";
+			default:
+				return null;
+		}
+	}
+	
+	// Gets the binary record length for an element type.
+	private static int getElementLength(String type, MapFormat format)
+	{
+		switch (type)
+		{
+			default:
+			case "thing":
+				return format == MapFormat.HEXEN ? HexenThing.LENGTH : DoomThing.LENGTH;
+			case "vertex":
+				return DoomVertex.LENGTH;
+			case "linedef":
+				return format == MapFormat.HEXEN ? HexenLinedef.LENGTH : DoomLinedef.LENGTH;
+			case "sidedef":
+				return DoomSidedef.LENGTH;
+			case "sector":
+				return DoomSector.LENGTH;
+		}
+	}
+	
+	// Creates the reusable binary object for decoding an element type.
+	private static BinaryObject createElement(String type, MapFormat format)
+	{
+		switch (type)
+		{
+			default:
+			case "thing":
+				return format == MapFormat.HEXEN ? new HexenThing() : new DoomThing();
+			case "vertex":
+				return new DoomVertex();
+			case "linedef":
+				return format == MapFormat.HEXEN ? new HexenLinedef() : new DoomLinedef();
+			case "sidedef":
+				return new DoomSidedef();
+			case "sector":
+				return new DoomSector();
+		}
+	}
+	
 	private static void setEntry(ScriptValue value, WadEntry entry) 
 	{
 		value.setEmptyMap(3);
@@ -2932,6 +3227,96 @@ public enum DoomMapFunctions implements ScriptFunctionType
 		}
 	}
 	
+	/**
+	 * Iterates through the fixed-length records of a binary map entry,
+	 * decoding each into the same element object as it goes.
+	 */
+	private static class BinaryElementCursor implements ScriptIteratorType
+	{
+		private ByteArrayInputStream in;
+		private BinaryObject element;
+		private boolean strife;
+		private IteratorPair pair;
+		private int count;
+		private int cur;
+
+		private BinaryElementCursor(byte[] data, BinaryObject element, int length, boolean strife) 
+		{
+			this.in = new ByteArrayInputStream(data);
+			this.element = element;
+			this.strife = strife;
+			this.pair = new IteratorPair();
+			this.count = data.length / length;
+			this.cur = 0;
+		}
+		
+		@Override
+		public boolean hasNext()
+		{
+			return cur < count;
+		}
+
+		@Override
+		public IteratorPair next() 
+		{
+			try {
+				element.readBytes(in);
+			} catch (IOException e) {
+				// Should not happen - reading from memory, and the record count is known.
+				throw new RuntimeException("Could not decode map element " + cur + ".", e);
+			}
+			pair.getKey().set(cur);
+			mapElementToMap(element, pair.getValue(), strife);
+			cur++;
+			return pair;
+		}
+	}
+	
+	/**
+	 * Iterates through one type of object in a UDMF map as it is scanned.
+	 */
+	private static class UDMFElementCursor implements ScriptIteratorType
+	{
+		private UDMFScanner scanner;
+		private String type;
+		private IteratorPair pair;
+		private UDMFObject nextObject;
+		private int cur;
+
+		private UDMFElementCursor(UDMFScanner scanner, String type) 
+		{
+			this.scanner = scanner;
+			this.type = type;
+			this.pair = new IteratorPair();
+			this.nextObject = null;
+			this.cur = 0;
+		}
+		
+		@Override
+		public boolean hasNext()
+		{
+			while (nextObject == null && scanner.hasNext())
+			{
+				UDMFScanner.Element element = scanner.next();
+				if (element.isType(ElementType.OBJECT) && type.equalsIgnoreCase(element.getName()))
+					nextObject = element.getUDMFObject();
+			}
+			return nextObject != null;
+		}
+
+		@Override
+		public IteratorPair next() 
+		{
+			if (!hasNext())
+				return null;
+			pair.getKey().set(cur);
+			udmfToMap(nextObject, pair.getValue());
+			nextObject = null;
+			cur++;
+			return pair;
+		}
+	}
+	
 	private static class UDMFScannerIterator implements ScriptIteratorType
 	{
 		private UDMFScanner scanner;
@@ -2990,6 +3375,12 @@ public enum DoomMapFunctions implements ScriptFunctionType
 
 	}
 
+	// Entry names that make up a binary (Doom/Hexen) map after its header.
+	private static final Set<String> BINARY_MAP_ENTRY_NAMES = new HashSet<>(Arrays.asList(
+		"THINGS", "LINEDEFS", "SIDEDEFS", "VERTEXES", "SEGS", "SSECTORS", "NODES", 
+		"SECTORS", "REJECT", "BLOCKMAP", "BEHAVIOR", "SCRIPTS"
+	));
+
 	// Threadlocal "stack" values.
 	private static final ThreadLocal<ScriptValue> CACHEVALUE1 = ThreadLocal.withInitial(()->ScriptValue.create(null));
 	private static final ThreadLocal<ScriptValue> CACHEVALUE2 = ThreadLocal.withInitial(()->ScriptValue.create(null));
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2024 Matt Tropiano
+ * This program and the accompanying materials are made available under 
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.wadscript;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.blackrook.rookscript.ScriptInstance;
+import com.blackrook.rookscript.ScriptValue;
+import com.blackrook.rookscript.lang.ScriptFunctionType;
+import com.blackrook.rookscript.resolvers.ScriptFunctionResolver;
+
+import net.mtrop.doom.tools.struct.TraceProfiler;
+
+/**
+ * A function resolver that wraps another resolver's functions so that each call is
+ * recorded as a span in the active {@link TraceProfiler}.
+ * @author Matthew Tropiano
+ */
+public class ProfilingFunctionResolver implements ScriptFunctionResolver
+{
+	/** The wrapped resolver. */
+	private ScriptFunctionResolver resolver;
+	/** Span category. */
+	private String category;
+	/** Span name prefix. */
+	private String prefix;
+	/** Wrapped functions. */
+	private Map<ScriptFunctionType, ScriptFunctionType> functions;
+
+	/**
+	 * Creates a new profiling resolver.
+	 * @param category the span category for all of the functions (for example, the resolver's section name).
+	 * @param namespace the function namespace, if any, added to span names (can be null).
+	 * @param resolver the resolver to wrap.
+	 */
+	public ProfilingFunctionResolver(String category, String namespace, ScriptFunctionResolver resolver)
+	{
+		this.resolver = resolver;
+		this.category = category;
+		this.prefix = namespace != null ? namespace.toUpperCase() + "::" : "";
+		this.functions = new ConcurrentHashMap<>();
+	}
+
+	@Override
+	public boolean containsFunction(String name)
+	{
+		return resolver.containsFunction(name);
+	}
+
+	@Override
+	public ScriptFunctionType getFunction(String name)
+	{
+		ScriptFunctionType function = resolver.getFunction(name);
+		return function != null ? wrap(function) : null;
+	}
+
+	@Override
+	public ScriptFunctionType[] getFunctions()
+	{
+		ScriptFunctionType[] source = resolver.getFunctions();
+		ScriptFunctionType[] out = new ScriptFunctionType[source.length];
+		for (int i = 0; i < source.length; i++)
+			out[i] = wrap(source[i]);
+		return out;
+	}
+
+	private ScriptFunctionType wrap(ScriptFunctionType function)
+	{
+		return functions.computeIfAbsent(function, (f) -> new ProfiledFunction(f, prefix + f.name().toUpperCase()));
+	}
+
+	/**
+	 * A function that records a span for each call.
+	 */
+	private class ProfiledFunction implements ScriptFunctionType
+	{
+		private ScriptFunctionType function;
+		private String spanName;
+
+		private ProfiledFunction(ScriptFunctionType function, String spanName)
+		{
+			this.function = function;
+			this.spanName = spanName;
+		}
+
+		@Override
+		public String name()
+		{
+			return function.name();
+		}
+
+		@Override
+		public int getParameterCount()
+		{
+			return function.getParameterCount();
+		}
+
+		@Override
+		public Usage getUsage()
+		{
+			return function.getUsage();
+		}
+
+		@Override
+		public boolean execute(ScriptInstance scriptInstance, ScriptValue returnValue)
+		{
+			try (TraceProfiler.Span span = TraceProfiler.begin(category, spanName))
+			{
+				return function.execute(scriptInstance, returnValue);
+			}
+		}
+	}
+
+}
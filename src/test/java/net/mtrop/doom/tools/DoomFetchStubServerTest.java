@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2024 Matt Tropiano
+ * This program and the accompanying materials are made available under 
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import net.mtrop.doom.tools.doomfetch.FetchDriver;
+import net.mtrop.doom.tools.struct.util.FileUtils;
+import net.mtrop.doom.tools.struct.util.HTTPUtils.HTTPRequest;
+import net.mtrop.doom.tools.struct.util.ThreadUtils;
+
+/**
+ * Runs DoomFetch against a local stub HTTP server that honors 
+ * conditional and ranged requests.
+ */
+public final class DoomFetchStubServerTest 
+{
+	private static final String ETAG = "\"stub-v1\"";
+	private static final String LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+	
+	private static byte[] content;
+	
+	private static void handle(HttpExchange exchange) throws IOException
+	{
+		String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+		System.out.println("    [Server] If-None-Match: " + ifNoneMatch + ", Range: " + range + ", If-Range: " + ifRange);
+		
+		exchange.getResponseHeaders().add("ETag", ETAG);
+		exchange.getResponseHeaders().add("Last-Modified", LAST_MODIFIED);
+		exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+
+		if (ETAG.equals(ifNoneMatch))
+		{
+			exchange.sendResponseHeaders(304, -1);
+			exchange.close();
+			return;
+		}
+		
+		int start = 0;
+		int status = 200;
+		if (range != null && (ifRange == null || ETAG.equals(ifRange)))
+		{
+			start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+			status = 206;
+			exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + (content.length - 1) + "/" + content.length);
+		}
+		
+		exchange.sendResponseHeaders(status, content.length - start);
+		try (OutputStream out = exchange.getResponseBody())
+		{
+			out.write(content, start, content.length - start);
+		}
+	}
+	
+	public static void main(String[] args) throws Exception
+	{
+		content = new byte[1024 * 1024];
+		(new Random(12345L)).nextBytes(content);
+		
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/stubwad.wad", DoomFetchStubServerTest::handle);
+		server.start();
+		final String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/stubwad.wad";
+		
+		// Only local drivers - the first one never finds anything.
+		DoomFetchMain.DRIVER_LIST.clear();
+		DoomFetchMain.DRIVER_LIST.put("missing", (out, err) -> new FetchDriver(out, err) 
+		{
+			@Override
+			public Response getStreamFor(String name) throws IOException 
+			{
+				ThreadUtils.sleep(250);
+				return null;
+			}
+		});
+		DoomFetchMain.DRIVER_LIST.put("stub", (out, err) -> new FetchDriver(out, err) 
+		{
+			@Override
+			public Response getStreamFor(String name) throws IOException 
+			{
+				if (!"stubwad".equals(name))
+					return null;
+				return createResponse("stubwad.wad", prepareDownload("stubwad.wad", HTTPRequest.get(url)).send());
+			}
+		});
+		
+		File dir = Files.createTempDirectory("doomfetch").toFile();
+		File lockFile = new File(dir, DoomFetchMain.DEFAULT_LOCK_FILENAME);
+		File target = new File(dir, "stubwad.wad");
+		File cacheDir = new File(dir, "cache");
+		
+		Files.write(lockFile.toPath(), "stubwad\n".getBytes());
+		
+		try {
+			System.out.println("Fresh fetch:");
+			System.out.println("    Result: " + fetch(dir, lockFile, false));
+			System.out.println("    Content OK: " + Arrays.equals(content, Files.readAllBytes(target.toPath())));
+			checkLock(lockFile);
+			
+			System.out.println("Serial fetch:");
+			target.delete();
+			Files.write(lockFile.toPath(), "stubwad\n".getBytes());
+			System.out.println("    Result: " + fetch(dir, lockFile, false, null, 1));
+			checkLock(lockFile);
+			
+			System.out.println("Skipped fetch:");
+			System.out.println("    Result: " + fetch(dir, lockFile, false, null, 1));
+			checkLock(lockFile);
+			System.out.println("    Result (parallel): " + fetch(dir, lockFile, false));
+			checkLock(lockFile);
+			
+			System.out.println("Conditional update:");
+			System.out.println("    Result: " + fetch(dir, lockFile, true));
+			checkLock(lockFile);
+			
+			System.out.println("Resumed fetch:");
+			target.delete();
+			Files.write(FetchDriver.getPartFile(dir, "stubwad.wad").toPath(), Arrays.copyOf(content, content.length / 3));
+			System.out.println("    Result: " + fetch(dir, lockFile, true));
+			System.out.println("    Content OK: " + Arrays.equals(content, Files.readAllBytes(target.toPath())));
+			
+			System.out.println("Cached fetch:");
+			System.out.println("    Result: " + fetch(dir, lockFile, true, cacheDir));
+			target.delete();
+			server.stop(0);
+			System.out.println("    Result (server down): " + fetch(dir, lockFile, false, cacheDir));
+			System.out.println("    Content OK: " + Arrays.equals(content, Files.readAllBytes(target.toPath())));
+			checkLock(lockFile);
+		} finally {
+			server.stop(0);
+			FileUtils.deleteDirectory(dir, true);
+		}
+	}
+	
+	private static int fetch(File dir, File lockFile, boolean update)
+	{
+		return fetch(dir, lockFile, update, null);
+	}
+	
+	private static int fetch(File dir, File lockFile, boolean update, File cacheDir)
+	{
+		return fetch(dir, lockFile, update, cacheDir, 4);
+	}
+	
+	private static int fetch(File dir, File lockFile, boolean update, File cacheDir, int threads)
+	{
+		return DoomFetchMain.call(new DoomFetchMain.Options()
+			.setStdout(System.out)
+			.setStderr(System.err)
+			.setLockFile(lockFile)
+			.setTargetDirectory(dir)
+			.setUpdate(update)
+			.setThreads(threads)
+			.setCacheDirectory(cacheDir)
+		);
+	}
+	
+	// The lock must name the driver that found the file, and keep its version.
+	private static void checkLock(File lockFile) throws IOException
+	{
+		String lock = new String(Files.readAllBytes(lockFile.toPath())).trim();
+		System.out.println("    Lock: " + lock);
+		String expected = "stubwad stub \"" + ETAG.replace("\"", "\\\"") + "\" \"" + LAST_MODIFIED + "\"";
+		if (!lock.equals(expected))
+			throw new AssertionError("FAILED: lock file is \"" + lock + "\", expected \"" + expected + "\"");
+	}
+	
+}
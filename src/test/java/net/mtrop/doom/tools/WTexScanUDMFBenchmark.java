@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2024 Matt Tropiano
+ * This program and the accompanying materials are made available under 
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+
+import net.mtrop.doom.map.udmf.UDMFObject;
+import net.mtrop.doom.map.udmf.UDMFReader;
+import net.mtrop.doom.map.udmf.UDMFScanner;
+import net.mtrop.doom.map.udmf.UDMFScanner.ElementType;
+import net.mtrop.doom.map.udmf.UDMFTable;
+
+/**
+ * Compares reading texture names from a big generated TEXTMAP with the full table reader
+ * versus the object-at-a-time scanner (what WTexScan uses).
+ * Usage: WTexScanUDMFBenchmark [sidedefs] [rounds]
+ * @author Matthew Tropiano
+ */
+public final class WTexScanUDMFBenchmark
+{
+	public static void main(String[] args) throws IOException
+	{
+		int sidedefs = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		byte[] textmap = generateTextmap(sidedefs);
+		double megabytes = textmap.length / (1024.0 * 1024.0);
+		System.out.printf("TEXTMAP: %d sidedefs, %.2f MB\n", sidedefs, megabytes);
+
+		// Warm up.
+		readTable(textmap);
+		readScanner(textmap);
+
+		for (int i = 0; i < rounds; i++)
+		{
+			System.gc();
+			long nanos = System.nanoTime();
+			int count = readTable(textmap);
+			long tableNanos = System.nanoTime() - nanos;
+
+			System.gc();
+			nanos = System.nanoTime();
+			int count2 = readScanner(textmap);
+			long scannerNanos = System.nanoTime() - nanos;
+
+			System.out.printf("Round %d: table %d ms (%.1f MB/s), scanner %d ms (%.1f MB/s), names %d/%d\n",
+				i + 1,
+				tableNanos / 1000000L, megabytes / (tableNanos / 1000000000.0),
+				scannerNanos / 1000000L, megabytes / (scannerNanos / 1000000000.0),
+				count, count2
+			);
+		}
+	}
+
+	private static int readTable(byte[] textmap) throws IOException
+	{
+		Set<String> names = new TreeSet<>();
+		try (InputStream in = new ByteArrayInputStream(textmap))
+		{
+			UDMFTable table = UDMFReader.readData(in);
+			for (UDMFObject object : table.getObjects("sidedef"))
+				addSidedef(names, object);
+			for (UDMFObject object : table.getObjects("sector"))
+				addSector(names, object);
+			printMemory("table");
+		}
+		return names.size();
+	}
+
+	private static int readScanner(byte[] textmap) throws IOException
+	{
+		Set<String> names = new TreeSet<>();
+		try (InputStream in = new ByteArrayInputStream(textmap))
+		{
+			UDMFScanner scanner = UDMFScanner.createScanner(in);
+			while (scanner.hasNext())
+			{
+				UDMFScanner.Element element = scanner.next();
+				if (!element.isType(ElementType.OBJECT))
+					continue;
+				if ("sidedef".equals(element.getName()))
+					addSidedef(names, element.getUDMFObject());
+				else if ("sector".equals(element.getName()))
+					addSector(names, element.getUDMFObject());
+			}
+			printMemory("scanner");
+		}
+		return names.size();
+	}
+
+	private static void addSidedef(Set<String> names, UDMFObject object)
+	{
+		names.add(object.getString("texturetop", "-"));
+		names.add(object.getString("texturemiddle", "-"));
+		names.add(object.getString("texturebottom", "-"));
+	}
+
+	private static void addSector(Set<String> names, UDMFObject object)
+	{
+		names.add(object.getString("texturefloor", "-"));
+		names.add(object.getString("textureceiling", "-"));
+	}
+
+	private static void printMemory(String name)
+	{
+		Runtime runtime = Runtime.getRuntime();
+		System.out.printf("    %s: %d KB heap in use after read\n", name, (runtime.totalMemory() - runtime.freeMemory()) / 1024);
+	}
+
+	// Generates a TEXTMAP with a plausible shape: vertices, linedefs, sidedefs, and sectors.
+	private static byte[] generateTextmap(int sidedefs)
+	{
+		StringBuilder sb = new StringBuilder(sidedefs * 256);
+		sb.append("namespace = \"zdoom\";\n\n");
+		for (int i = 0; i < sidedefs; i++)
+		{
+			sb.append("vertex // ").append(i).append("\n{\nx = ").append(i * 8).append(".0;\ny = ").append(i * 16).append(".0;\n}\n\n");
+		}
+		for (int i = 0; i < sidedefs; i++)
+		{
+			sb.append("linedef // ").append(i).append("\n{\nv1 = ").append(i).append(";\nv2 = ").append((i + 1) % sidedefs)
+				.append(";\nsidefront = ").append(i).append(";\nblocking = true;\n}\n\n");
+		}
+		for (int i = 0; i < sidedefs; i++)
+		{
+			sb.append("sidedef // ").append(i).append("\n{\nsector = ").append(i / 8)
+				.append(";\ntexturetop = \"TOP").append(i % 500)
+				.append("\";\ntexturemiddle = \"MID").append(i % 700)
+				.append("\";\ntexturebottom = \"BOT").append(i % 300)
+				.append("\";\noffsetx = ").append(i % 64).append(";\n}\n\n");
+		}
+		for (int i = 0; i < sidedefs / 8; i++)
+		{
+			sb.append("sector // ").append(i).append("\n{\nheightfloor = 0;\nheightceiling = 128;\ntexturefloor = \"FLOOR").append(i % 100)
+				.append("\";\ntextureceiling = \"CEIL").append(i % 50).append("\";\nlightlevel = 160;\n}\n\n");
+		}
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2024 Matt Tropiano
+ * This program and the accompanying materials are made available under 
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public final class ChangedFileOutputStreamTest
+{
+	private static final long OLD_TIME = 946684800000L; // 2000-01-01
+
+	public static void main(String[] args) throws IOException
+	{
+		File tempDir = Files.createTempDirectory("changed-file-test").toFile();
+		try {
+			testUnchanged(tempDir);
+			testChanged(tempDir);
+			testFailedWrite(tempDir);
+			testUncommitted(tempDir);
+			testTempFileNames(tempDir);
+			System.out.println("All ChangedFileOutputStream tests passed.");
+		} finally {
+			for (File f : tempDir.listFiles())
+				f.delete();
+			tempDir.delete();
+		}
+	}
+
+	private static void testUnchanged(File dir) throws IOException
+	{
+		File file = createFile(dir, "unchanged.txt", "same");
+		ChangedFileOutputStream out;
+		try (ChangedFileOutputStream cfos = out = new ChangedFileOutputStream(file))
+		{
+			cfos.write(bytes("same"));
+			cfos.commit();
+		}
+		check(!out.isChanged(), "unchanged output is not changed");
+		check(file.lastModified() == OLD_TIME, "unchanged output keeps the modified time");
+		check(read(file).equals("same"), "unchanged output keeps the contents");
+		checkNoTempFiles(dir);
+		System.out.println("Unchanged output keeps the file.");
+	}
+
+	private static void testChanged(File dir) throws IOException
+	{
+		File file = createFile(dir, "changed.txt", "old");
+		ChangedFileOutputStream out;
+		try (ChangedFileOutputStream cfos = out = new ChangedFileOutputStream(file))
+		{
+			cfos.write(bytes("new"));
+			cfos.commit();
+		}
+		check(out.isChanged(), "changed output is changed");
+		check(read(file).equals("new"), "changed output replaces the contents");
+		check(file.lastModified() != OLD_TIME, "changed output changes the modified time");
+
+		// Same length, different contents.
+		try (ChangedFileOutputStream cfos = out = new ChangedFileOutputStream(file))
+		{
+			cfos.write(bytes("NEW"));
+			cfos.commit();
+		}
+		check(out.isChanged() && read(file).equals("NEW"), "same-length output is compared by contents");
+
+		File created = new File(dir, "created.txt");
+		try (ChangedFileOutputStream cfos = out = new ChangedFileOutputStream(created))
+		{
+			cfos.write(bytes("created"));
+			cfos.commit();
+		}
+		check(out.isChanged() && read(created).equals("created"), "missing file is created");
+		checkNoTempFiles(dir);
+		System.out.println("Changed output replaces the file.");
+	}
+
+	private static void testFailedWrite(File dir) throws IOException
+	{
+		File file = createFile(dir, "failed.txt", "original");
+		ChangedFileOutputStream out = null;
+		try (ChangedFileOutputStream cfos = out = new ChangedFileOutputStream(file))
+		{
+			cfos.write(bytes("partial"));
+			failWrite();
+			cfos.commit();
+		} catch (IOException e) {
+			check(e.getMessage().equals("Write failed."), "write error is thrown: " + e);
+		}
+		check(!out.isChanged(), "failed write is not changed");
+		check(read(file).equals("original"), "failed write leaves the contents");
+		check(file.lastModified() == OLD_TIME, "failed write leaves the modified time");
+		checkNoTempFiles(dir);
+		System.out.println("A failed write leaves the file intact.");
+	}
+
+	private static void testUncommitted(File dir) throws IOException
+	{
+		File file = new File(dir, "uncommitted.txt");
+		try (ChangedFileOutputStream cfos = new ChangedFileOutputStream(file))
+		{
+			cfos.write(bytes("never"));
+		}
+		check(!file.exists(), "uncommitted output does not create the file");
+		checkNoTempFiles(dir);
+
+		ChangedFileOutputStream closed = new ChangedFileOutputStream(file);
+		closed.close();
+		try {
+			closed.commit();
+			throw new AssertionError("FAILED: commit after close throws");
+		} catch (IOException e) {
+			// Expected.
+		}
+		System.out.println("Uncommitted output is discarded.");
+	}
+
+	private static void testTempFileNames(File dir) throws IOException
+	{
+		check(ChangedFileOutputStream.isTempFile(new File(dir, ".patch.deh.1f2e3d4c5b6a7980.tmp")), "temp file name matches");
+		check(!ChangedFileOutputStream.isTempFile(new File(dir, "patch.deh")), "normal file does not match");
+		check(!ChangedFileOutputStream.isTempFile(new File(dir, ".hidden.tmp")), "hidden tmp file without hash does not match");
+		check(!ChangedFileOutputStream.isTempFile(new File(dir, "data.1234.tmp")), "unhidden tmp file does not match");
+
+		// The temporary file that is made while writing matches.
+		File file = new File(dir, "names.txt");
+		try (ChangedFileOutputStream cfos = new ChangedFileOutputStream(file))
+		{
+			File[] temps = dir.listFiles((d, name) -> name.startsWith(".names.txt."));
+			check(temps.length == 1 && ChangedFileOutputStream.isTempFile(temps[0]), "temp file while writing: " + Arrays.toString(temps));
+			cfos.commit();
+		}
+		checkNoTempFiles(dir);
+		System.out.println("Temporary file names are recognized.");
+	}
+
+	// Stands in for a writer that fails partway through.
+	private static void failWrite() throws IOException
+	{
+		throw new IOException("Write failed.");
+	}
+
+	private static File createFile(File dir, String name, String content) throws IOException
+	{
+		File file = new File(dir, name);
+		Files.write(file.toPath(), bytes(content));
+		check(file.setLastModified(OLD_TIME), "set modified time of " + name);
+		return file;
+	}
+
+	private static void checkNoTempFiles(File dir)
+	{
+		File[] temps = dir.listFiles((d, name) -> name.endsWith(".tmp"));
+		check(temps.length == 0, "no temp files left: " + Arrays.toString(temps));
+	}
+
+	private static byte[] bytes(String s)
+	{
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String read(File file) throws IOException
+	{
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+			throw new AssertionError("FAILED: " + message);
+	}
+
+}
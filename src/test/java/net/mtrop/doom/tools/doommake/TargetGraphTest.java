@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2024 Matt Tropiano
+ * This program and the accompanying materials are made available under 
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.doommake;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class TargetGraphTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		testOrder();
+		testRunOrder();
+		testCycle();
+		testMissingDependency();
+		testFailFast();
+		testExecutorException();
+		testOutputAndSession();
+		System.out.println("All TargetGraph tests passed.");
+	}
+
+	private static void testOrder()
+	{
+		TargetGraph graph = new TargetGraph()
+			.addTarget("zip", Arrays.asList("maps", "patch"))
+			.addTarget("maps", null)
+			.addTarget("patch", Arrays.asList("textures"))
+			.addTarget("textures", null);
+
+		List<String> order = graph.getOrder();
+		check(order.size() == 4, "order has all targets: " + order);
+		checkBefore(order, "maps", "zip");
+		checkBefore(order, "patch", "zip");
+		checkBefore(order, "textures", "patch");
+		System.out.println("Order: " + order);
+	}
+
+	private static void testRunOrder() throws InterruptedException
+	{
+		TargetGraph graph = new TargetGraph()
+			.addTarget("zip", Arrays.asList("maps", "patch"))
+			.addTarget("maps", null)
+			.addTarget("patch", Arrays.asList("textures"))
+			.addTarget("textures", null);
+
+		final Set<String> finished = Collections.newSetFromMap(new ConcurrentHashMap<>());
+		TargetGraph.Result result = graph.run(4, nullStream(), (name, out) ->
+		{
+			if (name.equals("zip"))
+				check(finished.contains("maps") && finished.contains("patch"), "zip started after its dependencies");
+			if (name.equals("patch"))
+				check(finished.contains("textures"), "patch started after textures");
+			Thread.sleep(20);
+			finished.add(name);
+			return 0;
+		});
+
+		check(result.isSuccessful(), "run is successful");
+		check(result.getExitCodes().size() == 4, "all targets ran: " + result.getExitCodes());
+		check(result.getFailed().isEmpty() && result.getSkipped().isEmpty(), "nothing failed or skipped");
+		System.out.println("Run order: " + result.getExitCodes().keySet());
+	}
+
+	private static void testCycle() throws InterruptedException
+	{
+		TargetGraph graph = new TargetGraph()
+			.addTarget("a", Arrays.asList("b"))
+			.addTarget("b", Arrays.asList("c"))
+			.addTarget("c", Arrays.asList("a"))
+			.addTarget("d", null);
+
+		checkThrows(() -> graph.getOrder(), "cycle in getOrder()");
+		checkThrows(() -> graph.run(2, nullStream(), (name, out) ->
+		{
+			throw new AssertionError("No target should run: " + name);
+		}), "cycle in run()");
+
+		TargetGraph self = new TargetGraph().addTarget("a", Arrays.asList("a"));
+		checkThrows(() -> self.getOrder(), "self-dependency");
+		System.out.println("Cycles rejected.");
+	}
+
+	private static void testMissingDependency() throws InterruptedException
+	{
+		TargetGraph graph = new TargetGraph()
+			.addTarget("a", Arrays.asList("nope"));
+
+		checkThrows(() -> graph.getOrder(), "missing dependency in getOrder()");
+		checkThrows(() -> graph.run(1, nullStream(), (name, out) ->
+		{
+			throw new AssertionError("No target should run: " + name);
+		}), "missing dependency in run()");
+		System.out.println("Missing dependencies rejected.");
+	}
+
+	private static void testFailFast() throws InterruptedException
+	{
+		TargetGraph graph = new TargetGraph()
+			.addTarget("bad", null)
+			.addTarget("slow", null)
+			.addTarget("afterBad", Arrays.asList("bad"))
+			.addTarget("afterSlow", Arrays.asList("slow"))
+			.addTarget("last", Arrays.asList("afterBad", "afterSlow"));
+
+		final Set<String> ran = Collections.newSetFromMap(new ConcurrentHashMap<>());
+		TargetGraph.Result result = graph.run(2, nullStream(), (name, out) ->
+		{
+			ran.add(name);
+			if (name.equals("bad"))
+				return 3;
+			Thread.sleep(100);
+			return 0;
+		});
+
+		check(!result.isSuccessful(), "run is not successful");
+		check(result.getFailed().equals(Arrays.asList("bad")), "failed: " + result.getFailed());
+		check(result.getExitCodes().get("bad") == 3, "exit code is kept");
+		// "slow" was already running, so it finishes, but nothing new starts after "bad" fails.
+		check(result.getExitCodes().containsKey("slow"), "running target finished");
+		check(!ran.contains("afterBad") && !ran.contains("afterSlow") && !ran.contains("last"), "no new targets after failure: " + ran);
+		check(result.getSkipped().containsAll(Arrays.asList("afterBad", "afterSlow", "last")), "skipped: " + result.getSkipped());
+		System.out.println("Fail fast: failed " + result.getFailed() + ", skipped " + result.getSkipped());
+	}
+
+	private static void testExecutorException() throws InterruptedException
+	{
+		TargetGraph graph = new TargetGraph()
+			.addTarget("throws", null)
+			.addTarget("after", Arrays.asList("throws"));
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		TargetGraph.Result result = graph.run(1, new PrintStream(bos, true), (name, out) ->
+		{
+			throw new IllegalArgumentException("broken");
+		});
+
+		check(result.getFailed().equals(Arrays.asList("throws")), "failed: " + result.getFailed());
+		check(result.getExitCodes().get("throws") == -1, "exception exit code");
+		check(result.getSkipped().equals(Arrays.asList("after")), "skipped: " + result.getSkipped());
+		check(bos.toString().contains("ERROR: IllegalArgumentException: broken"), "error is printed: " + bos);
+		System.out.println("Executor exceptions fail the target.");
+	}
+
+	private static void testOutputAndSession() throws InterruptedException
+	{
+		TargetGraph graph = new TargetGraph();
+		for (int i = 0; i < 8; i++)
+			graph.addTarget("t" + i, null);
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		TargetGraph.Result result = graph.run(8, new PrintStream(bos, true), (name, out) ->
+		{
+			check(TargetGraph.currentSession() != null, "session is set on target thread");
+			for (int i = 0; i < 50; i++)
+			{
+				out.println(name + " line " + i);
+				Thread.yield();
+			}
+			if (!name.equals("t0"))
+				TargetGraph.currentSession().setBuilt(name);
+			return 0;
+		});
+
+		check(TargetGraph.currentSession() == null, "no session on calling thread");
+		check(result.getBuilt().size() == 7 && !result.getBuilt().contains("t0"), "built: " + result.getBuilt());
+
+		// Each target's output is printed as one block after its header.
+		String[] lines = bos.toString().split("\\r?\\n");
+		check(lines.length == 8 * 51, "line count: " + lines.length);
+		for (int i = 0; i < lines.length; i += 51)
+		{
+			String name = lines[i].substring(1, lines[i].length() - 1);
+			for (int j = 0; j < 50; j++)
+				check(lines[i + 1 + j].equals(name + " line " + j), "output of " + name + " is not interleaved");
+		}
+		System.out.println("Output is grouped by target.");
+	}
+
+	private static PrintStream nullStream()
+	{
+		return new PrintStream(new ByteArrayOutputStream());
+	}
+
+	private static void checkBefore(List<String> order, String first, String second)
+	{
+		check(order.indexOf(first) < order.indexOf(second), first + " comes before " + second + ": " + order);
+	}
+
+	private static void checkThrows(ThrowingRunnable runnable, String message)
+	{
+		try {
+			runnable.run();
+		} catch (IllegalStateException e) {
+			System.out.println("    " + e.getMessage());
+			return;
+		} catch (Exception e) {
+			throw new AssertionError("Expected IllegalStateException (" + message + "), got " + e, e);
+		}
+		throw new AssertionError("Expected IllegalStateException: " + message);
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+			throw new AssertionError("FAILED: " + message);
+	}
+
+	@FunctionalInterface
+	private interface ThrowingRunnable
+	{
+		void run() throws Exception;
+	}
+
+}
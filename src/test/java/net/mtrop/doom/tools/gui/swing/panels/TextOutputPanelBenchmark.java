@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2024 Matt Tropiano
+ * This program and the accompanying materials are made available under 
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.gui.swing.panels;
+
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+
+/**
+ * Prints a lot of lines to a text output panel from another thread and measures
+ * how long it takes to write them and how long until the panel has caught up.
+ * Also times appending each line straight to a text area (how the panel used to work) for comparison.
+ * Usage: TextOutputPanelBenchmark [lines] [baselineLines]
+ * @author Matthew Tropiano
+ */
+public final class TextOutputPanelBenchmark 
+{
+	private static final String LINE = ": the quick brown fox jumps over the lazy dog.";
+	
+	public static void main(String[] args) throws InterruptedException, InvocationTargetException
+	{
+		final int lines = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		final int baselineLines = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		
+		DoomToolsTextOutputPanel panel = new DoomToolsTextOutputPanel();
+		PrintStream out = panel.getPrintStream();
+		
+		long nanos = System.nanoTime();
+		Thread writer = new Thread(() -> 
+		{
+			for (int i = 0; i < lines; i++)
+				out.println("Line " + i + LINE);
+		});
+		writer.start();
+		writer.join();
+		long writeNanos = System.nanoTime() - nanos;
+		
+		// Wait for the Swing thread to catch up.
+		final String lastLine = "Line " + (lines - 1) + LINE;
+		final AtomicBoolean done = new AtomicBoolean(false);
+		while (!done.get())
+		{
+			Thread.sleep(10);
+			SwingUtilities.invokeAndWait(() -> done.set(lastLine.equals(getLastLine(panel))));
+		}
+		long totalNanos = System.nanoTime() - nanos;
+		
+		final int[] lineCount = new int[1];
+		SwingUtilities.invokeAndWait(() -> lineCount[0] = panel.getLineCount());
+		
+		System.out.printf("Batched: %d lines written in %d ms (%.0f lines/s), shown after %d ms, %d lines kept.\n", 
+			lines, 
+			writeNanos / 1000000L, 
+			lines / (writeNanos / 1000000000.0), 
+			totalNanos / 1000000L,
+			lineCount[0]
+		);
+		
+		// Baseline: append and move the caret for each line.
+		JTextArea area = new JTextArea();
+		Object mutex = new Object();
+		nanos = System.nanoTime();
+		for (int i = 0; i < baselineLines; i++)
+		{
+			synchronized (mutex)
+			{
+				area.append("Line " + i + LINE + "\n");
+				area.setCaretPosition(area.getDocument().getLength());
+			}
+		}
+		long baselineNanos = System.nanoTime() - nanos;
+		System.out.printf("Per-line append: %d lines shown after %d ms (%.0f lines/s).\n", 
+			baselineLines, 
+			baselineNanos / 1000000L, 
+			baselineLines / (baselineNanos / 1000000000.0)
+		);
+	}
+	
+	private static String getLastLine(JTextArea area)
+	{
+		int line = area.getLineCount() - 2;
+		if (line < 0)
+			return null;
+		try {
+			int start = area.getLineStartOffset(line);
+			return area.getText(start, area.getLineEndOffset(line) - start - 1);
+		} catch (BadLocationException e) {
+			return null;
+		}
+	}
+}
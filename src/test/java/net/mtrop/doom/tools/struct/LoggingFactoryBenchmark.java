@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2024 Matt Tropiano
+ * This program and the accompanying materials are made available under 
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.struct;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.mtrop.doom.tools.struct.LoggingFactory.LogLevel;
+import net.mtrop.doom.tools.struct.LoggingFactory.Logger;
+
+/**
+ * Logs from several threads at once to a driver that only counts messages, 
+ * and measures logging throughput and bytes allocated per call by the logging threads,
+ * for both enabled and disabled logging levels.
+ * Usage: LoggingFactoryBenchmark [threads] [messagesPerThread] [rounds]
+ * @author Matthew Tropiano
+ */
+public final class LoggingFactoryBenchmark 
+{
+	public static void main(String[] args) throws InterruptedException
+	{
+		int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+		int messages = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+		
+		CountingDriver driver = new CountingDriver();
+		LoggingFactory factory = new LoggingFactory(LogLevel.INFO, driver);
+		Logger logger = factory.getLogger(LoggingFactoryBenchmark.class);
+
+		System.out.printf("%d threads, %d messages each.\n", threads, messages);
+		for (int i = 0; i < rounds; i++)
+		{
+			run("Round " + (i + 1) + " INFO (enabled) ", threads, messages, driver, () -> logger.infof("Message %d from %s.", 12345, "benchmark"));
+			run("Round " + (i + 1) + " DEBUG (disabled)", threads, messages, null, () -> logger.debugf("Message %d from %s.", 12345, "benchmark"));
+		}
+	}
+	
+	private static void run(String name, int threads, final int messages, CountingDriver driver, Runnable call) throws InterruptedException
+	{
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch end = new CountDownLatch(threads);
+		final AtomicLong allocated = new AtomicLong(0L);
+		
+		long expected = driver != null ? driver.count.get() + (long)threads * messages : 0L;
+		for (int t = 0; t < threads; t++)
+		{
+			Thread thread = new Thread(() -> 
+			{
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				long bytes = getAllocatedBytes();
+				for (int i = 0; i < messages; i++)
+					call.run();
+				allocated.addAndGet(getAllocatedBytes() - bytes);
+				end.countDown();
+			});
+			thread.start();
+		}
+		
+		long nanos = System.nanoTime();
+		start.countDown();
+		end.await();
+		long callNanos = System.nanoTime() - nanos;
+		if (driver != null)
+		{
+			while (driver.count.get() < expected)
+				Thread.sleep(1);
+		}
+		long totalNanos = System.nanoTime() - nanos;
+		
+		long total = (long)threads * messages;
+		System.out.printf("%s: calls %.0f/s, drained after %d ms (%.0f msgs/s), %.1f bytes/call on logging threads.\n", 
+			name,
+			total / (callNanos / 1000000000.0),
+			totalNanos / 1000000L,
+			total / (totalNanos / 1000000000.0),
+			allocated.get() < 0 ? Double.NaN : (double)allocated.get() / total
+		);
+	}
+	
+	// HotSpot-specific: bytes allocated by the current thread, or a negative number if unavailable.
+	private static long getAllocatedBytes()
+	{
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return Long.MIN_VALUE / 2;
+	}
+	
+	private static class CountingDriver implements LoggingFactory.Driver
+	{
+		private AtomicLong count = new AtomicLong(0L);
+		
+		@Override
+		public void log(Date time, LogLevel level, String source, String message, Throwable throwable) 
+		{
+			count.incrementAndGet();
+		}
+	}
+	
+}
@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2024 Matt Tropiano
+ * This program and the accompanying materials are made available under 
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.wadmerge;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import net.mtrop.doom.WadBuffer;
+import net.mtrop.doom.tools.common.Response;
+
+/**
+ * Compares inserting entries into the middle of a buffer one at a time (what WadMerge used to do)
+ * versus a namespace merge through {@link WadMergeContext} (batched inserts), for in-memory buffers and WAD files.
+ * Each destination has a P_START/P_END namespace followed by as many entries as are inserted.
+ * Usage: WadMergeInsertBenchmark [entrySize] [counts...]
+ * @author Matthew Tropiano
+ */
+public final class WadMergeInsertBenchmark
+{
+	public static void main(String[] args) throws IOException
+	{
+		int entrySize = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+		int[] counts = {1000, 10000, 50000};
+		if (args.length > 1)
+		{
+			counts = new int[args.length - 1];
+			for (int i = 1; i < args.length; i++)
+				counts[i - 1] = Integer.parseInt(args[i]);
+		}
+
+		File tempDir = new File(System.getProperty("java.io.tmpdir"), "wadmerge-benchmark-" + System.nanoTime());
+		if (!tempDir.mkdirs())
+			throw new IOException("Could not create temp directory: " + tempDir.getPath());
+
+		try {
+			File entryFile = new File(tempDir, "entry.lmp");
+			try (FileOutputStream fos = new FileOutputStream(entryFile))
+			{
+				fos.write(new byte[entrySize]);
+			}
+
+			// Warm up.
+			oneAtATime(1000, entrySize);
+			batched(1000, entryFile, null);
+
+			for (int count : counts)
+			{
+				System.gc();
+				long single = oneAtATime(count, entrySize);
+				System.gc();
+				long buffer = batched(count, entryFile, null);
+				System.gc();
+				long file = batched(count, entryFile, new File(tempDir, "out" + count + ".wad"));
+				System.out.printf("%6d entries: one at a time (buffer) %6d ms, batched (buffer) %6d ms, batched (file) %6d ms\n",
+					count, single / 1000000L, buffer / 1000000L, file / 1000000L
+				);
+			}
+		} finally {
+			for (File f : tempDir.listFiles())
+				f.delete();
+			tempDir.delete();
+		}
+	}
+
+	// Inserts entries one at a time at a moving index.
+	private static long oneAtATime(int count, int entrySize) throws IOException
+	{
+		WadBuffer wad = createDestination(count, entrySize);
+		byte[] data = new byte[entrySize];
+		long nanos = System.nanoTime();
+		int index = wad.lastIndexOf("P_END");
+		for (int i = 0; i < count; i++)
+			wad.addDataAt(index++, String.format("NEW%05d", i), data);
+		return System.nanoTime() - nanos;
+	}
+
+	// Merges a namespace through the context.
+	private static long batched(int count, File entryFile, File wadFile) throws IOException
+	{
+		WadMergeContext context = new WadMergeContext();
+		check(context.create("src", false, 65536, 0));
+		check(context.addMarker("src", "P_START"));
+		for (int i = 0; i < count; i++)
+			check(context.mergeFile("src", entryFile, String.format("NEW%05d", i)));
+		check(context.addMarker("src", "P_END"));
+
+		// The entries after the namespace.
+		check(context.create("tail", false, 65536, 0));
+		for (int i = 0; i < count; i++)
+			check(context.mergeFile("tail", entryFile, String.format("OLD%05d", i)));
+
+		if (wadFile != null)
+		{
+			// Adding to a WAD file one entry at a time writes its directory each time, so add the tail all at once.
+			File tailFile = new File(wadFile.getPath() + ".tail");
+			check(context.save("tail", tailFile));
+			check(context.createFile("dest", wadFile, false));
+			check(context.addMarker("dest", "P_START"));
+			check(context.addMarker("dest", "P_END"));
+			check(context.mergeWad("dest", tailFile));
+		}
+		else
+		{
+			check(context.create("dest", false, 65536, 0));
+			check(context.addMarker("dest", "P_START"));
+			check(context.addMarker("dest", "P_END"));
+			check(context.merge("dest", "tail"));
+		}
+		check(context.discard("tail"));
+
+		long nanos = System.nanoTime();
+		check(context.mergeNamespace("dest", "src", "P", true));
+		long out = System.nanoTime() - nanos;
+		check(context.discard("src"));
+		check(context.discard("dest"));
+		return out;
+	}
+
+	private static WadBuffer createDestination(int count, int entrySize) throws IOException
+	{
+		WadBuffer wad = new WadBuffer();
+		wad.addData("P_START", new byte[0]);
+		wad.addData("P_END", new byte[0]);
+		byte[] data = new byte[entrySize];
+		for (int i = 0; i < count; i++)
+			wad.addData(String.format("OLD%05d", i), data);
+		return wad;
+	}
+
+	private static void check(Response response)
+	{
+		if (response != Response.OK)
+			throw new IllegalStateException("Unexpected response: " + response.name());
+	}
+
+}
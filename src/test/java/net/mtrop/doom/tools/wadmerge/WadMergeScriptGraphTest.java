@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2020-2024 Matt Tropiano
+ * This program and the accompanying materials are made available under 
+ * the terms of the MIT License, which accompanies this distribution.
+ ******************************************************************************/
+package net.mtrop.doom.tools.wadmerge;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Runs the same WadMerge script in order and in parallel, and checks that the WADs and logs are the same.
+ * The script reads a directory that a WAD file symbol is being written to, so a parallel run that does not
+ * wait for those writes reads a partly-written file (or a different version of it).
+ * @author Matthew Tropiano
+ */
+public final class WadMergeScriptGraphTest
+{
+	private static final String SCRIPT = String.join("\n",
+		"CREATEFILE a $0/out/a.wad",
+		"MERGEDIR a $1/one",
+		"MERGEFILE a $1/two/big.lmp",
+		"CREATE b",
+		"MERGEDIR b $1/two",
+		"MERGEDIR b $0/out",
+		"MERGEFILE a $1/one/lump0.lmp later",
+		"CREATE c",
+		"MERGEWADDIR c $0/out",
+		"MERGEDIR c $1/one",
+		"MERGEDIR a $1/two",
+		"SAVE b $0/out/b.wad",
+		"SAVE c $0/c.wad",
+		"END"
+	);
+
+	private static final int PARALLEL_RUNS = 20;
+
+	public static void main(String[] args) throws IOException
+	{
+		File tempDir = Files.createTempDirectory("wadmerge-graph-test").toFile();
+		try {
+			File lumps = new File(tempDir, "lumps");
+			createLumps(lumps);
+
+			File serialDir = new File(tempDir, "serial");
+			String serialLog = run(serialDir, lumps, 1);
+
+			for (int i = 0; i < PARALLEL_RUNS; i++)
+			{
+				File parallelDir = new File(tempDir, "parallel" + i);
+				String parallelLog = run(parallelDir, lumps, 8);
+				check(serialLog.equals(parallelLog.replace(parallelDir.getPath(), serialDir.getPath())), "run " + i + ": log is the same");
+				for (String path : Arrays.asList("out/a.wad", "out/b.wad", "c.wad"))
+					check(Arrays.equals(read(new File(serialDir, path)), read(new File(parallelDir, path))), "run " + i + ": " + path + " is the same");
+			}
+			System.out.println("Parallel runs match the serial run (" + PARALLEL_RUNS + " runs).");
+		} finally {
+			delete(tempDir);
+		}
+	}
+
+	// Runs the script and returns the log.
+	private static String run(File outDir, File lumpDir, int threads) throws IOException
+	{
+		if (!new File(outDir, "out").mkdirs())
+			throw new IOException("Could not create directory: " + outDir.getPath());
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		String[] arguments = {outDir.getPath(), lumpDir.getPath()};
+		try (BufferedReader reader = new BufferedReader(new StringReader(SCRIPT)))
+		{
+			check(WadMergeCommand.callScript("test", reader, new WadMergeContext(new PrintStream(log, true), false), arguments, threads), "script with " + threads + " threads succeeded: " + log);
+		}
+		return log.toString();
+	}
+
+	private static void createLumps(File dir) throws IOException
+	{
+		Random random = new Random(1234L);
+		File one = new File(dir, "one");
+		File two = new File(dir, "two");
+		if (!one.mkdirs() || !two.mkdirs())
+			throw new IOException("Could not create lump directories.");
+		for (int i = 0; i < 32; i++)
+			write(new File(one, "lump" + i + ".lmp"), random, 1024 + random.nextInt(4096));
+		for (int i = 0; i < 8; i++)
+			write(new File(two, "other" + i + ".lmp"), random, 512);
+		write(new File(two, "big.lmp"), random, 4 * 1024 * 1024);
+	}
+
+	private static void write(File file, Random random, int length) throws IOException
+	{
+		byte[] data = new byte[length];
+		random.nextBytes(data);
+		try (FileOutputStream fos = new FileOutputStream(file))
+		{
+			fos.write(data);
+		}
+	}
+
+	private static byte[] read(File file) throws IOException
+	{
+		check(file.exists(), file.getPath() + " exists");
+		return Files.readAllBytes(file.toPath());
+	}
+
+	private static void delete(File file)
+	{
+		File[] files = file.listFiles();
+		if (files != null) for (File f : files)
+			delete(f);
+		file.delete();
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+			throw new AssertionError("FAILED: " + message);
+	}
+
+}